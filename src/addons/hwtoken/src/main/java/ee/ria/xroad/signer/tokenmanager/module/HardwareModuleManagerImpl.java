@@ -26,6 +26,7 @@
 package ee.ria.xroad.signer.tokenmanager.module;
 
 import ee.ria.xroad.signer.protocol.message.GetHSMOperationalInfoResponse;
+import ee.ria.xroad.signer.tokenmanager.token.HardwareTokenSignWorker;
 
 import akka.actor.Props;
 import lombok.extern.slf4j.Slf4j;
@@ -73,7 +74,8 @@ public class HardwareModuleManagerImpl extends DefaultModuleManagerImpl {
                 .noneMatch(moduleType -> moduleType instanceof HardwareModuleType
                         && !isModuleInitialized(moduleType));
 
-        GetHSMOperationalInfoResponse hsmOperationalInfo = new GetHSMOperationalInfoResponse(hsmOperationalStatus);
+        GetHSMOperationalInfoResponse hsmOperationalInfo = new GetHSMOperationalInfoResponse(hsmOperationalStatus,
+                HardwareTokenSignWorker.getSessionInfo());
         getSender().tell(hsmOperationalInfo, getSelf());
     }
 }
@@ -165,7 +165,8 @@ public class HardwareModuleWorker extends AbstractModuleWorker {
                 module.isBatchSigningEnabled(),
                 module.getSignMechanismName(),
                 module.getPrivKeyAttributes(),
-                module.getPubKeyAttributes()
+                module.getPubKeyAttributes(),
+                module.getSignSessionPoolSize()
         );
     }
 
@@ -27,10 +27,15 @@ package ee.ria.xroad.signer.tokenmanager.token;
 
 import ee.ria.xroad.signer.protocol.dto.TokenInfo;
 
+import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.routing.RoundRobinPool;
+
+import static ee.ria.xroad.signer.protocol.ComponentNames.TOKEN_SIGN_WORKERS;
 
 /**
- * Hardware token.
+ * Hardware token. If the module is configured with a signing session pool, signatures are calculated
+ * by a pool of workers each using a session of its own.
  */
 public class HardwareToken extends AbstractToken {
 
@@ -38,6 +43,8 @@ public class HardwareToken extends AbstractToken {
 
     private final HardwareTokenType tokenType;
 
+    private ActorRef signWorkers;
+
     /**
      * @param tokenInfo the token info
      * @param tokenType the token type
@@ -48,8 +55,32 @@ public class HardwareToken extends AbstractToken {
         this.tokenType = tokenType;
     }
 
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+
+        if (isSignSessionPoolUsed()) {
+            signWorkers = getContext().actorOf(new RoundRobinPool(tokenType.getSignSessionPoolSize()).props(
+                    Props.create(HardwareTokenSignWorker.class, tokenInfo.getId(), tokenType)
+                            .withDispatcher(DISPATCHER)), TOKEN_SIGN_WORKERS);
+        }
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if (signWorkers != null) {
+            getContext().stop(signWorkers);
+        }
+
+        super.postStop();
+    }
+
     @Override
     protected Props createSigner() {
+        if (isSignSessionPoolUsed()) {
+            return Props.create(TokenSigner.class, TOKEN_SIGN_WORKERS);
+        }
+
         return Props.create(TokenSigner.class);
     }
 
@@ -58,4 +89,9 @@ public class HardwareToken extends AbstractToken {
         return Props.create(HardwareTokenWorker.class, tokenInfo, tokenType).withDispatcher(DISPATCHER);
     }
 
+    private boolean isSignSessionPoolUsed() {
+        // with PIN verification per signing the token worker must do the signing itself
+        return tokenType.getSignSessionPoolSize() > 1 && !tokenType.isPinVerificationPerSigning();
+    }
+
 }
@@ -0,0 +1,278 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.signer.protocol.dto.TokenSessionInfo;
+import ee.ria.xroad.signer.util.AbstractSignerActor;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
+import ee.ria.xroad.signer.util.SignerUtil;
+
+import iaik.pkcs.pkcs11.Mechanism;
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.objects.RSAPrivateKey;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_SIGN;
+import static ee.ria.xroad.common.ErrorCodes.X_KEY_NOT_FOUND;
+import static ee.ria.xroad.common.ErrorCodes.X_UNSUPPORTED_SIGN_ALGORITHM;
+import static ee.ria.xroad.signer.tokenmanager.TokenManager.isKeyAvailable;
+import static ee.ria.xroad.signer.tokenmanager.TokenManager.isTokenActive;
+import static ee.ria.xroad.signer.tokenmanager.token.HardwareTokenUtil.findPrivateKey;
+import static ee.ria.xroad.signer.util.ExceptionHelper.keyNotAvailable;
+import static ee.ria.xroad.signer.util.ExceptionHelper.tokenNotActive;
+import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
+
+/**
+ * Calculates signatures with the keys of a hardware token in a session of its own. Several of these workers
+ * can serve one token so that signatures are calculated in parallel sessions; key management and login stay
+ * with {@link HardwareTokenWorker}. Private key handles are cached per session, and a lost session is
+ * re-opened before the signature is retried once. The sessions rely on the login state of the token; if the token
+ * is not logged in, signing fails as the token is not active.
+ */
+@Slf4j
+public class HardwareTokenSignWorker extends AbstractSignerActor {
+
+    // session statistics of all signing workers, by token id and worker name
+    private static final Map<String, SessionStats> SESSION_STATS = new ConcurrentHashMap<>();
+
+    private final String tokenId;
+
+    private final HardwareTokenType tokenType;
+
+    private final Map<String, Mechanism> signMechanisms;
+
+    // maps key id (hex) to the private key handle in the current session
+    private final Map<String, RSAPrivateKey> privateKeys = new HashMap<>();
+
+    private Session session;
+
+    private SessionStats stats;
+
+    HardwareTokenSignWorker(String tokenId, HardwareTokenType tokenType) {
+        this.tokenId = tokenId;
+        this.tokenType = tokenType;
+        this.signMechanisms = HardwareTokenWorker.createSignMechanisms(tokenType.getSignMechanismName());
+    }
+
+    /**
+     * @return statistics of the sessions used by the hardware token signing workers
+     */
+    public static List<TokenSessionInfo> getSessionInfo() {
+        List<TokenSessionInfo> result = new ArrayList<>();
+
+        SESSION_STATS.forEach((id, s) -> result.add(new TokenSessionInfo(s.tokenId, id, s.openedAt.get(),
+                s.signatureCount.get(), s.busyTimeNanos.get(), s.lastSignTimeNanos.get(), s.recreatedCount.get())));
+
+        return result;
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        stats = new SessionStats(tokenId);
+        SESSION_STATS.put(tokenId + "/" + getSelf().path().name(), stats);
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        SESSION_STATS.remove(tokenId + "/" + getSelf().path().name());
+
+        closeSession();
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        if (message instanceof CalculateSignature) {
+            handleCalculateSignature((CalculateSignature) message);
+        } else {
+            unhandled(message);
+        }
+    }
+
+    private void handleCalculateSignature(CalculateSignature signRequest) {
+        try {
+            byte[] data = SignerUtil.createDataToSign(signRequest.getDigest(), signRequest.getSignatureAlgorithmId());
+
+            byte[] signature = sign(signRequest.getKeyId(), signRequest.getSignatureAlgorithmId(), data);
+            sendResponse(new CalculatedSignature(signRequest, signature, null));
+        } catch (Exception e) { // catch-log-rethrow
+            log.error("Error while signing with key '{}'", signRequest.getKeyId(), e);
+
+            // PKCS11Exception is not sent as such, see HardwareTokenWorker#customizeException
+            Exception error = e instanceof PKCS11Exception ? new Exception(e.getMessage()) : e;
+
+            CodedException tr = translateError(error).withPrefix(X_CANNOT_SIGN);
+            sendResponse(new CalculatedSignature(signRequest, null, tr));
+        }
+    }
+
+    private byte[] sign(String keyId, String signatureAlgorithmId, byte[] data) throws Exception {
+        log.trace("sign({}, {})", keyId, signatureAlgorithmId);
+
+        Mechanism signMechanism = signMechanisms.get(signatureAlgorithmId);
+
+        if (signMechanism == null) {
+            throw CodedException.tr(X_UNSUPPORTED_SIGN_ALGORITHM, "unsupported_sign_algorithm",
+                    "Unsupported signature algorithm '%s'", signatureAlgorithmId);
+        }
+
+        if (!isTokenActive(tokenId)) {
+            throw tokenNotActive(tokenId);
+        }
+
+        if (!isKeyAvailable(keyId)) {
+            throw keyNotAvailable(keyId);
+        }
+
+        try {
+            return signInSession(keyId, signMechanism, data);
+        } catch (PKCS11Exception e) {
+            if (isSessionLost(e)) {
+                log.warn("Signing session of token '{}' lost ({}), opening a new session", tokenId, e.getMessage());
+
+                closeSession();
+                stats.recreatedCount.incrementAndGet();
+            } else if (isKeyHandleInvalid(e)) {
+                log.debug("Handle of key '{}' is no longer valid, searching the key again", keyId);
+
+                privateKeys.remove(keyId);
+            } else {
+                throw translateLoginState(e);
+            }
+        }
+
+        try {
+            return signInSession(keyId, signMechanism, data);
+        } catch (PKCS11Exception e) {
+            throw translateLoginState(e);
+        }
+    }
+
+    private Exception translateLoginState(PKCS11Exception e) {
+        // the token has been logged out, logging in again is up to the token worker
+        return e.getErrorCode() == PKCS11Constants.CKR_USER_NOT_LOGGED_IN ? tokenNotActive(tokenId) : e;
+    }
+
+    private byte[] signInSession(String keyId, Mechanism signMechanism, byte[] data) throws Exception {
+        openSession();
+
+        RSAPrivateKey key = getPrivateKey(keyId);
+
+        if (key == null) {
+            throw CodedException.tr(X_KEY_NOT_FOUND, "key_not_found_on_token", "Key '%s' not found on token '%s'",
+                    keyId, tokenId);
+        }
+
+        log.debug("Signing with key '{}' in session {}", keyId, getSelf().path().name());
+
+        long start = System.nanoTime();
+
+        session.signInit(signMechanism, key);
+        byte[] signature = session.sign(data);
+
+        long elapsed = System.nanoTime() - start;
+
+        stats.signatureCount.incrementAndGet();
+        stats.busyTimeNanos.addAndGet(elapsed);
+        stats.lastSignTimeNanos.set(elapsed);
+
+        return signature;
+    }
+
+    private RSAPrivateKey getPrivateKey(String keyId) throws Exception {
+        RSAPrivateKey privateKey = privateKeys.get(keyId);
+
+        if (privateKey == null) {
+            privateKey = findPrivateKey(session, keyId, tokenType.getPrivKeyAttributes().getAllowedMechanisms());
+
+            if (privateKey != null) {
+                privateKeys.put(keyId, privateKey);
+            }
+        }
+
+        return privateKey;
+    }
+
+    private void openSession() throws Exception {
+        if (session != null) {
+            return;
+        }
+
+        session = tokenType.getToken().openSession(SERIAL_SESSION, false, null, null);
+        privateKeys.clear();
+        stats.openedAt.set(System.currentTimeMillis());
+    }
+
+    private void closeSession() {
+        if (session != null) {
+            try {
+                session.closeSession();
+            } catch (Exception e) {
+                log.warn("Failed to close signing session of token '{}'", tokenId, e);
+            } finally {
+                session = null;
+                privateKeys.clear();
+            }
+        }
+    }
+
+    private static boolean isSessionLost(PKCS11Exception e) {
+        long code = e.getErrorCode();
+
+        return code == PKCS11Constants.CKR_SESSION_HANDLE_INVALID
+                || code == PKCS11Constants.CKR_SESSION_CLOSED
+                || code == PKCS11Constants.CKR_DEVICE_REMOVED;
+    }
+
+    private static boolean isKeyHandleInvalid(PKCS11Exception e) {
+        long code = e.getErrorCode();
+
+        return code == PKCS11Constants.CKR_KEY_HANDLE_INVALID || code == PKCS11Constants.CKR_OBJECT_HANDLE_INVALID;
+    }
+
+    private static final class SessionStats {
+        private final String tokenId;
+        private final AtomicLong openedAt = new AtomicLong();
+        private final AtomicLong signatureCount = new AtomicLong();
+        private final AtomicLong busyTimeNanos = new AtomicLong();
+        private final AtomicLong lastSignTimeNanos = new AtomicLong();
+        private final AtomicLong recreatedCount = new AtomicLong();
+
+        SessionStats(String tokenId) {
+            this.tokenId = tokenId;
+        }
+    }
+}
@@ -64,6 +64,8 @@ public class HardwareTokenType implements TokenType {
 
     private final PubKeyAttributes pubKeyAttributes;
 
+    private final int signSessionPoolSize;
+
     @Override
     public String getId() {
         return CryptoUtils.encodeHex(SignerUtil.getFormattedTokenId(tokenIdFormat, moduleType, token).getBytes());
@@ -123,7 +123,7 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         this.signMechanisms = createSignMechanisms(tokenType.getSignMechanismName());
     }
 
-    private static Map<String, Mechanism> createSignMechanisms(String signMechanismName) {
+    static Map<String, Mechanism> createSignMechanisms(String signMechanismName) {
         Map<String, Mechanism> mechanismsByHashAlgorithmId = new HashMap<>();
 
         if (PKCS11Constants.NAME_CKM_RSA_PKCS.equals(signMechanismName)) {
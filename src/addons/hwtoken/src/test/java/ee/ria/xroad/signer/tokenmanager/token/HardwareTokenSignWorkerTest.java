@@ -0,0 +1,247 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.signer.protocol.dto.TokenSessionInfo;
+import ee.ria.xroad.signer.protocol.message.GetHSMOperationalInfoResponse;
+import ee.ria.xroad.signer.tokenmanager.TokenManager;
+import ee.ria.xroad.signer.tokenmanager.module.HardwareModuleManagerImpl;
+import ee.ria.xroad.signer.tokenmanager.module.PrivKeyAttributes;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.objects.RSAPrivateKey;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the hardware token signing workers with a mocked PKCS#11 token.
+ */
+public class HardwareTokenSignWorkerTest {
+
+    private static final String KEY_ID = "6b6579";
+    private static final byte[] SIGNATURE = {1, 2, 3};
+    private static final long SIGN_TIME_MILLIS = 5;
+
+    private static ActorSystem system;
+    private static String tokenId;
+
+    private Token token;
+
+    @BeforeClass
+    public static void setUp() {
+        system = ActorSystem.create();
+
+        tokenId = TokenManager.createToken(new SoftwareTokenType()).getId();
+        TokenManager.addKey(tokenId, KEY_ID, null);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    /**
+     * Activates the token and creates the mocked PKCS#11 token.
+     */
+    @Before
+    public void activateToken() {
+        TokenManager.setTokenActive(tokenId, true);
+        TokenManager.setKeyAvailable(KEY_ID, true);
+
+        token = mock(Token.class);
+    }
+
+    /**
+     * A lost session is closed and a new one is opened for the retry. The token stays active, and the private key
+     * handle of the lost session is not used in the new session.
+     */
+    @Test
+    public void recreatesLostSession() throws Exception {
+        Session lost = mockSession();
+        Session recreated = mockSession();
+
+        when(token.openSession(SERIAL_SESSION, false, null, null)).thenReturn(lost, recreated);
+
+        new TestKit(system) {
+            {
+                ActorRef worker = createWorker("recreatesLostSession");
+
+                assertSigned(sign(worker, this));
+
+                when(lost.sign(any())).thenThrow(new PKCS11Exception(PKCS11Constants.CKR_SESSION_HANDLE_INVALID));
+
+                assertSigned(sign(worker, this));
+                assertSigned(sign(worker, this));
+
+                verify(lost).closeSession();
+                verify(recreated, never()).login(anyBoolean(), any());
+                assertTrue(TokenManager.isTokenActive(tokenId));
+
+                // the key handle is searched once in each session and cached for the following signatures
+                verify(lost, times(1)).findObjectsInit(any());
+                verify(recreated, times(1)).findObjectsInit(any());
+
+                TokenSessionInfo info = getSessionInfo("recreatesLostSession");
+
+                assertEquals(1, info.getRecreatedCount());
+                assertEquals(3, info.getSignatureCount());
+            }
+        };
+    }
+
+    /**
+     * An invalid key handle is searched again in the same session.
+     */
+    @Test
+    public void searchesInvalidKeyHandleAgain() throws Exception {
+        Session session = mockSession();
+
+        when(token.openSession(SERIAL_SESSION, false, null, null)).thenReturn(session);
+        when(session.sign(any()))
+                .thenThrow(new PKCS11Exception(PKCS11Constants.CKR_KEY_HANDLE_INVALID))
+                .thenReturn(SIGNATURE);
+
+        new TestKit(system) {
+            {
+                ActorRef worker = createWorker("searchesInvalidKeyHandleAgain");
+
+                assertSigned(sign(worker, this));
+
+                verify(token, times(1)).openSession(anyBoolean(), anyBoolean(), any(), any());
+                verify(session, never()).closeSession();
+                verify(session, times(2)).findObjectsInit(any());
+            }
+        };
+    }
+
+    /**
+     * The signature count and the time spent signing in each session are returned in the HSM operational info.
+     */
+    @Test
+    public void reportsSessionUsageInOperationalInfo() throws Exception {
+        Session session = mockSession();
+
+        when(token.openSession(SERIAL_SESSION, false, null, null)).thenReturn(session);
+        when(session.sign(any())).thenAnswer(invocation -> {
+            Thread.sleep(SIGN_TIME_MILLIS);
+
+            return SIGNATURE;
+        });
+
+        new TestKit(system) {
+            {
+                ActorRef worker = createWorker("reportsSessionUsageInOperationalInfo");
+
+                assertSigned(sign(worker, this));
+                assertSigned(sign(worker, this));
+
+                ActorRef moduleManager = system.actorOf(Props.create(HardwareModuleManagerImpl.class));
+                moduleManager.tell("HsmOperationalInfo", getRef());
+
+                GetHSMOperationalInfoResponse response = expectMsgClass(GetHSMOperationalInfoResponse.class);
+
+                TokenSessionInfo info = response.getSignSessions().stream()
+                        .filter(s -> s.getSessionId().equals(tokenId + "/reportsSessionUsageInOperationalInfo"))
+                        .findFirst()
+                        .orElseThrow(() -> new AssertionError("Session not reported"));
+
+                assertEquals(tokenId, info.getTokenId());
+                assertEquals(2, info.getSignatureCount());
+                assertTrue(info.getBusyTimeNanos() >= 2 * SIGN_TIME_MILLIS * 1_000_000);
+                assertTrue(info.getLastSignTimeNanos() >= SIGN_TIME_MILLIS * 1_000_000);
+                assertTrue(info.getOpenedAt() > 0);
+                assertEquals(0, info.getRecreatedCount());
+            }
+        };
+    }
+
+    private ActorRef createWorker(String name) {
+        PrivKeyAttributes privKeyAttributes = new PrivKeyAttributes();
+        privKeyAttributes.setAllowedMechanisms(Collections.emptySet());
+
+        HardwareTokenType tokenType = new HardwareTokenType("module", null, token, false, 0, null, null,
+                false, true, PKCS11Constants.NAME_CKM_RSA_PKCS, privKeyAttributes, null, 2);
+
+        return system.actorOf(Props.create(HardwareTokenSignWorker.class, tokenId, tokenType), name);
+    }
+
+    private static CalculatedSignature sign(ActorRef worker, TestKit testKit) throws Exception {
+        worker.tell(new CalculateSignature(testKit.getRef(), KEY_ID, CryptoUtils.SHA256WITHRSA_ID,
+                new byte[CryptoUtils.SHA256_DIGEST_LENGTH]), testKit.getRef());
+
+        return testKit.expectMsgClass(CalculatedSignature.class);
+    }
+
+    private static void assertSigned(CalculatedSignature response) {
+        assertNull(response.getException());
+        assertArrayEquals(SIGNATURE, response.getSignature());
+    }
+
+    private static TokenSessionInfo getSessionInfo(String workerName) {
+        return HardwareTokenSignWorker.getSessionInfo().stream()
+                .filter(s -> s.getSessionId().equals(tokenId + "/" + workerName))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Session not reported"));
+    }
+
+    private static Session mockSession() throws Exception {
+        Session session = mock(Session.class);
+
+        when(session.findObjects(anyInt())).thenReturn(new iaik.pkcs.pkcs11.objects.Object[] {new RSAPrivateKey()});
+        when(session.sign(any())).thenReturn(SIGNATURE);
+
+        return session;
+    }
+}
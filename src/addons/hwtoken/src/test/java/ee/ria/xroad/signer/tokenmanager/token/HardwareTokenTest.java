@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.tokenmanager.TokenManager;
+import ee.ria.xroad.signer.tokenmanager.module.PrivKeyAttributes;
+
+import akka.actor.ActorIdentity;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Identify;
+import akka.actor.Props;
+import akka.actor.UntypedAbstractActor;
+import akka.routing.GetRoutees;
+import akka.routing.Routees;
+import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.ConfigFactory;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static ee.ria.xroad.signer.protocol.ComponentNames.TOKEN_SIGN_WORKERS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the signing session pool of hardware tokens.
+ */
+public class HardwareTokenTest {
+
+    private static ActorSystem system;
+    private static TokenInfo tokenInfo;
+
+    @BeforeClass
+    public static void setUp() {
+        system = ActorSystem.create("HardwareTokenTest", ConfigFactory.parseString(
+                "token-worker-dispatcher { type = PinnedDispatcher, executor = thread-pool-executor }"));
+
+        tokenInfo = TokenManager.createToken(new SoftwareTokenType());
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    /**
+     * A token signs with as many sessions as the signing session pool size of its module.
+     */
+    @Test
+    public void createsSignWorkerForEverySession() {
+        new TestKit(system) {
+            {
+                ActorRef token = createToken(3, false);
+
+                ActorRef signWorkers = getChild(token, this);
+                signWorkers.tell(GetRoutees.getInstance(), getRef());
+
+                assertEquals(3, expectMsgClass(Routees.class).getRoutees().size());
+            }
+        };
+    }
+
+    /**
+     * Without a pool, or with the PIN verified per signature, the token worker does the signing itself.
+     */
+    @Test
+    public void signsInTokenWorkerWithoutPool() {
+        new TestKit(system) {
+            {
+                assertNull(getChild(createToken(1, false), this));
+                assertNull(getChild(createToken(3, true), this));
+            }
+        };
+    }
+
+    private static ActorRef createToken(int signSessionPoolSize, boolean pinVerificationPerSigning) {
+        PrivKeyAttributes privKeyAttributes = new PrivKeyAttributes();
+        privKeyAttributes.setAllowedMechanisms(Collections.emptySet());
+
+        HardwareTokenType tokenType = new HardwareTokenType("module", null, mock(Token.class), false, 0, null, null,
+                pinVerificationPerSigning, true, PKCS11Constants.NAME_CKM_RSA_PKCS, privKeyAttributes, null,
+                signSessionPoolSize);
+
+        return system.actorOf(Props.create(TestHardwareToken.class, tokenInfo, tokenType));
+    }
+
+    private static ActorRef getChild(ActorRef token, TestKit testKit) {
+        // the token has created its children once it has answered
+        token.tell(new Identify(token.path().name()), testKit.getRef());
+        testKit.expectMsgClass(ActorIdentity.class);
+
+        system.actorSelection(token.path().child(TOKEN_SIGN_WORKERS)).tell(new Identify(TOKEN_SIGN_WORKERS),
+                testKit.getRef());
+
+        return testKit.expectMsgClass(ActorIdentity.class).getActorRef().orElse(null);
+    }
+
+    /**
+     * Hardware token whose token worker does not access the PKCS#11 token.
+     */
+    static class TestHardwareToken extends HardwareToken {
+
+        TestHardwareToken(TokenInfo tokenInfo, HardwareTokenType tokenType) {
+            super(tokenInfo, tokenType);
+        }
+
+        @Override
+        protected Props createWorker() {
+            return Props.create(IdleWorker.class);
+        }
+    }
+
+    /**
+     * Token worker that ignores all messages.
+     */
+    static class IdleWorker extends UntypedAbstractActor {
+
+        @Override
+        public void onReceive(Object message) {
+            unhandled(message);
+        }
+    }
+}
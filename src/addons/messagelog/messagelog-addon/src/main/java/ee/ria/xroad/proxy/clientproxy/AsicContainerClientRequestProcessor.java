@@ -43,7 +43,6 @@ import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.archive.EncryptionConfig;
 import ee.ria.xroad.common.messagelog.archive.EncryptionConfigProvider;
-import ee.ria.xroad.common.messagelog.archive.GPGOutputStream;
 import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
 import ee.ria.xroad.common.monitoring.MessageInfo;
 import ee.ria.xroad.common.util.HttpHeaders;
@@ -271,8 +270,8 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
             final CheckedSupplier<OutputStream> supplier = () -> {
                 servletResponse.setContentType(MimeTypes.BINARY);
                 servletResponse.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
-                return new GPGOutputStream(encryptionConfig.getGpgHomeDir(), tempFile,
-                        encryptionConfig.getEncryptionKeys());
+                return MessageLogProperties.getArchiveEncryptionBackend()
+                        .createOutputStream(encryptionConfig, tempFile);
             };
 
             writeContainers(clientId, queryId, nameGen, response, supplier);
@@ -392,8 +391,8 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
         final Path tempFile = Files.createTempFile(
                 Paths.get(SystemProperties.getTempFilesPath()), "asic", null);
         try {
-            try (OutputStream os = new GPGOutputStream(encryptionConfig.getGpgHomeDir(), tempFile,
-                    encryptionConfig.getEncryptionKeys())) {
+            try (OutputStream os = MessageLogProperties.getArchiveEncryptionBackend()
+                    .createOutputStream(encryptionConfig, tempFile)) {
                 asicContainer.write(os);
             }
             try (InputStream is = Files.newInputStream(tempFile)) {
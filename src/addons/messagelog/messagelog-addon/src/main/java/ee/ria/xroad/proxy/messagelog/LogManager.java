@@ -57,6 +57,8 @@ import scala.concurrent.duration.FiniteDuration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
@@ -64,6 +66,8 @@ import static ee.ria.xroad.common.ErrorCodes.X_MLOG_TIMESTAMPER_FAILED;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getAcceptableTimestampFailurePeriodSeconds;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getHashAlg;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getTimestampRetryDelay;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriteBatchSize;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriteMaxLinger;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.shouldTimestampImmediately;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
@@ -95,12 +99,17 @@ public class LogManager extends AbstractLogManager {
     private final ActorRef timestamper;
     private final ActorRef timestamperJob;
 
+    private final MessageRecordWriter messageRecordWriter;
+
     // package private for testing
     final ActorRef taskQueueRef;
 
     LogManager(JobManager jobManager) {
         super(jobManager);
 
+        messageRecordWriter = new MessageRecordWriter(getWriteBatchSize(), getWriteMaxLinger(),
+                LogRecordManager::saveMessageRecords);
+
         taskQueueRef = createTaskQueue();
         timestamper = createTimestamper();
         timestamperJob = createTimestamperJob();
@@ -128,19 +137,31 @@ public class LogManager extends AbstractLogManager {
 
     // ------------------------------------------------------------------------
 
+    @Override
+    public void postStop() throws Exception {
+        messageRecordWriter.stop();
+        super.postStop();
+    }
+
+    @Override
+    protected CompletableFuture<?> logAsync(LogMessage message) throws Exception {
+        if (shouldTimestampImmediately()) {
+            // the record must be time-stamped before the message is answered
+            return super.logAsync(message);
+        }
+
+        verifyCanLogMessage(false);
+
+        return saveMessageRecord(createMessageRecord(message));
+    }
+
     @Override
     protected void log(LogMessage message) throws Exception {
         boolean shouldTimestampImmediately = shouldTimestampImmediately();
 
         verifyCanLogMessage(shouldTimestampImmediately);
 
-        MessageRecord logRecord;
-        if (message instanceof SoapLogMessage) {
-            logRecord = createMessageRecord((SoapLogMessage)message);
-        } else {
-            logRecord = createMessageRecord((RestLogMessage)message);
-        }
-        logRecord = saveMessageRecord(logRecord);
+        MessageRecord logRecord = awaitSaved(saveMessageRecord(createMessageRecord(message)));
 
         if (shouldTimestampImmediately) {
             timestampImmediately(logRecord);
@@ -221,6 +242,14 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    private static MessageRecord createMessageRecord(LogMessage message) throws Exception {
+        if (message instanceof SoapLogMessage) {
+            return createMessageRecord((SoapLogMessage)message);
+        } else {
+            return createMessageRecord((RestLogMessage)message);
+        }
+    }
+
     private static MessageRecord createMessageRecord(SoapLogMessage message) throws Exception {
         log.trace("createMessageRecord()");
 
@@ -280,9 +309,21 @@ public class LogManager extends AbstractLogManager {
         return messageRecord;
     }
 
-    protected MessageRecord saveMessageRecord(MessageRecord messageRecord) throws Exception {
-        LogRecordManager.saveMessageRecord(messageRecord);
-        return messageRecord;
+    /**
+     * Queues the message record to be saved together with other concurrently logged records.
+     * @param messageRecord the message record to save
+     * @return future completed with the record once it has been committed
+     */
+    protected CompletableFuture<MessageRecord> saveMessageRecord(MessageRecord messageRecord) {
+        return messageRecordWriter.submit(messageRecord);
+    }
+
+    private static MessageRecord awaitSaved(CompletableFuture<MessageRecord> saved) throws Exception {
+        try {
+            return saved.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
     }
 
     static TimestampRecord saveTimestampRecord(Timestamper.TimestampSucceeded message) throws Exception {
@@ -31,6 +31,7 @@ import ee.ria.xroad.common.messagelog.AbstractLogRecord;
 import ee.ria.xroad.common.messagelog.LogRecord;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
+import ee.ria.xroad.messagelog.database.MessageRecordCompression;
 import ee.ria.xroad.messagelog.database.MessageRecordEncryption;
 
 import lombok.extern.slf4j.Slf4j;
@@ -47,6 +48,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.function.Function;
@@ -138,25 +140,42 @@ public final class LogRecordManager {
      * @throws Exception if an error occurs while communicating with database.
      */
     static void saveMessageRecord(MessageRecord messageRecord) throws Exception {
+        saveMessageRecords(Collections.singletonList(messageRecord));
+    }
+
+    /**
+     * Saves the message records to database in one transaction.
+     * @param messageRecords the message records to be saved.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    static void saveMessageRecords(List<MessageRecord> messageRecords) throws Exception {
 
+        final MessageRecordCompression compression = MessageRecordCompression.getInstance();
+        final boolean compress = compression.compressionEnabled();
         final MessageRecordEncryption encryption = MessageRecordEncryption.getInstance();
         final boolean encrypt = encryption.encryptionEnabled();
 
         doInTransaction(session -> {
-            //the blob must be created within hibernate session
-            messageRecord.setId(getNextRecordId(session));
+            for (MessageRecord messageRecord : messageRecords) {
+                //the blob must be created within hibernate session
+                messageRecord.setId(getNextRecordId(session));
 
-            if (encrypt) {
-                encryption.prepareEncryption(messageRecord);
-            }
+                if (compress) {
+                    compression.compress(messageRecord);
+                }
 
-            InputStream is = messageRecord.getAttachmentStream();
-            if (is != null) {
-                messageRecord.setAttachment(
-                        session.getLobHelper().createBlob(is, messageRecord.getAttachmentStreamSize()));
-            }
+                if (encrypt) {
+                    encryption.prepareEncryption(messageRecord);
+                }
 
-            save(session, messageRecord);
+                InputStream is = messageRecord.getAttachmentStream();
+                if (is != null) {
+                    messageRecord.setAttachment(
+                            session.getLobHelper().createBlob(is, messageRecord.getAttachmentStreamSize()));
+                }
+
+                save(session, messageRecord);
+            }
             return null;
         });
     }
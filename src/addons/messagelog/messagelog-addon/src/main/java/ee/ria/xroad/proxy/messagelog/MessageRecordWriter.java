@@ -0,0 +1,246 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.jmx.JmxReporter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
+
+/**
+ * Saves message records to the database in batches. Records submitted by any number of threads are queued, and
+ * a single writer thread saves whatever has been queued (up to the maximum batch size, waiting at most the
+ * maximum linger time for more records) in one transaction. The future of each record is completed only after
+ * the transaction has been committed. If saving a batch fails, its records are saved one at a time, so that only
+ * the futures of the failing records are completed exceptionally. A record with an attachment cannot be saved
+ * again, since its attachment stream has been read by the failed attempt, and it fails together with the batch.
+ * The queue size, batch sizes and commit times are published over JMX.
+ */
+@Slf4j
+public final class MessageRecordWriter {
+
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final long STOP_TIMEOUT_MS = 30000;
+
+    /**
+     * Saves a batch of message records in one transaction.
+     */
+    @FunctionalInterface
+    interface BatchSaver {
+        void save(List<MessageRecord> messageRecords) throws Exception;
+    }
+
+    private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final BatchSaver saver;
+    private final Thread writerThread;
+
+    // package private for testing
+    final MetricRegistry metrics = new MetricRegistry();
+
+    private final Histogram batchSize = metrics.histogram(metricName("batchSize"));
+    private final Timer commitTime = metrics.timer(metricName("commitTime"));
+    private final JmxReporter reporter = JmxReporter.forRegistry(metrics).inDomain("xroad.proxy").build();
+
+    private volatile boolean running = true;
+    private volatile int lastBatchSize;
+
+    MessageRecordWriter(int maxBatchSize, long maxLingerMillis, BatchSaver saver) {
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+        this.saver = saver;
+
+        metrics.register(metricName("queueSize"), (Gauge<Integer>) queue::size);
+        metrics.register(metricName("lastBatchSize"), (Gauge<Integer>) () -> lastBatchSize);
+        reporter.start();
+
+        writerThread = new Thread(this::run, "MessageRecordWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues the message record for saving.
+     * @param messageRecord the message record to save
+     * @return future completed with the record once it has been committed to the database
+     */
+    CompletableFuture<MessageRecord> submit(MessageRecord messageRecord) {
+        PendingRecord pending = new PendingRecord(messageRecord);
+
+        if (!running) {
+            pending.future.completeExceptionally(
+                    new CodedException(X_LOGGING_FAILED_X, "Message log writer has been stopped"));
+        } else {
+            queue.add(pending);
+        }
+
+        return pending.future;
+    }
+
+    /**
+     * Stops accepting new records and waits until the already queued records have been saved.
+     */
+    void stop() {
+        running = false;
+
+        try {
+            writerThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        PendingRecord pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(
+                    new CodedException(X_LOGGING_FAILED_X, "Message log writer has been stopped"));
+        }
+
+        reporter.stop();
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRecord first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+                if (first != null) {
+                    write(collectBatch(first));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Unexpected error in message record writer", e);
+            }
+        }
+    }
+
+    private List<PendingRecord> collectBatch(PendingRecord first) throws InterruptedException {
+        List<PendingRecord> batch = new ArrayList<>();
+        batch.add(first);
+
+        long deadline = System.nanoTime() + maxLingerNanos;
+
+        while (batch.size() < maxBatchSize) {
+            PendingRecord next = queue.poll();
+
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0 || (next = queue.poll(remaining, TimeUnit.NANOSECONDS)) == null) {
+                    break;
+                }
+            }
+
+            batch.add(next);
+        }
+
+        return batch;
+    }
+
+    private void write(List<PendingRecord> batch) {
+        try {
+            save(batch);
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                log.error("Saving a message record failed", e);
+                batch.get(0).future.completeExceptionally(e);
+
+                return;
+            }
+
+            log.error("Saving a batch of {} message records failed, saving the records one at a time",
+                    batch.size(), e);
+
+            batch.forEach(p -> retry(p, e));
+        }
+    }
+
+    private void retry(PendingRecord pending, Exception batchFailure) {
+        if (!pending.retryable) {
+            // the attachment stream has been read by the failed attempt
+            pending.future.completeExceptionally(batchFailure);
+
+            return;
+        }
+
+        try {
+            save(Collections.singletonList(pending));
+        } catch (Exception e) {
+            log.error("Saving a message record failed", e);
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    private void save(List<PendingRecord> batch) throws Exception {
+        List<MessageRecord> records = batch.stream().map(p -> p.record).collect(Collectors.toList());
+        long start = System.nanoTime();
+
+        saver.save(records);
+
+        long elapsed = System.nanoTime() - start;
+
+        batchSize.update(batch.size());
+        commitTime.update(elapsed, TimeUnit.NANOSECONDS);
+        lastBatchSize = batch.size();
+
+        log.trace("Saved {} message records in {} ms", batch.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+
+        batch.forEach(p -> p.future.complete(p.record));
+    }
+
+    private static String metricName(String name) {
+        return MetricRegistry.name(MessageRecordWriter.class.getSimpleName(), name);
+    }
+
+    private static final class PendingRecord {
+        private final MessageRecord record;
+        private final boolean retryable;
+        private final CompletableFuture<MessageRecord> future = new CompletableFuture<>();
+
+        PendingRecord(MessageRecord record) {
+            this.record = record;
+            this.retryable = record.getAttachmentStream() == null;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.AbstractLogManager;
+import ee.ria.xroad.common.messagelog.AbstractLogRecord;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.cleanUpDatabase;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createMessage;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createSignature;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.initForTest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests archiving the archive groups in parallel.
+ */
+@Slf4j
+@RunWith(Parameterized.class)
+public class LogArchiverTest extends AbstractMessageLogTest {
+
+    private static final int MESSAGES_PER_CLIENT = 3;
+
+    private static final ClientId[] CLIENTS = {
+            ClientId.create("EE", "BUSINESS", "consumer"),
+            ClientId.create("EE", "BUSINESS", "consumer", "sub1"),
+            ClientId.create("EE", "BUSINESS", "consumer", "sub2"),
+            ClientId.create("EE", "BUSINESS", "other"),
+            ClientId.create("EE", "GOV", "consumer", "sub1")};
+
+    @Parameterized.Parameters(name = "grouping = {0}")
+    public static Object[] params() {
+        return new Object[] {GroupingStrategy.MEMBER, GroupingStrategy.SUBSYSTEM};
+    }
+
+    @Parameterized.Parameter
+    public GroupingStrategy grouping;
+
+    /**
+     * Logs messages of several clients, time-stamps them and archives them with several workers. Every record
+     * must be archived exactly once, in an archive of its own group, and marked as archived.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void archivesEveryGroupInParallel() throws Exception {
+        Map<String, String> groupsByQueryId = new HashMap<>();
+
+        for (ClientId client : CLIENTS) {
+            for (int i = 0; i < MESSAGES_PER_CLIENT; i++) {
+                String queryId = "query" + groupsByQueryId.size();
+                groupsByQueryId.put(queryId, grouping.forClient(client).name());
+                log(createMessage(queryId, client), createSignature());
+            }
+        }
+
+        startTimestamping();
+        waitForTimestampSuccessful();
+        assertTrue(TestTaskQueue.waitForTimestampSaved());
+
+        startArchiving();
+        TestLogArchiver.waitForArchiveSuccessful();
+
+        assertEquals(0, getNumberOfRecords(false));
+        assertEquals(groupsByQueryId.size() + 1, getNumberOfRecords(true));
+
+        List<String> archivedQueryIds = new ArrayList<>();
+
+        try (DirectoryStream<Path> archives = Files.newDirectoryStream(archivesPath, "mlog-*.zip")) {
+            for (Path archive : archives) {
+                Set<String> archiveGroups = new HashSet<>();
+
+                for (String queryId : readQueryIds(archive)) {
+                    assertNotNull("Unexpected record " + queryId, groupsByQueryId.get(queryId));
+
+                    archivedQueryIds.add(queryId);
+                    archiveGroups.add(groupsByQueryId.get(queryId));
+                }
+
+                assertEquals("Archive " + archive + " contains several groups", 1, archiveGroups.size());
+            }
+        }
+
+        assertEquals(groupsByQueryId.size(), archivedQueryIds.size());
+        assertEquals(groupsByQueryId.keySet(), new HashSet<>(archivedQueryIds));
+    }
+
+    /**
+     * Set up configuration.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty(MessageLogProperties.TIMESTAMP_IMMEDIATELY, "false");
+        System.setProperty(MessageLogProperties.ARCHIVE_INTERVAL, "0 0 0 1 1 ? 2099");
+        System.setProperty(MessageLogProperties.CLEAN_INTERVAL, "0 0 0 1 1 ? 2099");
+        System.setProperty(MessageLogProperties.ARCHIVE_GROUPING, grouping.name());
+        System.setProperty(MessageLogProperties.ARCHIVE_WORKERS, "4");
+        // several transactions and archive files per group
+        System.setProperty(MessageLogProperties.ARCHIVE_TRANSACTION_BATCH, "2");
+        System.setProperty(MessageLogProperties.ARCHIVE_FETCH_SIZE, "1");
+
+        initForTest();
+        testSetUp();
+
+        initLogManager();
+        TestLogManager.initSetTimestampingStatusLatch();
+        TestTaskQueue.initGateLatch();
+        TestTaskQueue.initTimestampSavedLatch();
+
+        TestTimestamperWorker.failNextTimestamping(false);
+    }
+
+    /**
+     * Cleanup test environment for other tests.
+     * @throws Exception in case of any unexpected errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty(MessageLogProperties.ARCHIVE_GROUPING);
+        System.clearProperty(MessageLogProperties.ARCHIVE_WORKERS);
+        System.clearProperty(MessageLogProperties.ARCHIVE_TRANSACTION_BATCH);
+        System.clearProperty(MessageLogProperties.ARCHIVE_FETCH_SIZE);
+
+        testTearDown();
+        cleanUpDatabase();
+    }
+
+    @Override
+    protected Class<? extends AbstractLogManager> getLogManagerImpl() {
+        return TestLogManager.class;
+    }
+
+    private static List<String> readQueryIds(Path archive) throws Exception {
+        List<String> queryIds = new ArrayList<>();
+
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(archive))) {
+            ZipEntry ze;
+            while ((ze = zis.getNextEntry()) != null) {
+                if (!"linkinginfo".equals(ze.getName())) {
+                    queryIds.add(ze.getName().substring(0, ze.getName().indexOf('-')));
+                }
+            }
+        }
+
+        return queryIds;
+    }
+
+    private static int getNumberOfRecords(final boolean archived) throws Exception {
+        return doInTransaction(session -> {
+            final CriteriaBuilder cb = session.getCriteriaBuilder();
+            final CriteriaQuery<Number> query = cb.createQuery(Number.class);
+            final Root<AbstractLogRecord> r = query.from(AbstractLogRecord.class);
+            query.select(cb.count(r)).where(cb.equal(r.get("archived"), archived));
+            return session.createQuery(query).getSingleResult().intValue();
+        });
+    }
+}
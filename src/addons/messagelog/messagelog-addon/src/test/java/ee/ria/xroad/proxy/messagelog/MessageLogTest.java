@@ -35,6 +35,7 @@ import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
 import ee.ria.xroad.common.messagelog.AbstractLogRecord;
 import ee.ria.xroad.common.messagelog.LogRecord;
+import ee.ria.xroad.common.messagelog.MessageCompression;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.RestLogMessage;
@@ -103,14 +104,21 @@ public class MessageLogTest extends AbstractMessageLogTest {
     private static final String LAST_LOG_ARCHIVE_FILE = "mlog-20150520112233-20150520123344-asdlfjlasa.zip";
     private static final String LAST_DIGEST = "123567890abcdef";
 
-    @Parameterized.Parameters(name = "encrypted = {0}")
-    public static Object[] params() {
-        return new Object[] {Boolean.FALSE, Boolean.TRUE};
+    @Parameterized.Parameters(name = "encrypted = {0}, compressed = {1}")
+    public static Object[][] params() {
+        return new Object[][] {
+                {Boolean.FALSE, Boolean.FALSE},
+                {Boolean.TRUE, Boolean.FALSE},
+                {Boolean.FALSE, Boolean.TRUE},
+                {Boolean.TRUE, Boolean.TRUE}};
     }
 
     @Parameterized.Parameter(0)
     public boolean encrypted;
 
+    @Parameterized.Parameter(1)
+    public boolean compressed;
+
     static Date logRecordTime;
 
     @Rule
@@ -214,6 +222,7 @@ public class MessageLogTest extends AbstractMessageLogTest {
         MessageRecordEncryption.getInstance().prepareDecryption(logRecord);
         assertEquals(logRecord.getXRequestId(), requestId);
         assertEquals(logRecord.getQueryId(), message.getQueryId());
+        assertEquals(compressed ? MessageCompression.DEFLATE : null, logRecord.getCompression());
         final AsicContainer asic = logRecord.toAsicContainer();
         assertArrayEquals(asic.getMessage().getBytes(StandardCharsets.UTF_8), message.getMessageBytes());
         final byte[] attachment = IOUtils.readFully(asic.getAttachment(), body.length);
@@ -469,6 +478,7 @@ public class MessageLogTest extends AbstractMessageLogTest {
         System.setProperty(MessageLogProperties.ARCHIVE_GROUPING, GroupingStrategy.SUBSYSTEM.name());
 
         System.setProperty(MessageLogProperties.MESSAGELOG_ENCRYPTION_ENABLED, Boolean.valueOf(encrypted).toString());
+        System.setProperty(MessageLogProperties.MESSAGELOG_COMPRESSION_ENABLED, Boolean.valueOf(compressed).toString());
         System.setProperty(MessageLogProperties.MESSAGELOG_KEYSTORE_PASSWORD, "password");
         System.setProperty(MessageLogProperties.MESSAGELOG_KEYSTORE, "build/resources/test/messagelog.p12");
         System.setProperty(MessageLogProperties.MESSAGELOG_KEY_ID, "key1");
@@ -508,6 +518,7 @@ public class MessageLogTest extends AbstractMessageLogTest {
     @After
     public void tearDown() throws Exception {
         System.clearProperty(MessageLogProperties.MESSAGELOG_ENCRYPTION_ENABLED);
+        System.clearProperty(MessageLogProperties.MESSAGELOG_COMPRESSION_ENABLED);
         System.clearProperty(MessageLogProperties.MESSAGELOG_KEYSTORE_PASSWORD);
         System.clearProperty(MessageLogProperties.MESSAGELOG_KEYSTORE);
         System.clearProperty(MessageLogProperties.MESSAGELOG_KEY_ID);
@@ -0,0 +1,153 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.asic.AsicContainer;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageCompression;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+import ee.ria.xroad.messagelog.database.MessageRecordCompression;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.rowset.serial.SerialBlob;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createMessage;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createSignature;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests message record compression and compares the stored size and compression throughput on sample payloads.
+ */
+@Slf4j
+public class MessageRecordCompressionTest {
+
+    private static final ClientId CLIENT = ClientId.create("XRD", "BUSINESS", "consumer");
+    private static final int ROWS = 2000;
+    private static final int ROUNDS = 20;
+
+    @Before
+    public void setUp() {
+        System.setProperty(MessageLogProperties.MESSAGELOG_COMPRESSION_ENABLED, "true");
+        MessageRecordCompression.reload();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(MessageLogProperties.MESSAGELOG_COMPRESSION_ENABLED);
+        MessageRecordCompression.reload();
+    }
+
+    @Test
+    public void shouldDecompressMessageAndAttachment() throws Exception {
+        final String message = soapMessage(ROWS);
+        final byte[] body = jsonBody(ROWS);
+
+        final MessageRecord record = new MessageRecord("q1", message, createSignature().getSignatureXml(),
+                false, CLIENT, "x1");
+        record.setTime(System.currentTimeMillis());
+        record.setAttachmentStream(new ByteArrayInputStream(body), body.length);
+        MessageRecordCompression.getInstance().compress(record);
+
+        assertEquals(MessageCompression.DEFLATE, record.getCompression());
+        assertNull(record.getMessage());
+        assertTrue(record.getAttachmentStreamSize() < body.length);
+
+        // as read back from the database
+        record.setAttachment(new SerialBlob(IOUtils.toByteArray(record.getAttachmentStream())));
+
+        final AsicContainer asic = record.toAsicContainer();
+        assertEquals(message, asic.getMessage());
+        assertArrayEquals(body, IOUtils.toByteArray(asic.getAttachment()));
+    }
+
+    /**
+     * Logs the compressed sizes and compression throughput of a small and a large SOAP message and a
+     * JSON body.
+     */
+    @Test
+    public void compareSizeAndThroughput() throws Exception {
+        final String smallSoap = createMessage().getXml();
+        final String largeSoap = soapMessage(ROWS);
+        final byte[] json = jsonBody(ROWS);
+
+        compare("small SOAP message", smallSoap, null);
+        assertTrue(compare("large SOAP message", largeSoap, null) < 0.2);
+        assertTrue(compare("REST message with JSON body", smallSoap, json) < 0.2);
+    }
+
+    private static double compare(String name, String message, byte[] body) throws Exception {
+        final MessageRecordCompression compression = MessageRecordCompression.getInstance();
+        final long size = message.getBytes(StandardCharsets.UTF_8).length + (body == null ? 0 : body.length);
+
+        long compressedSize = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            final MessageRecord record = new MessageRecord("q", message, "", false, CLIENT, "x");
+            if (body != null) {
+                record.setAttachmentStream(new ByteArrayInputStream(body), body.length);
+            }
+            compression.compress(record);
+            compressedSize = record.getCipherMessage().length + (body == null ? 0 : record.getAttachmentStreamSize());
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final double ratio = (double) compressedSize / size;
+        log.info("{}: {} bytes, compressed {} bytes ({}%), {} MB/s", name, size, compressedSize,
+                String.format("%.1f", ratio * 100), String.format("%.1f", size * ROUNDS / seconds / 1e6));
+        return ratio;
+    }
+
+    private static String soapMessage(int rows) throws Exception {
+        final StringBuilder records = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            records.append("<record><id>").append(i).append("</id><name>Name ").append(i)
+                    .append("</name><registered>2021-05-").append(10 + i % 20)
+                    .append("</registered><status>ACTIVE</status></record>");
+        }
+        return createMessage().getXml().replace("<name>foo</name>", "<name>foo</name>" + records);
+    }
+
+    private static byte[] jsonBody(int rows) {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < rows; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"Name ").append(i)
+                    .append("\",\"registered\":\"2021-05-").append(10 + i % 20).append("\",\"status\":\"ACTIVE\"}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests batching of message record saves.
+ */
+public class MessageRecordWriterTest {
+
+    /**
+     * Records queued while a batch is being saved are saved together in the next batch,
+     * and futures complete only after their batch has been saved.
+     */
+    @Test
+    public void batchesQueuedRecords() throws Exception {
+        CountDownLatch firstSaveStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstSave = new CountDownLatch(1);
+        List<Integer> batchSizes = new ArrayList<>();
+
+        MessageRecordWriter writer = new MessageRecordWriter(3, 0, records -> {
+            batchSizes.add(records.size());
+            firstSaveStarted.countDown();
+            releaseFirstSave.await();
+        });
+
+        try {
+            CompletableFuture<MessageRecord> first = writer.submit(record());
+            assertTrue(firstSaveStarted.await(5, TimeUnit.SECONDS));
+
+            List<CompletableFuture<MessageRecord>> queued = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                queued.add(writer.submit(record()));
+            }
+
+            assertFalse(first.isDone());
+            releaseFirstSave.countDown();
+
+            first.get(5, TimeUnit.SECONDS);
+            for (CompletableFuture<MessageRecord> f : queued) {
+                f.get(5, TimeUnit.SECONDS);
+            }
+
+            assertEquals(1, (int) batchSizes.get(0));
+            assertEquals(3, (int) batchSizes.get(1));
+            assertEquals(1, (int) batchSizes.get(2));
+        } finally {
+            writer.stop();
+        }
+    }
+
+    /**
+     * A failed save fails every record of the batch.
+     */
+    @Test
+    public void failedBatchFailsRecords() throws Exception {
+        Exception failure = new Exception("database unavailable");
+        MessageRecordWriter writer = new MessageRecordWriter(10, 0, records -> {
+            throw failure;
+        });
+
+        try {
+            writer.submit(record()).get(5, TimeUnit.SECONDS);
+            fail("Expected the save to fail");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        } finally {
+            writer.stop();
+        }
+    }
+
+    /**
+     * When a batch fails, its records are saved one at a time and only the failing record fails. A record with
+     * an attachment fails together with the batch.
+     */
+    @Test
+    public void failedBatchIsSavedOneRecordAtATime() throws Exception {
+        CountDownLatch firstSaveStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstSave = new CountDownLatch(1);
+        Exception failure = new Exception("constraint violation");
+        MessageRecord bad = record();
+        List<Integer> batchSizes = new ArrayList<>();
+
+        MessageRecordWriter writer = new MessageRecordWriter(10, 0, records -> {
+            batchSizes.add(records.size());
+            firstSaveStarted.countDown();
+            releaseFirstSave.await();
+
+            if (records.stream().anyMatch(r -> r == bad)) {
+                throw failure;
+            }
+        });
+
+        try {
+            CompletableFuture<MessageRecord> first = writer.submit(record());
+            assertTrue(firstSaveStarted.await(5, TimeUnit.SECONDS));
+
+            MessageRecord withAttachment = record();
+            withAttachment.setAttachmentStream(new ByteArrayInputStream(new byte[] {1}), 1);
+
+            CompletableFuture<MessageRecord> good = writer.submit(record());
+            CompletableFuture<MessageRecord> failing = writer.submit(bad);
+            CompletableFuture<MessageRecord> attachment = writer.submit(withAttachment);
+            CompletableFuture<MessageRecord> other = writer.submit(record());
+
+            releaseFirstSave.countDown();
+
+            first.get(5, TimeUnit.SECONDS);
+            good.get(5, TimeUnit.SECONDS);
+            other.get(5, TimeUnit.SECONDS);
+            assertFailedWith(failure, failing);
+            assertFailedWith(failure, attachment);
+
+            assertEquals(Arrays.asList(1, 4, 1, 1, 1), batchSizes);
+        } finally {
+            writer.stop();
+        }
+    }
+
+    /**
+     * The queue size, batch size and commit time metrics are updated when a batch is committed.
+     */
+    @Test
+    public void publishesBatchMetrics() throws Exception {
+        CountDownLatch firstSaveStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstSave = new CountDownLatch(1);
+
+        MessageRecordWriter writer = new MessageRecordWriter(10, 0, records -> {
+            firstSaveStarted.countDown();
+            releaseFirstSave.await();
+        });
+
+        try {
+            CompletableFuture<MessageRecord> first = writer.submit(record());
+            assertTrue(firstSaveStarted.await(5, TimeUnit.SECONDS));
+
+            List<CompletableFuture<MessageRecord>> queued = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                queued.add(writer.submit(record()));
+            }
+
+            assertEquals(3, gauge(writer, "MessageRecordWriter.queueSize"));
+
+            releaseFirstSave.countDown();
+
+            first.get(5, TimeUnit.SECONDS);
+            for (CompletableFuture<MessageRecord> f : queued) {
+                f.get(5, TimeUnit.SECONDS);
+            }
+
+            Histogram batchSize = writer.metrics.getHistograms().get("MessageRecordWriter.batchSize");
+            Timer commitTime = writer.metrics.getTimers().get("MessageRecordWriter.commitTime");
+
+            assertEquals(0, gauge(writer, "MessageRecordWriter.queueSize"));
+            assertEquals(3, gauge(writer, "MessageRecordWriter.lastBatchSize"));
+            assertEquals(2, batchSize.getCount());
+            assertEquals(1, batchSize.getSnapshot().getMin());
+            assertEquals(3, batchSize.getSnapshot().getMax());
+            assertEquals(2, commitTime.getCount());
+            assertTrue(commitTime.getSnapshot().getMax() > 0);
+        } finally {
+            writer.stop();
+        }
+    }
+
+    /**
+     * Records are not accepted after the writer has been stopped.
+     */
+    @Test
+    public void rejectsRecordsWhenStopped() throws Exception {
+        MessageRecordWriter writer = new MessageRecordWriter(10, 0, records -> { });
+        writer.stop();
+
+        assertTrue(writer.submit(record()).isCompletedExceptionally());
+    }
+
+    private static void assertFailedWith(Exception expected, CompletableFuture<MessageRecord> future)
+            throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the save to fail");
+        } catch (ExecutionException e) {
+            assertSame(expected, e.getCause());
+        }
+    }
+
+    private static int gauge(MessageRecordWriter writer, String name) {
+        return (Integer) ((Gauge<?>) writer.metrics.getGauges().get(name)).getValue();
+    }
+
+    private static MessageRecord record() {
+        return new MessageRecord("queryId", "message", "signature", false,
+                ClientId.create("EE", "BUSINESS", "consumer"), "xRequestId");
+    }
+}
@@ -34,6 +34,7 @@ import lombok.extern.slf4j.Slf4j;
 import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.FiniteDuration;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -94,7 +95,7 @@ class TestLogManager extends LogManager {
     }
 
     @Override
-    protected MessageRecord saveMessageRecord(MessageRecord messageRecord) throws Exception {
+    protected CompletableFuture<MessageRecord> saveMessageRecord(MessageRecord messageRecord) {
         log.info("saving message record");
 
         if (MessageLogTest.logRecordTime != null) {
@@ -31,6 +31,7 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.message.RestMessage;
 import ee.ria.xroad.common.message.RestRequest;
 import ee.ria.xroad.common.message.SoapMessageImpl;
@@ -38,6 +39,7 @@ import ee.ria.xroad.common.message.SoapParserImpl;
 import ee.ria.xroad.common.signature.SignatureData;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.MimeTypes;
+import ee.ria.xroad.messagelog.database.MessageRecordCompression;
 import ee.ria.xroad.messagelog.database.MessageRecordEncryption;
 
 import lombok.Getter;
@@ -125,6 +127,7 @@ final class TestUtil {
         ServerConf.reload(getServerConf());
         GlobalConf.reload(getGlobalConf());
         MessageRecordEncryption.reload();
+        MessageRecordCompression.reload();
     }
 
     static void cleanUpDatabase() throws Exception {
@@ -143,14 +146,35 @@ final class TestUtil {
     }
 
     static SoapMessageImpl createMessage(String queryId) throws Exception {
+        return parseMessage(getMessage().replaceAll("<xroad:id>1234567890</xroad:id>",
+                "<xroad:id>" + queryId + "</xroad:id>"));
+    }
+
+    static SoapMessageImpl createMessage(String queryId, ClientId client) throws Exception {
+        String clientXml = "<xroad:client id:objectType=\"" + client.getObjectType() + "\">"
+                + "<id:xRoadInstance>" + client.getXRoadInstance() + "</id:xRoadInstance>"
+                + "<id:memberClass>" + client.getMemberClass() + "</id:memberClass>"
+                + "<id:memberCode>" + client.getMemberCode() + "</id:memberCode>"
+                + (client.getSubsystemCode() != null
+                        ? "<id:subsystemCode>" + client.getSubsystemCode() + "</id:subsystemCode>" : "")
+                + "</xroad:client>";
+
+        return parseMessage(getMessage()
+                .replaceAll("<xroad:id>1234567890</xroad:id>", "<xroad:id>" + queryId + "</xroad:id>")
+                .replaceAll("(?s)<xroad:client .*?</xroad:client>", clientXml));
+    }
+
+    private static String getMessage() throws Exception {
         if (message == null) {
             try (InputStream in = new FileInputStream("src/test/resources/simple.query")) {
                 message = IOUtils.toString(in, StandardCharsets.UTF_8);
             }
         }
 
-        String soap = message.replaceAll("<xroad:id>1234567890</xroad:id>",
-                "<xroad:id>" + queryId + "</xroad:id>");
+        return message;
+    }
+
+    private static SoapMessageImpl parseMessage(String soap) throws Exception {
         return (SoapMessageImpl) new SoapParserImpl().parse(
                 MimeTypes.TEXT_XML_UTF8,
                 new ByteArrayInputStream(soap.getBytes(StandardCharsets.UTF_8)));
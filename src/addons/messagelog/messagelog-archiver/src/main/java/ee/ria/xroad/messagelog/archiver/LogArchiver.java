@@ -27,10 +27,15 @@ package ee.ria.xroad.messagelog.archiver;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.messagelog.LogRecord;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.archive.ArchiveDigest;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
+import ee.ria.xroad.common.messagelog.archive.Grouping;
+import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveBase;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveWriter;
 import ee.ria.xroad.messagelog.database.MessageRecordEncryption;
@@ -41,10 +46,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.hibernate.Session;
 
+import javax.persistence.Tuple;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -53,9 +61,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransactionBatchSize;
@@ -65,19 +81,44 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /**
  * Reads all non-archived time-stamped records from the database, writes them
- * to archive file and marks the records as archived.
+ * to archive file and marks the records as archived. The archive groups (see
+ * {@link GroupingStrategy}) are archived in parallel, each group by its own
+ * worker and archive writer, so that the archives of a group stay linked.
  */
 @Slf4j
 @RequiredArgsConstructor
 public class LogArchiver extends UntypedAbstractActor {
 
     private static final String PROPERTY_NAME_ARCHIVED = "archived";
+    private static final String PROPERTY_NAME_MEMBER_CLASS = "memberClass";
+    private static final String PROPERTY_NAME_MEMBER_CODE = "memberCode";
+    private static final String PROPERTY_NAME_SUBSYSTEM_CODE = "subsystemCode";
 
     public static final String START_ARCHIVING = "doArchive";
-    public static final int FETCH_SIZE = 10;
+
+    private static final int MARK_ARCHIVED_BATCH_SIZE = 100;
 
     private final Path archivePath;
 
+    private final GroupingStrategy groupingStrategy = MessageLogProperties.getArchiveGrouping();
+
+    private ExecutorService workers;
+    private ExecutorService writers;
+
+    @Override
+    public void preStart() {
+        final int workerCount = MessageLogProperties.getArchiveWorkers();
+
+        workers = Executors.newFixedThreadPool(workerCount, threadFactory("archiver"));
+        writers = Executors.newFixedThreadPool(workerCount, threadFactory("archive-writer"));
+    }
+
+    @Override
+    public void postStop() {
+        workers.shutdownNow();
+        writers.shutdownNow();
+    }
+
     @Override
     public void onReceive(Object message) {
         log.trace("onReceive({})", message);
@@ -86,8 +127,11 @@ public class LogArchiver extends UntypedAbstractActor {
             try {
                 Long maxRecordId = doInTransaction(this::getMaxRecordId);
                 if (maxRecordId != null) {
-                    while (handleArchive(maxRecordId)) {
-                        // body intentionally empty
+                    List<Grouping> groups = doInTransaction(session -> getNonArchivedGroups(session, maxRecordId));
+
+                    if (archive(groups, maxRecordId) > 0) {
+                        doInTransaction(this::markTimestampRecordsArchived);
+                        runTransferCommand(getArchiveTransferCommand());
                     }
                 }
                 onArchivingDone();
@@ -99,67 +143,105 @@ public class LogArchiver extends UntypedAbstractActor {
         }
     }
 
+    private int archive(List<Grouping> groups, long maxRecordId) throws InterruptedException {
+        final long start = System.currentTimeMillis();
+
+        log.info("Archiving log records of {} archive group(s)...", groups.size());
+
+        final List<Future<Integer>> results = new ArrayList<>(groups.size());
+        for (Grouping group : groups) {
+            results.add(workers.submit(() -> archiveGroup(group, maxRecordId)));
+        }
+
+        int recordsArchived = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                recordsArchived += results.get(i).get();
+            } catch (ExecutionException e) {
+                log.error("Failed to archive log records of archive group {}", groups.get(i).name(), e.getCause());
+            }
+        }
+
+        if (recordsArchived > 0) {
+            log.info("Archived {} log records in {} ms", recordsArchived, System.currentTimeMillis() - start);
+        }
+
+        return recordsArchived;
+    }
+
+    private int archiveGroup(Grouping group, long maxRecordId) throws Exception {
+        final int limit = getArchiveTransactionBatchSize();
+
+        int recordsArchived = 0;
+        int batch;
+        do {
+            batch = doInTransaction(session -> archiveBatch(session, group, maxRecordId, limit));
+            recordsArchived += batch;
+            //try to continue if the batch was full (there might be more)
+        } while (batch == limit);
+
+        return recordsArchived;
+    }
+
     private void markArchived(Session session, List<Long> recordIds) {
         session.createQuery("UPDATE AbstractLogRecord r SET r.archived = true WHERE r.id in (?1)")
                 .setParameter(1, recordIds)
                 .executeUpdate();
     }
 
-    private boolean handleArchive(long maxRecordId) throws Exception {
-        return doInTransaction(session -> {
-            final int limit = getArchiveTransactionBatchSize();
-            final String archiveTransferCommand = getArchiveTransferCommand();
-            final long start = System.currentTimeMillis();
-            final MessageRecordEncryption messageRecordEncryption = MessageRecordEncryption.getInstance();
-
-            int recordsArchived = 0;
-            log.info("Archiving log records...");
-
-            try (LogArchiveWriter archiveWriter = createLogArchiveWriter(session)) {
-                List<Long> recordIds = new ArrayList<>(100);
-                try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, maxRecordId, limit)) {
-                    for (Iterator<MessageRecord> it = records.iterator(); it.hasNext();) {
-                        MessageRecord messageRecord = it.next();
-                        recordIds.add(messageRecord.getId());
-                        messageRecordEncryption.prepareDecryption(messageRecord);
-                        if (archiveWriter.write(messageRecord)) {
-                            runTransferCommand(archiveTransferCommand);
-                        }
-                        //evict record from persistence context to avoid running out of memory
-                        session.detach(messageRecord);
-                        recordsArchived++;
-
-                        if (recordsArchived % 100 == 0) {
-                            markArchived(session, recordIds);
-                            recordIds.clear();
-                        }
-                    }
-                }
-                if (recordsArchived > 0) {
-                    if (recordIds.size() > 0) {
+    private int archiveBatch(Session session, Grouping group, long maxRecordId, int limit) {
+        final String archiveTransferCommand = getArchiveTransferCommand();
+        final long start = System.currentTimeMillis();
+        final MessageRecordEncryption messageRecordEncryption = MessageRecordEncryption.getInstance();
+        final DeferredLogArchiveBase archiveBase =
+                new DeferredLogArchiveBase(new HibernateLogArchiveBase(session), group.name());
+
+        int recordsArchived = 0;
+        log.debug("Archiving log records of archive group {}...", group.name());
+
+        try (PipelinedLogArchiveWriter archiveWriter = new PipelinedLogArchiveWriter(writers,
+                MessageLogProperties.getArchiveFetchSize(), createLogArchiveWriter(archiveBase),
+                () -> runTransferCommand(archiveTransferCommand))) {
+            List<Long> recordIds = new ArrayList<>(MARK_ARCHIVED_BATCH_SIZE);
+            try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, group, maxRecordId, limit)) {
+                for (Iterator<MessageRecord> it = records.iterator(); it.hasNext();) {
+                    MessageRecord messageRecord = it.next();
+                    recordIds.add(messageRecord.getId());
+                    messageRecordEncryption.prepareDecryption(messageRecord);
+                    //evict record from persistence context to avoid running out of memory
+                    session.detach(messageRecord);
+                    archiveWriter.write(messageRecord);
+                    recordsArchived++;
+
+                    if (recordsArchived % MARK_ARCHIVED_BATCH_SIZE == 0) {
                         markArchived(session, recordIds);
                         recordIds.clear();
                     }
-                    markTimestampRecordsArchived(session);
-                }
-                session.flush();
-            } catch (Exception e) {
-                throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
-            } finally {
-                if (recordsArchived > 0) {
-                    runTransferCommand(archiveTransferCommand);
-                    log.info("Archived {} log records in {} ms", recordsArchived, System.currentTimeMillis() - start);
                 }
             }
-            //try to continue if the batch was full (there might be more)
-            return recordsArchived == limit;
-        });
+            if (!recordIds.isEmpty()) {
+                markArchived(session, recordIds);
+                recordIds.clear();
+            }
+            archiveWriter.finish();
+            archiveBase.save();
+            session.flush();
+        } catch (Exception e) {
+            throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
+        } finally {
+            if (recordsArchived > 0) {
+                log.info("Archived {} log records of archive group {} in {} ms", recordsArchived, group.name(),
+                        System.currentTimeMillis() - start);
+            }
+        }
+
+        return recordsArchived;
     }
 
-    private LogArchiveWriter createLogArchiveWriter(Session session) throws IOException {
+    private LogArchiveWriter createLogArchiveWriter(LogArchiveBase archiveBase) throws IOException {
         return new LogArchiveWriter(
                 getArchivePath(),
-                new HibernateLogArchiveBase(session)
+                archiveBase
         );
     }
 
@@ -197,7 +279,45 @@ public class LogArchiver extends UntypedAbstractActor {
         return session.createQuery(query).uniqueResult();
     }
 
-    protected Stream<MessageRecord> getNonArchivedMessageRecords(Session session, Long maxId, int limit) {
+    /**
+     * @return the archive groups that have non-archived time-stamped records
+     */
+    protected List<Grouping> getNonArchivedGroups(Session session, Long maxId) {
+        if (groupingStrategy == GroupingStrategy.NONE) {
+            return Collections.singletonList(groupingStrategy.forClient(null));
+        }
+
+        final CriteriaBuilder cb = session.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        final Root<MessageRecord> m = query.from(MessageRecord.class);
+
+        final List<Selection<?>> selection = new ArrayList<>();
+        selection.add(m.get(PROPERTY_NAME_MEMBER_CLASS));
+        selection.add(m.get(PROPERTY_NAME_MEMBER_CODE));
+        if (groupingStrategy == GroupingStrategy.SUBSYSTEM) {
+            selection.add(m.get(PROPERTY_NAME_SUBSYSTEM_CODE));
+        }
+
+        query.multiselect(selection)
+                .distinct(true)
+                .where(cb.and(
+                        cb.isNotNull(m.get("timestampRecord")),
+                        cb.isFalse(m.get(PROPERTY_NAME_ARCHIVED)),
+                        cb.lessThanOrEqualTo(m.get("id"), maxId)));
+
+        final String instanceIdentifier = GlobalConf.getInstanceIdentifier();
+
+        return session.createQuery(query)
+                .getResultList()
+                .stream()
+                .map(t -> groupingStrategy.forClient(ClientId.create(instanceIdentifier,
+                        t.get(0, String.class), t.get(1, String.class),
+                        selection.size() > 2 ? t.get(2, String.class) : null)))
+                .collect(Collectors.toList());
+    }
+
+    protected Stream<MessageRecord> getNonArchivedMessageRecords(Session session, Grouping group, Long maxId,
+            int limit) {
         final CriteriaBuilder cb = session.getCriteriaBuilder();
         final CriteriaQuery<MessageRecord> query = cb.createQuery(MessageRecord.class);
         final Root<MessageRecord> m = query.from(MessageRecord.class);
@@ -206,12 +326,13 @@ public class LogArchiver extends UntypedAbstractActor {
                 .where(cb.and(
                         cb.isNotNull(m.get("timestampRecord")),
                         cb.isFalse(m.get(PROPERTY_NAME_ARCHIVED)),
-                        cb.lessThanOrEqualTo(m.get("id"), maxId)))
+                        cb.lessThanOrEqualTo(m.get("id"), maxId),
+                        groupPredicate(cb, m, group)))
                 .orderBy(
                         // order is important for archive grouping
-                        cb.asc(m.get("memberClass")),
-                        cb.asc(m.get("memberCode")),
-                        cb.asc(m.get("subsystemCode")),
+                        cb.asc(m.get(PROPERTY_NAME_MEMBER_CLASS)),
+                        cb.asc(m.get(PROPERTY_NAME_MEMBER_CODE)),
+                        cb.asc(m.get(PROPERTY_NAME_SUBSYSTEM_CODE)),
                         cb.asc(m.get("id")));
 
         return session
@@ -220,15 +341,47 @@ public class LogArchiver extends UntypedAbstractActor {
                 .setReadOnly(true)
                 // log records can be large, avoid fetching too much
                 // by default, PostgreSQL fetches the whole result set (limit)
-                .setFetchSize(FETCH_SIZE)
+                .setFetchSize(MessageLogProperties.getArchiveFetchSize())
                 .getResultStream();
     }
 
+    private Predicate groupPredicate(CriteriaBuilder cb, Root<MessageRecord> m, Grouping group) {
+        final ClientId clientId = group.getClientId();
+
+        if (clientId == null) {
+            return cb.conjunction();
+        }
+
+        Predicate predicate = cb.and(
+                cb.equal(m.get(PROPERTY_NAME_MEMBER_CLASS), clientId.getMemberClass()),
+                cb.equal(m.get(PROPERTY_NAME_MEMBER_CODE), clientId.getMemberCode()));
+
+        if (groupingStrategy == GroupingStrategy.SUBSYSTEM) {
+            predicate = cb.and(predicate, clientId.getSubsystemCode() == null
+                    ? cb.isNull(m.get(PROPERTY_NAME_SUBSYSTEM_CODE))
+                    : cb.equal(m.get(PROPERTY_NAME_SUBSYSTEM_CODE), clientId.getSubsystemCode()));
+        }
+
+        return predicate;
+    }
+
     protected void onArchivingDone() {
         //hook for testing
     }
 
-    private static void runTransferCommand(String transferCommand) {
+    private static ThreadFactory threadFactory(String name) {
+        final AtomicInteger count = new AtomicInteger();
+
+        return r -> {
+            Thread thread = new Thread(r);
+            thread.setName(name + "-" + count.incrementAndGet());
+
+            return thread;
+        };
+    }
+
+    // The workers rotate archives concurrently, the transfers of the archive directory must not overlap.
+    private static synchronized void runTransferCommand(String transferCommand) {
         if (isBlank(transferCommand)) {
             return;
         }
@@ -270,6 +423,49 @@ public class LogArchiver extends UntypedAbstractActor {
         }
     }
 
+    /**
+     * Archive base used by the archive writer thread. The last archive of the
+     * group is loaded before writing and the created archives are saved by the
+     * transaction thread when writing has finished, since the Hibernate
+     * session must not be used by two threads.
+     */
+    private static final class DeferredLogArchiveBase implements LogArchiveBase {
+
+        private final HibernateLogArchiveBase database;
+        private final String groupName;
+
+        private volatile DigestEntry lastArchive;
+        private volatile boolean archiveCreated;
+
+        DeferredLogArchiveBase(HibernateLogArchiveBase database, String groupName) {
+            this.database = database;
+            this.groupName = groupName;
+            this.lastArchive = database.loadLastArchive(groupName);
+        }
+
+        @Override
+        public void markArchiveCreated(String entryName, DigestEntry digestEntry) {
+            lastArchive = digestEntry;
+            archiveCreated = true;
+        }
+
+        @Override
+        public void markRecordArchived(LogRecord logRecord) {
+            logRecord.setArchived(true);
+        }
+
+        @Override
+        public DigestEntry loadLastArchive(String entryName) {
+            return lastArchive;
+        }
+
+        void save() {
+            if (archiveCreated) {
+                database.markArchiveCreated(groupName, lastArchive);
+            }
+        }
+    }
+
     private static class HibernateLogArchiveBase implements LogArchiveBase {
 
         HibernateLogArchiveBase(Session session) {
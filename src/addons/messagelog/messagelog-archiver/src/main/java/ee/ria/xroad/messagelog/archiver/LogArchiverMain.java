@@ -28,6 +28,7 @@ package ee.ria.xroad.messagelog.archiver;
 
 import ee.ria.xroad.common.SystemPropertiesLoader;
 import ee.ria.xroad.common.Version;
+import ee.ria.xroad.common.db.DatabaseMetrics;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.util.JobManager;
 
@@ -35,6 +36,7 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.CoordinatedShutdown;
 import akka.actor.Props;
+import com.codahale.metrics.jmx.JmxReporter;
 import com.typesafe.config.ConfigFactory;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -52,6 +54,7 @@ public final class LogArchiverMain {
 
     private static ActorSystem actorSystem;
     private static JobManager jobManager;
+    private static JmxReporter databaseReporter;
 
     private LogArchiverMain() {
     }
@@ -67,6 +70,16 @@ public final class LogArchiverMain {
                     .withLocalOptional(CONF_FILE_NODE)
                     .load();
 
+            if (MessageLogProperties.isArchiveEncryptionEnabled()) {
+                // an invalid backend would otherwise fail every archiving run
+                log.info("Archive encryption backend: {}", MessageLogProperties.getArchiveEncryptionBackend());
+            }
+
+            // report the message log database transaction and connection pool metrics
+            databaseReporter = JmxReporter.forRegistry(DatabaseMetrics.getMetricRegistry())
+                    .inDomain("xroad.messagelog-archiver").build();
+            databaseReporter.start();
+
             jobManager = new JobManager();
             actorSystem = ActorSystem.create("MessageLogArchiver", ConfigFactory.load().getConfig("messagelog-archiver")
                     .withFallback(ConfigFactory.load()));
@@ -85,6 +98,8 @@ public final class LogArchiverMain {
                 } catch (Exception e) {
                     log.warn("JobManager failed to stop", e);
                 }
+
+                databaseReporter.stop();
             });
 
 
@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.messagelog.archiver;
+
+import ee.ria.xroad.common.messagelog.MessageRecord;
+import ee.ria.xroad.common.messagelog.archive.LogArchiveWriter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the message records of one archive group on a separate thread, so
+ * that reading the records from the database overlaps with zipping them into
+ * the archive (and with the encryption, which runs in the gpg process). The
+ * records are handed over through a bounded queue, which limits the number of
+ * records held in memory.
+ */
+@Slf4j
+class PipelinedLogArchiveWriter implements AutoCloseable {
+
+    private static final Object END_OF_RECORDS = new Object();
+
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final BlockingQueue<Object> queue;
+    private final Future<Void> writer;
+
+    /**
+     * Starts writing the queued records with the given archive writer. The
+     * archive writer is closed by the writer thread when all the records have
+     * been written or writing fails.
+     * @param executor executor running the writer thread
+     * @param capacity maximum number of records waiting to be written
+     * @param archiveWriter the archive writer
+     * @param onRotate called on the writer thread after an archive file has been created
+     */
+    PipelinedLogArchiveWriter(ExecutorService executor, int capacity, LogArchiveWriter archiveWriter,
+            Runnable onRotate) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = executor.submit(() -> {
+            try (LogArchiveWriter w = archiveWriter) {
+                for (Object next = queue.take(); next != END_OF_RECORDS; next = queue.take()) {
+                    if (w.write((MessageRecord) next)) {
+                        onRotate.run();
+                    }
+                }
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Queues the record for writing, waiting for space in the queue.
+     * @param record the message record
+     * @throws Exception if writing a previous record has failed
+     */
+    void write(MessageRecord record) throws Exception {
+        enqueue(record);
+    }
+
+    /**
+     * Waits until all the queued records have been written and the archive
+     * writer has been closed.
+     * @throws Exception if writing the records has failed
+     */
+    void finish() throws Exception {
+        enqueue(END_OF_RECORDS);
+        awaitWriter();
+    }
+
+    /**
+     * Stops the writer thread if the records were not written to the end.
+     */
+    @Override
+    public void close() {
+        if (!writer.isDone()) {
+            writer.cancel(true);
+        }
+    }
+
+    private void enqueue(Object item) throws Exception {
+        while (!queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            if (writer.isDone()) {
+                awaitWriter();
+
+                throw new IllegalStateException("Archive writer stopped before all records were written");
+            }
+        }
+    }
+
+    private void awaitWriter() throws Exception {
+        try {
+            writer.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.messagelog.archiver;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+import ee.ria.xroad.common.messagelog.archive.LogArchiveWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link PipelinedLogArchiveWriter}.
+ */
+public class PipelinedLogArchiveWriterTest {
+
+    private static final ClientId CLIENT = ClientId.create("EE", "BUSINESS", "consumer");
+
+    private ExecutorService executor;
+
+    /**
+     * Set up the writer thread pool.
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Stop the writer thread pool.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that the records are written in order through a queue smaller than the number of records,
+     * the rotations are reported and the archive writer is closed once.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void writesRecordsInOrder() throws Exception {
+        TestArchiveWriter archiveWriter = new TestArchiveWriter();
+        AtomicInteger rotations = new AtomicInteger();
+
+        try (PipelinedLogArchiveWriter writer =
+                new PipelinedLogArchiveWriter(executor, 2, archiveWriter, rotations::incrementAndGet)) {
+            for (long id = 0; id < 50; id++) {
+                writer.write(createRecord(id));
+            }
+
+            writer.finish();
+        }
+
+        assertEquals(LongStream.range(0, 50).boxed().collect(Collectors.toList()), archiveWriter.written);
+        assertEquals(5, rotations.get());
+        assertEquals(1, archiveWriter.closeCount.get());
+    }
+
+    /**
+     * Tests that a failure on the writer thread is thrown to the caller and the archive writer is closed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void writerFailureReachesCaller() throws Exception {
+        IOException failure = new IOException("Writing failed");
+        TestArchiveWriter archiveWriter = new TestArchiveWriter() {
+            @Override
+            public boolean write(MessageRecord logRecord) throws Exception {
+                if (logRecord.getId() == 5) {
+                    throw failure;
+                }
+
+                return super.write(logRecord);
+            }
+        };
+
+        try (PipelinedLogArchiveWriter writer = new PipelinedLogArchiveWriter(executor, 2, archiveWriter, () -> { })) {
+            for (long id = 0; id < 50; id++) {
+                writer.write(createRecord(id));
+            }
+
+            writer.finish();
+
+            fail("Expected the failure of the writer thread");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+
+        assertEquals(LongStream.range(0, 5).boxed().collect(Collectors.toList()), archiveWriter.written);
+        assertEquals(1, archiveWriter.closeCount.get());
+    }
+
+    /**
+     * Tests that closing an unfinished writer stops the writer thread and closes the archive writer.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void closeCancelsUnfinishedWriter() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        TestArchiveWriter archiveWriter = new TestArchiveWriter() {
+            @Override
+            public boolean write(MessageRecord logRecord) throws Exception {
+                writing.countDown();
+                // blocks until the writer thread is interrupted
+                new CountDownLatch(1).await();
+
+                return false;
+            }
+
+            @Override
+            public void close() {
+                super.close();
+                closed.countDown();
+            }
+        };
+
+        PipelinedLogArchiveWriter writer = new PipelinedLogArchiveWriter(executor, 2, archiveWriter, () -> { });
+        writer.write(createRecord(0));
+
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        writer.close();
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, archiveWriter.closeCount.get());
+    }
+
+    private static MessageRecord createRecord(long id) {
+        MessageRecord record = new MessageRecord("query-" + id, "message", "signature", false, CLIENT, null);
+        record.setId(id);
+
+        return record;
+    }
+
+    /**
+     * Records the written record ids instead of writing an archive, rotating after every 10 records.
+     */
+    private static class TestArchiveWriter extends LogArchiveWriter {
+        final List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger closeCount = new AtomicInteger();
+
+        TestArchiveWriter() throws IOException {
+            super(Paths.get("build"), null);
+        }
+
+        @Override
+        public boolean write(MessageRecord logRecord) throws Exception {
+            written.add(logRecord.getId());
+
+            return written.size() % 10 == 0;
+        }
+
+        @Override
+        public void close() {
+            closeCount.incrementAndGet();
+        }
+    }
+}
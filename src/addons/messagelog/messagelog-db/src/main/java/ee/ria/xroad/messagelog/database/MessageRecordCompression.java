@@ -0,0 +1,131 @@
+/**
+ * The MIT License
+ *
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.messagelog.database;
+
+import ee.ria.xroad.common.messagelog.MessageCompression;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Helper class for compressing a message record before it is (optionally) encrypted and saved.
+ *
+ * The message is deflated into the binary message column. The attachment is deflated in memory, since the size of
+ * the stored blob must be known in advance, so attachments larger than {@link #MAX_COMPRESSED_ATTACHMENT_SIZE} are
+ * stored as is. The {@link MessageCompression} of the record tells how it has been stored; records without it are
+ * stored uncompressed. Decompression is done lazily when the record is converted to an asic container.
+ */
+public final class MessageRecordCompression {
+
+    static final long MAX_COMPRESSED_ATTACHMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean compressionEnabled = MessageLogProperties.isMessageLogCompressionEnabled();
+    private final int level = MessageLogProperties.getMessageLogCompressionLevel();
+
+    private static volatile MessageRecordCompression instance;
+
+    private MessageRecordCompression() {
+    }
+
+    public static MessageRecordCompression getInstance() {
+        if (instance == null) {
+            synchronized (MessageRecordCompression.class) {
+                if (instance == null) {
+                    instance = new MessageRecordCompression();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean compressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Compresses a message record not yet persisted to database. Must be done before encryption.
+     * @param messageRecord message record to compress
+     * @return the compressed message record
+     * @throws IOException if reading the attachment stream fails
+     */
+    public MessageRecord compress(MessageRecord messageRecord) throws IOException {
+        if (messageRecord == null || messageRecord.getMessage() == null) {
+            return messageRecord;
+        }
+
+        MessageCompression compression = MessageCompression.DEFLATE;
+        final InputStream attachment = messageRecord.getAttachmentStream();
+        if (attachment != null) {
+            if (messageRecord.getAttachmentStreamSize() <= MAX_COMPRESSED_ATTACHMENT_SIZE) {
+                final byte[] compressed = deflate(attachment, messageRecord.getAttachmentStreamSize());
+                messageRecord.setAttachmentStream(new ByteArrayInputStream(compressed), compressed.length);
+            } else {
+                compression = MessageCompression.DEFLATE_MESSAGE;
+            }
+        }
+
+        final byte[] message = messageRecord.getMessage().getBytes(StandardCharsets.UTF_8);
+        messageRecord.setCipherMessage(deflate(new ByteArrayInputStream(message), message.length));
+        messageRecord.setCompression(compression);
+        return messageRecord;
+    }
+
+    /**
+     * Compresses at most size bytes of the input.
+     */
+    byte[] deflate(InputStream input, long size) throws IOException {
+        final Deflater deflater = new Deflater(level);
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (OutputStream out = new DeflaterOutputStream(bytes, deflater, BUFFER_SIZE)) {
+                IOUtils.copyLarge(input, out, 0, size, new byte[BUFFER_SIZE]);
+            }
+            return bytes.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reloads the compression configuration.
+     */
+    public static synchronized void reload() {
+        instance = new MessageRecordCompression();
+    }
+}
@@ -194,8 +194,11 @@ public final class MessageRecordEncryption {
 
         final Cipher messageCipher = createCipher(mode, messageRecord.getId(), keyId, messageKeys);
 
-        messageRecord.setCipherMessage(
-                messageCipher.doFinal(messageRecord.getMessage().getBytes(StandardCharsets.UTF_8)));
+        // a compressed message is already in binary form
+        final byte[] plaintext = messageRecord.getCompression() != null
+                ? messageRecord.getCipherMessage()
+                : messageRecord.getMessage().getBytes(StandardCharsets.UTF_8);
+        messageRecord.setCipherMessage(messageCipher.doFinal(plaintext));
 
         if (messageRecord.getAttachmentStream() != null) {
             final Cipher attachmentCipher = createCipher(mode, messageRecord.getId(), keyId, attachmentKeys);
@@ -51,13 +51,9 @@ import ee.ria.xroad.proxy.protocol.ProxyMessage;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.HttpContext;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -84,9 +80,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -112,8 +108,6 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
     private SoapMessageImpl requestMessage;
     private SoapMessageEncoder responseEncoder;
 
-    private HttpClientCreator wsdlHttpClientCreator = new HttpClientCreator();
-
     private static final SAXTransformerFactory TRANSFORMER_FACTORY = createSaxTransformerFactory();
 
     private static SAXTransformerFactory createSaxTransformerFactory() {
@@ -141,6 +135,11 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
         return true;
     }
 
+    @Override
+    public Collection<String> getServiceCodes() {
+        return Arrays.asList(LIST_METHODS, ALLOWED_METHODS, GET_WSDL);
+    }
+
     @Override
     @SneakyThrows
     public boolean canHandle(ServiceId requestServiceId,
@@ -264,8 +263,7 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
                             request.getService().getClientId()));
         }
 
-        log.info("Downloading WSDL from URL: {}", url);
-        try (InputStream in = modifyWsdl(getWsdl(url, serviceId))) {
+        try (InputStream in = new ByteArrayInputStream(getWsdl(url, serviceId))) {
             Map<String, String> additionalHeaders = new HashMap<>();
             additionalHeaders.put("Content-Transfer-Encoding", "binary");
             additionalHeaders.put("Content-ID", "<wsdl=" + UUID.randomUUID().toString() + "@x-road.eu>");
@@ -336,12 +334,12 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
     }
 
     /**
-     * reads a WSDL from input stream, modifies it and returns input stream to the result
+     * reads a WSDL from input stream, modifies it and returns the result
      *
      * @param wsdl
      * @return
      */
-    private InputStream modifyWsdl(InputStream wsdl) {
+    private byte[] modifyWsdl(InputStream wsdl) {
         try {
             TransformerHandler serializer = TRANSFORMER_FACTORY.newTransformerHandler();
             StringWriter writer = new StringWriter();
@@ -362,8 +360,7 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
             String resultString = writer.toString();
             log.debug("result of WSDL cleanup: {}", resultString);
 
-            // offer InputStream into processed String
-            return new ByteArrayInputStream(resultString.getBytes(StandardCharsets.UTF_8));
+            return resultString.getBytes(StandardCharsets.UTF_8);
         } catch (IOException | SAXException | TransformerConfigurationException e) {
             throw new RuntimeException(e);
         }
@@ -373,25 +370,20 @@ class MetadataServiceHandlerImpl implements ServiceHandler {
         return OverwriteAttributeFilter.createOverwriteSoapAddressFilter(WSDL_ENDPOINT_ADDRESS);
     }
 
-    private InputStream getWsdl(String url, ServiceId serviceId)
-            throws HttpClientCreator.HttpClientCreatorException, URISyntaxException, IOException {
-
-        HttpClient client = wsdlHttpClientCreator.getHttpClient();
+    private byte[] getWsdl(String url, ServiceId serviceId) throws Exception {
+        return ServiceDescriptionCache.get(serviceId, url, response -> {
+            StatusLine statusLine = response.getStatusLine();
 
-        HttpContext httpContext = new BasicHttpContext();
+            if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
+                throw new RuntimeException("Received HTTP error: "
+                        + statusLine.getStatusCode() + " - " + statusLine.getReasonPhrase());
+            }
 
-        // ServerMessageProcessor uses the same method to pass the ServiceId to CustomSSLSocketFactory
-        httpContext.setAttribute(ServiceId.class.getName(), serviceId);
-
-        HttpResponse response = client.execute(new HttpGet(new URI(url)), httpContext);
-
-        StatusLine statusLine = response.getStatusLine();
-
-        if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
-            throw new RuntimeException("Received HTTP error: "
-                    + statusLine.getStatusCode() + " - " + statusLine.getReasonPhrase());
-        }
+            log.info("Downloaded WSDL from URL: {}", url);
 
-        return response.getEntity().getContent();
+            try (InputStream in = response.getEntity().getContent()) {
+                return new ServiceDescriptionCache.Description(modifyWsdl(in), MimeTypes.TEXT_XML);
+            }
+        }).getContent();
     }
 }
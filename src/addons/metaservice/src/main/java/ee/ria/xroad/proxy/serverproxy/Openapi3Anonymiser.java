@@ -26,7 +26,6 @@
 package ee.ria.xroad.proxy.serverproxy;
 
 import ee.ria.xroad.common.CodedException;
-import ee.ria.xroad.common.util.CachingStream;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -37,6 +36,7 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -53,13 +53,13 @@ public class Openapi3Anonymiser {
     private static final ObjectMapper YAMLMAPPER =
             new ObjectMapper(new YAMLFactory()).configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
 
-    public void anonymiseJson(InputStream input, CachingStream output) throws IOException {
+    public void anonymiseJson(InputStream input, OutputStream output) throws IOException {
         JsonNode tree = JSONMAPPER.readTree(input);
         handleAnonymising(tree);
         JSONMAPPER.writeValue(output, tree);
     }
 
-    public void anonymiseYaml(InputStream input, CachingStream output) throws IOException {
+    public void anonymiseYaml(InputStream input, OutputStream output) throws IOException {
         JsonNode tree = YAMLMAPPER.readTree(input);
         handleAnonymising(tree);
         YAMLMAPPER.writeValue(output, tree);
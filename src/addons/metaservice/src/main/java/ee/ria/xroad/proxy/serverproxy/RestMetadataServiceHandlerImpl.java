@@ -51,18 +51,15 @@ import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.message.BasicHeader;
-import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.HttpContext;
 
 import javax.servlet.http.HttpServletRequest;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.List;
@@ -95,8 +92,6 @@ public class RestMetadataServiceHandlerImpl implements RestServiceHandler {
         MAPPER = mapper;
     }
 
-    private HttpClientCreator httpClientCreator = new HttpClientCreator();
-
     private RestResponse restResponse;
     private CachingStream restResponseBody;
 
@@ -160,20 +155,20 @@ public class RestMetadataServiceHandlerImpl implements RestServiceHandler {
 
     private void handleListMethods(ProxyMessage requestProxyMessage) throws IOException {
         restResponse.getHeaders().add(new BasicHeader(MimeUtils.HEADER_CONTENT_TYPE, MimeTypes.JSON));
-        MAPPER.writeValue(restResponseBody,
-                ServerConf.getRestServices(requestProxyMessage.getRest().getServiceId().getClientId()));
+        // the mapper would close the response body before it is read
+        restResponseBody.write(MAPPER.writeValueAsBytes(
+                ServerConf.getRestServices(requestProxyMessage.getRest().getServiceId().getClientId())));
     }
 
     private void handleAllowedMethods(ProxyMessage requestProxyMessage) throws IOException {
         restResponse.getHeaders().add(new BasicHeader(MimeUtils.HEADER_CONTENT_TYPE, MimeTypes.JSON));
-        MAPPER.writeValue(restResponseBody,
+        restResponseBody.write(MAPPER.writeValueAsBytes(
                 ServerConf.getAllowedRestServices(requestProxyMessage.getRest().getServiceId().getClientId(),
                         requestProxyMessage.getRest().getClientId())
-        );
+        ));
     }
 
-    private void handleGetOpenApi(ProxyMessage requestProxyMessage) throws IOException,
-            HttpClientCreator.HttpClientCreatorException, URISyntaxException {
+    private void handleGetOpenApi(ProxyMessage requestProxyMessage) throws Exception {
         List<NameValuePair> pairs = URLEncodedUtils.parse(requestProxyMessage.getRest().getQuery(),
                 Charset.forName("UTF-8"));
         String targetServiceCode = null;
@@ -205,47 +200,43 @@ public class RestMetadataServiceHandlerImpl implements RestServiceHandler {
 
         String serviceDescriptionURL = ServerConf.getServiceDescriptionURL(targetServiceId);
 
-        HttpClient client = httpClientCreator.getHttpClient();
+        ServiceDescriptionCache.Description description = ServiceDescriptionCache.get(targetServiceId,
+                serviceDescriptionURL, response -> readOpenApi(response, new URI(serviceDescriptionURL)));
 
-        HttpContext httpContext = new BasicHttpContext();
-
-        // ServerMessageProcessor uses the same method to pass the ServiceId to CustomSSLSocketFactory
-        httpContext.setAttribute(ServiceId.class.getName(), targetServiceId);
+        restResponseBody.write(description.getContent());
+        restResponse.getHeaders().add(new BasicHeader(MimeUtils.HEADER_CONTENT_TYPE, description.getContentType()));
+    }
 
-        URI uri = new URI(serviceDescriptionURL);
-        HttpResponse response = client.execute(new HttpGet(uri), httpContext);
+    private ServiceDescriptionCache.Description readOpenApi(HttpResponse response, URI uri) throws IOException {
         StatusLine statusLine = response.getStatusLine();
 
         if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
             throw new CodedException(X_INTERNAL_ERROR,
                     String.format("Failed reading service description from %s. Status: %s Reason: %s",
-                            serviceDescriptionURL, statusLine.getStatusCode(), statusLine.getReasonPhrase()));
+                            uri, statusLine.getStatusCode(), statusLine.getReasonPhrase()));
         }
 
+        ByteArrayOutputStream anonymised = new ByteArrayOutputStream();
+
         InputStream responseContent = response.getEntity().getContent();
 
         try {
             OpenapiDescriptionFiletype filetype = getFileType(response, uri);
             Openapi3Anonymiser anonymiser = new Openapi3Anonymiser();
             if (OpenapiDescriptionFiletype.JSON.equals(filetype)) {
-                anonymiser.anonymiseJson(responseContent, restResponseBody);
+                anonymiser.anonymiseJson(responseContent, anonymised);
             } else {
-                anonymiser.anonymiseYaml(responseContent, restResponseBody);
+                anonymiser.anonymiseYaml(responseContent, anonymised);
             }
         } catch (IOException e) {
             throw new CodedException(X_INTERNAL_ERROR,
-                    String.format("Failed overwriting origin URL for the openapi servers for %s",
-                            serviceDescriptionURL));
-        }
-
-        if (response.containsHeader(MimeUtils.HEADER_CONTENT_TYPE)) {
-            restResponse.getHeaders().add(new BasicHeader(MimeUtils.HEADER_CONTENT_TYPE,
-                    response.getFirstHeader(MimeUtils.HEADER_CONTENT_TYPE).getValue()));
-        } else {
-            restResponse.getHeaders().add(new BasicHeader(MimeUtils.HEADER_CONTENT_TYPE,
-                    DEFAULT_GETOPENAPI_CONTENT_TYPE));
+                    String.format("Failed overwriting origin URL for the openapi servers for %s", uri));
         }
 
+        return new ServiceDescriptionCache.Description(anonymised.toByteArray(),
+                response.containsHeader(MimeUtils.HEADER_CONTENT_TYPE)
+                        ? response.getFirstHeader(MimeUtils.HEADER_CONTENT_TYPE).getValue()
+                        : DEFAULT_GETOPENAPI_CONTENT_TYPE);
     }
 
     private OpenapiDescriptionFiletype getFileType(HttpResponse response, URI uri) {
@@ -0,0 +1,198 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the service descriptions (WSDL and OpenAPI documents) returned by the metaservices. A description is
+ * downloaded from the service and transformed once, and then served from memory for the
+ * {@link SystemProperties#getServiceDescriptionCachePeriod() cache period}. After that it is revalidated with a
+ * conditional request using the ETag and Last-Modified headers the service sent, and downloaded and transformed
+ * again only if the service has changed it. All the downloads share one HTTP client and its connection pool.
+ */
+@Slf4j
+final class ServiceDescriptionCache {
+
+    private static final HttpClientCreator HTTP_CLIENT_CREATOR = new HttpClientCreator();
+
+    private static final Cache<Key, Description> DESCRIPTIONS = CacheBuilder.newBuilder()
+            .maximumSize(SystemProperties.getServiceDescriptionCacheSize())
+            .build();
+
+    private ServiceDescriptionCache() {
+    }
+
+    /**
+     * Reads a service description from the response of the service.
+     */
+    @FunctionalInterface
+    interface Loader {
+
+        /**
+         * @param response the response of the service, its entity is consumed by the cache
+         * @return the transformed service description
+         * @throws Exception if the response is not a valid service description
+         */
+        Description load(HttpResponse response) throws Exception;
+    }
+
+    /**
+     * Returns the description of the service, downloading it from the given URL if it is not cached or if it has
+     * changed since it was cached.
+     * @param serviceId the service whose description is returned
+     * @param url the URL of the service description
+     * @param loader reads the description from the response of the service
+     * @return the service description
+     * @throws Exception if downloading or reading the description fails
+     */
+    static Description get(ServiceId serviceId, String url, Loader loader) throws Exception {
+        Key key = new Key(serviceId, url);
+        Description cached = DESCRIPTIONS.getIfPresent(key);
+        long now = System.nanoTime();
+
+        if (cached != null && now - cached.fetchedAt
+                < TimeUnit.SECONDS.toNanos(SystemProperties.getServiceDescriptionCachePeriod())) {
+            return cached;
+        }
+
+        HttpGet request = new HttpGet(new URI(url));
+
+        if (cached != null && cached.etag != null) {
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+        }
+
+        if (cached != null && cached.lastModified != null) {
+            request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+        }
+
+        HttpContext httpContext = new BasicHttpContext();
+
+        // ServerMessageProcessor uses the same method to pass the ServiceId to CustomSSLSocketFactory
+        httpContext.setAttribute(ServiceId.class.getName(), serviceId);
+
+        HttpResponse response = getHttpClient().execute(request, httpContext);
+
+        try {
+            Description description;
+
+            if (cached != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                log.debug("Service description of {} at {} has not been modified", serviceId, url);
+
+                description = cached.fetched(now, cached.etag, cached.lastModified);
+            } else {
+                description = loader.load(response).fetched(now, getHeader(response, HttpHeaders.ETAG),
+                        getHeader(response, HttpHeaders.LAST_MODIFIED));
+            }
+
+            DESCRIPTIONS.put(key, description);
+
+            return description;
+        } finally {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    /**
+     * Removes all the cached service descriptions and closes the idle connections to the services.
+     * @throws HttpClientCreator.HttpClientCreatorException if creating the HTTP client fails
+     */
+    static synchronized void clear() throws HttpClientCreator.HttpClientCreatorException {
+        DESCRIPTIONS.invalidateAll();
+        HTTP_CLIENT_CREATOR.getConnectionManager().closeIdleConnections(0, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized HttpClient getHttpClient() throws HttpClientCreator.HttpClientCreatorException {
+        return HTTP_CLIENT_CREATOR.getHttpClient();
+    }
+
+    private static String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+
+        return header != null ? header.getValue() : null;
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+        private final ServiceId serviceId;
+        private final String url;
+    }
+
+    /**
+     * A transformed service description.
+     */
+    static final class Description {
+        @Getter
+        private final byte[] content;
+        @Getter
+        private final String contentType;
+
+        private final long fetchedAt;
+        private final String etag;
+        private final String lastModified;
+
+        /**
+         * @param content the transformed description
+         * @param contentType the content type of the description
+         */
+        Description(byte[] content, String contentType) {
+            this(content, contentType, 0, null, null);
+        }
+
+        private Description(byte[] content, String contentType, long fetchedAt, String etag, String lastModified) {
+            this.content = content;
+            this.contentType = contentType;
+            this.fetchedAt = fetchedAt;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        private Description fetched(long time, String newEtag, String newLastModified) {
+            return new Description(content, contentType, time, newEtag, newLastModified);
+        }
+    }
+}
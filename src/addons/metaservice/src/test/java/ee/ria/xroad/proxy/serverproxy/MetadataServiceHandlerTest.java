@@ -180,11 +180,12 @@ public class MetadataServiceHandlerTest {
      * Init data for tests
      */
     @Before
-    public void init() throws IOException {
+    public void init() throws Exception {
 
         GlobalConf.reload(new TestSuiteGlobalConf());
         KeyConf.reload(new TestSuiteKeyConf());
         ServerConf.reload(new TestSuiteServerConf());
+        ServiceDescriptionCache.clear();
 
         httpClientMock = mock(HttpClient.class);
         mockRequest = mock(HttpServletRequest.class);
@@ -26,6 +26,7 @@
 package ee.ria.xroad.proxy.serverproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
@@ -51,6 +52,7 @@ import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
@@ -70,11 +72,14 @@ import java.nio.charset.StandardCharsets;
 import java.util.stream.Collectors;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static ee.ria.xroad.common.metadata.MetadataRequests.ALLOWED_METHODS;
 import static ee.ria.xroad.common.metadata.MetadataRequests.GET_OPENAPI;
 import static ee.ria.xroad.common.metadata.MetadataRequests.LIST_METHODS;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -131,7 +136,7 @@ public class RestMetadataServiceHandlerTest {
      * Init data for tests
      */
     @Before
-    public void init() {
+    public void init() throws Exception {
 
         GlobalConf.reload(new TestSuiteGlobalConf());
         KeyConf.reload(new TestSuiteKeyConf());
@@ -152,6 +157,8 @@ public class RestMetadataServiceHandlerTest {
             }
         });
 
+        ServiceDescriptionCache.clear();
+
         httpClientMock = mock(HttpClient.class);
         mockRequest = mock(HttpServletRequest.class);
         mockResponse = mock(HttpServletResponse.class);
@@ -350,6 +357,58 @@ public class RestMetadataServiceHandlerTest {
         assertTrue(json.contains("https://{username}.petstore.swagger.io:{port}/{basePath}"));
     }
 
+    @Test
+    public void shouldServeCachedOpenApi() throws Exception {
+        byte[] first = getOpenApi();
+        byte[] second = getOpenApi();
+
+        assertArrayEquals(first, second);
+        mockServer.verify(1, getRequestedFor(urlPathEqualTo("/petstore.json")));
+    }
+
+    @Test
+    public void shouldRevalidateCachedOpenApi() throws Exception {
+        mockServer.stubFor(WireMock.get(urlPathEqualTo("/petstore.json"))
+                .willReturn(aResponse().withBodyFile("petstore.json").withHeader("ETag", "\"v1\"")));
+
+        mockServer.stubFor(WireMock.get(urlPathEqualTo("/petstore.json"))
+                .withHeader("If-None-Match", containing("\"v1"))
+                .atPriority(1)
+                .willReturn(aResponse().withStatus(HttpStatus.SC_NOT_MODIFIED)));
+
+        System.setProperty(SystemProperties.SERVICE_DESCRIPTION_CACHE_PERIOD, "0");
+
+        try {
+            byte[] first = getOpenApi();
+            byte[] second = getOpenApi();
+
+            assertArrayEquals(first, second);
+            mockServer.verify(2, getRequestedFor(urlPathEqualTo("/petstore.json")));
+            mockServer.verify(1, getRequestedFor(urlPathEqualTo("/petstore.json"))
+                    .withHeader("If-None-Match", containing("\"v1")));
+        } finally {
+            System.clearProperty(SystemProperties.SERVICE_DESCRIPTION_CACHE_PERIOD);
+        }
+    }
+
+    private byte[] getOpenApi() throws Exception {
+        RestMetadataServiceHandlerImpl handlerToTest = new RestMetadataServiceHandlerImpl();
+        ServiceId serviceId = ServiceId.create(SECONDARY_CLIENT, GET_OPENAPI);
+
+        RestRequest mockRestRequest = mock(RestRequest.class);
+        when(mockRestRequest.getQuery()).thenReturn("serviceCode=json");
+        when(mockRestRequest.getServiceId()).thenReturn(serviceId);
+        when(mockRestRequest.getVerb()).thenReturn(RestRequest.Verb.GET);
+        when(mockRestRequest.getClientId()).thenReturn(SECONDARY_CLIENT);
+        when(mockRestRequest.getHash()).thenReturn(REQUEST_HASH);
+        when(mockProxyMessage.getRest()).thenReturn(mockRestRequest);
+
+        handlerToTest.startHandling(mockRequest, mockProxyMessage, mock(ProxyMessageDecoder.class),
+                mock(ProxyMessageEncoder.class), httpClientMock, httpClientMock, mock(OpMonitoringData.class));
+
+        return IOUtils.toByteArray(handlerToTest.getRestResponseBody().getCachedContents());
+    }
+
     @Test(expected = CodedException.class)
     public void shouldDetectUnsupportedOpenapiVersion() throws Exception {
         RestMetadataServiceHandlerImpl handlerToTest = new RestMetadataServiceHandlerImpl();
@@ -31,24 +31,30 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonHttpClient;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
-import ee.ria.xroad.common.util.JsonUtils;
 import ee.ria.xroad.common.util.TimeUtils;
 
 import akka.actor.ActorRef;
 import akka.actor.Cancellable;
 import akka.actor.Props;
-import com.google.gson.Gson;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.jmx.JmxReporter;
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.net.NetworkInterface;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static java.net.NetworkInterface.getNetworkInterfaces;
@@ -58,6 +64,12 @@ import static java.util.Collections.list;
  * Operational monitoring buffer. This buffer is used for gathering
  * operational data and for periodically sending the data to the operational
  * monitoring daemon (using OpMonitoringDaemonSender).
+ *
+ * The records are kept in a bounded lock-free ring buffer that the proxy threads write to directly (see
+ * {@link OpMonitoring#setDirectStore}); when the buffer is full, the oldest records are dropped. Up to
+ * {@link OpMonitoringSystemProperties#getOpMonitorBufferMaxMessagesInFlight()} messages are sent concurrently,
+ * each by its own sender, and no new messages are prepared while all senders are busy. The number of dropped
+ * records, the buffer occupancy and the message sending times are reported over JMX.
  */
 @Slf4j
 public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
@@ -66,10 +78,12 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private static final String NO_ADDRESS_FOUND = "No suitable IP address is bound to the network interface ";
     private static final String NO_INTERFACE_FOUND = "No non-loopback network interface found";
 
-    private static final long MAX_BUFFER_SIZE = OpMonitoringSystemProperties.getOpMonitorBufferSize();
+    private static final int MAX_BUFFER_SIZE = OpMonitoringSystemProperties.getOpMonitorBufferSize();
 
     private static final int MAX_RECORDS_IN_MESSAGE =
             OpMonitoringSystemProperties.getOpMonitorBufferMaxRecordsInMessage();
+    private static final int MAX_MESSAGES_IN_FLIGHT =
+            Math.max(1, OpMonitoringSystemProperties.getOpMonitorBufferMaxMessagesInFlight());
     private static final long SENDING_INTERVAL_SECONDS =
             OpMonitoringSystemProperties.getOpMonitorBufferSendingIntervalSeconds();
 
@@ -79,33 +93,36 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private static final int CLIENT_SOCKET_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds());
 
-    private static final Gson GSON = JsonUtils.getSerializer();
-
     private Cancellable tick;
 
-    final Map<Long, OpMonitoringData> buffer =
-            new LinkedHashMap<Long, OpMonitoringData>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    boolean overflow = size() > MAX_BUFFER_SIZE;
+    final RingBuffer<OpMonitoringData> buffer;
 
-                    if (overflow) {
-                        log.warn("Operational monitoring buffer overflow, removing eldest record: {}", eldest.getKey());
-                    }
+    final MetricRegistry metrics = new MetricRegistry();
 
-                    return overflow;
-                }
-            };
+    private final Counter droppedRecords = metrics.counter(metricName("droppedRecords"));
+    private final Counter failedMessages = metrics.counter(metricName("failedMessages"));
+    private final Timer messageSendingTime = metrics.timer(metricName("messageSendingTime"));
+
+    private final JmxReporter reporter = JmxReporter.forRegistry(metrics).inDomain("xroad.proxy").build();
 
-    private long bufferIndex = 0;
+    private long reportedDroppedRecords = 0;
 
-    private final Set<Long> processedBufferIndices = new HashSet<>();
+    private final Deque<ActorRef> idleSenders = new ArrayDeque<>();
+
+    private final Map<ActorRef, MessageInFlight> messagesInFlight = new HashMap<>();
+
+    // Messages whose sending failed, sent again before any new messages
+    private final Deque<StoreOpMonitoringDataRequest> failedRequests = new ArrayDeque<>();
 
     private final CloseableHttpClient httpClient;
 
-    private final ActorRef sender;
+    private static volatile String ipAddress;
 
-    private static String ipAddress;
+    @Value
+    private static class MessageInFlight {
+        StoreOpMonitoringDataRequest request;
+        long startTime;
+    }
 
     /**
      * Constructor.
@@ -115,22 +132,31 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         if (ignoreOpMonitoringData()) {
             log.info("Operational monitoring buffer is switched off, no operational monitoring data is stored");
 
+            buffer = null;
             httpClient = null;
-            sender = null;
         } else {
+            buffer = new RingBuffer<>(MAX_BUFFER_SIZE);
+            metrics.register(metricName("bufferedRecords"), (Gauge<Integer>) buffer::size);
+
             httpClient = createHttpClient();
-            sender = createSender();
+            idleSenders.addAll(createSenders());
         }
     }
 
     CloseableHttpClient createHttpClient() throws Exception {
-        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), 1, 1,
-                CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
+        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), MAX_MESSAGES_IN_FLIGHT,
+                MAX_MESSAGES_IN_FLIGHT, CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
     }
 
-    ActorRef createSender() {
-        return getContext().system().actorOf(Props.create(OpMonitoringDaemonSender.class, httpClient),
-                OP_MONITORING_DAEMON_SENDER);
+    List<ActorRef> createSenders() {
+        List<ActorRef> senders = new ArrayList<>();
+
+        for (int i = 0; i < MAX_MESSAGES_IN_FLIGHT; i++) {
+            senders.add(getContext().system().actorOf(Props.create(OpMonitoringDaemonSender.class, httpClient),
+                    OP_MONITORING_DAEMON_SENDER + i));
+        }
+
+        return senders;
     }
 
     @Override
@@ -139,66 +165,116 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
             return;
         }
 
+        add(data);
+
+        send();
+    }
+
+    /**
+     * Adds the data to the buffer, dropping the oldest records if the buffer is full. Can be called from any thread.
+     * @return true if the buffer was empty
+     */
+    boolean add(OpMonitoringData data) {
         data.setSecurityServerInternalIp(getIpAddress());
 
-        buffer.put(getNextBufferIndex(), data);
+        boolean wasEmpty = buffer.isEmpty();
 
-        send();
+        while (!buffer.offer(data)) {
+            if (buffer.poll() != null) {
+                droppedRecords.inc();
+            }
+        }
+
+        return wasEmpty;
     }
 
     @Override
     protected void send() throws Exception {
-        if (!canSend()) {
+        if (ignoreOpMonitoringData()) {
             return;
         }
 
-        String json = prepareMonitoringMessage();
+        reportDroppedRecords();
 
-        sender.tell(json, getSelf());
-    }
+        while (!idleSenders.isEmpty()) {
+            StoreOpMonitoringDataRequest request = failedRequests.isEmpty()
+                    ? prepareMonitoringMessage() : failedRequests.poll();
 
-    private boolean canSend() {
-        return !buffer.isEmpty() && processedBufferIndices.isEmpty();
-    }
+            if (request == null) {
+                break;
+            }
 
-    private String prepareMonitoringMessage() {
-        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
+            ActorRef sender = idleSenders.pop();
 
-        for (Map.Entry<Long, OpMonitoringData> entry : buffer.entrySet()) {
-            processedBufferIndices.add(entry.getKey());
-            request.addRecord(entry.getValue().getData());
+            messagesInFlight.put(sender, new MessageInFlight(request, System.nanoTime()));
+            sender.tell(request, getSelf());
+        }
+    }
 
-            if (request.getRecords().size() == MAX_RECORDS_IN_MESSAGE) {
-                break;
+    private StoreOpMonitoringDataRequest prepareMonitoringMessage() {
+        StoreOpMonitoringDataRequest request = null;
+        OpMonitoringData data;
+
+        while ((request == null || request.getRecords().size() < MAX_RECORDS_IN_MESSAGE)
+                && (data = buffer.poll()) != null) {
+            if (request == null) {
+                request = new StoreOpMonitoringDataRequest();
             }
+
+            request.addRecord(data.getData());
         }
 
         log.debug("Op monitoring buffer records count: {}", buffer.size());
 
-        return GSON.toJson(request);
+        return request;
     }
 
     @Override
     protected void sendingSuccess() throws Exception {
-        processedBufferIndices.forEach(buffer::remove);
-        processedBufferIndices.clear();
+        MessageInFlight message = completeMessage();
 
-        if (canSend()) {
-            send();
+        if (message != null) {
+            messageSendingTime.update(System.nanoTime() - message.getStartTime(), TimeUnit.NANOSECONDS);
         }
+
+        send();
     }
 
     @Override
     protected void sendingFailure() throws Exception {
-        processedBufferIndices.clear();
+        MessageInFlight message = completeMessage();
+
+        if (message != null) {
+            failedMessages.inc();
+            failedRequests.add(message.getRequest());
+        }
 
         // Do not worry, scheduled sending retries..
     }
 
-    long getNextBufferIndex() {
-        bufferIndex = bufferIndex == Long.MAX_VALUE ? 0 : bufferIndex + 1;
+    private MessageInFlight completeMessage() {
+        MessageInFlight message = messagesInFlight.remove(getSender());
 
-        return bufferIndex;
+        if (message != null) {
+            idleSenders.push(getSender());
+        }
+
+        return message;
+    }
+
+    private void reportDroppedRecords() {
+        long dropped = droppedRecords.getCount();
+
+        if (dropped > reportedDroppedRecords) {
+            log.warn("Operational monitoring buffer overflow, {} eldest records dropped",
+                    dropped - reportedDroppedRecords);
+
+            reportedDroppedRecords = dropped;
+        }
+    }
+
+    private static String metricName(String name) {
+        return MetricRegistry.name(OpMonitoringBuffer.class.getSimpleName(), name);
     }
 
     private void scheduleSendMonitoringData() {
@@ -215,10 +291,26 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         }
 
         scheduleSendMonitoringData();
+
+        reporter.start();
+
+        ActorRef self = getSelf();
+
+        OpMonitoring.setDirectStore(data -> {
+            if (add(data)) {
+                // Wake up the buffer, otherwise the record waits for the next scheduled sending
+                self.tell(SEND_MONITORING_DATA, ActorRef.noSender());
+            }
+        });
     }
 
     @Override
     public void postStop() throws Exception {
+        if (!ignoreOpMonitoringData()) {
+            OpMonitoring.setDirectStore(null);
+            reporter.stop();
+        }
+
         if (tick != null) {
             tick.cancel();
         }
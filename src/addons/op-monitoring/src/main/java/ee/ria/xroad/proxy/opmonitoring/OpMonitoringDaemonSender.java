@@ -28,6 +28,7 @@ package ee.ria.xroad.proxy.opmonitoring;
 import ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonEndpoints;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.JsonUtils;
@@ -41,17 +42,28 @@ import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_ERROR;
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_OK;
 
 /**
  * Actor for sending operational data to the operational monitoring daemon. This actor is used by the
- * OpMonitoringBuffer class for periodically forwarding operational data gathered in the buffer.
+ * OpMonitoringBuffer class for periodically forwarding operational data gathered in the buffer. The buffer
+ * uses several senders to have more than one message in flight; each sender replies with itself as the
+ * sender so that the buffer knows which message was completed.
  */
 @Slf4j
 public class OpMonitoringDaemonSender extends UntypedAbstractActor {
@@ -64,6 +76,11 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
     private static final int SOCKET_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds());
 
+    private static final boolean COMPRESS_MESSAGES =
+            OpMonitoringSystemProperties.isOpMonitorBufferMessageCompressionEnabled();
+
+    private static final String GZIP_ENCODING = "gzip";
+
     private CloseableHttpClient httpClient;
 
     OpMonitoringDaemonSender(CloseableHttpClient httpClient) {
@@ -72,13 +89,13 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
 
     @Override
     public void onReceive(Object message) throws Exception {
-        if (message instanceof String) {
-            String json = (String) message;
+        if (message instanceof StoreOpMonitoringDataRequest) {
+            StoreOpMonitoringDataRequest request = (StoreOpMonitoringDataRequest) message;
 
-            log.trace("onReceive: {}", json);
+            log.trace("onReceive: {} records", request.getRecords().size());
 
             try {
-                send(json);
+                send(request);
                 success();
             } catch (Exception e) {
                 log.error("Sending operational monitoring data failed", e);
@@ -91,19 +108,19 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
     }
 
     private void success() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_SUCCESS, ActorRef.noSender());
+        getSender().tell(AbstractOpMonitoringBuffer.SENDING_SUCCESS, getSelf());
     }
 
     private void failure() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, ActorRef.noSender());
+        getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, getSelf());
     }
 
-    private void send(String json) throws Exception {
+    private void send(StoreOpMonitoringDataRequest request) throws Exception {
         try (HttpSender sender = new HttpSender(httpClient)) {
             sender.setConnectionTimeout(CONNECTION_TIMEOUT_MILLISECONDS);
             sender.setSocketTimeout(SOCKET_TIMEOUT_MILLISECONDS);
 
-            sender.doPost(getAddress(), json, MimeTypes.JSON);
+            sender.doPost(getAddress(), new StoreRequestEntity(request, COMPRESS_MESSAGES));
 
             String responseJson = IOUtils.toString(sender.getResponseContent(), MimeUtils.UTF8);
             StoreOpMonitoringDataResponse response;
@@ -134,4 +151,56 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
                 OpMonitoringSystemProperties.getOpMonitorHost(), OpMonitoringSystemProperties.getOpMonitorPort(),
                 OpMonitoringDaemonEndpoints.STORE_DATA_PATH, null, null);
     }
+
+    /**
+     * Entity that serializes the request to JSON (optionally gzip compressed) directly into the request body.
+     */
+    private static final class StoreRequestEntity extends AbstractHttpEntity {
+
+        private final StoreOpMonitoringDataRequest request;
+
+        StoreRequestEntity(StoreOpMonitoringDataRequest request, boolean compress) {
+            this.request = request;
+
+            setContentType(ContentType.create(MimeTypes.JSON, StandardCharsets.UTF_8).toString());
+            setChunked(true);
+
+            if (compress) {
+                setContentEncoding(GZIP_ENCODING);
+            }
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws UnsupportedOperationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            GZIPOutputStream gzip = contentEncoding != null ? new GZIPOutputStream(outstream) : null;
+            Writer writer = new OutputStreamWriter(gzip != null ? gzip : outstream, StandardCharsets.UTF_8);
+
+            GSON.toJson(request, writer);
+            writer.flush();
+
+            if (gzip != null) {
+                gzip.finish();
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
 }
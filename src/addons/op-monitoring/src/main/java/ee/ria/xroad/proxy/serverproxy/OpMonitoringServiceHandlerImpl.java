@@ -45,6 +45,8 @@ import javax.servlet.http.HttpServletRequest;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collection;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
@@ -84,6 +86,11 @@ public class OpMonitoringServiceHandlerImpl implements ServiceHandler {
         return true;
     }
 
+    @Override
+    public Collection<String> getServiceCodes() {
+        return Arrays.asList(GET_SECURITY_SERVER_HEALTH_DATA, GET_SECURITY_SERVER_OPERATIONAL_DATA);
+    }
+
     @Override
     public boolean canHandle(ServiceId requestServiceId,
             ProxyMessage proxyRequestMessage) {
@@ -34,7 +34,11 @@ import akka.testkit.TestActorRef;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * Tests operational monitoring buffer.
@@ -53,13 +57,8 @@ public class OpMonitoringBufferTest {
         }
 
         @Override
-        ActorRef createSender() {
-            return null;
-        }
-
-        @Override
-        protected void store(OpMonitoringData data) throws Exception {
-            buffer.put(getNextBufferIndex(), data);
+        List<ActorRef> createSenders() {
+            return Collections.emptyList();
         }
     }
 
@@ -74,15 +73,17 @@ public class OpMonitoringBufferTest {
         TestOpMonitoringBuffer opMonitoringBuffer =
                 testActorRef.underlyingActor();
 
-        OpMonitoringData opMonitoringData = new OpMonitoringData(
-                OpMonitoringData.SecurityServerType.CLIENT, 100);
+        OpMonitoringData first = new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 100);
+        OpMonitoringData second = new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 200);
+        OpMonitoringData third = new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 300);
 
-        opMonitoringBuffer.store(opMonitoringData);
-        opMonitoringBuffer.store(opMonitoringData);
-        opMonitoringBuffer.store(opMonitoringData);
+        opMonitoringBuffer.store(first);
+        opMonitoringBuffer.store(second);
+        OpMonitoring.store(third);
 
         assertEquals(2, opMonitoringBuffer.buffer.size());
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(2L));
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(3L));
+        assertEquals(1, opMonitoringBuffer.metrics.counter("OpMonitoringBuffer.droppedRecords").getCount());
+        assertSame(second, opMonitoringBuffer.buffer.poll());
+        assertSame(third, opMonitoringBuffer.buffer.poll());
     }
 }
@@ -0,0 +1,120 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the lock-free ring buffer.
+ */
+public class RingBufferTest {
+
+    @Test
+    public void keepsInsertionOrderAndRejectsWhenFull() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+
+        for (int round = 0; round < 5; round++) {
+            assertTrue(buffer.offer(1));
+            assertTrue(buffer.offer(2));
+            assertTrue(buffer.offer(3));
+            assertFalse(buffer.offer(4));
+            assertEquals(3, buffer.size());
+
+            assertEquals(Integer.valueOf(1), buffer.poll());
+            assertEquals(Integer.valueOf(2), buffer.poll());
+            assertEquals(Integer.valueOf(3), buffer.poll());
+            assertNull(buffer.poll());
+        }
+    }
+
+    @Test
+    public void concurrentProducersAndConsumers() throws Exception {
+        final int producers = 4;
+        final int itemsPerProducer = 100_000;
+
+        RingBuffer<Long> buffer = new RingBuffer<>(64);
+        AtomicLong consumedSum = new AtomicLong();
+        AtomicLong consumedCount = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers * 2);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int p = 0; p < producers; p++) {
+                futures.add(executor.submit(() -> {
+                    for (long i = 1; i <= itemsPerProducer; i++) {
+                        while (!buffer.offer(i)) {
+                            Thread.yield();
+                        }
+                    }
+                }));
+            }
+
+            for (int c = 0; c < producers; c++) {
+                futures.add(executor.submit(() -> {
+                    while (consumedCount.get() < (long) producers * itemsPerProducer) {
+                        Long item = buffer.poll();
+
+                        if (item != null) {
+                            consumedSum.addAndGet(item);
+                            consumedCount.incrementAndGet();
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long expectedSum = (long) producers * itemsPerProducer * (itemsPerProducer + 1) / 2;
+
+        assertEquals((long) producers * itemsPerProducer, consumedCount.get());
+        assertEquals(expectedSum, consumedSum.get());
+        assertTrue(buffer.isEmpty());
+    }
+}
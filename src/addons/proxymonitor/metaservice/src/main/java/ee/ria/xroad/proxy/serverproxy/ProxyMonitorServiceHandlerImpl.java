@@ -61,6 +61,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -99,6 +100,11 @@ public class ProxyMonitorServiceHandlerImpl implements ServiceHandler {
         return true;
     }
 
+    @Override
+    public Collection<String> getServiceCodes() {
+        return Collections.singleton(SERVICE_CODE);
+    }
+
     @Override
     public boolean canHandle(ServiceId requestServiceId, ProxyMessage requestProxyMessage) {
         final ServiceId serviceId = ServiceId.create(ServerConf.getIdentifier().getOwner(), SERVICE_CODE);
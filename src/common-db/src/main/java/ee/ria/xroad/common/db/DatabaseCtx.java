@@ -66,22 +66,28 @@ public class DatabaseCtx {
     public <T> T doInTransaction(TransactionCallback<T> callback)
             throws Exception {
         Session session = null;
+        boolean newTransaction = false;
+        long startTime = 0;
         try {
-            boolean newTransaction = false;
-
             session = getSession();
             if (session.getTransaction().getStatus() == TransactionStatus.NOT_ACTIVE) {
                 session.beginTransaction();
                 newTransaction = true;
+                startTime = System.nanoTime();
             }
 
             T result = callback.apply(session);
 
             if (newTransaction) {
                 commitTransaction();
+                transactionCompleted(startTime, false);
             }
             return result;
         } catch (Exception e) {
+            if (newTransaction) {
+                transactionCompleted(startTime, true);
+            }
+
             if (e instanceof HibernateException) {
                 log.error("Error while executing in transaction", e);
             }
@@ -158,6 +164,11 @@ public class DatabaseCtx {
         HibernateUtil.closeSessionFactory(sessionFactoryName);
     }
 
+    private void transactionCompleted(long startTime, boolean failed) {
+        HibernateUtil.getDatabaseMetrics(sessionFactoryName, interceptor)
+                .transactionCompleted(System.nanoTime() - startTime, failed);
+    }
+
     private Exception customizeException(Exception e) {
         if (e instanceof JDBCException) {
             return new CodedException(X_DATABASE_ERROR,
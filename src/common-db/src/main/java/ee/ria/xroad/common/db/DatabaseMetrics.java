@@ -0,0 +1,123 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.db;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of a database (session factory): duration of the transactions, the number of slow and failed
+ * transactions and, when the connections are pooled by HikariCP, the pool metrics (connection wait time,
+ * active, idle and pending connections). The metrics are named after the session factory and registered
+ * in the registry set with {@link #setMetricRegistry(MetricRegistry)}, which should be done before the
+ * database is first used.
+ */
+@Slf4j
+public final class DatabaseMetrics {
+
+    private static volatile MetricRegistry metricRegistry = new MetricRegistry();
+
+    private final String name;
+    private final Timer transactions;
+    private final Counter slowTransactions;
+    private final Counter failedTransactions;
+    private final long slowThresholdNanos;
+
+    DatabaseMetrics(String name, MetricRegistry registry) {
+        this.name = name;
+        this.transactions = registry.timer(MetricRegistry.name(name, "transactions"));
+        this.slowTransactions = registry.counter(MetricRegistry.name(name, "transactions", "slow"));
+        this.failedTransactions = registry.counter(MetricRegistry.name(name, "transactions", "failed"));
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(SystemProperties.getDatabaseSlowTransactionThreshold());
+    }
+
+    /**
+     * @return the registry the database metrics are registered in
+     */
+    public static MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    /**
+     * Sets the registry the metrics of databases used from now on are registered in.
+     * @param registry the metric registry
+     */
+    public static void setMetricRegistry(MetricRegistry registry) {
+        metricRegistry = registry;
+    }
+
+    static DatabaseMetrics create(String name, SessionFactory sessionFactory) {
+        MetricRegistry registry = metricRegistry;
+
+        registerPoolMetrics(name, sessionFactory, registry);
+
+        return new DatabaseMetrics(name, registry);
+    }
+
+    /**
+     * Records a completed transaction.
+     * @param durationNanos duration of the transaction in nanoseconds
+     * @param failed true if the transaction was rolled back
+     */
+    void transactionCompleted(long durationNanos, boolean failed) {
+        transactions.update(durationNanos, TimeUnit.NANOSECONDS);
+
+        if (failed) {
+            failedTransactions.inc();
+        }
+
+        if (slowThresholdNanos > 0 && durationNanos > slowThresholdNanos) {
+            slowTransactions.inc();
+
+            log.warn("Slow transaction in database '{}' took {} ms", name,
+                    TimeUnit.NANOSECONDS.toMillis(durationNanos));
+        }
+    }
+
+    private static void registerPoolMetrics(String name, SessionFactory sessionFactory, MetricRegistry registry) {
+        try {
+            ConnectionProvider connectionProvider = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                    .getServiceRegistry().getService(ConnectionProvider.class);
+
+            if (connectionProvider != null && connectionProvider.isUnwrappableAs(HikariDataSource.class)) {
+                // the pool registers its metrics (e.g. "<pool name>.pool.Wait") under the pool name
+                connectionProvider.unwrap(HikariDataSource.class).setMetricRegistry(registry);
+            }
+        } catch (Exception e) {
+            log.warn("Could not register connection pool metrics of database '{}'", name, e);
+        }
+    }
+}
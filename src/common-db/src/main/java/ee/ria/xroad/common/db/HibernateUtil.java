@@ -44,9 +44,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static ee.ria.xroad.common.ErrorCodes.X_DATABASE_ERROR;
 
@@ -56,15 +56,20 @@ import static ee.ria.xroad.common.ErrorCodes.X_DATABASE_ERROR;
 @Slf4j
 public final class HibernateUtil {
 
+    // Names the connection pool (and its metrics) after the session factory unless configured otherwise
+    private static final String HIKARI_POOL_NAME = "hibernate.hikari.poolName";
+
     @Data
     private static class SessionFactoryCtx {
         private final SessionFactory sessionFactory;
+        private final DatabaseMetrics metrics;
     }
 
     private HibernateUtil() {
     }
 
-    private static Map<String, SessionFactoryCtx> sessionFactoryCache = new HashMap<>();
+    // Read without locking, modified only while holding the class lock
+    private static Map<String, SessionFactoryCtx> sessionFactoryCache = new ConcurrentHashMap<>();
 
     /**
      * Returns the session factory for the given session factory name.
@@ -73,7 +78,7 @@ public final class HibernateUtil {
      * @param name the name of the session factory
      * @return the session factory
      */
-    public static synchronized SessionFactory getSessionFactory(String name) {
+    public static SessionFactory getSessionFactory(String name) {
         return getSessionFactory(name, null);
     }
 
@@ -85,20 +90,43 @@ public final class HibernateUtil {
      * @param interceptor the interceptor to use on sessions created with this factory
      * @return the session factory
      */
-    public static synchronized SessionFactory getSessionFactory(String name, Interceptor interceptor) {
-        if (sessionFactoryCache.containsKey(name)) {
-            return sessionFactoryCache.get(name).getSessionFactory();
-        } else {
-            try {
-                SessionFactoryCtx ctx = createSessionFactoryCtx(name, interceptor);
-                sessionFactoryCache.put(name, ctx);
+    public static SessionFactory getSessionFactory(String name, Interceptor interceptor) {
+        return getSessionFactoryCtx(name, interceptor).getSessionFactory();
+    }
 
-                return ctx.getSessionFactory();
-            } catch (Exception e) {
-                log.error("Failed to create session factory", e);
+    /**
+     * Returns the metrics of the given session factory, creating the session factory if necessary.
+     *
+     * @param name        the name of the session factory
+     * @param interceptor the interceptor to use on sessions created with this factory
+     * @return the database metrics
+     */
+    static DatabaseMetrics getDatabaseMetrics(String name, Interceptor interceptor) {
+        return getSessionFactoryCtx(name, interceptor).getMetrics();
+    }
 
-                throw new CodedException(X_DATABASE_ERROR, e);
+    private static SessionFactoryCtx getSessionFactoryCtx(String name, Interceptor interceptor) {
+        SessionFactoryCtx ctx = sessionFactoryCache.get(name);
+
+        if (ctx != null) {
+            return ctx;
+        }
+
+        synchronized (HibernateUtil.class) {
+            ctx = sessionFactoryCache.get(name);
+
+            if (ctx == null) {
+                try {
+                    ctx = createSessionFactoryCtx(name, interceptor);
+                    sessionFactoryCache.put(name, ctx);
+                } catch (Exception e) {
+                    log.error("Failed to create session factory", e);
+
+                    throw new CodedException(X_DATABASE_ERROR, e);
+                }
             }
+
+            return ctx;
         }
     }
 
@@ -160,9 +188,13 @@ public final class HibernateUtil {
         applyDatabasePropertyFile(configuration, name);
         applySystemProperties(configuration, name);
 
+        if (configuration.getProperty(HIKARI_POOL_NAME) == null) {
+            configuration.setProperty(HIKARI_POOL_NAME, name);
+        }
+
         SessionFactory sessionFactory = configuration.buildSessionFactory();
 
-        return new SessionFactoryCtx(sessionFactory);
+        return new SessionFactoryCtx(sessionFactory, DatabaseMetrics.create(name, sessionFactory));
     }
 
     private static void applySystemProperties(Configuration configuration, String name) {
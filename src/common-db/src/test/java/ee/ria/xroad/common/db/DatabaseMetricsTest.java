@@ -0,0 +1,90 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.db;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the database transaction metrics.
+ */
+public class DatabaseMetricsTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    /**
+     * Clears the slow transaction threshold.
+     */
+    @After
+    public void tearDown() {
+        System.clearProperty(SystemProperties.DATABASE_SLOW_TRANSACTION_THRESHOLD);
+    }
+
+    /**
+     * Every transaction is timed, and the slow and failed transactions are counted.
+     */
+    @Test
+    public void countsSlowAndFailedTransactions() {
+        System.setProperty(SystemProperties.DATABASE_SLOW_TRANSACTION_THRESHOLD, "100");
+
+        DatabaseMetrics metrics = new DatabaseMetrics("test", registry);
+
+        metrics.transactionCompleted(millis(10), false);
+        metrics.transactionCompleted(millis(200), false);
+        metrics.transactionCompleted(millis(20), true);
+        metrics.transactionCompleted(millis(300), true);
+
+        assertEquals(4, registry.timer("test.transactions").getCount());
+        assertEquals(millis(300), registry.timer("test.transactions").getSnapshot().getMax());
+        assertEquals(2, registry.counter("test.transactions.slow").getCount());
+        assertEquals(2, registry.counter("test.transactions.failed").getCount());
+    }
+
+    /**
+     * No transaction is counted as slow when the threshold is not set.
+     */
+    @Test
+    public void slowTransactionsNotCountedByDefault() {
+        DatabaseMetrics metrics = new DatabaseMetrics("test", registry);
+
+        metrics.transactionCompleted(millis(60000), false);
+
+        assertEquals(1, registry.timer("test.transactions").getCount());
+        assertEquals(0, registry.counter("test.transactions.slow").getCount());
+        assertEquals(0, registry.counter("test.transactions.failed").getCount());
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
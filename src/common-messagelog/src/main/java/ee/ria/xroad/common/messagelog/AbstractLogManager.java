@@ -28,6 +28,7 @@ package ee.ria.xroad.common.messagelog;
 import ee.ria.xroad.common.DiagnosticsStatus;
 import ee.ria.xroad.common.util.JobManager;
 
+import akka.actor.ActorRef;
 import akka.actor.UntypedAbstractActor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -35,6 +36,8 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Base class for log manager actors.
@@ -56,8 +59,16 @@ public abstract class AbstractLogManager extends UntypedAbstractActor {
         try {
             if (message instanceof LogMessage) {
                 LogMessage m = (LogMessage) message;
-                log(m);
-                getSender().tell(new Object(), getSelf());
+                ActorRef sender = getSender();
+                ActorRef self = getSelf();
+
+                logAsync(m).whenComplete((result, error) -> {
+                    if (error == null) {
+                        sender.tell(new Object(), self);
+                    } else {
+                        sender.tell(toException(error), self);
+                    }
+                });
             } else if (message instanceof FindByQueryId) {
                 FindByQueryId f = (FindByQueryId) message;
                 LogRecord result = findByQueryId(f.getQueryId(), f.getStartTime(), f.getEndTime());
@@ -85,9 +96,27 @@ public abstract class AbstractLogManager extends UntypedAbstractActor {
         }
     }
 
+    /**
+     * Logs the message without blocking the actor. The returned future completes when the message has been
+     * persisted, and the sender is answered only then. The default implementation calls {@link #log(LogMessage)}.
+     * @param message the message to log
+     * @return future completed when the message has been logged
+     * @throws Exception if logging fails before anything could be queued
+     */
+    protected CompletableFuture<?> logAsync(LogMessage message) throws Exception {
+        log(message);
+        return CompletableFuture.completedFuture(null);
+    }
+
     protected abstract void log(LogMessage message) throws Exception;
 
     protected abstract LogRecord findByQueryId(String queryId, Date startTime, Date endTime) throws Exception;
 
     protected abstract TimestampRecord timestamp(Long messageRecordId) throws Exception;
+
+    private static Exception toException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+    }
 }
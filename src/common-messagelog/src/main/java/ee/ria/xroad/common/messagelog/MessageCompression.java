@@ -0,0 +1,64 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Storage format marker of a compressed message record. Records without a marker are stored uncompressed.
+ * The compressed message is stored in binary form, encrypted if the record is encrypted.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum MessageCompression {
+    /**
+     * The message and the attachment (if any) are deflate (zlib) compressed.
+     */
+    DEFLATE(true),
+    /**
+     * The message is deflate (zlib) compressed, the attachment is stored as is.
+     */
+    DEFLATE_MESSAGE(false);
+
+    private final boolean attachmentCompressed;
+
+    byte[] decompressMessage(byte[] message) throws IOException {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(message))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    InputStream decompressAttachment(InputStream attachment) {
+        return attachmentCompressed ? new InflaterInputStream(attachment) : attachment;
+    }
+}
@@ -26,6 +26,7 @@
 package ee.ria.xroad.common.messagelog;
 
 import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.archive.EncryptionBackend;
 import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
 import ee.ria.xroad.common.util.CryptoUtils;
 
@@ -35,8 +36,11 @@ import com.google.common.collect.Lists;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
 
 /**
  * Contains constants for messagelog properties.
@@ -59,6 +63,11 @@ public final class MessageLogProperties {
 
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
     private static final int DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE = 10000;
+    private static final int DEFAULT_ARCHIVE_FETCH_SIZE = 10;
+    private static final int MAX_DEFAULT_ARCHIVE_WORKERS = 4;
+
+    private static final int DEFAULT_WRITE_BATCH_SIZE = 100;
+    private static final int DEFAULT_WRITE_MAX_LINGER = 0;
 
     private static final long DEFAULT_MAX_LOGGABLE_MESSAGE_BODY_SIZE = 10 * 1024 * 1024;
     private static final long MAX_LOGGABLE_MESSAGE_BODY_SIZE_LIMIT = 1024 * 1024 * 1024;
@@ -96,8 +105,28 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_TRANSACTION_BATCH = PREFIX + "archive-transaction-batch";
 
+    /**
+     * Property name of the number of archive groups that are archived in parallel.
+     */
+    public static final String ARCHIVE_WORKERS = PREFIX + "archive-workers";
+
+    /**
+     * Property name of the number of message records fetched from the database at a time when archiving.
+     */
+    public static final String ARCHIVE_FETCH_SIZE = PREFIX + "archive-fetch-size";
+
     public static final String CLEAN_INTERVAL = PREFIX + "clean-interval";
 
+    /**
+     * Property name of the maximum number of message records saved in one database transaction.
+     */
+    public static final String WRITE_BATCH_SIZE = PREFIX + "write-batch-size";
+
+    /**
+     * Property name of the maximum time (milliseconds) a message record waits for more records to be batched with.
+     */
+    public static final String WRITE_MAX_LINGER = PREFIX + "write-max-linger";
+
     private static final String CLEAN_TRANSACTION_BATCH = "clean-transaction-batch";
 
     public static final String HASH_ALGO_ID = PREFIX + "hash-algo-id";
@@ -160,6 +189,12 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_DEFAULT_ENCRYPTION_KEY = PREFIX + "archive-default-encryption-key";
 
+    /**
+     * archive encryption implementation, one of
+     * bouncycastle (in-process), gpg (external gpg process)
+     **/
+    public static final String ARCHIVE_ENCRYPTION_BACKEND = PREFIX + "archive-encryption-backend";
+
     public static final String MESSAGELOG_ENCRYPTION_ENABLED = PREFIX + "messagelog-encryption-enabled";
 
     public static final String MESSAGELOG_KEYSTORE = PREFIX + "messagelog-keystore";
@@ -169,6 +204,16 @@ public final class MessageLogProperties {
             .replace('.', '_');
     public static final String MESSAGELOG_KEY_ID = PREFIX + "messagelog-key-id";
 
+    /**
+     * Property name of the flag that enables compressing the message and attachment of new message records.
+     */
+    public static final String MESSAGELOG_COMPRESSION_ENABLED = PREFIX + "messagelog-compression-enabled";
+
+    /**
+     * Property name of the deflate compression level (1-9) of message records.
+     */
+    public static final String MESSAGELOG_COMPRESSION_LEVEL = PREFIX + "messagelog-compression-level";
+
     public static final int NUM_COMPONENTS = 4;
     public static final int FIRST_COMPONENT = 0;
     public static final int SECOND_COMPONENT = 1;
@@ -243,6 +288,39 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(ARCHIVE_TRANSACTION_BATCH), DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return number of archive groups (see {@link #getArchiveGrouping()}) that are archived in parallel, defaults to
+     * the number of available processors but at most 4. The database connection pool of the archiver should allow
+     * one connection per worker.
+     */
+    public static int getArchiveWorkers() {
+        return Math.max(1, getInt(System.getProperty(ARCHIVE_WORKERS),
+                Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_ARCHIVE_WORKERS)));
+    }
+
+    /**
+     * @return number of message records fetched from the database at a time when archiving, defaults to 10. Message
+     * records can be large, so the records are fetched in small chunks.
+     */
+    public static int getArchiveFetchSize() {
+        return Math.max(1, getInt(System.getProperty(ARCHIVE_FETCH_SIZE), DEFAULT_ARCHIVE_FETCH_SIZE));
+    }
+
+    /**
+     * @return maximum number of message records saved in one transaction, defaults to 100.
+     */
+    public static int getWriteBatchSize() {
+        return Math.max(1, getInt(System.getProperty(WRITE_BATCH_SIZE), DEFAULT_WRITE_BATCH_SIZE));
+    }
+
+    /**
+     * @return maximum time in milliseconds to wait for more message records before saving a batch, defaults to 0
+     * (records that are already queued are saved together, but saving is never delayed).
+     */
+    public static int getWriteMaxLinger() {
+        return Math.max(0, getInt(System.getProperty(WRITE_MAX_LINGER), DEFAULT_WRITE_MAX_LINGER));
+    }
+
     /**
      * @return the time interval as Cron expression for cleaning archived records from online database.
      */
@@ -367,6 +445,20 @@ public final class MessageLogProperties {
         return System.getProperty(ARCHIVE_DEFAULT_ENCRYPTION_KEY);
     }
 
+    /**
+     * @return archive encryption implementation, defaults to {@link EncryptionBackend#BOUNCYCASTLE}
+     * @throws IllegalArgumentException if the configured value is not one of the {@link EncryptionBackend} values
+     */
+    public static EncryptionBackend getArchiveEncryptionBackend() {
+        final String value = System.getProperty(ARCHIVE_ENCRYPTION_BACKEND, EncryptionBackend.BOUNCYCASTLE.name());
+        try {
+            return EncryptionBackend.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value '" + value + "' of " + ARCHIVE_ENCRYPTION_BACKEND
+                    + ", expected one of " + Arrays.toString(EncryptionBackend.values()), e);
+        }
+    }
+
     /** @return keystore path for messagelog encryption keys or null if one is not defined */
     public static Path getMessageLogKeyStore() {
         final String property = System.getProperty(MESSAGELOG_KEYSTORE);
@@ -381,6 +473,19 @@ public final class MessageLogProperties {
         return Boolean.getBoolean(MESSAGELOG_ENCRYPTION_ENABLED);
     }
 
+    public static boolean isMessageLogCompressionEnabled() {
+        return Boolean.getBoolean(MESSAGELOG_COMPRESSION_ENABLED);
+    }
+
+    /**
+     * @return deflate compression level of message records, defaults to 1 (fastest). Message log payloads are
+     * mostly XML or JSON, which compresses well already at the fastest level.
+     */
+    public static int getMessageLogCompressionLevel() {
+        final int level = getInt(System.getProperty(MESSAGELOG_COMPRESSION_LEVEL), Deflater.BEST_SPEED);
+        return Math.min(Deflater.BEST_COMPRESSION, Math.max(Deflater.BEST_SPEED, level));
+    }
+
     public static char[] getMessageLogKeyStorePassword() {
         final String property = System.getProperty(MESSAGELOG_KEYSTORE_PASSWORD,
                 System.getenv().get(MESSAGELOG_KEYSTORE_PASSWORD_ENV));
@@ -120,6 +120,14 @@ public class MessageRecord extends AbstractLogRecord {
     @Setter
     private String keyId;
 
+    @Getter
+    @Setter
+    private MessageCompression compression;
+
+    /**
+     * The message in binary form if it is encrypted or compressed (see {@link #keyId} and {@link #compression}).
+     */
+    @Getter
     private byte[] cipherMessage;
 
     @Setter
@@ -187,18 +195,23 @@ public class MessageRecord extends AbstractLogRecord {
                     timestampHashChain);
         }
 
-        final String plaintextMessage;
-        if (encrypted) {
-            plaintextMessage = new String(messageCipher.doFinal(cipherMessage), StandardCharsets.UTF_8);
-        } else {
-            plaintextMessage = message;
+        byte[] messageBytes = encrypted ? messageCipher.doFinal(cipherMessage) : cipherMessage;
+        if (compression != null) {
+            messageBytes = compression.decompressMessage(messageBytes);
         }
-
-        final InputStream plainAttachment;
-        if (encrypted && attachment != null) {
-            plainAttachment = new CipherInputStream(attachment.getBinaryStream(), attachmentCipher);
-        } else {
-            plainAttachment = (attachment != null) ? attachment.getBinaryStream() : null;
+        final String plaintextMessage = messageBytes != null
+                ? new String(messageBytes, StandardCharsets.UTF_8)
+                : message;
+
+        InputStream plainAttachment = null;
+        if (attachment != null) {
+            plainAttachment = attachment.getBinaryStream();
+            if (encrypted) {
+                plainAttachment = new CipherInputStream(plainAttachment, attachmentCipher);
+            }
+            if (compression != null) {
+                plainAttachment = compression.decompressAttachment(plainAttachment);
+            }
         }
 
         return new AsicContainer(plaintextMessage, signatureData, timestamp, plainAttachment, getTime());
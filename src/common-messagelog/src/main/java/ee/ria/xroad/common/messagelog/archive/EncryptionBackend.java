@@ -0,0 +1,75 @@
+/**
+ * The MIT License
+ *
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Implementations of archive file encryption.
+ */
+public enum EncryptionBackend {
+    /**
+     * Encrypts in-process using BouncyCastle OpenPGP.
+     */
+    BOUNCYCASTLE {
+        @Override
+        public OutputStream createOutputStream(Path gpgHome, Path output, Set<String> encryptionKeys)
+                throws IOException {
+            return new OpenPGPOutputStream(gpgHome, output, encryptionKeys);
+        }
+    },
+    /**
+     * Encrypts by piping the output to an external gpg process.
+     */
+    GPG {
+        @Override
+        public OutputStream createOutputStream(Path gpgHome, Path output, Set<String> encryptionKeys)
+                throws IOException {
+            return new GPGOutputStream(gpgHome, output, encryptionKeys);
+        }
+    };
+
+    /**
+     * Returns a stream that signs and encrypts the data written to it into the output file.
+     * @param gpgHome GnuPG home directory containing the signing and encryption keys
+     * @param output Path to the output file, overwritten if present.
+     * @param encryptionKeys Zero or more encryption (recipient) key identifiers, the default key is used if empty
+     */
+    public abstract OutputStream createOutputStream(Path gpgHome, Path output, Set<String> encryptionKeys)
+            throws IOException;
+
+    /**
+     * Returns a stream that signs and encrypts the data written to it into the output file using the given
+     * encryption configuration.
+     */
+    public OutputStream createOutputStream(EncryptionConfig config, Path output) throws IOException {
+        return createOutputStream(config.getGpgHomeDir(), output, config.getEncryptionKeys());
+    }
+}
@@ -211,8 +211,8 @@ class LogArchiveCache implements Closeable {
         deleteArchiveArtifacts(null);
         archiveTmpFile = Files.createTempFile(workingDir, "tmp-mlog-", ".tmp");
         if (encryptionConfig.isEnabled()) {
-            outputStream = new GPGOutputStream(encryptionConfig.getGpgHomeDir(), archiveTmpFile,
-                    encryptionConfig.getEncryptionKeys());
+            outputStream = MessageLogProperties.getArchiveEncryptionBackend()
+                    .createOutputStream(encryptionConfig, archiveTmpFile);
         } else {
             outputStream = Files.newOutputStream(archiveTmpFile);
         }
@@ -0,0 +1,339 @@
+/**
+ * The MIT License
+ *
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.gpg.SExprParser;
+import org.bouncycastle.gpg.keybox.KeyBlob;
+import org.bouncycastle.gpg.keybox.PublicKeyRingBlob;
+import org.bouncycastle.gpg.keybox.bc.BcKeyBox;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.PBEProtectionRemoverFactory;
+import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keys of a GnuPG home directory, read without the gpg binary. Supports the public keybox (pubring.kbx) with
+ * unprotected secret keys in private-keys-v1.d, as well as the legacy pubring.gpg and secring.gpg key rings.
+ * The keys are read once and cached until the key ring files change.
+ */
+@Slf4j
+final class OpenPGPKeyRing {
+
+    private static final Map<Path, OpenPGPKeyRing> CACHE = new ConcurrentHashMap<>();
+
+    private static final int ENCRYPTION_FLAGS = KeyFlags.ENCRYPT_COMMS | KeyFlags.ENCRYPT_STORAGE;
+
+    private static final PBEProtectionRemoverFactory NO_PASSPHRASE = passPhrase -> {
+        throw new PGPException("Passphrase protected secret keys are not supported");
+    };
+
+    private final List<FileTime> version;
+    private final List<PGPPublicKeyRing> publicKeyRings;
+    private final Map<Long, PGPPrivateKey> privateKeys;
+
+    private OpenPGPKeyRing(List<FileTime> version, List<PGPPublicKeyRing> publicKeyRings,
+            Map<Long, PGPPrivateKey> privateKeys) {
+        this.version = version;
+        this.publicKeyRings = publicKeyRings;
+        this.privateKeys = privateKeys;
+    }
+
+    /**
+     * Returns the keys of the given GnuPG home directory, reading the key ring files only if they have
+     * changed since the previous call.
+     */
+    static OpenPGPKeyRing load(Path gpgHome) throws IOException {
+        final Path home = gpgHome.toAbsolutePath().normalize();
+        final List<FileTime> version = version(home);
+
+        OpenPGPKeyRing keyRing = CACHE.get(home);
+        if (keyRing == null || !keyRing.version.equals(version)) {
+            keyRing = read(home, version);
+            CACHE.put(home, keyRing);
+        }
+        return keyRing;
+    }
+
+    /**
+     * Returns the keys the data should be encrypted with, one for each recipient. Without recipients, the
+     * default key (the first key that has a secret key, like gpg --default-recipient-self) is used.
+     * @throws IOException if a recipient does not have a usable encryption key
+     */
+    List<PGPPublicKey> getEncryptionKeys(Set<String> recipients) throws IOException {
+        if (recipients == null || recipients.isEmpty()) {
+            return Collections.singletonList(getEncryptionKey(getDefaultKeyRing(), "default key"));
+        }
+
+        final List<PGPPublicKey> keys = new ArrayList<>(recipients.size());
+        for (String recipient : recipients) {
+            final PGPPublicKeyRing keyRing = publicKeyRings.stream()
+                    .filter(ring -> matches(ring, recipient) && isUsable(ring.getPublicKey()))
+                    .findFirst()
+                    .orElseThrow(() -> new IOException("Public key not found for recipient '" + recipient + "'"));
+            keys.add(getEncryptionKey(keyRing, recipient));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the public key of the signing key of the default key.
+     */
+    PGPPublicKey getSigningKey() throws IOException {
+        final PGPPublicKeyRing keyRing = getDefaultKeyRing();
+
+        return usableKeys(keyRing, KeyFlags.SIGN_DATA).stream()
+                .filter(key -> privateKeys.containsKey(key.getKeyID()))
+                .findFirst()
+                .orElseThrow(() -> new IOException("Default key does not have a secret signing key"));
+    }
+
+    PGPPrivateKey getPrivateKey(PGPPublicKey publicKey) {
+        return privateKeys.get(publicKey.getKeyID());
+    }
+
+    private PGPPublicKeyRing getDefaultKeyRing() throws IOException {
+        return publicKeyRings.stream()
+                .filter(ring -> privateKeys.containsKey(ring.getPublicKey().getKeyID()))
+                .findFirst()
+                .orElseThrow(() -> new IOException("No secret keys found"));
+    }
+
+    private static PGPPublicKey getEncryptionKey(PGPPublicKeyRing keyRing, String recipient) throws IOException {
+        final List<PGPPublicKey> keys = usableKeys(keyRing, ENCRYPTION_FLAGS);
+        if (keys.isEmpty()) {
+            throw new IOException("No usable encryption key for recipient '" + recipient + "'");
+        }
+        // like gpg, prefer the most recent encryption subkey
+        return keys.get(keys.size() - 1);
+    }
+
+    /**
+     * Returns the valid keys of a key ring that have any of the given capabilities, primary key first and
+     * subkeys in creation order.
+     */
+    private static List<PGPPublicKey> usableKeys(PGPPublicKeyRing keyRing, int flags) {
+        final PGPPublicKey primary = keyRing.getPublicKey();
+        final List<PGPPublicKey> keys = new ArrayList<>();
+
+        if (!isUsable(primary)) {
+            return keys;
+        }
+        for (Iterator<PGPPublicKey> it = keyRing.getPublicKeys(); it.hasNext();) {
+            final PGPPublicKey key = it.next();
+            if (isUsable(key) && (getKeyFlags(key, primary.getKeyID()) & flags) != 0) {
+                keys.add(key);
+            }
+        }
+        keys.sort((a, b) -> a.isMasterKey() == b.isMasterKey()
+                ? a.getCreationTime().compareTo(b.getCreationTime())
+                : Boolean.compare(b.isMasterKey(), a.isMasterKey()));
+        return keys;
+    }
+
+    private static boolean isUsable(PGPPublicKey key) {
+        if (key.hasRevocation()) {
+            return false;
+        }
+        final long validSeconds = key.getValidSeconds();
+        return validSeconds <= 0
+                || key.getCreationTime().getTime() + validSeconds * 1000L > System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the key flags from the latest self-signature of the key. Keys without key flags are assumed to be
+     * usable for anything their algorithm supports.
+     */
+    private static int getKeyFlags(PGPPublicKey key, long primaryKeyId) {
+        PGPSignature latest = null;
+        for (Iterator<PGPSignature> it = key.getSignaturesForKeyID(primaryKeyId); it.hasNext();) {
+            final PGPSignature signature = it.next();
+            if (signature.hasSubpackets() && signature.getHashedSubPackets().getKeyFlags() != 0
+                    && (latest == null || signature.getCreationTime().after(latest.getCreationTime()))) {
+                latest = signature;
+            }
+        }
+        if (latest != null) {
+            return latest.getHashedSubPackets().getKeyFlags();
+        }
+        return key.isEncryptionKey() ? ENCRYPTION_FLAGS | KeyFlags.SIGN_DATA : KeyFlags.SIGN_DATA;
+    }
+
+    /**
+     * Matches a key ring against a gpg style user id: a key id or fingerprint (optionally prefixed with 0x), an
+     * exact user id prefixed with '=' or a case-insensitive substring of a user id (e.g. an e-mail address).
+     */
+    private static boolean matches(PGPPublicKeyRing keyRing, String recipient) {
+        final String id = recipient.trim();
+        final String hex = id.startsWith("0x") || id.startsWith("0X") ? id.substring(2) : id;
+
+        if (hex.matches("[0-9a-fA-F]{8}|[0-9a-fA-F]{16}|[0-9a-fA-F]{40}")) {
+            final String suffix = hex.toUpperCase(Locale.ROOT);
+            for (Iterator<PGPPublicKey> it = keyRing.getPublicKeys(); it.hasNext();) {
+                if (Hex.toHexString(it.next().getFingerprint()).toUpperCase(Locale.ROOT).endsWith(suffix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        for (Iterator<String> it = keyRing.getPublicKey().getUserIDs(); it.hasNext();) {
+            final String userId = it.next();
+            final boolean match = id.startsWith("=")
+                    ? userId.equals(id.substring(1))
+                    : userId.toLowerCase(Locale.ROOT).contains(id.toLowerCase(Locale.ROOT));
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<FileTime> version(Path home) throws IOException {
+        final List<FileTime> version = new ArrayList<>();
+        for (String name : new String[] {"pubring.kbx", "pubring.gpg", "private-keys-v1.d", "secring.gpg"}) {
+            final Path path = home.resolve(name);
+            version.add(Files.exists(path) ? Files.getLastModifiedTime(path) : null);
+        }
+        return version;
+    }
+
+    private static OpenPGPKeyRing read(Path home, List<FileTime> version) throws IOException {
+        final BcKeyFingerprintCalculator fingerprintCalculator = new BcKeyFingerprintCalculator();
+        final List<PGPPublicKeyRing> publicKeyRings = new ArrayList<>();
+        final Map<Long, PGPPrivateKey> privateKeys = new LinkedHashMap<>();
+
+        try {
+            final Path keyBox = home.resolve("pubring.kbx");
+            final Path legacyPublic = home.resolve("pubring.gpg");
+            if (Files.exists(keyBox)) {
+                try (InputStream in = Files.newInputStream(keyBox)) {
+                    for (KeyBlob blob : new BcKeyBox(in).getKeyBlobs()) {
+                        if (blob instanceof PublicKeyRingBlob) {
+                            publicKeyRings.add(((PublicKeyRingBlob) blob).getPGPPublicKeyRing());
+                        }
+                    }
+                }
+            } else if (Files.exists(legacyPublic)) {
+                try (InputStream in = PGPUtil.getDecoderStream(Files.newInputStream(legacyPublic))) {
+                    new PGPPublicKeyRingCollection(in, fingerprintCalculator).forEach(publicKeyRings::add);
+                }
+            } else {
+                throw new NoSuchFileException(keyBox.toString());
+            }
+
+            readSecretKeys(home, publicKeyRings, privateKeys);
+        } catch (PGPException e) {
+            throw new IOException("Reading GPG keys from " + home + " failed", e);
+        }
+
+        log.debug("Read {} public key(s) and {} secret key(s) from {}", publicKeyRings.size(), privateKeys.size(),
+                home);
+        return new OpenPGPKeyRing(version, publicKeyRings, privateKeys);
+    }
+
+    private static void readSecretKeys(Path home, List<PGPPublicKeyRing> publicKeyRings,
+            Map<Long, PGPPrivateKey> privateKeys) throws IOException, PGPException {
+        final Path privateKeysDir = home.resolve("private-keys-v1.d");
+        final Path legacySecret = home.resolve("secring.gpg");
+
+        if (Files.isDirectory(privateKeysDir)) {
+            final SExprParser parser = new SExprParser(new BcPGPDigestCalculatorProvider());
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(privateKeysDir, "*.key")) {
+                for (Path file : files) {
+                    final byte[] keyData = Files.readAllBytes(file);
+                    for (PGPPublicKeyRing keyRing : publicKeyRings) {
+                        for (Iterator<PGPPublicKey> it = keyRing.getPublicKeys(); it.hasNext();) {
+                            final PGPPublicKey publicKey = it.next();
+                            if (!privateKeys.containsKey(publicKey.getKeyID())) {
+                                putPrivateKey(privateKeys, parseSecretKey(parser, keyData, publicKey, file));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (Files.exists(legacySecret)) {
+            try (InputStream in = PGPUtil.getDecoderStream(Files.newInputStream(legacySecret))) {
+                new PGPSecretKeyRingCollection(in, new BcKeyFingerprintCalculator())
+                        .forEach(ring -> ring.forEach(secretKey -> putPrivateKey(privateKeys, secretKey)));
+            }
+        }
+    }
+
+    private static PGPSecretKey parseSecretKey(SExprParser parser, byte[] keyData, PGPPublicKey publicKey,
+            Path file) {
+        try (InputStream in = new ByteArrayInputStream(keyData)) {
+            return parser.parseSecretKey(in, NO_PASSPHRASE, publicKey);
+        } catch (PGPException | IOException e) {
+            // the secret key belongs to another public key, or can not be used
+            log.trace("Secret key {} not usable for key {}: {}", file.getFileName(),
+                    Long.toHexString(publicKey.getKeyID()), e.getMessage());
+            return null;
+        }
+    }
+
+    private static void putPrivateKey(Map<Long, PGPPrivateKey> privateKeys, PGPSecretKey secretKey) {
+        if (secretKey == null || secretKey.isPrivateKeyEmpty()) {
+            return;
+        }
+        try {
+            privateKeys.put(secretKey.getKeyID(), secretKey.extractPrivateKey(null));
+        } catch (PGPException e) {
+            log.warn("Secret key {} can not be used: {}", Long.toHexString(secretKey.getKeyID()), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * The MIT License
+ *
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.openpgp.PGPEncryptedDataGenerator;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPLiteralData;
+import org.bouncycastle.openpgp.PGPLiteralDataGenerator;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketGenerator;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDataEncryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPublicKeyKeyEncryptionMethodGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Outputstream that signs and encrypts the output in-process using the keys of a GnuPG home directory.
+ * The output is equivalent to the {@link GPGOutputStream} output (AES-256, SHA-256, no compression) and
+ * can be decrypted with gpg.
+ */
+public class OpenPGPOutputStream extends FilterOutputStream {
+
+    // also the size of the partial body packets
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream fileOut;
+    private final OutputStream encryptedOut;
+    private final PGPSignatureGenerator signatureGenerator;
+    private boolean closed = false;
+
+    /**
+     * Constructs a stream that encrypts and signs data to the given file.
+     * @param gpgHome GnuPG home directory containing the secret key for signing and the recipient public keys.
+     * @param output Path to the output file, overwritten if present.
+     * @param encryptionKeys Zero or more encryption (recipient) key identifiers, the default key is used if empty
+     * @throws IOException if the keys are not found or opening the output fails
+     */
+    public OpenPGPOutputStream(Path gpgHome, Path output, Set<String> encryptionKeys) throws IOException {
+        super(null);
+        final OpenPGPKeyRing keyRing = OpenPGPKeyRing.load(gpgHome);
+        final PGPPublicKey signingKey = keyRing.getSigningKey();
+
+        final PGPEncryptedDataGenerator encryptedDataGenerator = new PGPEncryptedDataGenerator(
+                new BcPGPDataEncryptorBuilder(SymmetricKeyAlgorithmTags.AES_256)
+                        .setWithIntegrityPacket(true)
+                        .setSecureRandom(new SecureRandom()));
+        for (PGPPublicKey key : keyRing.getEncryptionKeys(encryptionKeys)) {
+            encryptedDataGenerator.addMethod(new BcPublicKeyKeyEncryptionMethodGenerator(key));
+        }
+
+        fileOut = new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE);
+        try {
+            encryptedOut = encryptedDataGenerator.open(fileOut, new byte[BUFFER_SIZE]);
+
+            signatureGenerator = new PGPSignatureGenerator(
+                    new BcPGPContentSignerBuilder(signingKey.getAlgorithm(), HashAlgorithmTags.SHA256));
+            signatureGenerator.init(PGPSignature.BINARY_DOCUMENT, keyRing.getPrivateKey(signingKey));
+
+            final PGPSignatureSubpacketGenerator subpackets = new PGPSignatureSubpacketGenerator();
+            subpackets.setIssuerFingerprint(false, signingKey);
+            signatureGenerator.setHashedSubpackets(subpackets.generate());
+
+            signatureGenerator.generateOnePassVersion(false).encode(encryptedOut);
+            out = new PGPLiteralDataGenerator().open(encryptedOut, PGPLiteralData.BINARY, "", new Date(),
+                    new byte[BUFFER_SIZE]);
+        } catch (PGPException e) {
+            fileOut.close();
+            throw new IOException("Encryption failed", e);
+        } catch (IOException e) {
+            fileOut.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        signatureGenerator.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        signatureGenerator.update(b, off, len);
+    }
+
+    /**
+     * Writes the signature and closes the encryption stream and the output file.
+     * @throws IOException if signing or writing the output fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try (OutputStream file = fileOut; OutputStream encrypted = encryptedOut) {
+            out.close();
+            signatureGenerator.generate().encode(encrypted);
+        } catch (PGPException e) {
+            throw new IOException("Signing failed", e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * The MIT License
+ *
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.bouncycastle.bcpg.BCPGInputStream;
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.bcpg.PublicKeyEncSessionPacket;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpenPGPOutputStreamTest {
+    private static final Path GPG_HOME = Paths.get("build/gpg");
+
+    // encryption subkeys of the security server key and of the member key in keys.ini
+    private static final long SERVER_ENCRYPTION_KEY_ID = 0x63631751550c3140L;
+    private static final long MEMBER_ENCRYPTION_KEY_ID = 0xcb2bb7fde39390e1L;
+
+    @Before
+    public void before() throws IOException {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/tmp");
+        Files.createDirectories(Paths.get(SystemProperties.getTempFilesPath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailIfInvalidRecipient() throws IOException {
+        final Path path = Files.createTempFile(Paths.get(SystemProperties.getTempFilesPath()), null, null);
+        try (OpenPGPOutputStream pgpStream = new OpenPGPOutputStream(GPG_HOME, path, Collections.singleton("AAAA"))) {
+            pgpStream.write(42);
+        }
+    }
+
+    @Test
+    public void shouldEncryptToDefaultKey() throws IOException {
+        final Path path = encrypt(null);
+        assertEquals(SERVER_ENCRYPTION_KEY_ID, getRecipientKeyId(path));
+    }
+
+    @Test
+    public void shouldEncryptToRecipientKey() throws IOException {
+        final Path path = encrypt(Collections.singleton("B23B8E993AC4632A896D39A27BE94D3451C16D33"));
+        assertEquals(MEMBER_ENCRYPTION_KEY_ID, getRecipientKeyId(path));
+
+        final Path byUserId = encrypt(Collections.singleton("<test@example.org>"));
+        assertEquals(MEMBER_ENCRYPTION_KEY_ID, getRecipientKeyId(byUserId));
+    }
+
+    @Test
+    public void shouldBeDecryptableByGpg() throws IOException {
+        Assume.assumeTrue(Files.isExecutable(Paths.get("/usr/bin/gpg")));
+
+        final Path path = encrypt(null);
+
+        final GPGInputStream is = new GPGInputStream(GPG_HOME, path);
+        try {
+            assertEquals(42, is.read());
+            assertEquals(-1, is.read());
+        } finally {
+            is.close();
+        }
+        assertEquals(0, is.getExitCode());
+        assertTrue(is.getStatus().stream().anyMatch(it -> it.contains("DECRYPTION_OKAY")));
+        assertTrue(is.getStatus().stream().anyMatch(it -> it.contains("GOODSIG")));
+    }
+
+    private static Path encrypt(Set<String> keys) throws IOException {
+        final Path path = Files.createTempFile(Paths.get(SystemProperties.getTempFilesPath()), null, null);
+        try (OpenPGPOutputStream pgpStream = new OpenPGPOutputStream(GPG_HOME, path, keys)) {
+            pgpStream.write(42);
+        }
+        return path;
+    }
+
+    private static long getRecipientKeyId(Path path) throws IOException {
+        try (BCPGInputStream is = new BCPGInputStream(Files.newInputStream(path))) {
+            assertEquals(PacketTags.PUBLIC_KEY_ENC_SESSION, is.nextPacketTag());
+            return ((PublicKeyEncSessionPacket) is.readPacket()).getKeyID();
+        }
+    }
+}
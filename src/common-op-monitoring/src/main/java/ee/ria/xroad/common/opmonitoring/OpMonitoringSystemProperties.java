@@ -61,6 +61,20 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_BUFFER_SENDING_INTERVAL_SECONDS =
             PREFIX + "op-monitor-buffer.sending-interval-seconds";
 
+    /**
+     * Property name of the maximum number of messages the operational monitoring buffer sends to the operational
+     * monitoring daemon concurrently.
+     */
+    private static final String OP_MONITOR_BUFFER_MAX_MESSAGES_IN_FLIGHT =
+            PREFIX + "op-monitor-buffer.max-messages-in-flight";
+
+    /**
+     * Property name of whether the operational monitoring buffer compresses the messages sent to the operational
+     * monitoring daemon.
+     */
+    private static final String OP_MONITOR_BUFFER_COMPRESS_MESSAGES =
+            PREFIX + "op-monitor-buffer.compress-messages";
+
 
     /**
      * Property name of the operational monitoring buffer HTTP client SO_TIMEOUT seconds.
@@ -147,6 +161,19 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_CLEAN_INTERVAL =
             PREFIX + "op-monitor.clean-interval";
 
+    /**
+     * Property name of the length in hours of a single operational data partition. Used only when the operational
+     * data table is partitioned by time (PostgreSQL 11 or later).
+     */
+    private static final String OP_MONITOR_PARTITION_INTERVAL_HOURS =
+            PREFIX + "op-monitor.partition-interval-hours";
+
+    /**
+     * Property name of the number of future operational data partitions that are created ahead of time.
+     */
+    private static final String OP_MONITOR_PARTITIONS_CREATED_AHEAD =
+            PREFIX + "op-monitor.partitions-created-ahead";
+
     /**
      * Property name of the maximum records in the get operational data response payload.
      */
@@ -179,6 +206,21 @@ public final class OpMonitoringSystemProperties {
         return Long.parseLong(System.getProperty(OP_MONITOR_BUFFER_SENDING_INTERVAL_SECONDS, "5"));
     }
 
+    /**
+     * @return the maximum number of messages the operational monitoring buffer sends to the operational monitoring
+     * daemon concurrently, '4' by default.
+     */
+    public static int getOpMonitorBufferMaxMessagesInFlight() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_MAX_MESSAGES_IN_FLIGHT, "4"));
+    }
+
+    /**
+     * @return whether the messages sent by the operational monitoring buffer are gzip compressed, 'false' by default.
+     */
+    public static boolean isOpMonitorBufferMessageCompressionEnabled() {
+        return Boolean.parseBoolean(System.getProperty(OP_MONITOR_BUFFER_COMPRESS_MESSAGES, "false"));
+    }
+
     /**
      * @return the operational monitoring buffer HTTP client SO_TIMEOUT in seconds, '60' by default.
      */
@@ -267,6 +309,20 @@ public final class OpMonitoringSystemProperties {
         return System.getProperty(OP_MONITOR_CLEAN_INTERVAL, "0 0 0/12 1/1 * ? *");
     }
 
+    /**
+     * @return the length in hours of a single operational data partition, '24' by default.
+     */
+    public static int getOpMonitorPartitionIntervalHours() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_PARTITION_INTERVAL_HOURS, "24"));
+    }
+
+    /**
+     * @return the number of future operational data partitions that are created ahead of time, '3' by default.
+     */
+    public static int getOpMonitorPartitionsCreatedAhead() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_PARTITIONS_CREATED_AHEAD, "3"));
+    }
+
     /**
      * @return the maximum records in the get operational data response payload, 10000 by default.
      */
@@ -156,6 +156,7 @@ public final class ErrorCodes {
     public static final String X_OUTDATED_GLOBALCONF = "OutdatedGlobalConf";
     public static final String X_SERVICE_MISSING_URL = "ServiceMissingUrl";
     public static final String X_SERVICE_MALFORMED_URL = "ServiceMalformedUrl";
+    public static final String X_SERVICE_UNAVAILABLE = "ServiceUnavailable";
     public static final String X_ADAPTER_WSDL_NOT_FOUND = "AdapterWsdlNotFound";
     public static final String X_HW_MODULE_NON_OPERATIONAL = "HSMNonOperational";
 
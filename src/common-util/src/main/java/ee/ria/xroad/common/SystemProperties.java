@@ -52,6 +52,10 @@ public final class SystemProperties {
     public static final String CONFIGURATION_PATH =
             PREFIX + "common.configuration-path";
 
+    /** Property name of the duration in milliseconds after which a database transaction is logged as slow. */
+    public static final String DATABASE_SLOW_TRANSACTION_THRESHOLD =
+            PREFIX + "common.database-slow-transaction-threshold";
+
     /** Current version number of the global configuration **/
     public static final int CURRENT_GLOBAL_CONFIGURATION_VERSION = 2;
 
@@ -197,6 +201,43 @@ public final class SystemProperties {
 
     public static final String SERVER_CONF_ACL_CACHE_SIZE = PREFIX + "proxy.server-conf-acl-cache-size";
 
+    public static final String SERVER_CONF_CACHE_REFRESH_THREADS =
+            PREFIX + "proxy.server-conf-cache-refresh-threads";
+
+    /** Property name of the maximum number of concurrent requests to a service (or service host), 0 for no limit */
+    public static final String SERVICE_MAX_CONCURRENT_REQUESTS =
+            PREFIX + "proxy.service-max-concurrent-requests";
+
+    /** Property name of the scope of service call limits and circuit breakers, 'service' or 'host' */
+    public static final String SERVICE_CALL_LIMIT_SCOPE = PREFIX + "proxy.service-call-limit-scope";
+
+    public static final String SERVICE_CIRCUIT_BREAKER_ENABLED =
+            PREFIX + "proxy.service-circuit-breaker-enabled";
+
+    /** Property name of the percentage of failed or slow calls that opens a service circuit breaker */
+    public static final String SERVICE_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD =
+            PREFIX + "proxy.service-circuit-breaker-failure-rate-threshold";
+
+    /** Property name of the duration in milliseconds after which a service call is considered slow */
+    public static final String SERVICE_CIRCUIT_BREAKER_SLOW_CALL_THRESHOLD =
+            PREFIX + "proxy.service-circuit-breaker-slow-call-threshold";
+
+    /** Property name of the number of most recent service calls the failure rate is calculated of */
+    public static final String SERVICE_CIRCUIT_BREAKER_WINDOW_SIZE =
+            PREFIX + "proxy.service-circuit-breaker-window-size";
+
+    /** Property name of the minimum number of service calls before the failure rate is evaluated */
+    public static final String SERVICE_CIRCUIT_BREAKER_MINIMUM_CALLS =
+            PREFIX + "proxy.service-circuit-breaker-minimum-calls";
+
+    /** Property name of the time in seconds an open service circuit breaker rejects calls */
+    public static final String SERVICE_CIRCUIT_BREAKER_OPEN_DURATION =
+            PREFIX + "proxy.service-circuit-breaker-open-duration";
+
+    /** Property name of the number of probe calls let through by a half-open service circuit breaker */
+    public static final String SERVICE_CIRCUIT_BREAKER_HALF_OPEN_CALLS =
+            PREFIX + "proxy.service-circuit-breaker-half-open-calls";
+
 
     /** Property name of the idle time that connections to the ServerProxy Connector are allowed, in milliseconds */
     private static final String SERVERPROXY_CONNECTOR_MAX_IDLE_TIME =
@@ -263,12 +304,37 @@ public final class SystemProperties {
     public static final String CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD =
             PREFIX + "proxy.client-fastest-connecting-ssl-uri-cache-period";
 
+    private static final String CLIENTPROXY_ADDRESS_PROBE_RATIO = PREFIX + "proxy.client-address-probe-ratio";
+
+    private static final String CLIENTPROXY_TLS_SESSION_CACHE_SIZE = PREFIX + "proxy.client-tls-session-cache-size";
+
+    private static final String CLIENTPROXY_TLS_SESSION_TIMEOUT = PREFIX + "proxy.client-tls-session-timeout";
+
     private static final String CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS =
             PREFIX + "proxy.pool-validate-connections-after-inactivity-of-millis";
 
     private static final String CLIENTPROXY_POOL_REUSE_CONNECTIONS =
             PREFIX + "proxy.pool-enable-connection-reuse";
 
+    /**
+     * Property name of the on/off switch for streaming SOAP requests to the server proxy in the client proxy request
+     * thread instead of a separate SOAP handler thread
+     */
+    private static final String CLIENTPROXY_SOAP_STREAMING_ENABLED =
+            PREFIX + "proxy.client-soap-streaming-enabled";
+
+    /**
+     * Property name of the maximum size in bytes of a cached message body that is kept in memory
+     * before it is spilled to a temporary file
+     */
+    private static final String PROXY_CACHING_STREAM_MEMORY_THRESHOLD =
+            PREFIX + "proxy.caching-stream-memory-threshold";
+
+    /**
+     * Property name of the maximum total size in bytes of message bodies cached in memory by the process
+     */
+    private static final String PROXY_CACHING_STREAM_MEMORY_LIMIT = PREFIX + "proxy.caching-stream-memory-limit";
+
     private static final String PROXY_HEALTH_CHECK_INTERFACE = PREFIX + "proxy.health-check-interface";
 
     private static final String PROXY_HEALTH_CHECK_PORT = PREFIX + "proxy.health-check-port";
@@ -330,6 +396,12 @@ public final class SystemProperties {
 
     private static final String DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD = "3600";
 
+    private static final String DEFAULT_CLIENTPROXY_ADDRESS_PROBE_RATIO = "0.05";
+
+    private static final String DEFAULT_CLIENTPROXY_TLS_SESSION_CACHE_SIZE = "10000";
+
+    private static final String DEFAULT_CLIENTPROXY_TLS_SESSION_TIMEOUT = "600";
+
     private static final String DEFAULT_ENV_MONITOR_LIMIT_REMOTE_DATA_SET = "false";
 
     private static final String DEFAULT_CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS = "2000";
@@ -342,6 +414,12 @@ public final class SystemProperties {
      **/
     private static final String DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS = "false";
 
+    private static final String DEFAULT_CLIENTPROXY_SOAP_STREAMING_ENABLED = "true";
+
+    private static final String DEFAULT_PROXY_CACHING_STREAM_MEMORY_THRESHOLD = "65536";
+
+    private static final String DEFAULT_PROXY_CACHING_STREAM_MEMORY_LIMIT = "67108864";
+
     private static final String DEFAULT_PROXY_HEALTH_CHECK_INTERFACE = "0.0.0.0";
 
     private static final String DEFAULT_PROXY_HEALTH_CHECK_PORT = "0";
@@ -353,6 +431,18 @@ public final class SystemProperties {
 
     private static final int OCSP_VERIFIER_CACHE_PERIOD_MAX = 180;
 
+    private static final String CERT_CHAIN_VERIFIER_CACHE_SIZE =
+            PREFIX + "proxy.cert-chain-verifier-cache-size";
+
+    private static final String CLIENTPROXY_AUTH_TRUST_CACHE_SIZE =
+            PREFIX + "proxy.client-auth-trust-cache-size";
+
+    public static final String SERVICE_DESCRIPTION_CACHE_PERIOD =
+            PREFIX + "proxy.service-description-cache-period";
+
+    private static final String SERVICE_DESCRIPTION_CACHE_SIZE =
+            PREFIX + "proxy.service-description-cache-size";
+
     // Signer -----------------------------------------------------------------
 
     /** Property name of the key configuration file. */
@@ -397,6 +487,26 @@ public final class SystemProperties {
 
     private static final String DEFAULT_SIGNER_OCSP_RETRY_DELAY = "60";
 
+    public static final String SIGNER_OCSP_FETCH_CONCURRENCY =
+            PREFIX + "signer.ocsp-fetch-concurrency";
+
+    private static final String DEFAULT_SIGNER_OCSP_FETCH_CONCURRENCY = "8";
+
+    public static final String SIGNER_OCSP_CLIENT_CONNECT_TIMEOUT =
+            PREFIX + "signer.ocsp-client-connect-timeout";
+
+    private static final String DEFAULT_SIGNER_OCSP_CLIENT_CONNECT_TIMEOUT = "20000";
+
+    public static final String SIGNER_OCSP_CLIENT_READ_TIMEOUT =
+            PREFIX + "signer.ocsp-client-read-timeout";
+
+    private static final String DEFAULT_SIGNER_OCSP_CLIENT_READ_TIMEOUT = "60000";
+
+    public static final String SIGNER_SOFTWARE_TOKEN_SIGNING_WORKERS =
+            PREFIX + "signer.software-token-signing-workers";
+
+    private static final String DEFAULT_SIGNER_SOFTWARE_TOKEN_SIGNING_WORKERS = "1";
+
     public static final String SIGNER_MODULE_MANAGER_UPDATE_INTERVAL =
             PREFIX + "signer.module-manager-update-interval";
 
@@ -434,6 +544,22 @@ public final class SystemProperties {
     public static final String ANTIDOS_MAX_HEAP_USAGE =
             PREFIX + "anti-dos.max-heap-usage";
 
+    /** Property name of the interval in milliseconds at which the system resource usage is sampled */
+    public static final String ANTIDOS_RESOURCE_SAMPLE_INTERVAL =
+            PREFIX + "anti-dos.resource-sample-interval";
+
+    /** Property name of the number of connections processed in turn from each known partner */
+    public static final String ANTIDOS_KNOWN_PARTNER_WEIGHT =
+            PREFIX + "anti-dos.known-partner-weight";
+
+    /** Property name of the maximum number of new connections per second accepted from a partner */
+    public static final String ANTIDOS_PARTNER_CONNECTION_RATE =
+            PREFIX + "anti-dos.partner-connection-rate";
+
+    /** Property name of the number of connections a partner may open at once in excess of the rate */
+    public static final String ANTIDOS_PARTNER_CONNECTION_BURST =
+            PREFIX + "anti-dos.partner-connection-burst";
+
     // Configuration client ---------------------------------------------------
 
     public static final String CONFIGURATION_CLIENT_PORT =
@@ -711,6 +837,14 @@ public final class SystemProperties {
         return System.getProperty(DATABASE_PROPERTIES, getConfPath() + DefaultFilepaths.SERVER_DATABASE_PROPERTIES);
     }
 
+    /**
+     * @return duration in milliseconds after which a database transaction is logged as slow, 0 (disabled)
+     * by default.
+     */
+    public static long getDatabaseSlowTransactionThreshold() {
+        return Long.getLong(DATABASE_SLOW_TRANSACTION_THRESHOLD, 0);
+    }
+
     /**
      * @return path to the proxy ssl configuration file, '/etc/xroad/ssl.properties' by default.
      */
@@ -947,6 +1081,39 @@ public final class SystemProperties {
                 DEFAULT_SIGNER_OCSP_RETRY_DELAY));
     }
 
+    /**
+     * @return the maximum number of OCSP responses the signer fetches in parallel, 8 by default
+     */
+    public static int getOcspFetchConcurrency() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_OCSP_FETCH_CONCURRENCY,
+                DEFAULT_SIGNER_OCSP_FETCH_CONCURRENCY)));
+    }
+
+    /**
+     * @return the signer's OCSP responder connect timeout in milliseconds, 20000 by default
+     */
+    public static int getOcspClientConnectTimeout() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_CLIENT_CONNECT_TIMEOUT,
+                DEFAULT_SIGNER_OCSP_CLIENT_CONNECT_TIMEOUT));
+    }
+
+    /**
+     * @return the signer's OCSP responder read timeout in milliseconds, 60000 by default
+     */
+    public static int getOcspClientReadTimeout() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_CLIENT_READ_TIMEOUT,
+                DEFAULT_SIGNER_OCSP_CLIENT_READ_TIMEOUT));
+    }
+
+    /**
+     * @return the number of workers calculating signatures with the software token keys, 1 by default
+     * (signatures are calculated by the token worker itself)
+     */
+    public static int getSoftwareTokenSigningWorkers() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_SOFTWARE_TOKEN_SIGNING_WORKERS,
+                DEFAULT_SIGNER_SOFTWARE_TOKEN_SIGNING_WORKERS)));
+    }
+
     /**
      * @return the module manager update interval in seconds that should be set for signer, 60 by default
      */
@@ -1299,6 +1466,39 @@ public final class SystemProperties {
         return "true".equalsIgnoreCase(System.getProperty(ANTIDOS_ENABLED, "true"));
     }
 
+    /**
+     * @return the interval in milliseconds at which Anti-Dos samples the free file handles, CPU load and heap
+     * usage, '100' by default.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getAntiDosResourceSampleInterval() {
+        return Math.max(0, Integer.getInteger(ANTIDOS_RESOURCE_SAMPLE_INTERVAL, 100));
+    }
+
+    /**
+     * @return the number of connections Anti-Dos processes in turn from each known partner before moving on
+     * to the next partner, '1' by default.
+     */
+    public static int getAntiDosKnownPartnerWeight() {
+        return Math.max(1, Integer.getInteger(ANTIDOS_KNOWN_PARTNER_WEIGHT, 1));
+    }
+
+    /**
+     * @return the maximum number of new connections per second Anti-Dos accepts from a partner,
+     * '0' (no limit) by default.
+     */
+    public static int getAntiDosPartnerConnectionRate() {
+        return Math.max(0, Integer.getInteger(ANTIDOS_PARTNER_CONNECTION_RATE, 0));
+    }
+
+    /**
+     * @return the number of connections a partner may open at once in excess of the connection rate,
+     * '0' (same as the rate) by default.
+     */
+    public static int getAntiDosPartnerConnectionBurst() {
+        return Math.max(0, Integer.getInteger(ANTIDOS_PARTNER_CONNECTION_BURST, 0));
+    }
+
     /**
      * @return the HTTPS port at which the central monitor agent listens for
      * incoming monitoring data, '443' by default.
@@ -1374,6 +1574,42 @@ public final class SystemProperties {
         return period < OCSP_VERIFIER_CACHE_PERIOD_MAX ? period : OCSP_VERIFIER_CACHE_PERIOD_MAX;
     }
 
+    /**
+     * @return the maximum number of successful certificate chain verifications that are cached, 0 disables
+     * the cache. Default is 1000.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static long getCertChainVerifierCacheSize() {
+        return Long.getLong(CERT_CHAIN_VERIFIER_CACHE_SIZE, 1000);
+    }
+
+    /**
+     * @return the maximum number of successful service provider authentication certificate verifications that are
+     * cached by the client proxy, 0 disables the cache. Default is 1000.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static long getClientProxyAuthTrustCacheSize() {
+        return Long.getLong(CLIENTPROXY_AUTH_TRUST_CACHE_SIZE, 1000);
+    }
+
+    /**
+     * @return the time in seconds a service description (WSDL or OpenAPI document) returned by the metaservices is
+     * served from the cache before it is revalidated with the service. Default is 300 s.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getServiceDescriptionCachePeriod() {
+        return Integer.getInteger(SERVICE_DESCRIPTION_CACHE_PERIOD, 300);
+    }
+
+    /**
+     * @return the maximum number of service descriptions cached by the metaservices, 0 disables the cache.
+     * Default is 100.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static long getServiceDescriptionCacheSize() {
+        return Long.getLong(SERVICE_DESCRIPTION_CACHE_SIZE, 100);
+    }
+
     /**
      * @return serverproxy initial idle time (used until the request processing starts)
      */
@@ -1474,6 +1710,32 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS));
     }
 
+    /**
+     * @return true if the client proxy should stream SOAP requests to the server proxy in the request thread,
+     * false if a separate SOAP handler thread should be used
+     */
+    public static boolean isClientProxySoapStreamingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CLIENTPROXY_SOAP_STREAMING_ENABLED,
+                DEFAULT_CLIENTPROXY_SOAP_STREAMING_ENABLED));
+    }
+
+    /**
+     * @return the maximum size in bytes of a cached message body that is kept in memory, 0 to always use a
+     * temporary file
+     */
+    public static int getCachingStreamMemoryThreshold() {
+        return Integer.parseInt(System.getProperty(PROXY_CACHING_STREAM_MEMORY_THRESHOLD,
+                DEFAULT_PROXY_CACHING_STREAM_MEMORY_THRESHOLD));
+    }
+
+    /**
+     * @return the maximum total size in bytes of message bodies cached in memory
+     */
+    public static long getCachingStreamMemoryLimit() {
+        return Long.parseLong(System.getProperty(PROXY_CACHING_STREAM_MEMORY_LIMIT,
+                DEFAULT_PROXY_CACHING_STREAM_MEMORY_LIMIT));
+    }
+
     public static boolean isServerProxySupportClientsPooledConnections() {
         return Boolean.parseBoolean(System.getProperty(SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS,
                 DEFAULT_SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS));
@@ -1498,13 +1760,39 @@ public final class SystemProperties {
     }
 
     /**
-     * @return period in seconds the fastest provider uri should be cached, or 0 to disable
+     * @return period in seconds the measured latencies of provider addresses are used for selecting the address to
+     * connect to, or 0 to disable
      */
     public static int getClientProxyFastestConnectingSslUriCachePeriod() {
         return Integer.parseInt(System.getProperty(CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD,
                 DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD));
     }
 
+    /**
+     * @return share of connections (between 0 and 1) that are made to some other than the best known address of a
+     * security server in order to keep the latency statistics of its other addresses up to date, '0.05' by default
+     */
+    public static double getClientProxyAddressProbeRatio() {
+        return Double.parseDouble(System.getProperty(CLIENTPROXY_ADDRESS_PROBE_RATIO,
+                DEFAULT_CLIENTPROXY_ADDRESS_PROBE_RATIO));
+    }
+
+    /**
+     * @return maximum number of TLS sessions to other security servers kept for resumption, '10000' by default
+     */
+    public static int getClientProxyTlsSessionCacheSize() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_TLS_SESSION_CACHE_SIZE,
+                DEFAULT_CLIENTPROXY_TLS_SESSION_CACHE_SIZE));
+    }
+
+    /**
+     * @return time in seconds a TLS session to another security server can be resumed, '600' by default
+     */
+    public static int getClientProxyTlsSessionTimeout() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_TLS_SESSION_TIMEOUT,
+                DEFAULT_CLIENTPROXY_TLS_SESSION_TIMEOUT));
+    }
+
     /**
      * @return the time in milliseconds, after which connections in a pool should be check for validity, ie.
      * after this time, check if pooled connections are still alive, don't just assume they are.
@@ -1593,6 +1881,90 @@ public final class SystemProperties {
         return Long.getLong(SERVER_CONF_ACL_CACHE_SIZE, 100_000);
     }
 
+    /**
+     * @return number of threads refreshing the serverconf caches in the background, 2 by default
+     */
+    public static int getServerConfCacheRefreshThreads() {
+        return Integer.getInteger(SERVER_CONF_CACHE_REFRESH_THREADS, 2);
+    }
+
+    /**
+     * @return the maximum number of concurrent requests the server proxy sends to a service (or service host),
+     * 0 (no limit) by default
+     */
+    public static int getServiceMaxConcurrentRequests() {
+        return Math.max(0, Integer.getInteger(SERVICE_MAX_CONCURRENT_REQUESTS, 0));
+    }
+
+    /**
+     * @return the scope of service call limits and circuit breakers: 'service' to limit the calls of each service
+     * separately or 'host' to limit the calls to each service host (host and port of the service address),
+     * 'service' by default
+     */
+    public static String getServiceCallLimitScope() {
+        return System.getProperty(SERVICE_CALL_LIMIT_SCOPE, "service").trim().toLowerCase();
+    }
+
+    /**
+     * @return whether the server proxy should stop calling a service whose calls are failing, 'false' by default
+     */
+    public static boolean isServiceCircuitBreakerEnabled() {
+        return Boolean.parseBoolean(System.getProperty(SERVICE_CIRCUIT_BREAKER_ENABLED, "false"));
+    }
+
+    /**
+     * @return the percentage (1-100) of failed or slow calls that opens a service circuit breaker, 50 by default
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getServiceCircuitBreakerFailureRateThreshold() {
+        int threshold = Integer.getInteger(SERVICE_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD, 50);
+        return Math.min(100, Math.max(1, threshold));
+    }
+
+    /**
+     * @return the duration in milliseconds after which a service call is counted as a failure by the circuit
+     * breaker even if it succeeds, 0 to not take the duration into account, 10000 by default
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getServiceCircuitBreakerSlowCallThreshold() {
+        return Math.max(0, Integer.getInteger(SERVICE_CIRCUIT_BREAKER_SLOW_CALL_THRESHOLD, 10000));
+    }
+
+    /**
+     * @return the number of most recent service calls the circuit breaker failure rate is calculated of,
+     * 100 by default
+     */
+    public static int getServiceCircuitBreakerWindowSize() {
+        return Math.max(1, Integer.getInteger(SERVICE_CIRCUIT_BREAKER_WINDOW_SIZE, 100));
+    }
+
+    /**
+     * @return the minimum number of service calls before the circuit breaker failure rate is evaluated,
+     * 20 by default
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getServiceCircuitBreakerMinimumCalls() {
+        return Math.max(1, Integer.getInteger(SERVICE_CIRCUIT_BREAKER_MINIMUM_CALLS, 20));
+    }
+
+    /**
+     * @return the time in seconds an open service circuit breaker rejects calls before letting probe calls
+     * through, 30 by default
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getServiceCircuitBreakerOpenDuration() {
+        return Math.max(1, Integer.getInteger(SERVICE_CIRCUIT_BREAKER_OPEN_DURATION, 30));
+    }
+
+    /**
+     * @return the number of probe calls a half-open service circuit breaker lets through, all of which must
+     * succeed for the breaker to close, 5 by default
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getServiceCircuitBreakerHalfOpenCalls() {
+        return Math.max(1, Integer.getInteger(SERVICE_CIRCUIT_BREAKER_HALF_OPEN_CALLS, 5));
+    }
+
     private static void checkVersionValidity(int version, int current, String defaultVersion) {
         if (version > current || version < 1) {
             throw new IllegalArgumentException("Illegal minimum global configuration version in system parameters");
@@ -69,6 +69,8 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
     private final Map<String, PrivateParametersV2> privateParameters = new HashMap<>();
     private final Map<String, SharedParametersV2> sharedParameters = new HashMap<>();
 
+    private boolean changed;
+
     // ------------------------------------------------------------------------
 
     /**
@@ -83,6 +85,8 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
         // empty maps as placeholders
         loadParameters(new HashMap<>(), new HashMap<>());
+
+        changed = true;
     }
 
     /**
@@ -97,6 +101,9 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
         instanceIdentifier = loadInstanceIdentifier();
 
         loadParameters(base.privateParameters, base.sharedParameters);
+
+        changed |= !privateParameters.keySet().equals(base.privateParameters.keySet())
+                || !sharedParameters.keySet().equals(base.sharedParameters.keySet());
     }
 
     /**
@@ -106,6 +113,14 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
         return instanceIdentifier;
     }
 
+    /**
+     * @return true if any parameters were loaded from file or removed instead of all of them being reused
+     * from the base directory
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
     /**
      * Reloads the configuration directory. Only files that are new or have changed, are actually loaded.
      * @throws Exception if an error occurs during reload
@@ -281,6 +296,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
                 } else {
                     log.trace("Loading PrivateParametersV2 from {}", privateParametersPath);
                     parametersToUse = new PrivateParametersV2(privateParametersPath, fileExpiresOn);
+                    changed = true;
                 }
 
                 privateParameters.put(instanceId, parametersToUse);
@@ -311,6 +327,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
                 } else {
                     log.trace("Loading SharedParametersV2 from {}", sharedParametersPath);
                     parametersToUse = new SharedParametersV2(sharedParametersPath, fileExpiresOn);
+                    changed = true;
                 }
 
                 sharedParameters.put(instanceId, parametersToUse);
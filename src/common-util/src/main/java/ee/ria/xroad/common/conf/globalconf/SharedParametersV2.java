@@ -41,6 +41,7 @@ import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.SubsystemType;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.GlobalGroupId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.common.util.CryptoUtils;
 
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -63,6 +64,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -83,6 +85,7 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
     private Map<X509Certificate, String> caCertsAndCertProfiles;
     private Map<X509Certificate, ApprovedCATypeV2> caCertsAndApprovedCAData;
     private Map<X509Certificate, List<OcspInfoType>> caCertsAndOcspData;
+    private Map<X509Certificate, List<X509Certificate>> caCertsAndOcspResponderCerts;
     private Map<ClientId, Set<String>> memberAddresses;
     private Map<ClientId, Set<byte[]>> memberAuthCerts;
     private Map<String, SecurityServerType> serverByAuthCert;
@@ -90,6 +93,9 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
     private List<X509Certificate> verificationCaCerts;
     private Set<String> knownAddresses;
     private Map<SecurityServerId, SecurityServerType> securityServersById;
+    private Map<ClientId, String> memberNames;
+    private Map<String, GlobalGroupType> globalGroupsByCode;
+    private Map<String, Set<ClientId>> globalGroupMembers;
 
     private final OffsetDateTime expiresOn;
 
@@ -113,6 +119,7 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         caCertsAndCertProfiles = new HashMap<>();
         caCertsAndApprovedCAData = new HashMap<>();
         caCertsAndOcspData = new HashMap<>();
+        caCertsAndOcspResponderCerts = new HashMap<>();
         memberAddresses = new HashMap<>();
         memberAuthCerts = new HashMap<>();
         serverByAuthCert = new HashMap<>();
@@ -120,11 +127,16 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         verificationCaCerts = new ArrayList<>();
         knownAddresses = new HashSet<>();
         securityServersById = new HashMap<>();
+        memberNames = new HashMap<>();
+        globalGroupsByCode = new HashMap<>();
+        globalGroupMembers = new HashMap<>();
 
         try {
             cacheCaCerts();
             cacheKnownAddresses();
             cacheSecurityServers();
+            cacheMemberNames();
+            cacheGlobalGroups();
         } catch (Exception e) {
             throw translateException(e);
         }
@@ -141,6 +153,7 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         caCertsAndCertProfiles = original.caCertsAndCertProfiles;
         caCertsAndApprovedCAData = original.caCertsAndApprovedCAData;
         caCertsAndOcspData = original.caCertsAndOcspData;
+        caCertsAndOcspResponderCerts = original.caCertsAndOcspResponderCerts;
         memberAddresses = original.memberAddresses;
         memberAuthCerts = original.memberAuthCerts;
         serverByAuthCert = original.serverByAuthCert;
@@ -148,6 +161,9 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         verificationCaCerts = original.verificationCaCerts;
         knownAddresses = original.knownAddresses;
         securityServersById = original.securityServersById;
+        memberNames = original.memberNames;
+        globalGroupsByCode = original.globalGroupsByCode;
+        globalGroupMembers = original.globalGroupMembers;
 
         initCompleted = true;
     }
@@ -224,9 +240,24 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             return null;
         }
 
-        return confType.getGlobalGroup().stream()
-                .filter(g -> g.getGroupCode().equals(groupId.getGroupCode()))
-                .findFirst().orElse(null);
+        return globalGroupsByCode.get(groupId.getGroupCode());
+    }
+
+    boolean isGlobalGroupMember(GlobalGroupId groupId, ClientId subjectId) {
+        if (!groupId.getXRoadInstance().equals(
+                confType.getInstanceIdentifier())) {
+            return false;
+        }
+
+        Set<ClientId> groupMembers = globalGroupMembers.get(groupId.getGroupCode());
+
+        return groupMembers != null && groupMembers.contains(subjectId);
+    }
+
+    String getMemberName(ClientId clientId) {
+        // the member name is shared by the member and its subsystems
+        return memberNames.get(ClientId.create(clientId.getXRoadInstance(),
+                clientId.getMemberClass(), clientId.getMemberCode()));
     }
 
     X509Certificate getCaCertForSubject(X509Certificate subject)
@@ -328,6 +359,21 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         }
     }
 
+    private void cacheMemberNames() {
+        for (MemberType member : confType.getMember()) {
+            memberNames.putIfAbsent(createMemberId(member), member.getName());
+        }
+    }
+
+    private void cacheGlobalGroups() {
+        for (GlobalGroupType globalGroup : confType.getGlobalGroup()) {
+            if (globalGroupsByCode.putIfAbsent(globalGroup.getGroupCode(), globalGroup) == null) {
+                globalGroupMembers.put(globalGroup.getGroupCode(),
+                        new HashSet<>(globalGroup.getGroupMember()));
+            }
+        }
+    }
+
     private void addServerClient(ClientId client, SecurityServerType server) {
         // Add the mapping from client to security server address.
         if (isNotBlank(server.getAddress())) {
@@ -369,6 +415,13 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             X509Certificate cert = readCertificate(caType.getCert());
             List<OcspInfoType> caOcspTypes = caType.getOcsp();
             caCertsAndOcspData.put(cert, caOcspTypes);
+
+            // responder certificates are compared on every OCSP response verification
+            caCertsAndOcspResponderCerts.put(cert, caOcspTypes.stream()
+                    .map(OcspInfoType::getCert)
+                    .filter(Objects::nonNull)
+                    .map(CryptoUtils::readCertificate)
+                    .collect(Collectors.toList()));
         }
     }
 
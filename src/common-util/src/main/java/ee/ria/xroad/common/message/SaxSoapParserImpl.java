@@ -32,6 +32,7 @@ import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.identifier.XRoadObjectType;
 import ee.ria.xroad.common.util.MimeUtils;
+import ee.ria.xroad.common.util.PooledByteArrayOutputStream;
 import ee.ria.xroad.common.util.XmlUtils;
 
 import lombok.Getter;
@@ -41,6 +42,7 @@ import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullWriter;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.xml.sax.Attributes;
@@ -55,7 +57,6 @@ import javax.xml.parsers.SAXParserFactory;
 import javax.xml.soap.SOAPException;
 
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
@@ -191,30 +192,79 @@ public class SaxSoapParserImpl implements SoapParser {
         }
     }
 
+    /**
+     * Parses the given input stream only up to the end of the SOAP header. The header is validated the same way
+     * as in {@link #parse(String, InputStream)}, but the body is neither read nor validated, so the rest of the
+     * stream is left unconsumed.
+     * @param contentType the content type of the soap message
+     * @param is the input stream from which to parse the SOAP header
+     * @return the parsed SOAP header
+     */
+    public SoapHeader parseHeader(String contentType, InputStream is) {
+        String mimeType = MimeUtils.getBaseContentType(contentType);
+
+        if (mimeType != null) {
+            validateMimeType(mimeType);
+        }
+
+        XRoadSoapHandler handler = new XRoadSoapHandler(new BufferedWriter(NullWriter.NULL_WRITER), true);
+
+        try {
+            parse(handler, excludeUtf8Bom(contentType, is));
+        } catch (HeaderParsedException e) {
+            log.trace("parseHeader() finished after SOAP header");
+
+            return handler.getHeader();
+        } catch (Exception e) {
+            throw translateException(e);
+        }
+
+        // The whole message was read without finding a header, this can only be a SOAP fault
+        if (handler.getFault() != null) {
+            throw handler.getFault();
+        }
+
+        return handler.getHeader();
+    }
+
     private Soap parseMessage(InputStream is, String mimeType, String contentType, String charset) throws Exception {
         log.trace("parseMessage({}, {})", mimeType, charset);
 
-        ByteArrayOutputStream rawXml = new ByteArrayOutputStream();
-        ByteArrayOutputStream processedXml = new ByteArrayOutputStream();
+        // The buffers are backed by pooled chunks, the processed XML buffer takes chunks only
+        // when processed XML is actually written. Only the buffer that is used gets copied.
+        PooledByteArrayOutputStream rawXml = new PooledByteArrayOutputStream();
+        PooledByteArrayOutputStream processedXml = new PooledByteArrayOutputStream();
 
-        InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
-        Writer outputWriter = new OutputStreamWriter(processedXml, charset);
-        XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+        try {
+            InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
+            Writer outputWriter = new OutputStreamWriter(processedXml, charset);
+            XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
 
-        CodedException fault = handler.getFault();
-        if (fault != null) {
-            return createSoapFault(charset, rawXml, fault);
-        }
+            CodedException fault = handler.getFault();
+            if (fault != null) {
+                return createSoapFault(charset, rawXml, fault);
+            }
 
-        byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
+            byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
 
-        return createSoapMessage(contentType, charset, handler, xmlBytes);
+            return createSoapMessage(contentType, charset, handler, xmlBytes);
+        } finally {
+            rawXml.release();
+            processedXml.release();
+        }
     }
 
     private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream)
             throws Exception {
         try (BufferedWriter out = new BufferedWriter(writer)) {
-            XRoadSoapHandler handler = new XRoadSoapHandler(out);
+            XRoadSoapHandler handler = new XRoadSoapHandler(out, false);
+            parse(handler, inputStream);
+            return handler;
+        }
+    }
+
+    private static void parse(XRoadSoapHandler handler, InputStream inputStream) throws Exception {
+        try {
             SAXParser saxParser = PARSER_FACTORY.newSAXParser();
             XMLReader xmlReader = saxParser.getXMLReader();
             xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
@@ -223,7 +273,6 @@ public class SaxSoapParserImpl implements SoapParser {
             xmlReader.setFeature("http://apache.org/xml/features/scanner/notify-builtin-refs", true);
 
             saxParser.parse(inputStream, handler);
-            return handler;
         } catch (SAXException ex) {
             throw new SOAPException(ex);
         }
@@ -236,7 +285,7 @@ public class SaxSoapParserImpl implements SoapParser {
     }
 
     private static Soap createSoapFault(String charset,
-            ByteArrayOutputStream rawXml, CodedException fault) {
+            PooledByteArrayOutputStream rawXml, CodedException fault) {
         return new SoapFault(fault.getFaultCode(), fault.getFaultString(),
                 fault.getFaultActor(), fault.getFaultDetail(),
                 rawXml.toByteArray(), charset);
@@ -307,6 +356,9 @@ public class SaxSoapParserImpl implements SoapParser {
 
         private final BufferedWriter out;
 
+        /** If true, parsing is stopped as soon as the SOAP header has been read and validated. */
+        private final boolean headerOnly;
+
         private char[] xmlEntity;
 
         private Stack<XmlElementHandler> elementHandlers = new Stack<>();
@@ -436,6 +488,12 @@ public class SaxSoapParserImpl implements SoapParser {
             elementHandler.valueInternal();
             elementHandler.closeTag();
 
+            if (headerOnly && elementHandlers.size() == 1 && QNAME_SOAP_HEADER.equals(new QName(uri, localName))) {
+                envelopeHandler.validateHeader();
+
+                throw new HeaderParsedException();
+            }
+
             if (isProcessedXmlRequired()) {
                 QName element = new QName(uri, localName);
                 String prefix = findNamespacePrefix(qName);
@@ -481,6 +539,15 @@ public class SaxSoapParserImpl implements SoapParser {
         }
     }
 
+    /**
+     * Thrown to stop parsing once the SOAP header has been read.
+     */
+    static final class HeaderParsedException extends RuntimeException {
+        HeaderParsedException() {
+            super(null, null, false, false);
+        }
+    }
+
     private static void validateDuplicateHeader(QName qName,
             Object existing) {
         if (existing != null) {
@@ -45,6 +45,7 @@ import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_CONTENT_TYPE;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_REQUEST;
 import static ee.ria.xroad.common.ErrorCodes.X_MIME_PARSING_FAILED;
+import static ee.ria.xroad.common.ErrorCodes.X_MISSING_SOAP;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.util.MimeTypes.MULTIPART_RELATED;
 import static ee.ria.xroad.common.util.MimeTypes.TEXT_XML;
@@ -154,6 +155,60 @@ public class SoapMessageDecoder {
         callback.onCompleted();
     }
 
+    /**
+     * Reads only the SOAP header of the message from the given input stream.
+     * For multipart messages the header is read from the first part. The
+     * rest of the stream is left unread as far as the underlying parsers allow.
+     *
+     * @param soapStream input stream with the SOAP message data
+     * @return the parsed SOAP header
+     * @throws Exception if any errors occur
+     */
+    public SoapHeader parseHeader(InputStream soapStream) throws Exception {
+        if (baseContentType == null) {
+            throw new CodedException(X_INVALID_REQUEST,
+                    "Could not get content type from request");
+        }
+
+        if (!(parser instanceof SaxSoapParserImpl)) {
+            throw new CodedException(X_INTERNAL_ERROR,
+                    "SOAP parser does not support reading the header only");
+        }
+
+        SaxSoapParserImpl headerParser = (SaxSoapParserImpl) parser;
+
+        switch (baseContentType.toLowerCase()) {
+            case TEXT_XML:
+            case XOP_XML:
+                return headerParser.parseHeader(contentType, soapStream);
+            case MULTIPART_RELATED:
+                return readMultipartHeader(headerParser, soapStream);
+            default:
+                throw new CodedException(X_INVALID_CONTENT_TYPE,
+                        "Invalid content type: %s", baseContentType);
+        }
+    }
+
+    private SoapHeader readMultipartHeader(SaxSoapParserImpl headerParser, InputStream is) throws Exception {
+        log.trace("readMultipartHeader");
+
+        MimeConfig config = new MimeConfig.Builder().setHeadlessParsing(contentType).build();
+
+        MimeStreamParser mimeStreamParser = new MimeStreamParser(config);
+        MultipartHeaderHandler handler = new MultipartHeaderHandler(headerParser);
+        mimeStreamParser.setContentHandler(handler);
+
+        try {
+            mimeStreamParser.parse(is);
+        } catch (SaxSoapParserImpl.HeaderParsedException ex) {
+            return handler.header;
+        } catch (MimeException ex) {
+            throw new CodedException(X_MIME_PARSING_FAILED, ex);
+        }
+
+        throw new CodedException(X_MISSING_SOAP, "Request does not contain SOAP message");
+    }
+
     private void readSoapMessage(InputStream is) throws Exception {
         log.trace("readSoapMessage");
 
@@ -191,6 +246,42 @@ public class SoapMessageDecoder {
         }
     }
 
+    private static class MultipartHeaderHandler extends AbstractContentHandler {
+        private final SaxSoapParserImpl headerParser;
+
+        private String partContentType;
+        private SoapHeader header;
+
+        MultipartHeaderHandler(SaxSoapParserImpl headerParser) {
+            this.headerParser = headerParser;
+        }
+
+        @Override
+        public void startHeader() throws MimeException {
+            partContentType = null;
+        }
+
+        @Override
+        public void field(Field field) throws MimeException {
+            if (field.getName().toLowerCase().equals(HEADER_CONTENT_TYPE)) {
+                partContentType = field.getBody();
+            }
+        }
+
+        @Override
+        public void body(BodyDescriptor bd, InputStream is) throws MimeException, IOException {
+            if (partContentType == null) {
+                throw new CodedException(X_INVALID_CONTENT_TYPE,
+                        "Could not get content type for part");
+            }
+
+            // First part, consisting of the SOAP message, stop reading the rest of the message.
+            header = headerParser.parseHeader(partContentType, is);
+
+            throw new SaxSoapParserImpl.HeaderParsedException();
+        }
+    }
+
     private class MultipartHandler extends AbstractContentHandler {
         private Map<String, String> headers;
         private String partContentType;
@@ -27,62 +27,122 @@ package ee.ria.xroad.common.util;
 
 import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
 
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Caches stuff in a temporary file.
+ * Caches stuff in memory and, when the cached data grows beyond the memory threshold
+ * or the process-wide memory limit is reached, in a temporary file.
  */
 @Slf4j
 public class CachingStream extends FilterOutputStream {
+    private static final int CHUNK_SIZE = ChunkPool.CHUNK_SIZE;
+
+    private static final AtomicLong MEMORY_USAGE = new AtomicLong();
+    private static final AtomicLong SPILL_COUNT = new AtomicLong();
+    private static final AtomicLong SPILLED_BYTES = new AtomicLong();
+
+    private final int memoryThreshold;
+    private final long memoryLimit;
+
+    private volatile List<byte[]> chunks = new ArrayList<>();
+    private long memorySize;
+
     private SeekableByteChannel channel;
     private Path tempFile;
 
     /**
-     * Constructs a new caching stream that caches data in a temporary file.
+     * Constructs a new caching stream that caches data in memory up to the configured threshold
+     * and in a temporary file beyond it.
      *
      * @throws IOException if I/O errors occurred
      */
     public CachingStream() throws IOException {
-        // Construct the parent class with null stream and replace it later.
-        super(null);
+        this(SystemProperties.getCachingStreamMemoryThreshold(), SystemProperties.getCachingStreamMemoryLimit());
+    }
 
-        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
-        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+    CachingStream(int memoryThreshold, long memoryLimit) {
+        // The parent class stream is set once the data is spilled to a temporary file.
+        super(null);
 
-        // Now that we are set up, we can set the output stream in the
-        // parent class.
-        out = Channels.newOutputStream(channel);
+        this.memoryThreshold = memoryThreshold;
+        this.memoryLimit = memoryLimit;
     }
 
+    /**
+     * Flushes the stream and releases the memory and the temporary file used by the cache.
+     * The cached contents are not available after the stream has been closed.
+     * @see #consume()
+     */
     @Override
     public void close() throws IOException {
-        // we must not close the channel before reading it
-        flush();
+        try {
+            flush();
+        } finally {
+            consume();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkNotConsumed();
+
+        if (channel == null && !cacheInMemory(b)) {
+            spill();
+        }
+
+        if (channel != null) {
+            out.write(b);
+            SPILLED_BYTES.incrementAndGet();
+        }
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        // prevent FilterOutputStream from writing inefficiently
-        out.write(b, off, len);
+        checkNotConsumed();
+
+        if (channel == null && !cacheInMemory(b, off, len)) {
+            spill();
+        }
+
+        if (channel != null) {
+            // prevent FilterOutputStream from writing inefficiently
+            out.write(b, off, len);
+            SPILLED_BYTES.addAndGet(len);
+        }
     }
 
     /**
      * @return input stream that contains the encoded attachment contents.
      * The returned stream does not support mark, and closing the stream has no effect.
+     * The contents must be read before the caching stream is closed or consumed.
      * @see #consume() to free resources used by the cache.
      */
     public CacheInputStream getCachedContents() {
+        if (channel == null) {
+            return new CacheInputStream(new ChunkInputStream(chunks, memorySize), memorySize);
+        }
+
         try {
             return new CacheInputStream(channel);
         } catch (IOException ex) { // the position shouldn't really throw
@@ -91,9 +151,15 @@ public class CachingStream extends FilterOutputStream {
     }
 
     /**
-     * Finalize caching stream. Use to avoid file handle leaks.
+     * Finalize caching stream. Use to avoid file handle leaks and to release the memory used by the cache.
      */
     public void consume() {
+        releaseChunks();
+
+        if (channel == null) {
+            return;
+        }
+
         try {
             channel.close();
         } catch (IOException e) {
@@ -101,4 +167,203 @@ public class CachingStream extends FilterOutputStream {
         }
     }
 
+    /**
+     * @return total number of bytes currently cached in memory by all caching streams
+     */
+    public static long getMemoryUsage() {
+        return MEMORY_USAGE.get();
+    }
+
+    /**
+     * @return number of caching streams that have spilled to a temporary file
+     */
+    public static long getSpillCount() {
+        return SPILL_COUNT.get();
+    }
+
+    /**
+     * @return total number of bytes written to temporary files by caching streams
+     */
+    public static long getSpilledBytes() {
+        return SPILLED_BYTES.get();
+    }
+
+    private void checkNotConsumed() throws IOException {
+        if (channel == null && chunks == null) {
+            throw new IOException("Caching stream has been consumed");
+        }
+    }
+
+    private boolean cacheInMemory(int b) {
+        if (memorySize + 1 > memoryThreshold) {
+            return false;
+        }
+
+        List<byte[]> current = chunks;
+
+        if (memorySize == (long) current.size() * CHUNK_SIZE) {
+            if (!reserve(CHUNK_SIZE)) {
+                return false;
+            }
+
+            current.add(ChunkPool.take());
+        }
+
+        current.get((int) (memorySize / CHUNK_SIZE))[(int) (memorySize % CHUNK_SIZE)] = (byte) b;
+        memorySize++;
+
+        return true;
+    }
+
+    private boolean cacheInMemory(byte[] b, int off, int len) {
+        if (memorySize + len > memoryThreshold) {
+            return false;
+        }
+
+        List<byte[]> current = chunks;
+        int missingChunks = (int) ((memorySize + len + CHUNK_SIZE - 1) / CHUNK_SIZE) - current.size();
+
+        if (missingChunks > 0) {
+            if (!reserve((long) missingChunks * CHUNK_SIZE)) {
+                return false;
+            }
+
+            for (int i = 0; i < missingChunks; i++) {
+                current.add(ChunkPool.take());
+            }
+        }
+
+        int offset = off;
+        int remaining = len;
+
+        while (remaining > 0) {
+            int pos = (int) (memorySize % CHUNK_SIZE);
+            int count = Math.min(remaining, CHUNK_SIZE - pos);
+
+            System.arraycopy(b, offset, current.get((int) (memorySize / CHUNK_SIZE)), pos, count);
+
+            memorySize += count;
+            offset += count;
+            remaining -= count;
+        }
+
+        return true;
+    }
+
+    private boolean reserve(long bytes) {
+        long usage;
+
+        do {
+            usage = MEMORY_USAGE.get();
+
+            if (usage + bytes > memoryLimit) {
+                return false;
+            }
+        } while (!MEMORY_USAGE.compareAndSet(usage, usage + bytes));
+
+        return true;
+    }
+
+    private void spill() throws IOException {
+        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
+        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+
+        out = Channels.newOutputStream(channel);
+
+        long remaining = memorySize;
+
+        for (byte[] chunk : chunks) {
+            int count = (int) Math.min(remaining, CHUNK_SIZE);
+
+            out.write(chunk, 0, count);
+            remaining -= count;
+        }
+
+        SPILL_COUNT.incrementAndGet();
+        SPILLED_BYTES.addAndGet(memorySize);
+
+        log.trace("Spilled {} bytes of cached data to temporary file '{}'", memorySize, tempFile);
+
+        releaseChunks();
+    }
+
+    private void releaseChunks() {
+        List<byte[]> released = chunks;
+
+        if (released == null) {
+            return;
+        }
+
+        chunks = null;
+        memorySize = 0;
+
+        for (byte[] chunk : released) {
+            ChunkPool.release(chunk);
+        }
+
+        MEMORY_USAGE.addAndGet(-(long) released.size() * CHUNK_SIZE);
+    }
+
+    /**
+     * Reads the data cached in memory. Fails if the cache has been released in the meantime,
+     * since the released chunks may already be reused by another stream.
+     */
+    private final class ChunkInputStream extends InputStream {
+        private final List<byte[]> source;
+        private final long size;
+        private long position;
+
+        ChunkInputStream(List<byte[]> source, long size) {
+            this.source = source;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkAvailable();
+
+            if (position >= size) {
+                return -1;
+            }
+
+            int b = Byte.toUnsignedInt(source.get((int) (position / CHUNK_SIZE))[(int) (position % CHUNK_SIZE)]);
+            position++;
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkAvailable();
+
+            if (len == 0) {
+                return 0;
+            }
+
+            if (position >= size) {
+                return -1;
+            }
+
+            int pos = (int) (position % CHUNK_SIZE);
+            int count = (int) Math.min(Math.min(len, CHUNK_SIZE - pos), size - position);
+
+            System.arraycopy(source.get((int) (position / CHUNK_SIZE)), pos, b, off, count);
+            position += count;
+
+            return count;
+        }
+
+        private void checkAvailable() throws IOException {
+            if (source != chunks) {
+                throw new IOException("Cached contents are no longer available");
+            }
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(size - position, Integer.MAX_VALUE);
+        }
+    }
 }
@@ -0,0 +1,60 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Process-wide pool of fixed size byte chunks used by in-memory buffers.
+ */
+final class ChunkPool {
+    static final int CHUNK_SIZE = 8192;
+
+    private static final int MAX_POOLED_CHUNKS = 1024;
+
+    private static final BlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(MAX_POOLED_CHUNKS);
+
+    private ChunkPool() {
+    }
+
+    /**
+     * @return a pooled chunk or a new one if the pool is empty. The contents of the chunk are undefined.
+     */
+    static byte[] take() {
+        byte[] chunk = POOL.poll();
+
+        return chunk != null ? chunk : new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Returns the chunk to the pool. The chunk is left to the garbage collector if the pool is full.
+     * @param chunk the chunk, must not be used by the caller afterwards
+     */
+    static void release(byte[] chunk) {
+        POOL.offer(chunk);
+    }
+}
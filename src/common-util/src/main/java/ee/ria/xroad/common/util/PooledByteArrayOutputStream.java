@@ -0,0 +1,111 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte array output stream that collects the data in pooled fixed size chunks instead of a single
+ * growing array. Unlike {@link java.io.ByteArrayOutputStream}, the buffer is never copied while it grows,
+ * and the chunks are returned to the pool with {@link #release()} once the data is no longer needed.
+ * Chunks are taken from the pool only when data is written, so an unused stream costs nothing.
+ */
+public class PooledByteArrayOutputStream extends OutputStream {
+    private static final int CHUNK_SIZE = ChunkPool.CHUNK_SIZE;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+
+    private int count;
+
+    @Override
+    public void write(int b) {
+        int pos = count % CHUNK_SIZE;
+
+        if (pos == 0 && count / CHUNK_SIZE == chunks.size()) {
+            chunks.add(ChunkPool.take());
+        }
+
+        chunks.get(count / CHUNK_SIZE)[pos] = (byte) b;
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        int offset = off;
+        int remaining = len;
+
+        while (remaining > 0) {
+            int pos = count % CHUNK_SIZE;
+
+            if (pos == 0 && count / CHUNK_SIZE == chunks.size()) {
+                chunks.add(ChunkPool.take());
+            }
+
+            int length = Math.min(remaining, CHUNK_SIZE - pos);
+
+            System.arraycopy(b, offset, chunks.get(count / CHUNK_SIZE), pos, length);
+
+            count += length;
+            offset += length;
+            remaining -= length;
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return a new array of exactly {@link #size()} bytes that contains the written data
+     */
+    public byte[] toByteArray() {
+        byte[] result = new byte[count];
+        int remaining = count;
+
+        for (int i = 0; remaining > 0; i++) {
+            int length = Math.min(remaining, CHUNK_SIZE);
+
+            System.arraycopy(chunks.get(i), 0, result, i * CHUNK_SIZE, length);
+            remaining -= length;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the chunks to the pool and resets the stream. The stream can be reused afterwards.
+     */
+    public void release() {
+        chunks.forEach(ChunkPool::release);
+        chunks.clear();
+        count = 0;
+    }
+}
@@ -42,6 +42,7 @@ import javax.xml.soap.SOAPException;
 
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static ee.ria.xroad.common.ErrorCodes.X_DUPLICATE_HEADER_FIELD;
@@ -425,4 +426,50 @@ public class SoapMessageTest {
         thrown.expectError(X_INVALID_PROTOCOL_VERSION);
         createRequest("wrong-version.query");
     }
+
+    /**
+     * Test that reading only the header of a request does not require a valid body.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void headerOnlyIgnoresBody() throws Exception {
+        try (FileInputStream in = new FileInputStream(QUERY_DIR + "missing-body.query")) {
+            SoapHeader header = new SaxSoapParserImpl().parseHeader(MimeTypes.TEXT_XML_UTF8, in);
+
+            assertEquals(ClientId.create("EE", "BUSINESS", "10239452"), header.getClient());
+            assertNotNull(header.getQueryId());
+        }
+    }
+
+    /**
+     * Test that reading only the header of a request stops at the end of the header.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void headerOnlyLeavesBodyUnread() throws Exception {
+        byte[] data = fileToBytes("simple.query");
+        String xml = new String(data, StandardCharsets.UTF_8);
+        // everything after the header is garbage that would fail the full parse
+        byte[] truncated = (xml.substring(0, xml.indexOf("</SOAP-ENV:Header>") + "</SOAP-ENV:Header>".length())
+                + "<<not xml").getBytes(StandardCharsets.UTF_8);
+
+        SoapHeader header = new SaxSoapParserImpl().parseHeader(MimeTypes.TEXT_XML_UTF8,
+                new ByteArrayInputStream(truncated));
+
+        assertEquals(ServiceId.create("EE", "BUSINESS", "producer", null, "testQuery"), header.getService());
+        assertEquals("EE37702211234", header.getUserId());
+    }
+
+    /**
+     * Tests that missing required header fields are detected when reading only the header.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void headerOnlyMissingRequiredHeaderField() throws Exception {
+        thrown.expectError(X_MISSING_HEADER_FIELD);
+
+        try (FileInputStream in = new FileInputStream(QUERY_DIR + "faulty-header.query")) {
+            new SaxSoapParserImpl().parseHeader(MimeTypes.TEXT_XML_UTF8, in);
+        }
+    }
 }
@@ -0,0 +1,202 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link CachingStream}
+ */
+public class CachingStreamTest {
+    private static final String TEMP_DIR = "build/tmp";
+
+    /**
+     * Prepares the temporary files directory.
+     */
+    @Before
+    public void setUp() throws IOException {
+        Files.createDirectories(Paths.get(TEMP_DIR));
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, TEMP_DIR);
+    }
+
+    /**
+     * Small contents are cached in memory.
+     */
+    @Test
+    public void cachesSmallContentsInMemory() throws IOException {
+        byte[] data = randomBytes(20000);
+        long spillCount = CachingStream.getSpillCount();
+
+        CachingStream cache = new CachingStream(32768, Long.MAX_VALUE);
+        try {
+            cache.write(data[0]);
+            cache.write(data, 1, data.length - 1);
+
+            assertContents(data, cache.getCachedContents());
+            // the contents can be read more than once
+            assertContents(data, cache.getCachedContents());
+            assertEquals(spillCount, CachingStream.getSpillCount());
+        } finally {
+            cache.consume();
+        }
+    }
+
+    /**
+     * Contents exceeding the memory threshold are spilled to a temporary file.
+     */
+    @Test
+    public void spillsLargeContentsToFile() throws IOException {
+        byte[] data = randomBytes(50000);
+        long spillCount = CachingStream.getSpillCount();
+        long spilledBytes = CachingStream.getSpilledBytes();
+
+        CachingStream cache = new CachingStream(32768, Long.MAX_VALUE);
+        try {
+            cache.write(data, 0, 30000);
+            cache.write(data, 30000, data.length - 30000);
+
+            assertContents(data, cache.getCachedContents());
+            assertEquals(spillCount + 1, CachingStream.getSpillCount());
+            assertEquals(spilledBytes + data.length, CachingStream.getSpilledBytes());
+        } finally {
+            cache.consume();
+        }
+    }
+
+    /**
+     * Contents are spilled to a temporary file when the memory limit is reached.
+     */
+    @Test
+    public void spillsToFileWhenMemoryLimitReached() throws IOException {
+        byte[] data = randomBytes(10000);
+        long spillCount = CachingStream.getSpillCount();
+
+        CachingStream first = new CachingStream(32768, CachingStream.getMemoryUsage() + 16384);
+        CachingStream second = new CachingStream(32768, CachingStream.getMemoryUsage() + 16384);
+        try {
+            first.write(data);
+            second.write(data);
+
+            assertContents(data, first.getCachedContents());
+            assertContents(data, second.getCachedContents());
+            assertEquals(spillCount + 1, CachingStream.getSpillCount());
+        } finally {
+            first.consume();
+            second.consume();
+        }
+    }
+
+    /**
+     * Consuming the cache releases the memory used by it.
+     */
+    @Test
+    public void consumeReleasesMemory() throws IOException {
+        long memoryUsage = CachingStream.getMemoryUsage();
+
+        CachingStream cache = new CachingStream(32768, Long.MAX_VALUE);
+        cache.write(randomBytes(1000));
+        cache.consume();
+
+        assertEquals(memoryUsage, CachingStream.getMemoryUsage());
+    }
+
+    /**
+     * Closing the cache releases the memory used by it.
+     */
+    @Test
+    public void closeReleasesMemory() throws IOException {
+        long memoryUsage = CachingStream.getMemoryUsage();
+
+        CachingStream cache = new CachingStream(32768, Long.MAX_VALUE);
+        cache.write(randomBytes(1000));
+        cache.close();
+
+        assertEquals(memoryUsage, CachingStream.getMemoryUsage());
+    }
+
+    /**
+     * Single bytes are cached across chunk boundaries and spilled to a temporary file beyond the threshold.
+     */
+    @Test
+    public void cachesSingleBytes() throws IOException {
+        byte[] data = randomBytes(20000);
+        long spillCount = CachingStream.getSpillCount();
+
+        CachingStream small = new CachingStream(32768, Long.MAX_VALUE);
+        CachingStream large = new CachingStream(16384, Long.MAX_VALUE);
+        try {
+            for (byte b : data) {
+                small.write(b);
+                large.write(b);
+            }
+
+            assertContents(data, small.getCachedContents());
+            assertContents(data, large.getCachedContents());
+            assertEquals(spillCount + 1, CachingStream.getSpillCount());
+        } finally {
+            small.consume();
+            large.consume();
+        }
+    }
+
+    /**
+     * Reading the cached contents fails after the cache has been consumed.
+     */
+    @Test(expected = IOException.class)
+    public void readAfterConsumeFails() throws IOException {
+        CachingStream cache = new CachingStream(32768, Long.MAX_VALUE);
+        cache.write(randomBytes(1000));
+
+        CacheInputStream contents = cache.getCachedContents();
+        cache.consume();
+
+        contents.read();
+    }
+
+    private static void assertContents(byte[] expected, CacheInputStream contents) throws IOException {
+        assertEquals(expected.length, contents.size());
+        assertArrayEquals(expected, IOUtils.toByteArray(contents));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random().nextBytes(data);
+
+        return data;
+    }
+}
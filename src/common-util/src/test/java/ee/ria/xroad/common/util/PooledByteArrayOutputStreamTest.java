@@ -0,0 +1,74 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link PooledByteArrayOutputStream}
+ */
+public class PooledByteArrayOutputStreamTest {
+
+    /**
+     * Data written across chunk boundaries is returned unchanged.
+     */
+    @Test
+    public void writesAcrossChunks() {
+        byte[] data = new byte[3 * ChunkPool.CHUNK_SIZE + 123];
+        new Random().nextBytes(data);
+
+        PooledByteArrayOutputStream out = new PooledByteArrayOutputStream();
+        out.write(data[0]);
+        out.write(data, 1, ChunkPool.CHUNK_SIZE);
+        out.write(data, ChunkPool.CHUNK_SIZE + 1, data.length - ChunkPool.CHUNK_SIZE - 1);
+
+        assertEquals(data.length, out.size());
+        assertArrayEquals(data, out.toByteArray());
+
+        out.release();
+    }
+
+    /**
+     * The stream is empty and reusable after release.
+     */
+    @Test
+    public void reusableAfterRelease() {
+        PooledByteArrayOutputStream out = new PooledByteArrayOutputStream();
+        out.write(new byte[ChunkPool.CHUNK_SIZE], 0, ChunkPool.CHUNK_SIZE);
+        out.release();
+
+        assertEquals(0, out.size());
+        assertArrayEquals(new byte[0], out.toByteArray());
+
+        out.write(new byte[] {1, 2, 3}, 0, 3);
+        assertArrayEquals(new byte[] {1, 2, 3}, out.toByteArray());
+    }
+}
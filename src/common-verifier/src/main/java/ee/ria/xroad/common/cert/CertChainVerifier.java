@@ -26,12 +26,18 @@
 package ee.ria.xroad.common.cert;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
 import ee.ria.xroad.common.ocsp.OcspVerifier;
 import ee.ria.xroad.common.ocsp.OcspVerifierOptions;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.RequiredArgsConstructor;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
 
 import java.security.cert.CertPath;
 import java.security.cert.CertPathBuilder;
@@ -50,12 +56,15 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_CERT_PATH;
 import static ee.ria.xroad.common.ErrorCodes.X_CERT_VALIDATION;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_CERT_PATH_X;
 import static ee.ria.xroad.common.ErrorCodes.translateWithPrefix;
 import static ee.ria.xroad.common.cert.CertHelper.getOcspResponseForCert;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
 
 /**
  * Certificate chain verifier.
@@ -65,8 +74,23 @@ public class CertChainVerifier {
     /** Default validation algorithm type is PKIX. */
     private static final String VALIDATION_ALGORITHM = "PKIX";
 
+    /**
+     * Successful verifications keyed by the chain and OCSP response hashes. The entries are invalidated
+     * when the global configuration changes, since the CA certificates used for verification come from it.
+     */
+    private static final Cache<String, VerifiedChain> VERIFIED_CHAINS = CacheBuilder.newBuilder()
+            .maximumSize(SystemProperties.getCertChainVerifierCacheSize())
+            .build();
+
+    private static final AtomicLong CACHE_HITS = new AtomicLong();
+    private static final AtomicLong CACHE_MISSES = new AtomicLong();
+
+    static {
+        GlobalConf.addChangeListener(VERIFIED_CHAINS::invalidateAll);
+    }
+
     /** Holds the PKIX algorithm parameters. */
-    private final PKIXBuilderParameters pkixParams;
+    private PKIXBuilderParameters pkixParams;
 
     /** Holds the constructed certificate path. */
     private CertPath certPath;
@@ -74,6 +98,9 @@ public class CertChainVerifier {
     /** Holds the cert chain to be verified. */
     private CertChain certChain;
 
+    /** Holds the last date at which the verification result stays valid. */
+    private Date validUntil;
+
     /**
      * Builds the certificate path for the target certificate using a list
      * of trust anchors and a list of intermediate certificates.
@@ -81,28 +108,6 @@ public class CertChainVerifier {
      */
     public CertChainVerifier(CertChain certChain) {
         this.certChain = certChain;
-
-        Set<TrustAnchor> trustAnchors =
-                createTrustAnchorSet(
-                        Arrays.asList(certChain.getTrustedRootCert()));
-
-        X509CertSelector certSelector = new X509CertSelector();
-        certSelector.setCertificate(certChain.getEndEntityCert());
-
-        try {
-            pkixParams = new PKIXBuilderParameters(trustAnchors, certSelector);
-            pkixParams.setRevocationEnabled(false);
-
-            if (!certChain.getAdditionalCerts().isEmpty()) {
-                CertStore intermediateCertStore =
-                        CertStore.getInstance("Collection",
-                                new CollectionCertStoreParameters(
-                                        certChain.getAdditionalCerts()), "BC");
-                pkixParams.addCertStore(intermediateCertStore);
-            }
-        } catch (Exception e) {
-            throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, e);
-        }
     }
 
     /**
@@ -121,7 +126,7 @@ public class CertChainVerifier {
      * @param atDate the date at which to verify the chain
      */
     public void verifyChainOnly(Date atDate) {
-        verifyImpl(null, atDate);
+        verifyImpl(null, atDate, 0, false);
     }
 
     /**
@@ -130,6 +135,8 @@ public class CertChainVerifier {
      * intermediate certificates if provided. Then the certificate path is
      * validated. Lastly, for each certificate in the chain, the corresponding
      * OCSP response is found and verified.
+     * Successful verifications are cached until the earliest of the certificate
+     * expiration, OCSP response freshness deadline and OCSP nextUpdate.
      * If verification fails, throws CodedException with error code
      * InvalidCertPath...
      * @param ocspResponses list of OCSP responses that are used to
@@ -142,21 +149,79 @@ public class CertChainVerifier {
                     "List of OCSP responses cannot be null or empty");
         }
 
-        verifyImpl(ocspResponses, atDate);
+        int ocspFreshnessSeconds = GlobalConf.getOcspFreshnessSeconds(false);
+        boolean verifyNextUpdate = GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate();
+
+        String cacheKey = getCacheKey(ocspResponses, ocspFreshnessSeconds, verifyNextUpdate);
+
+        VerifiedChain verified = VERIFIED_CHAINS.getIfPresent(cacheKey);
+        if (verified != null && verified.isValidAt(atDate)) {
+            CACHE_HITS.incrementAndGet();
+            certPath = verified.certPath;
+            validUntil = verified.validUntil;
+            return;
+        }
+
+        CACHE_MISSES.incrementAndGet();
+
+        validUntil = verifyImpl(ocspResponses, atDate, ocspFreshnessSeconds, verifyNextUpdate);
+
+        VERIFIED_CHAINS.put(cacheKey, new VerifiedChain(certPath, getValidFrom(getCerts()),
+                validUntil));
+    }
+
+    /**
+     * @return the last date at which the result of {@link #verify(List, Date)} stays valid, that is the earliest of
+     * the certificate expiration, OCSP response freshness deadline and OCSP nextUpdate
+     */
+    public Date getValidUntil() {
+        return validUntil;
+    }
+
+    /**
+     * @return number of chain verifications served from the cache
+     */
+    public static long getCacheHitCount() {
+        return CACHE_HITS.get();
+    }
+
+    /**
+     * @return number of chain verifications that were not found in the cache
+     */
+    public static long getCacheMissCount() {
+        return CACHE_MISSES.get();
     }
 
-    private void verifyImpl(List<OCSPResp> ocspResponses, Date atDate) {
-        pkixParams.setDate(atDate);
+    /**
+     * Removes all cached verification results.
+     */
+    public static void clearCache() {
+        VERIFIED_CHAINS.invalidateAll();
+    }
+
+    private Date verifyImpl(List<OCSPResp> ocspResponses, Date atDate, int ocspFreshnessSeconds,
+            boolean verifyNextUpdate) {
         try {
-            certPath = buildCertPath(pkixParams);
+            PKIXBuilderParameters params = getPkixParams();
+            params.setDate(atDate);
+
+            certPath = buildCertPath(params);
 
             PKIXCertPathValidatorResult pkixResult =
-                    verifyCertPath(certPath, pkixParams);
+                    verifyCertPath(certPath, params);
+
+            Date validUntil = getValidUntil(getCerts());
 
             if (ocspResponses != null) {
-                verifyOcspResponses(
-                        getCerts(), ocspResponses, pkixResult, atDate);
+                Date ocspValidUntil = verifyOcspResponses(getCerts(), ocspResponses, pkixResult, atDate,
+                        ocspFreshnessSeconds, verifyNextUpdate);
+
+                if (ocspValidUntil.before(validUntil)) {
+                    validUntil = ocspValidUntil;
+                }
             }
+
+            return validUntil;
         } catch (CertPathBuilderException ex) {
             throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, ex);
         } catch (Exception ex) {
@@ -164,9 +229,48 @@ public class CertChainVerifier {
         }
     }
 
-    private void verifyOcspResponses(List<X509Certificate> certs,
+    private PKIXBuilderParameters getPkixParams() {
+        if (pkixParams != null) {
+            return pkixParams;
+        }
+
+        Set<TrustAnchor> trustAnchors =
+                createTrustAnchorSet(
+                        Arrays.asList(certChain.getTrustedRootCert()));
+
+        X509CertSelector certSelector = new X509CertSelector();
+        certSelector.setCertificate(certChain.getEndEntityCert());
+
+        try {
+            pkixParams = new PKIXBuilderParameters(trustAnchors, certSelector);
+            pkixParams.setRevocationEnabled(false);
+
+            if (!certChain.getAdditionalCerts().isEmpty()) {
+                CertStore intermediateCertStore =
+                        CertStore.getInstance("Collection",
+                                new CollectionCertStoreParameters(
+                                        certChain.getAdditionalCerts()), "BC");
+                pkixParams.addCertStore(intermediateCertStore);
+            }
+        } catch (Exception e) {
+            throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, e);
+        }
+
+        return pkixParams;
+    }
+
+    /**
+     * Verifies the OCSP responses of the certificates and returns the last date at which all of them
+     * are still considered valid.
+     */
+    private Date verifyOcspResponses(List<X509Certificate> certs,
             List<OCSPResp> ocspResponses, PKIXCertPathValidatorResult result,
-            Date atDate) throws Exception {
+            Date atDate, int ocspFreshnessSeconds, boolean verifyNextUpdate) throws Exception {
+        OcspVerifier verifier = new OcspVerifier(ocspFreshnessSeconds,
+                new OcspVerifierOptions(verifyNextUpdate));
+
+        Date validUntil = null;
+
         for (X509Certificate subject : certs) {
             X509Certificate issuer =
                     GlobalConf.getCaCert(certChain.getInstanceIdentifier(),
@@ -179,11 +283,77 @@ public class CertChainVerifier {
                         + subject.getSubjectX500Principal().getName());
             }
 
-            OcspVerifier verifier = new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(false),
-                    new OcspVerifierOptions(GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
             verifier.verifyValidityAndStatus(response, subject, issuer,
                     atDate);
+
+            Date responseValidUntil = getValidUntil(response, ocspFreshnessSeconds, verifyNextUpdate);
+
+            if (validUntil == null || responseValidUntil.before(validUntil)) {
+                validUntil = responseValidUntil;
+            }
+        }
+
+        return validUntil;
+    }
+
+    private String getCacheKey(List<OCSPResp> ocspResponses, int ocspFreshnessSeconds, boolean verifyNextUpdate) {
+        try {
+            StringBuilder key = new StringBuilder(certChain.getInstanceIdentifier())
+                    .append(':').append(ocspFreshnessSeconds)
+                    .append(':').append(verifyNextUpdate)
+                    .append(':').append(hexDigest(SHA256_ID, certChain.getEndEntityCert().getEncoded()))
+                    .append(':').append(hexDigest(SHA256_ID, certChain.getTrustedRootCert().getEncoded()));
+
+            for (X509Certificate cert : certChain.getAdditionalCerts()) {
+                key.append(':').append(hexDigest(SHA256_ID, cert.getEncoded()));
+            }
+
+            for (OCSPResp response : ocspResponses) {
+                key.append(':').append(hexDigest(SHA256_ID, response.getEncoded()));
+            }
+
+            return key.toString();
+        } catch (Exception ex) {
+            throw translateWithPrefix(X_INVALID_CERT_PATH_X, ex);
+        }
+    }
+
+    private static Date getValidFrom(List<X509Certificate> certs) {
+        Date validFrom = null;
+
+        for (X509Certificate cert : certs) {
+            if (validFrom == null || cert.getNotBefore().after(validFrom)) {
+                validFrom = cert.getNotBefore();
+            }
         }
+
+        return validFrom;
+    }
+
+    private static Date getValidUntil(List<X509Certificate> certs) {
+        Date validUntil = null;
+
+        for (X509Certificate cert : certs) {
+            if (validUntil == null || cert.getNotAfter().before(validUntil)) {
+                validUntil = cert.getNotAfter();
+            }
+        }
+
+        return validUntil;
+    }
+
+    private static Date getValidUntil(OCSPResp response, int ocspFreshnessSeconds, boolean verifyNextUpdate)
+            throws Exception {
+        SingleResp singleResp = ((BasicOCSPResp) response.getResponseObject()).getResponses()[0];
+
+        Date validUntil = Date.from(singleResp.getThisUpdate().toInstant().plusSeconds(ocspFreshnessSeconds));
+
+        if (verifyNextUpdate && singleResp.getNextUpdate() != null
+                && singleResp.getNextUpdate().before(validUntil)) {
+            validUntil = singleResp.getNextUpdate();
+        }
+
+        return validUntil;
     }
 
     private static CertPath buildCertPath(PKIXBuilderParameters pkixParams)
@@ -218,4 +388,17 @@ public class CertChainVerifier {
         return trustAnchors;
     }
 
+    /**
+     * Certificate path of a successful verification and the period in which the verification result holds.
+     */
+    @RequiredArgsConstructor
+    private static final class VerifiedChain {
+        private final CertPath certPath;
+        private final Date validFrom;
+        private final Date validUntil;
+
+        boolean isValidAt(Date atDate) {
+            return !atDate.before(validFrom) && !atDate.after(validUntil);
+        }
+    }
 }
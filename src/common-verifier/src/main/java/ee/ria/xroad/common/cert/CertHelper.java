@@ -86,9 +86,10 @@ public final class CertHelper {
      * @param chain the certificate chain
      * @param ocspResponses OCSP responses used in the cert chain
      * @param member the member
+     * @return the last date at which the verification result stays valid
      * @throws Exception if verification fails.
      */
-    public static void verifyAuthCert(CertChain chain, List<OCSPResp> ocspResponses, ClientId member) throws Exception {
+    public static Date verifyAuthCert(CertChain chain, List<OCSPResp> ocspResponses, ClientId member) throws Exception {
         X509Certificate cert = chain.getEndEntityCert();
         if (!CertUtils.isAuthCert(cert)) {
             throw new CodedException(X_SSL_AUTH_FAILED,
@@ -100,8 +101,9 @@ public final class CertHelper {
                         cert.getSubjectX500Principal().getName(), member });
 
         // Verify certificate against CAs.
+        CertChainVerifier verifier = new CertChainVerifier(chain);
         try {
-            new CertChainVerifier(chain).verify(ocspResponses, new Date());
+            verifier.verify(ocspResponses, new Date());
         } catch (CodedException e) {
             // meaningful errors get SSL auth verification prefix
             throw e.withPrefix(X_SSL_AUTH_FAILED);
@@ -123,6 +125,8 @@ public final class CertHelper {
                             + "with any security server",
                             cert.getSubjectX500Principal());
         }
+
+        return verifier.getValidUntil();
     }
 
     /**
@@ -46,6 +46,7 @@ import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
@@ -58,6 +59,8 @@ public final class GlobalConf {
 
     private static volatile GlobalConfProvider instance;
 
+    private static final List<Runnable> CHANGE_LISTENERS = new CopyOnWriteArrayList<>();
+
     private GlobalConf() {
     }
 
@@ -99,6 +102,8 @@ public final class GlobalConf {
         synchronized (GlobalConf.class) {
             instance = conf;
         }
+
+        configurationChanged();
     }
 
     /**
@@ -110,6 +115,26 @@ public final class GlobalConf {
         synchronized (GlobalConf.class) {
             instance = null;
         }
+
+        configurationChanged();
+    }
+
+    /**
+     * Registers a listener that is called whenever the configuration has been reloaded with changes.
+     * Used to invalidate data derived from the configuration.
+     * @param listener the listener
+     */
+    public static void addChangeListener(Runnable listener) {
+        CHANGE_LISTENERS.add(listener);
+    }
+
+    /**
+     * Notifies the change listeners that the configuration has changed.
+     */
+    static void configurationChanged() {
+        log.trace("configurationChanged called");
+
+        CHANGE_LISTENERS.forEach(Runnable::run);
     }
 
     // ------------------------------------------------------------------------
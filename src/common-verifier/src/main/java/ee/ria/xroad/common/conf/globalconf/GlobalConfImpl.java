@@ -103,6 +103,10 @@ public class GlobalConfImpl implements GlobalConfProvider {
         } catch (Exception e) {
             throw translateWithPrefix(X_MALFORMED_GLOBALCONF, e);
         }
+
+        if (confDir.isChanged()) {
+            GlobalConf.configurationChanged();
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -207,11 +211,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p == null ? null : p.getMembers().stream()
-                .filter(m -> p.createMemberId(m).memberEquals(clientId))
-                .map(MemberType::getName)
-                .findFirst()
-                .orElse(null);
+        return p == null ? null : p.getMemberName(clientId);
     }
 
     @Override
@@ -250,11 +250,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p == null ? null : p.getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(
-                        globalGroupId.getGroupCode()))
-                .map(GlobalGroupType::getDescription)
-                .findFirst().orElse(null);
+        GlobalGroupType group = p == null ? null : p.findGlobalGroup(globalGroupId);
+
+        return group == null ? null : group.getDescription();
     }
 
     @Override
@@ -340,13 +338,8 @@ public class GlobalConfImpl implements GlobalConfProvider {
         List<X509Certificate> responderCerts = new ArrayList<>();
         try {
             for (SharedParametersV2 p : getSharedParameters()) {
-                for (List<OcspInfoType> ocspTypes
-                        : p.getCaCertsAndOcspData().values()) {
-                    ocspTypes.stream().map(OcspInfoType::getCert)
-                            .filter(Objects::nonNull)
-                            .map(CryptoUtils::readCertificate)
-                            .forEach(responderCerts::add);
-                }
+                p.getCaCertsAndOcspResponderCerts().values()
+                        .forEach(responderCerts::addAll);
             }
         } catch (Exception e) {
             log.error("Error while getting OCSP responder certificates", e);
@@ -424,12 +417,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
     public boolean isOcspResponderCert(X509Certificate ca,
             X509Certificate ocspCert) {
         return getSharedParameters().stream()
-                .map(p -> p.getCaCertsAndOcspData().get(ca))
-                .filter(Objects::nonNull).flatMap(o -> o.stream())
-                .map(OcspInfoType::getCert).filter(Objects::nonNull)
-                .map(CryptoUtils::readCertificate)
-                .filter(c -> c.equals(ocspCert))
-                .findFirst().isPresent();
+                .map(p -> p.getCaCertsAndOcspResponderCerts().get(ca))
+                .filter(Objects::nonNull)
+                .anyMatch(certs -> certs.contains(ocspCert));
     }
 
     @Override
@@ -590,13 +580,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
             return false;
         }
 
-        GlobalGroupType group = p.findGlobalGroup(groupId);
-        if (group == null) {
-            return false;
-        }
-
-        return group.getGroupMember().stream().filter(m -> m.equals(subjectId))
-                .findFirst().isPresent();
+        return p.isGlobalGroupMember(groupId, subjectId);
     }
 
     @Override
@@ -45,6 +45,8 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -77,6 +79,40 @@ public class CertChainTest {
                 makeDate(userCert.getNotBefore(), 1));
     }
 
+    /**
+     * Tests that a successful verification is cached only for the period in which it holds.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cachedVerification() throws Exception {
+        X509Certificate rootCa = TestCertUtil.getCertChainCert("root_ca.p12");
+        X509Certificate userCert = TestCertUtil.getCertChainCert("user_0.p12");
+
+        CertChain chain = new CertChain("EE", userCert, rootCa,
+                new ArrayList<X509Certificate>());
+        List<OCSPResp> ocspResponses = getAllOcspResponses();
+
+        CertChainVerifier.clearCache();
+        long hits = CertChainVerifier.getCacheHitCount();
+
+        CertChainVerifier verifier = new CertChainVerifier(chain);
+        verifier.verify(ocspResponses, makeDate(userCert.getNotBefore(), 1));
+        CertChainVerifier cachedVerifier = new CertChainVerifier(chain);
+        cachedVerifier.verify(ocspResponses, makeDate(userCert.getNotBefore(), 2));
+        assertEquals(hits + 1, CertChainVerifier.getCacheHitCount());
+
+        // the cached result is valid as long as the original one
+        assertNotNull(verifier.getValidUntil());
+        assertEquals(verifier.getValidUntil(), cachedVerifier.getValidUntil());
+
+        try {
+            verify(chain, ocspResponses, makeDate(userCert.getNotAfter(), 1));
+            fail("Verification of an expired certificate should fail");
+        } catch (CodedException expected) {
+            assertEquals(hits + 1, CertChainVerifier.getCacheHitCount());
+        }
+    }
+
     /**
      * Tests verifying a certificate chain with 3 intermediate certificates.
      * @throws Exception if an error occurs
@@ -180,6 +180,28 @@ public class GlobalConfTest {
                 .collect(Collectors.toList()));
     }
 
+    /**
+     * Tests getting the member names.
+     */
+    @Test
+    public void getMemberName() {
+        assertEquals("Experimental producer", GlobalConf.getMemberName(newClientId("producer")));
+        assertEquals("Org with no address", GlobalConf.getMemberName(newClientId("foo", "foosubsystem")));
+        assertNull(GlobalConf.getMemberName(newClientId("unknown")));
+    }
+
+    /**
+     * Tests checking the global group membership.
+     */
+    @Test
+    public void isSubjectInGlobalGroup() {
+        GlobalGroupId group = GlobalGroupId.create("EE", "Test group");
+
+        assertTrue(GlobalConf.isSubjectInGlobalGroup(newClientId("member2"), group));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(newClientId("member1"), group));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(newClientId("member2"), GlobalGroupId.create("EE", "foo")));
+    }
+
     /**
      * Tests getting the central services.
      */
@@ -29,16 +29,14 @@ import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 
-import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -52,6 +50,10 @@ import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getServiceTypeN
 /**
  * Health data metrics forwarded over JMX. Also, these metrics are used when
  * health data is requested using the getSecurityServerHealthData SOAP request.
+ * The request counts and histograms cover the statistics period with a fixed
+ * number of time slices, so their size does not depend on the number of
+ * requests. The metrics are registered atomically, store requests are
+ * processed concurrently.
  */
 @Slf4j
 final class HealthDataMetrics {
@@ -69,10 +71,11 @@ final class HealthDataMetrics {
     // The timestamps of last successful and unsuccessful requests are stored
     // for each service that is handled for, and are provided when the
     // respective gauge is queried.
-    private static Map<String, Long> requestTimestamps = new HashMap<>();
+    private static Map<String, Long> requestTimestamps =
+            new ConcurrentHashMap<>();
 
     // Stores the service types of the services
-    private static Map<String, String> serviceTypes = new HashMap<>();
+    private static Map<String, String> serviceTypes = new ConcurrentHashMap<>();
 
     private HealthDataMetrics() {
     }
@@ -131,40 +134,26 @@ final class HealthDataMetrics {
         String expectedGaugeName = getLastRequestTimestampGaugeName(serviceId,
                 rec.getSucceeded());
         requestTimestamps.put(expectedGaugeName, rec.getResponseOutTs());
-        Gauge gauge = HealthDataMetricsUtil.findGauge(registry,
-                expectedGaugeName);
-        if (gauge == null) {
-            registry.register(expectedGaugeName,
-                    (Gauge<Long>) () -> requestTimestamps.get(
-                            expectedGaugeName));
-        }
+        registry.gauge(expectedGaugeName,
+                () -> (Gauge<Long>) () -> requestTimestamps.get(
+                        expectedGaugeName));
 
         // service type
         String serviceTypeGaugeName = getServiceTypeName(serviceId);
         serviceTypes.put(serviceTypeGaugeName, rec.getServiceType());
-        Gauge serviceTypeGauge = HealthDataMetricsUtil.findGauge(registry,
-                serviceTypeGaugeName);
-        if (serviceTypeGauge == null) {
-            registry.register(serviceTypeGaugeName,
-                    (Gauge<String>) () -> serviceTypes.get(serviceTypeGaugeName));
-        }
+        registry.gauge(serviceTypeGaugeName,
+                () -> (Gauge<String>) () -> serviceTypes.get(serviceTypeGaugeName));
     }
 
     private static void registerOrUpdateCounters(MetricRegistry registry,
             ServiceId serviceId, OperationalDataRecord rec) {
         String expectedCounterName = getRequestCounterName(serviceId,
                 rec.getSucceeded());
-        Counter counter = HealthDataMetricsUtil.findCounter(registry,
-                expectedCounterName);
-
-        if (counter == null) {
-            // Register and increment a new counter.
-            counter = new SlidingTimeWindowCounter(
-                    OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS, TimeUnit.SECONDS);
-            registry.register(expectedCounterName, counter);
-        }
 
-        counter.inc();
+        registry.counter(expectedCounterName,
+                () -> new SlidingTimeWindowCounter(
+                        OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
+                        TimeUnit.SECONDS)).inc();
     }
 
     private static void registerOrUpdateHistograms(MetricRegistry registry,
@@ -179,17 +168,10 @@ final class HealthDataMetrics {
 
         if (newValue == null) return;
 
-        Histogram histogram = HealthDataMetricsUtil.findHistogram(registry, histogramName);
-
-        if (histogram == null) {
-            // Add a histogram corresponding to the service and update it.
-            histogram = registry.register(histogramName,
-                    new Histogram(new SlidingTimeWindowReservoir(
-                            OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
-                            TimeUnit.SECONDS)));
-        }
-
-        histogram.update(newValue);
+        registry.histogram(histogramName,
+                () -> new Histogram(new SlidingTimeWindowBucketReservoir(
+                        OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
+                        TimeUnit.SECONDS))).update(newValue);
     }
 
     /**
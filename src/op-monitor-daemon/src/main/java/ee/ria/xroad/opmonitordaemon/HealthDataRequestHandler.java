@@ -40,6 +40,7 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -218,36 +219,42 @@ public class HealthDataRequestHandler extends QueryRequestHandler {
                     Optional.ofNullable(findHistogram(healthMetricRegistry,
                             getRequestDurationName(service)));
             requestDuration.ifPresent(h -> {
-                lastPeriodStats.setRequestMinDuration(h.getSnapshot().getMin());
+                Snapshot snapshot = h.getSnapshot();
+
+                lastPeriodStats.setRequestMinDuration(snapshot.getMin());
                 lastPeriodStats.setRequestAverageDuration(
-                        h.getSnapshot().getMean());
-                lastPeriodStats.setRequestMaxDuration(h.getSnapshot().getMax());
+                        snapshot.getMean());
+                lastPeriodStats.setRequestMaxDuration(snapshot.getMax());
                 lastPeriodStats.setRequestDurationStdDev(
-                        h.getSnapshot().getStdDev());
+                        snapshot.getStdDev());
             });
 
             Optional<Histogram> requestSize =
                     Optional.ofNullable(findHistogram(healthMetricRegistry,
                             getRequestSizeName(service)));
             requestSize.ifPresent(h -> {
-                lastPeriodStats.setRequestMinSize(h.getSnapshot().getMin());
+                Snapshot snapshot = h.getSnapshot();
+
+                lastPeriodStats.setRequestMinSize(snapshot.getMin());
                 lastPeriodStats.setRequestAverageSize(
-                        h.getSnapshot().getMean());
-                lastPeriodStats.setRequestMaxSize(h.getSnapshot().getMax());
+                        snapshot.getMean());
+                lastPeriodStats.setRequestMaxSize(snapshot.getMax());
                 lastPeriodStats.setRequestSizeStdDev(
-                        h.getSnapshot().getStdDev());
+                        snapshot.getStdDev());
             });
 
             Optional<Histogram> responseSize =
                     Optional.ofNullable(findHistogram(healthMetricRegistry,
                             getResponseSizeName(service)));
             responseSize.ifPresent(h -> {
-                lastPeriodStats.setResponseMinSize(h.getSnapshot().getMin());
+                Snapshot snapshot = h.getSnapshot();
+
+                lastPeriodStats.setResponseMinSize(snapshot.getMin());
                 lastPeriodStats.setResponseAverageSize(
-                        h.getSnapshot().getMean());
-                lastPeriodStats.setResponseMaxSize(h.getSnapshot().getMax());
+                        snapshot.getMean());
+                lastPeriodStats.setResponseMaxSize(snapshot.getMax());
                 lastPeriodStats.setResponseSizeStdDev(
-                        h.getSnapshot().getStdDev());
+                        snapshot.getStdDev());
             });
         }
 
@@ -26,6 +26,7 @@
 package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.db.DatabaseMetrics;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.StartStop;
@@ -150,5 +151,8 @@ final class OpMonitorDaemon implements StartStop {
 
     private void registerHealthMetrics() {
         HealthDataMetrics.registerInitialMetrics(healthMetricRegistry, this::getStartTimestamp);
+
+        // Report the database transaction and connection pool metrics over JMX together with the health data
+        DatabaseMetrics.setMetricRegistry(healthMetricRegistry);
     }
 }
@@ -0,0 +1,84 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.CodedException;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static ee.ria.xroad.common.ErrorCodes.CLIENT_X;
+import static ee.ria.xroad.common.ErrorCodes.X_INVALID_REQUEST;
+
+/**
+ * Position of the last operational data record of a keyset paginated
+ * response. The records are ordered by (monitoringDataTs, id), so the next
+ * page starts from the first record after this position. The token is
+ * opaque to the clients.
+ */
+@Value
+class OperationalDataContinuationToken {
+
+    private static final String SEPARATOR = ":";
+
+    long monitoringDataTs;
+    long id;
+
+    /**
+     * @return the token as a string to be included in the response
+     */
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (monitoringDataTs + SEPARATOR + id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decodes the continuation token of a request.
+     * @param token the token, may be empty
+     * @return the decoded token or null if the token is empty
+     */
+    static OperationalDataContinuationToken decode(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.US_ASCII)
+                    .split(SEPARATOR);
+
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Unexpected number of token parts: " + parts.length);
+            }
+
+            return new OperationalDataContinuationToken(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new CodedException(X_INVALID_REQUEST, "Invalid continuation token: " + token)
+                    .withPrefix(CLIENT_X);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
+
+/**
+ * Maintains the time range partitions of the operational_data table. The
+ * table is partitioned by monitoring_data_ts on PostgreSQL 11 or later (see
+ * the 6-partitioning database migration). Partitions are aligned to the
+ * configured interval and created ahead of time, and expired data is
+ * removed by dropping whole partitions, so the cost of the cleanup depends
+ * on the number of partitions rather than on the number of records.
+ */
+@Slf4j
+final class OperationalDataPartitions {
+
+    static final String DEFAULT_PARTITION = "operational_data_default";
+
+    private static final String PARTITION_PREFIX = "operational_data_";
+
+    private static final String POSTGRESQL = "PostgreSQL";
+
+    private static final Pattern RANGE_BOUND = Pattern.compile(
+            "FROM \\('?(-?\\d+|MINVALUE)'?\\) TO \\('?(-?\\d+|MAXVALUE)'?\\)");
+
+    private static volatile Boolean partitioned;
+
+    private OperationalDataPartitions() {
+    }
+
+    /**
+     * A range partition of the operational_data table, covering the records
+     * with rangeStart <= monitoring_data_ts < rangeEnd.
+     */
+    @Value
+    static class Partition {
+        String name;
+        long rangeStart;
+        long rangeEnd;
+    }
+
+    /**
+     * @return true if the operational_data table is partitioned, false if
+     * the records must be deleted one by one
+     * @throws Exception if an error occurs
+     */
+    static boolean isPartitioned() throws Exception {
+        Boolean result = partitioned;
+
+        if (result == null) {
+            result = doInTransaction(OperationalDataPartitions::isPartitionedTable);
+            partitioned = result;
+
+            log.info("Operational data table is {}partitioned", result ? "" : "not ");
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the partitions for the interval containing the given time and
+     * the configured number of intervals after it, unless they already
+     * exist. Each partition is created in a transaction of its own so that
+     * a single failure does not prevent creating the others.
+     * @param now the current time
+     * @param intervalSeconds the length of a partition in seconds
+     * @param ahead the number of partitions to create after the current one
+     * @return the number of created partitions
+     * @throws Exception if the existing partitions cannot be read
+     */
+    static int createPartitions(Instant now, long intervalSeconds, int ahead) throws Exception {
+        List<Partition> missing = missingPartitions(doInTransaction(OperationalDataPartitions::listPartitions),
+                now.getEpochSecond(), intervalSeconds, ahead);
+
+        int created = 0;
+
+        for (Partition partition : missing) {
+            try {
+                doInTransaction(session -> session.createNativeQuery(
+                        "select create_operational_data_partition(:rangeStart, :rangeEnd)")
+                        .setParameter("rangeStart", partition.getRangeStart())
+                        .setParameter("rangeEnd", partition.getRangeEnd())
+                        .getSingleResult());
+
+                log.info("Created operational data partition {} [{}, {})", partition.getName(),
+                        partition.getRangeStart(), partition.getRangeEnd());
+
+                created++;
+            } catch (Exception e) {
+                log.error("Failed to create operational data partition " + partition.getName(), e);
+            }
+        }
+
+        return created;
+    }
+
+    /**
+     * Drops the partitions that only contain records older than the given
+     * time and deletes the outdated records from the default partition.
+     * Records in the partition that contains the given time are kept until
+     * the whole partition has expired.
+     * @param before the time before which the records are outdated
+     * @return the number of dropped partitions
+     * @throws Exception if an error occurs
+     */
+    static int dropPartitions(Instant before) throws Exception {
+        long beforeSeconds = TimeUnit.MILLISECONDS.toSeconds(before.toEpochMilli());
+
+        List<Partition> expired = expiredPartitions(doInTransaction(OperationalDataPartitions::listPartitions),
+                beforeSeconds);
+
+        for (Partition partition : expired) {
+            doInTransaction(session -> session.createNativeQuery(
+                    "select drop_operational_data_partition(:name)")
+                    .setParameter("name", partition.getName())
+                    .getSingleResult());
+
+            log.info("Dropped outdated operational data partition {}", partition.getName());
+        }
+
+        int removed = doInTransaction(session -> session.createNativeQuery(
+                "delete from " + DEFAULT_PARTITION + " where monitoring_data_ts < :before")
+                .setParameter("before", beforeSeconds)
+                .executeUpdate());
+
+        if (removed > 0) {
+            log.info("Removed {} outdated operational data records from the default partition", removed);
+        }
+
+        return expired.size();
+    }
+
+    /**
+     * Computes the aligned partitions that are needed for storing the
+     * records of the current interval and the given number of intervals
+     * after it, leaving out the ranges that are already covered by the
+     * existing partitions.
+     * @param existing the existing partitions
+     * @param nowSeconds the current time in epoch seconds
+     * @param intervalSeconds the length of a partition in seconds
+     * @param ahead the number of partitions to create after the current one
+     * @return the partitions to create
+     */
+    static List<Partition> missingPartitions(List<Partition> existing, long nowSeconds, long intervalSeconds,
+            int ahead) {
+        List<Partition> sorted = new ArrayList<>(existing);
+        sorted.sort(Comparator.comparingLong(Partition::getRangeStart));
+
+        List<Partition> missing = new ArrayList<>();
+        long first = Math.floorDiv(nowSeconds, intervalSeconds) * intervalSeconds;
+
+        for (int i = 0; i <= ahead; i++) {
+            long start = first + i * intervalSeconds;
+            long end = start + intervalSeconds;
+
+            for (Partition partition : sorted) {
+                if (partition.getRangeStart() <= start && start < partition.getRangeEnd()) {
+                    start = partition.getRangeEnd();
+                } else if (start < partition.getRangeStart() && partition.getRangeStart() < end) {
+                    end = partition.getRangeStart();
+                }
+            }
+
+            if (start < end) {
+                missing.add(new Partition(PARTITION_PREFIX + start, start, end));
+            }
+        }
+
+        return missing;
+    }
+
+    /**
+     * @param existing the existing partitions
+     * @param beforeSeconds the time in epoch seconds before which the
+     * records are outdated
+     * @return the partitions whose every record is outdated
+     */
+    static List<Partition> expiredPartitions(List<Partition> existing, long beforeSeconds) {
+        List<Partition> expired = new ArrayList<>();
+
+        for (Partition partition : existing) {
+            if (partition.getRangeEnd() <= beforeSeconds) {
+                expired.add(partition);
+            }
+        }
+
+        return expired;
+    }
+
+    /**
+     * Parses a partition bound expression as returned by pg_get_expr, for
+     * example "FOR VALUES FROM ('1600000000') TO ('1600086400')".
+     * @param name the name of the partition
+     * @param bound the partition bound expression
+     * @return the partition or null if the expression does not describe a
+     * range (e.g. the default partition)
+     */
+    static Partition parsePartition(String name, String bound) {
+        Matcher matcher = RANGE_BOUND.matcher(bound);
+
+        if (!matcher.find()) {
+            return null;
+        }
+
+        long start = "MINVALUE".equals(matcher.group(1)) ? Long.MIN_VALUE : Long.parseLong(matcher.group(1));
+        long end = "MAXVALUE".equals(matcher.group(2)) ? Long.MAX_VALUE : Long.parseLong(matcher.group(2));
+
+        return new Partition(name, start, end);
+    }
+
+    private static boolean isPartitionedTable(Session session) {
+        String product = session.doReturningWork(c -> c.getMetaData().getDatabaseProductName());
+
+        if (!POSTGRESQL.equals(product)) {
+            return false;
+        }
+
+        Number count = (Number) session.createNativeQuery(
+                "select count(*) from pg_partitioned_table where partrelid = to_regclass('operational_data')")
+                .getSingleResult();
+
+        return count.intValue() > 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Partition> listPartitions(Session session) {
+        List<Object[]> rows = session.createNativeQuery(
+                "select c.relname, pg_get_expr(c.relpartbound, c.oid) from pg_inherits i"
+                        + " join pg_class c on c.oid = i.inhrelid"
+                        + " where i.inhparent = to_regclass('operational_data')")
+                .getResultList();
+
+        List<Partition> partitions = new ArrayList<>();
+
+        for (Object[] row : rows) {
+            Partition partition = parsePartition(String.valueOf(row[0]), String.valueOf(row[1]));
+
+            if (partition != null) {
+                partitions.add(partition);
+            }
+        }
+
+        return partitions;
+    }
+}
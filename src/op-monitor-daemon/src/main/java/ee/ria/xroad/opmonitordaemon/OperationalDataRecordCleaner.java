@@ -29,6 +29,7 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.util.JobManager;
 import ee.ria.xroad.common.util.MessageSendingJob;
 
+import akka.actor.ActorRef;
 import akka.actor.ActorSelection;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
@@ -44,29 +45,38 @@ import java.util.concurrent.TimeUnit;
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 
 /**
- * Deletes outdated operational data records from the database.
+ * Deletes outdated operational data records from the database. If the
+ * operational data table is partitioned, also creates the partitions ahead
+ * of time and removes outdated records by dropping whole partitions.
  */
 @Slf4j
 final class OperationalDataRecordCleaner extends UntypedAbstractActor {
 
     public static final String START_CLEANING = "doClean";
 
+    public static final String CREATE_PARTITIONS = "createPartitions";
+
+    private static final String CREATE_PARTITIONS_INTERVAL = "0 0 0/1 1/1 * ? *";
+
     private static final String OPERATIONAL_DATA_RECORD_CLEANER =
             OperationalDataRecordCleaner.class.getSimpleName();
 
     /**
      * Initializes the operational data recorder cleaner creating an operational
      * data records cleaner actor in the given actor system and scheduling a
-     * periodic cleanup with the provided job manager.
+     * periodic cleanup and partition creation with the provided job manager.
      * @param jobManager  the job manager
      * @param actorSystem the actor system
      */
     public static void init(JobManager jobManager, ActorSystem actorSystem) {
-        actorSystem.actorOf(Props.create(OperationalDataRecordCleaner.class),
+        ActorRef cleaner = actorSystem.actorOf(Props.create(OperationalDataRecordCleaner.class),
                 OPERATIONAL_DATA_RECORD_CLEANER);
 
         registerCronJob(jobManager, actorSystem, START_CLEANING,
                 OpMonitoringSystemProperties.getOpMonitorCleanInterval());
+        registerCronJob(jobManager, actorSystem, CREATE_PARTITIONS, CREATE_PARTITIONS_INTERVAL);
+
+        cleaner.tell(CREATE_PARTITIONS, ActorRef.noSender());
     }
 
     @Override
@@ -80,14 +90,36 @@ final class OperationalDataRecordCleaner extends UntypedAbstractActor {
                 log.error("Failed to clean outdated operational data records"
                         + " from the database", e);
             }
+        } else if (message.equals(CREATE_PARTITIONS)) {
+            try {
+                handleCreatePartitions();
+            } catch (Exception e) {
+                log.error("Failed to create operational data partitions", e);
+            }
         } else {
             unhandled(message);
         }
     }
 
     private static void handleCleanup() throws Exception {
-        cleanRecords(
-                Instant.now().minus(OpMonitoringSystemProperties.getOpMonitorKeepRecordsForDays(), ChronoUnit.DAYS));
+        cleanup(Instant.now().minus(OpMonitoringSystemProperties.getOpMonitorKeepRecordsForDays(), ChronoUnit.DAYS));
+    }
+
+    private static void handleCreatePartitions() throws Exception {
+        if (OperationalDataPartitions.isPartitioned()) {
+            int intervalHours = Math.max(1, OpMonitoringSystemProperties.getOpMonitorPartitionIntervalHours());
+            int ahead = Math.max(1, OpMonitoringSystemProperties.getOpMonitorPartitionsCreatedAhead());
+
+            OperationalDataPartitions.createPartitions(Instant.now(), TimeUnit.HOURS.toSeconds(intervalHours), ahead);
+        }
+    }
+
+    static void cleanup(Instant before) throws Exception {
+        if (OperationalDataPartitions.isPartitioned()) {
+            OperationalDataPartitions.dropPartitions(before);
+        } else {
+            cleanRecords(before);
+        }
     }
 
     static int cleanRecords(Instant before) throws Exception {
@@ -121,7 +153,7 @@ final class OperationalDataRecordCleaner extends UntypedAbstractActor {
 
         try {
             jobManager.registerJob(MessageSendingJob.class,
-                    OPERATIONAL_DATA_RECORD_CLEANER + "Job", cronExpression,
+                    OPERATIONAL_DATA_RECORD_CLEANER + "-" + message + "Job", cronExpression,
                     jobData);
         } catch (SchedulerException e) {
             log.error("Unable to schedule job", e);
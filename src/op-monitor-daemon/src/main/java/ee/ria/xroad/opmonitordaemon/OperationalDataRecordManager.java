@@ -34,10 +34,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataOutputSpecFields.MONITORING_DATA_TS;
@@ -51,6 +54,8 @@ final class OperationalDataRecordManager {
 
     private static final int DEFAULT_BATCH_SIZE = 50;
 
+    private static final int STREAM_FETCH_SIZE = 100;
+
     @Setter
     private static int maxRecordsInPayload = OpMonitoringSystemProperties.getOpMonitorMaxRecordsInPayload();
 
@@ -59,6 +64,13 @@ final class OperationalDataRecordManager {
     private OperationalDataRecordManager() {
     }
 
+    /**
+     * Consumer of the records of a streamed query.
+     */
+    interface RecordWriter {
+        void write(OperationalDataRecord record) throws IOException;
+    }
+
     static void storeRecords(List<OperationalDataRecord> records, long timestamp) throws Exception {
         doInTransaction(session -> storeInTransaction(session, records, timestamp));
     }
@@ -103,6 +115,76 @@ final class OperationalDataRecordManager {
         return null;
     }
 
+    /**
+     * Streams a page of operational data records to the given writer as the
+     * rows are read from the database cursor. The records are ordered by
+     * (monitoringDataTs, id) and the page starts after the position of the
+     * given continuation token. Unlike {@link #queryRecords}, the page is not
+     * extended with the records having the same timestamp as the last record.
+     * @param recordsFrom           records from timestamp seconds
+     * @param recordsTo             records to timestamp seconds
+     * @param clientFilter          filter records by client (if not null)
+     * @param serviceProviderFilter filter records by service provider (if not null)
+     * @param outputFields          list of the requested operational data field
+     * @param after                 position of the previous page or null for the first page
+     * @param writer                writer of the records
+     * @return the continuation token for the next page or null if there are no more records
+     * @throws Exception if an error occurs
+     */
+    static OperationalDataContinuationToken streamRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
+            ClientId serviceProviderFilter, Set<String> outputFields, OperationalDataContinuationToken after,
+            RecordWriter writer) throws Exception {
+        return doInTransaction(session -> streamInTransaction(session, recordsFrom, recordsTo, clientFilter,
+                serviceProviderFilter, outputFields, after, writer));
+    }
+
+    private static OperationalDataContinuationToken streamInTransaction(Session session, long recordsFrom,
+            long recordsTo, ClientId clientFilter, ClientId serviceProviderFilter, Set<String> outputFields,
+            OperationalDataContinuationToken after, RecordWriter writer) throws IOException {
+        final OperationalDataRecordQuery query =
+                new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
+        query.selectId();
+        query.between(recordsFrom, recordsTo);
+
+        if (after != null) {
+            query.after(after.getMonitoringDataTs(), after.getId());
+        }
+
+        query.orderByAsc(MONITORING_DATA_TS);
+        query.orderByAsc(OperationalDataRecordQuery.ID);
+        // One extra record tells whether there is a next page.
+        query.setMaxRecords(maxRecordsInPayload + 1);
+
+        boolean stripMonitoringDataTs = !outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS);
+        OperationalDataContinuationToken last = null;
+        int count = 0;
+
+        try (Stream<OperationalDataRecord> records = query.stream(STREAM_FETCH_SIZE)) {
+            Iterator<OperationalDataRecord> it = records.iterator();
+
+            while (it.hasNext()) {
+                OperationalDataRecord record = it.next();
+
+                if (count == maxRecordsInPayload) {
+                    log.debug("Records overflow, continue after {}", last);
+
+                    return last;
+                }
+
+                last = new OperationalDataContinuationToken(record.getMonitoringDataTs(), record.getId());
+
+                if (stripMonitoringDataTs) {
+                    record.setMonitoringDataTs(null);
+                }
+
+                writer.write(record);
+                count++;
+            }
+        }
+
+        return null;
+    }
+
     private static int getConfiguredBatchSize(Session session) {
         if (configuredBatchSize == 0) {
             configuredBatchSize = HibernateUtil.getConfiguredBatchSize(session, DEFAULT_BATCH_SIZE);
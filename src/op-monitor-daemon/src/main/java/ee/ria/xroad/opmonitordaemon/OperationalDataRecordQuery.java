@@ -30,6 +30,7 @@ import ee.ria.xroad.common.identifier.ClientId;
 import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Session;
+import org.hibernate.query.Query;
 
 import javax.persistence.Tuple;
 import javax.persistence.TupleElement;
@@ -48,6 +49,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CLASS;
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CODE;
@@ -65,6 +67,8 @@ import static ee.ria.xroad.opmonitordaemon.OperationalDataOutputSpecFields.PUBLI
 @SuppressWarnings("checkstyle:magicnumber")
 final class OperationalDataRecordQuery {
 
+    static final String ID = "id";
+
     private final CriteriaBuilder cb;
     private final CriteriaQuery<Tuple> query;
     private final Root<OperationalDataRecord> from;
@@ -75,7 +79,7 @@ final class OperationalDataRecordQuery {
 
     private Predicate pred;
     private List<Selection<?>> projection = new ArrayList<>();
-    private javax.persistence.criteria.Order order = null;
+    private List<javax.persistence.criteria.Order> order = new ArrayList<>();
 
     OperationalDataRecordQuery(Session session, ClientId clientFilter, ClientId serviceProviderFilter,
             Set<String> outputFields) {
@@ -156,14 +160,50 @@ final class OperationalDataRecordQuery {
     }
 
     List<OperationalDataRecord> list() {
+        return transform(createQuery()
+                .getResultList());
+    }
+
+    /**
+     * Returns the records as a stream backed by a forward-only cursor, so
+     * that the rows are fetched from the database as the stream is consumed.
+     * The stream must be closed after use.
+     * @param fetchSize the number of rows to fetch at a time
+     * @return the stream of records
+     */
+    Stream<OperationalDataRecord> stream(int fetchSize) {
+        return createQuery()
+                .setFetchSize(fetchSize)
+                .stream()
+                .map(OperationalDataRecordQuery::transform);
+    }
+
+    private Query<Tuple> createQuery() {
         query.multiselect(projection).where(pred);
-        if (order != null) {
+        if (!order.isEmpty()) {
             query.orderBy(order);
         }
-        return transform(session.createQuery(query)
+        return session.createQuery(query)
                 .setReadOnly(true)
-                .setMaxResults(maxRecords)
-                .getResultList());
+                .setMaxResults(maxRecords);
+    }
+
+    /**
+     * Restricts the query to the records after the given keyset position in
+     * the (monitoringDataTs, id) order.
+     */
+    void after(long monitoringDataTs, long id) {
+        pred = cb.and(pred, cb.or(
+                cb.greaterThan(from.get(MONITORING_DATA_TS), monitoringDataTs),
+                cb.and(cb.equal(from.get(MONITORING_DATA_TS), monitoringDataTs), cb.greaterThan(from.get(ID), id))));
+    }
+
+    /**
+     * Adds the record identifier to the projection, needed for keyset
+     * pagination. The identifier is not included in the response payload.
+     */
+    void selectId() {
+        projection.add(from.get(ID).alias(ID));
     }
 
     void between(long fromTs, long toTs) {
@@ -171,7 +211,7 @@ final class OperationalDataRecordQuery {
     }
 
     void orderByAsc(String field) {
-        order = cb.asc(from.get(field));
+        order.add(cb.asc(from.get(field)));
     }
 
     /**
@@ -187,20 +227,24 @@ final class OperationalDataRecordQuery {
         List<OperationalDataRecord> tmp = new ArrayList<>(result.size());
 
         for (Tuple t : result) {
-            final OperationalDataRecord record = new OperationalDataRecord();
-            for (TupleElement<?> te : t.getElements()) {
-                final Method method = SETTERS.get(te.getAlias());
-                if (method != null) {
-                    try {
-                        method.invoke(record, t.get(te));
-                    } catch (InvocationTargetException | IllegalAccessException e) {
-                        throw new IllegalArgumentException("Unable to transform", e);
-                    }
+            tmp.add(transform(t));
+        }
+        return tmp;
+    }
+
+    private static OperationalDataRecord transform(Tuple t) {
+        final OperationalDataRecord record = new OperationalDataRecord();
+        for (TupleElement<?> te : t.getElements()) {
+            final Method method = SETTERS.get(te.getAlias());
+            if (method != null) {
+                try {
+                    method.invoke(record, t.get(te));
+                } catch (InvocationTargetException | IllegalAccessException e) {
+                    throw new IllegalArgumentException("Unable to transform", e);
                 }
             }
-            tmp.add(record);
         }
-        return tmp;
+        return record;
     }
 
     /*
@@ -40,18 +40,23 @@ import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataResp
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataType;
 import ee.ria.xroad.opmonitordaemon.message.SearchCriteriaType;
 
+import com.google.gson.stream.JsonWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.ByteArrayOutputStream;
 
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.Marshaller;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 import static ee.ria.xroad.common.ErrorCodes.CLIENT_X;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -71,6 +76,8 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
 
     protected static final String CID = "operational-monitoring-data.json.gz";
 
+    private static final String RECORDS = "records";
+
     @Override
     public void handle(SoapMessageImpl requestSoap, OutputStream out,
             Consumer<String> contentTypeCallback) throws Exception {
@@ -103,10 +110,17 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                 outputFields);
 
         GetSecurityServerOperationalDataResponseType opDataResponse =
-                buildOperationalDataResponse(
-                        getClientForFilter(clientId, serverId), recordsFrom,
-                        recordsTo, serviceProviderId, outputFields,
-                        recordsAvailableBefore);
+                requestData.getContinuationToken() != null
+                        ? buildStreamedOperationalDataResponse(
+                                getClientForFilter(clientId, serverId),
+                                recordsFrom, recordsTo, serviceProviderId,
+                                outputFields, recordsAvailableBefore,
+                                OperationalDataContinuationToken.decode(
+                                        requestData.getContinuationToken()))
+                        : buildOperationalDataResponse(
+                                getClientForFilter(clientId, serverId),
+                                recordsFrom, recordsTo, serviceProviderId,
+                                outputFields, recordsAvailableBefore);
 
         try (SoapMessageEncoder responseEncoder = new MultipartSoapMessageEncoder(out)) {
             contentTypeCallback.accept(responseEncoder.getContentType());
@@ -201,6 +215,57 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
         return opDataResponse;
     }
 
+    /**
+     * Builds a keyset paginated response. The records are serialized to JSON
+     * and compressed as they are read from the database, so that only the
+     * compressed payload is kept in memory. The payload is buffered because
+     * the records count precedes the attachment in the response.
+     */
+    protected GetSecurityServerOperationalDataResponseType
+            buildStreamedOperationalDataResponse(ClientId filterByClient,
+            long recordsFrom, long recordsTo, ClientId filterByServiceProvider,
+            Set<String> outputFields, long recordsAvailableBefore,
+            OperationalDataContinuationToken after) throws IOException {
+        GetSecurityServerOperationalDataResponseType opDataResponse =
+                OBJECT_FACTORY
+                        .createGetSecurityServerOperationalDataResponseType();
+
+        if (recordsTo >= recordsAvailableBefore) {
+            recordsTo = recordsAvailableBefore - 1;
+
+            opDataResponse.setNextRecordsFrom(recordsAvailableBefore);
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        int[] recordsCount = {0};
+        OperationalDataContinuationToken next;
+
+        try (JsonWriter writer = GSON.newJsonWriter(new OutputStreamWriter(
+                new GZIPOutputStream(payload), StandardCharsets.UTF_8))) {
+            writer.beginObject().name(RECORDS).beginArray();
+
+            next = streamOperationalDataRecords(filterByClient, recordsFrom,
+                    recordsTo, filterByServiceProvider, outputFields, after,
+                    record -> {
+                        GSON.toJson(record, OperationalDataRecord.class,
+                                writer);
+                        recordsCount[0]++;
+                    });
+
+            writer.endArray().endObject();
+        }
+
+        opDataResponse.setRecordsCount(recordsCount[0]);
+        opDataResponse.setRecords(createAttachmentDataSource(
+                payload.toByteArray(), CID, MimeTypes.GZIP));
+
+        if (next != null) {
+            opDataResponse.setContinuationToken(next.encode());
+        }
+
+        return opDataResponse;
+    }
+
     private static JAXBElement<?> createResponseElement(
             GetSecurityServerOperationalDataResponseType opDataResponse) {
         return OBJECT_FACTORY.createGetSecurityServerOperationalDataResponse(
@@ -222,6 +287,23 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
         }
     }
 
+    protected OperationalDataContinuationToken streamOperationalDataRecords(
+            ClientId filterByClient, long recordsFrom, long recordsTo,
+            ClientId filterByServiceProvider, Set<String> outputFields,
+            OperationalDataContinuationToken after,
+            OperationalDataRecordManager.RecordWriter writer) {
+        try {
+            return OperationalDataRecordManager.streamRecords(recordsFrom,
+                    recordsTo, filterByClient, filterByServiceProvider,
+                    outputFields, after, writer);
+        } catch (Exception e) {
+            log.error("Failed to get records for response", e);
+
+            throw new CodedException(X_INTERNAL_ERROR,
+                    "Failed to get records for response: " + e.getMessage());
+        }
+    }
+
     protected ClientId getClientForFilter(ClientId clientId,
             SecurityServerId serverId) throws Exception {
         return !isMonitoringClient(clientId)
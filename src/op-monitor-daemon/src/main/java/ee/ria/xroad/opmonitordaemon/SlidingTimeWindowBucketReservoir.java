@@ -0,0 +1,320 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reservoir of the values recorded within a sliding window of time that
+ * uses a fixed amount of memory regardless of the number of values.
+ * The window is divided into a fixed number of time slices. Each slice holds
+ * the count, minimum, maximum, mean and variance of its values and counts the
+ * values in log-linear buckets (four buckets for each power of two). The
+ * slices of the window are merged when a snapshot is taken: the minimum,
+ * maximum, mean and standard deviation of the snapshot are exact, the
+ * quantiles are approximated by the middle of the bucket (within 12.5% of the
+ * actual value). A slice is discarded as a whole when it falls out of the
+ * window, so the boundary of the window is accurate to the length of one
+ * slice.
+ */
+class SlidingTimeWindowBucketReservoir implements Reservoir {
+
+    private static final int SLICES = 12;
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final Clock clock;
+    private final long sliceLength;
+
+    private final Slice[] slices = new Slice[SLICES];
+
+    /**
+     * Creates a reservoir with the given window of time.
+     *
+     * @param window     the window of time
+     * @param windowUnit the unit of {@code window}
+     */
+    SlidingTimeWindowBucketReservoir(long window, TimeUnit windowUnit) {
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    SlidingTimeWindowBucketReservoir(long window, TimeUnit windowUnit,
+            Clock clock) {
+        this.clock = clock;
+        this.sliceLength = Math.max(1, windowUnit.toNanos(window) / SLICES);
+
+        for (int i = 0; i < SLICES; i++) {
+            slices[i] = new Slice();
+        }
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public synchronized void update(long value) {
+        long epoch = currentEpoch();
+        Slice slice = slices[(int) Math.floorMod(epoch, SLICES)];
+
+        if (slice.epoch != epoch) {
+            slice.reset(epoch);
+        }
+
+        slice.add(value);
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        long oldestEpoch = currentEpoch() - SLICES;
+        Slice window = new Slice();
+
+        for (Slice slice : slices) {
+            if (slice.epoch > oldestEpoch) {
+                window.merge(slice);
+            }
+        }
+
+        return new BucketSnapshot(window);
+    }
+
+    private long currentEpoch() {
+        return Math.floorDiv(clock.getTick(), sliceLength);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketMiddle(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+
+        return lowerBound + ((1L << shift) - 1) / 2;
+    }
+
+    /**
+     * Statistics of the values of one time slice or of the merged window.
+     */
+    private static final class Slice {
+        private long epoch = Long.MIN_VALUE;
+
+        private long count;
+        private long min;
+        private long max;
+        private double mean;
+        private double squaredDeviations;
+        private long[] buckets = new long[0];
+
+        void reset(long newEpoch) {
+            epoch = newEpoch;
+            count = 0;
+            mean = 0;
+            squaredDeviations = 0;
+
+            Arrays.fill(buckets, 0);
+        }
+
+        void add(long value) {
+            if (count == 0) {
+                min = value;
+                max = value;
+            } else {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+
+            count++;
+
+            // Welford's online algorithm
+            double delta = value - mean;
+            mean += delta / count;
+            squaredDeviations += delta * (value - mean);
+
+            int index = bucketIndex(value);
+            ensureBuckets(index + 1);
+            buckets[index]++;
+        }
+
+        void merge(Slice other) {
+            if (other.count == 0) {
+                return;
+            }
+
+            if (count == 0) {
+                min = other.min;
+                max = other.max;
+            } else {
+                min = Math.min(min, other.min);
+                max = Math.max(max, other.max);
+            }
+
+            long total = count + other.count;
+            double delta = other.mean - mean;
+
+            mean += delta * other.count / total;
+            squaredDeviations += other.squaredDeviations
+                    + delta * delta * count * other.count / total;
+            count = total;
+
+            ensureBuckets(other.buckets.length);
+
+            for (int i = 0; i < other.buckets.length; i++) {
+                buckets[i] += other.buckets[i];
+            }
+        }
+
+        private void ensureBuckets(int length) {
+            if (buckets.length < length) {
+                buckets = Arrays.copyOf(buckets, length);
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the merged statistics of the window.
+     */
+    private static final class BucketSnapshot extends Snapshot {
+        private final Slice window;
+
+        BucketSnapshot(Slice window) {
+            this.window = window;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(
+                        quantile + " is not in [0..1]");
+            }
+
+            if (window.count == 0) {
+                return 0.0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * window.count));
+
+            // The smallest and the largest value are known exactly
+            if (rank == 1) {
+                return window.min;
+            } else if (rank == window.count) {
+                return window.max;
+            }
+
+            long seen = 0;
+
+            for (int i = 0; i < window.buckets.length; i++) {
+                seen += window.buckets[i];
+
+                if (seen >= rank) {
+                    return clamp(bucketMiddle(i));
+                }
+            }
+
+            return window.max;
+        }
+
+        @Override
+        public long[] getValues() {
+            long[] values = new long[window.buckets.length];
+            int size = 0;
+
+            for (int i = 0; i < window.buckets.length; i++) {
+                if (window.buckets[i] > 0) {
+                    values[size++] = clamp(bucketMiddle(i));
+                }
+            }
+
+            return Arrays.copyOf(values, size);
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, window.count);
+        }
+
+        @Override
+        public long getMax() {
+            return window.count == 0 ? 0 : window.max;
+        }
+
+        @Override
+        public double getMean() {
+            return window.count == 0 ? 0 : window.mean;
+        }
+
+        @Override
+        public long getMin() {
+            return window.count == 0 ? 0 : window.min;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (window.count <= 1) {
+                return 0;
+            }
+
+            return Math.sqrt(window.squaredDeviations / (window.count - 1));
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(
+                    new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (long value : getValues()) {
+                    out.printf("%d%n", value);
+                }
+            }
+        }
+
+        private long clamp(long value) {
+            return Math.max(window.min, Math.min(window.max, value));
+        }
+    }
+}
@@ -25,15 +25,19 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
-import com.codahale.metrics.Reservoir;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 /**
- * A counter metric that uses the sliding time window reservoir internally to
- * support periodic and configurable resetting.
+ * A counter metric that counts the increments made within a sliding window
+ * of time. The window is divided into a fixed number of time slices, each
+ * holding the count of its increments, so the memory used does not depend
+ * on the number of increments. A slice is discarded as a whole when it falls
+ * out of the window, so the boundary of the window is accurate to the length
+ * of one slice.
  * This counter does not support manually decrementing the count (the dec()
  * methods raise a runtime exception).
  * We extend Counter instead of implementing the Metric and Counting
@@ -42,7 +46,13 @@ import java.util.concurrent.TimeUnit;
  */
 class SlidingTimeWindowCounter extends Counter {
 
-    private final Reservoir reservoir;
+    private static final int SLICES = 60;
+
+    private final Clock clock;
+    private final long sliceLength;
+
+    private final long[] counts = new long[SLICES];
+    private final long[] epochs = new long[SLICES];
 
     /**
      * Creates a counter with the given window of time.
@@ -51,27 +61,49 @@ class SlidingTimeWindowCounter extends Counter {
      * @param windowUnit the unit of {@code window}
      */
     SlidingTimeWindowCounter(long window, TimeUnit windowUnit) {
-        reservoir = new SlidingTimeWindowReservoir(window, windowUnit);
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    SlidingTimeWindowCounter(long window, TimeUnit windowUnit, Clock clock) {
+        this.clock = clock;
+        this.sliceLength = Math.max(1, windowUnit.toNanos(window) / SLICES);
+
+        Arrays.fill(epochs, Long.MIN_VALUE);
     }
 
     /**
-     * @return the snapshot size of the sliding time window reservoir.
+     * @return the number of increments within the window of time.
      */
     @Override
-    public long getCount() {
-        return reservoir.getSnapshot().size();
+    public synchronized long getCount() {
+        long oldestEpoch = currentEpoch() - SLICES;
+        long count = 0;
+
+        for (int i = 0; i < SLICES; i++) {
+            if (epochs[i] > oldestEpoch) {
+                count += counts[i];
+            }
+        }
+
+        return count;
     }
 
     @Override
     public void inc() {
-        reservoir.update(1L);
+        inc(1);
     }
 
     @Override
-    public void inc(long n) {
-        for (int i = 0; i < n; ++i) {
-            inc();
+    public synchronized void inc(long n) {
+        long epoch = currentEpoch();
+        int slice = (int) Math.floorMod(epoch, SLICES);
+
+        if (epochs[slice] != epoch) {
+            epochs[slice] = epoch;
+            counts[slice] = 0;
         }
+
+        counts[slice] += n;
     }
 
     @Override
@@ -84,4 +116,7 @@ class SlidingTimeWindowCounter extends Counter {
         throw new RuntimeException("This counter can be incremented only");
     }
 
+    private long currentEpoch() {
+        return Math.floorDiv(clock.getTick(), sliceLength);
+    }
 }
@@ -30,13 +30,15 @@ import ee.ria.xroad.common.util.JsonUtils;
 import com.codahale.metrics.MetricRegistry;
 import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 
 import javax.servlet.http.HttpServletRequest;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static ee.ria.xroad.common.util.TimeUtils.getEpochSecond;
 
@@ -48,6 +50,9 @@ class StoreRequestProcessor {
 
     private static final Gson GSON = JsonUtils.getSerializer();
 
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String GZIP_ENCODING = "gzip";
+
     /** The servlet request. */
     private HttpServletRequest servletRequest;
 
@@ -66,12 +71,12 @@ class StoreRequestProcessor {
      * @throws Exception in case of any errors
      */
     void process() throws Exception {
-        String rawJson = IOUtils.toString(servletRequest.getInputStream(),
-                StandardCharsets.UTF_8);
-
-        log.trace("Incoming JSON: {}", rawJson);
+        List<OperationalDataRecord> records;
 
-        List<OperationalDataRecord> records = prepareRawStoreData(rawJson);
+        try (Reader reader = new InputStreamReader(getContent(),
+                StandardCharsets.UTF_8)) {
+            records = prepareRawStoreData(reader);
+        }
 
         log.debug("Process {} record{}", records.size(),
                 records.size() == 1 ? "" : "s");
@@ -81,15 +86,24 @@ class StoreRequestProcessor {
         HealthDataMetrics.processRecords(healthMetricRegistry, records);
     }
 
-    // Get usable operational data to be stored. If no such data is found,
-    // send an error message right away.
-    private static List<OperationalDataRecord> prepareRawStoreData(
-            String rawJsonData) throws Exception {
-        if (StringUtils.isBlank(rawJsonData)) {
-            throw new Exception(
-                    "No data was found in the request to store data");
+    // The operational monitoring buffer sends the data gzip compressed
+    // unless configured otherwise.
+    private InputStream getContent() throws Exception {
+        InputStream content = servletRequest.getInputStream();
+
+        if (GZIP_ENCODING.equalsIgnoreCase(
+                servletRequest.getHeader(HEADER_CONTENT_ENCODING))) {
+            return new GZIPInputStream(content);
         }
 
+        return content;
+    }
+
+    // Get usable operational data to be stored. If no such data is found,
+    // send an error message right away. The JSON is parsed as it is read
+    // from the request.
+    private static List<OperationalDataRecord> prepareRawStoreData(
+            Reader rawJsonData) throws Exception {
         OperationalDataRecords records;
 
         try {
@@ -98,6 +112,11 @@ class StoreRequestProcessor {
             throw new Exception("Received invalid request", e);
         }
 
+        if (records == null) {
+            throw new Exception(
+                    "No data was found in the request to store data");
+        }
+
         return records.getRecords();
     }
 
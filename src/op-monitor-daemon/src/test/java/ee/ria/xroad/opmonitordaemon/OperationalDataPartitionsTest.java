@@ -0,0 +1,114 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.opmonitordaemon.OperationalDataPartitions.Partition;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static ee.ria.xroad.opmonitordaemon.OperationalDataPartitions.expiredPartitions;
+import static ee.ria.xroad.opmonitordaemon.OperationalDataPartitions.missingPartitions;
+import static ee.ria.xroad.opmonitordaemon.OperationalDataPartitions.parsePartition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the partition maintenance of the operational data table.
+ */
+public class OperationalDataPartitionsTest {
+
+    private static final long DAY = 86400;
+
+    private static final long MIDNIGHT = 1474934400L;
+
+    @Test
+    public void parsePartitionBounds() {
+        assertEquals(new Partition("operational_data_1474934400", MIDNIGHT, MIDNIGHT + DAY),
+                parsePartition("operational_data_1474934400", "FOR VALUES FROM ('1474934400') TO ('1475020800')"));
+        assertEquals(new Partition("operational_data_legacy", Long.MIN_VALUE, 1474968981L),
+                parsePartition("operational_data_legacy", "FOR VALUES FROM (MINVALUE) TO ('1474968981')"));
+        assertEquals(new Partition("p", 1, Long.MAX_VALUE),
+                parsePartition("p", "FOR VALUES FROM (1) TO (MAXVALUE)"));
+
+        assertNull(parsePartition(OperationalDataPartitions.DEFAULT_PARTITION, "DEFAULT"));
+    }
+
+    @Test
+    public void createAlignedPartitionsAhead() {
+        List<Partition> missing = missingPartitions(Collections.emptyList(), MIDNIGHT + 3600, DAY, 2);
+
+        assertEquals(Arrays.asList(
+                new Partition("operational_data_" + MIDNIGHT, MIDNIGHT, MIDNIGHT + DAY),
+                new Partition("operational_data_" + (MIDNIGHT + DAY), MIDNIGHT + DAY, MIDNIGHT + 2 * DAY),
+                new Partition("operational_data_" + (MIDNIGHT + 2 * DAY), MIDNIGHT + 2 * DAY, MIDNIGHT + 3 * DAY)),
+                missing);
+    }
+
+    @Test
+    public void skipExistingPartitions() {
+        List<Partition> existing = Arrays.asList(
+                new Partition("operational_data_" + (MIDNIGHT + DAY), MIDNIGHT + DAY, MIDNIGHT + 2 * DAY),
+                new Partition("operational_data_" + MIDNIGHT, MIDNIGHT, MIDNIGHT + DAY));
+
+        List<Partition> missing = missingPartitions(existing, MIDNIGHT + 3600, DAY, 2);
+
+        assertEquals(Collections.singletonList(
+                new Partition("operational_data_" + (MIDNIGHT + 2 * DAY), MIDNIGHT + 2 * DAY, MIDNIGHT + 3 * DAY)),
+                missing);
+    }
+
+    @Test
+    public void fillGapAfterLegacyPartition() {
+        long legacyEnd = MIDNIGHT + 7200;
+        List<Partition> existing = Collections.singletonList(
+                new Partition("operational_data_legacy", Long.MIN_VALUE, legacyEnd));
+
+        List<Partition> missing = missingPartitions(existing, MIDNIGHT + 3600, DAY, 1);
+
+        assertEquals(Arrays.asList(
+                new Partition("operational_data_" + legacyEnd, legacyEnd, MIDNIGHT + DAY),
+                new Partition("operational_data_" + (MIDNIGHT + DAY), MIDNIGHT + DAY, MIDNIGHT + 2 * DAY)),
+                missing);
+    }
+
+    @Test
+    public void dropOnlyFullyExpiredPartitions() {
+        Partition legacy = new Partition("operational_data_legacy", Long.MIN_VALUE, MIDNIGHT + 7200);
+        Partition first = new Partition("operational_data_" + (MIDNIGHT + 7200), MIDNIGHT + 7200, MIDNIGHT + DAY);
+        Partition second = new Partition("operational_data_" + (MIDNIGHT + DAY), MIDNIGHT + DAY, MIDNIGHT + 2 * DAY);
+        List<Partition> existing = Arrays.asList(legacy, first, second);
+
+        assertTrue(expiredPartitions(existing, MIDNIGHT + 7199).isEmpty());
+        assertEquals(Collections.singletonList(legacy), expiredPartitions(existing, MIDNIGHT + 7200));
+        assertEquals(Arrays.asList(legacy, first), expiredPartitions(existing, MIDNIGHT + DAY + 3600));
+        assertEquals(existing, expiredPartitions(existing, MIDNIGHT + 2 * DAY));
+    }
+}
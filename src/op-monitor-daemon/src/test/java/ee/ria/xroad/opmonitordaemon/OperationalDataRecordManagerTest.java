@@ -25,6 +25,7 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
@@ -38,8 +39,10 @@ import org.junit.rules.ExpectedException;
 
 import java.lang.reflect.Field;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.queryAllRecords;
@@ -50,6 +53,7 @@ import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.formatFullOpe
 import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.storeFullOperationalDataRecord;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.storeFullOperationalDataRecords;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -383,6 +387,74 @@ public class OperationalDataRecordManagerTest extends BaseTestUsingDB {
         assertEquals(1, result.size());
     }
 
+    @Test
+    public void streamRecordsWithKeysetPagination() throws Exception {
+        storeFullOperationalDataRecords(3, 1474968960L);
+        storeFullOperationalDataRecords(2, 1474968970L);
+        storeFullOperationalDataRecords(1, 1474968980L);
+
+        OperationalDataRecordManager.setMaxRecordsInPayload(2);
+
+        List<OperationalDataRecord> streamed = new ArrayList<>();
+        OperationalDataContinuationToken token = null;
+        int pages = 0;
+
+        do {
+            List<OperationalDataRecord> page = new ArrayList<>();
+            token = OperationalDataRecordManager.streamRecords(1474968960L, 1474968980L, null, null,
+                    new HashSet<>(), token, page::add);
+
+            // Unlike queryRecords, the page is not extended with the
+            // records having the same timestamp as the last one.
+            assertTrue(page.size() <= 2);
+
+            streamed.addAll(page);
+            pages++;
+        } while (token != null);
+
+        assertEquals(3, pages);
+        assertEquals(6, streamed.size());
+
+        for (int i = 1; i < streamed.size(); i++) {
+            OperationalDataRecord previous = streamed.get(i - 1);
+            OperationalDataRecord current = streamed.get(i);
+
+            assertTrue(previous.getMonitoringDataTs() < current.getMonitoringDataTs()
+                    || previous.getMonitoringDataTs().equals(current.getMonitoringDataTs())
+                    && previous.getId() < current.getId());
+        }
+    }
+
+    @Test
+    public void streamRecordsOmitsMonitoringDataTsIfNotRequested() throws Exception {
+        storeFullOperationalDataRecords(2, 1474968960L);
+
+        List<OperationalDataRecord> streamed = new ArrayList<>();
+        OperationalDataContinuationToken token = OperationalDataRecordManager.streamRecords(1474968960L,
+                1474968980L, null, null, Sets.newHashSet("serviceCode"), null, streamed::add);
+
+        assertNull(token);
+        assertEquals(2, streamed.size());
+        assertNull(streamed.get(0).getMonitoringDataTs());
+        assertNotNull(streamed.get(0).getServiceCode());
+    }
+
+    @Test
+    public void continuationTokenRoundTrip() {
+        OperationalDataContinuationToken token = new OperationalDataContinuationToken(1474968960L, 42L);
+
+        assertEquals(token, OperationalDataContinuationToken.decode(token.encode()));
+        assertNull(OperationalDataContinuationToken.decode(""));
+    }
+
+    @Test
+    public void invalidContinuationToken() {
+        expectedException.expect(CodedException.class);
+        expectedException.expectMessage("Invalid continuation token");
+
+        OperationalDataContinuationToken.decode("not a token");
+    }
+
     @Test
     public void cleanupLogRecords() throws Exception {
         storeFullOperationalDataRecords(1, 1474968970L);
@@ -395,6 +467,20 @@ public class OperationalDataRecordManagerTest extends BaseTestUsingDB {
         assertEquals(1, result.size());
     }
 
+    @Test
+    public void cleanupFallsBackToDeletingRecordsWithoutPartitions() throws Exception {
+        assertFalse(OperationalDataPartitions.isPartitioned());
+
+        storeFullOperationalDataRecords(2, 1474968970L);
+        storeFullOperationalDataRecords(1, 1474968980L);
+
+        OperationalDataRecordCleaner.cleanup(Instant.ofEpochMilli(1474968975000L));
+
+        OperationalDataRecords result = queryRecords(1474968960L, 1474968980L);
+
+        assertEquals(1, result.size());
+    }
+
     @Test
     public void stringTruncation() throws Exception {
         OperationalDataRecord record = GSON.fromJson(
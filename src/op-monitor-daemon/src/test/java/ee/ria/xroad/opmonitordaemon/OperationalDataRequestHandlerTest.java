@@ -27,17 +27,28 @@ package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataResponseType;
 
 import com.google.common.collect.Sets;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.zip.GZIPInputStream;
 
+import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.storeFullOperationalDataRecords;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 
 /**
@@ -82,6 +93,48 @@ public class OperationalDataRequestHandlerTest extends BaseTestUsingDB {
         assertNotNull(response.getNextRecordsFrom());
     }
 
+    @Test
+    public void buildStreamedOperationalDataResponse() throws Exception {
+        doInTransaction(session -> session.createQuery("delete OperationalDataRecord").executeUpdate());
+        storeFullOperationalDataRecords(3, 1474968960L);
+        OperationalDataRecordManager.setMaxRecordsInPayload(2);
+
+        try {
+            OperationalDataRequestHandler handler = new OperationalDataRequestHandler();
+            long recordsAvailableBefore = TimeUtils.getEpochSecond();
+
+            GetSecurityServerOperationalDataResponseType response = handler
+                    .buildStreamedOperationalDataResponse(null, 1474968960L,
+                            1474968980L, null, Collections.emptySet(),
+                            recordsAvailableBefore, null);
+
+            assertEquals(2, response.getRecordsCount());
+            assertNotNull(response.getContinuationToken());
+            assertNull(response.getNextRecordsFrom());
+            assertEquals(2, readPayload(response).getAsJsonArray("records").size());
+
+            response = handler.buildStreamedOperationalDataResponse(null,
+                    1474968960L, 1474968980L, null, Collections.emptySet(),
+                    recordsAvailableBefore, OperationalDataContinuationToken
+                            .decode(response.getContinuationToken()));
+
+            assertEquals(1, response.getRecordsCount());
+            assertNull(response.getContinuationToken());
+            assertEquals(1, readPayload(response).getAsJsonArray("records").size());
+        } finally {
+            OperationalDataRecordManager.setMaxRecordsInPayload(
+                    OpMonitoringSystemProperties.getOpMonitorMaxRecordsInPayload());
+        }
+    }
+
+    private static JsonObject readPayload(GetSecurityServerOperationalDataResponseType response)
+            throws Exception {
+        try (Reader reader = new InputStreamReader(
+                new GZIPInputStream(response.getRecords().getInputStream()), StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(reader).getAsJsonObject();
+        }
+    }
+
     @Test
     public void checkNegativeRecordsFromTimestamps() throws Exception {
         thrown.expect(CodedException.class);
@@ -0,0 +1,173 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the time sliced health statistics: the bucket reservoir and the
+ * sliding time window counter.
+ */
+public class SlidingTimeWindowBucketReservoirTest {
+
+    private static final long WINDOW_SECONDS = 60;
+
+    private static final class ManualClock extends Clock {
+        private long tick = TimeUnit.DAYS.toNanos(1);
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+
+        void advanceSeconds(long seconds) {
+            tick += TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void snapshotHasExactMinMaxMeanAndStdDev() {
+        SlidingTimeWindowBucketReservoir reservoir = createReservoir();
+
+        long[] values = {2, 4, 4, 4, 5, 5, 7, 9};
+
+        for (int i = 0; i < values.length; i++) {
+            reservoir.update(values[i]);
+            // Spread the values over several time slices
+            clock.advanceSeconds(i);
+        }
+
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        assertEquals(values.length, snapshot.size());
+        assertEquals(2, snapshot.getMin());
+        assertEquals(9, snapshot.getMax());
+        assertEquals(5.0, snapshot.getMean(), 1e-9);
+        // Sample standard deviation, as computed by the Dropwizard snapshots
+        assertEquals(Math.sqrt(32.0 / 7), snapshot.getStdDev(), 1e-9);
+    }
+
+    @Test
+    public void quantilesAreApproximated() {
+        SlidingTimeWindowBucketReservoir reservoir = createReservoir();
+
+        for (long i = 1; i <= 10000; i++) {
+            reservoir.update(i);
+        }
+
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        assertEquals(1, snapshot.getValue(0.0), 0);
+        assertEquals(10000, snapshot.getValue(1.0), 0);
+        assertWithin(5000, snapshot.getMedian());
+        assertWithin(9900, snapshot.get99thPercentile());
+        assertTrue(snapshot.getValues().length < 64);
+    }
+
+    @Test
+    public void valuesOutsideTheWindowAreDiscarded() {
+        SlidingTimeWindowBucketReservoir reservoir = createReservoir();
+
+        reservoir.update(1000);
+        clock.advanceSeconds(WINDOW_SECONDS / 2);
+        reservoir.update(10);
+        reservoir.update(20);
+
+        assertEquals(3, reservoir.size());
+        assertEquals(1000, reservoir.getSnapshot().getMax());
+
+        clock.advanceSeconds(WINDOW_SECONDS / 2 + WINDOW_SECONDS / 10);
+
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        assertEquals(2, snapshot.size());
+        assertEquals(10, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+        assertEquals(15.0, snapshot.getMean(), 1e-9);
+
+        clock.advanceSeconds(WINDOW_SECONDS);
+
+        assertEquals(0, reservoir.size());
+        assertEquals(0, reservoir.getSnapshot().getMax());
+    }
+
+    @Test
+    public void counterCountsIncrementsWithinTheWindow() {
+        SlidingTimeWindowCounter counter = new SlidingTimeWindowCounter(
+                WINDOW_SECONDS, TimeUnit.SECONDS, clock);
+
+        counter.inc();
+        clock.advanceSeconds(WINDOW_SECONDS / 2);
+        counter.inc(2);
+
+        assertEquals(3, counter.getCount());
+
+        clock.advanceSeconds(WINDOW_SECONDS / 2 + 1);
+
+        assertEquals(2, counter.getCount());
+
+        clock.advanceSeconds(WINDOW_SECONDS);
+
+        assertEquals(0, counter.getCount());
+    }
+
+    @Test
+    public void bucketsCoverAllValues() {
+        long previousMiddle = -1;
+
+        for (long value = 0; value < 100000; value++) {
+            int index = SlidingTimeWindowBucketReservoir.bucketIndex(value);
+            long middle = SlidingTimeWindowBucketReservoir.bucketMiddle(index);
+
+            assertTrue(middle >= previousMiddle);
+            assertTrue(Math.abs(middle - value) <= value / 8);
+
+            previousMiddle = middle;
+        }
+
+        int maxIndex = SlidingTimeWindowBucketReservoir.bucketIndex(Long.MAX_VALUE);
+
+        assertTrue(SlidingTimeWindowBucketReservoir.bucketMiddle(maxIndex) > 0);
+    }
+
+    private SlidingTimeWindowBucketReservoir createReservoir() {
+        return new SlidingTimeWindowBucketReservoir(WINDOW_SECONDS,
+                TimeUnit.SECONDS, clock);
+    }
+
+    private static void assertWithin(double expected, double actual) {
+        assertEquals(expected, actual, expected / 8);
+    }
+}
@@ -57,6 +57,7 @@ import ee.ria.xroad.proxy.messagelog.MessageLog;
 import ee.ria.xroad.proxy.opmonitoring.OpMonitoring;
 import ee.ria.xroad.proxy.serverproxy.ServerProxy;
 import ee.ria.xroad.proxy.util.CertHashBasedOcspResponder;
+import ee.ria.xroad.proxy.util.ProxyMetrics;
 import ee.ria.xroad.proxy.util.ServerConfStatsLogger;
 import ee.ria.xroad.signer.protocol.SignerClient;
 
@@ -218,6 +219,7 @@ public final class ProxyMain {
         SERVICES.add(new ServerProxy());
 
         SERVICES.add(new CertHashBasedOcspResponder());
+        SERVICES.add(new ProxyMetrics());
 
         SERVICES.add(createAdminPort());
 
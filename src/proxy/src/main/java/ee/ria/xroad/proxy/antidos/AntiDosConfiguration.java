@@ -59,4 +59,37 @@ class AntiDosConfiguration {
     double getMaxHeapUsage() {
         return SystemProperties.getAntiDosMaxHeapUsage();
     }
+
+    /**
+     * @return the interval in milliseconds at which the resource usage is
+     * sampled, 0 to sample it for every connection
+     */
+    int getResourceSampleInterval() {
+        return SystemProperties.getAntiDosResourceSampleInterval();
+    }
+
+    /**
+     * @return the number of connections processed in turn from each known
+     * partner
+     */
+    int getKnownPartnerWeight() {
+        return SystemProperties.getAntiDosKnownPartnerWeight();
+    }
+
+    /**
+     * @return the maximum number of new connections per second accepted from
+     * a partner, 0 for no limit
+     */
+    int getPartnerConnectionRate() {
+        return SystemProperties.getAntiDosPartnerConnectionRate();
+    }
+
+    /**
+     * @return the number of connections a partner may open at once in excess
+     * of the connection rate
+     */
+    int getPartnerConnectionBurst() {
+        int burst = SystemProperties.getAntiDosPartnerConnectionBurst();
+        return burst > 0 ? burst : getPartnerConnectionRate();
+    }
 }
@@ -31,41 +31,119 @@ import ee.ria.xroad.common.util.SystemMetrics;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages the incoming connections and prevents system resource exhaustion.
+ *
+ * Each known security server (partner) has a queue of its own, all unknown
+ * addresses share a single queue. The partners with waiting connections are
+ * served in turn, a known partner with as many connections as its weight.
+ * Connections are accepted from any number of threads without locking, while
+ * a single thread takes the connections to be processed.
  */
 @Slf4j
 class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
-    // Tiny wrapper class for active connections of a partner
-    private class HostData {
-        final Deque<T> connections = new LinkedBlockingDeque<>();
+    // Connection queue and scheduling state of a partner
+    private final class HostData {
+        final Queue<T> connections = new ConcurrentLinkedQueue<>();
+
+        // True while the partner is in the active partners buffer (or being served)
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        final int weight;
+
+        // Theoretical arrival time of the next connection when the connection rate is limited
+        final AtomicLong nextArrival = new AtomicLong(System.nanoTime());
+
+        HostData(int weight) {
+            this.weight = weight;
+        }
+
+        boolean admit() {
+            if (rateIntervalNanos == 0) {
+                return true;
+            }
+
+            long now = System.nanoTime();
+
+            while (true) {
+                long arrival = nextArrival.get();
+                long next = Math.max(arrival, now) + rateIntervalNanos;
+
+                if (next - now > burstNanos) {
+                    return false;
+                }
+
+                if (nextArrival.compareAndSet(arrival, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    // Snapshot of the system resource usage
+    private static final class ResourceUsage {
+        final long sampledAt;
+        final long freeFileHandles;
+        final int openConnections;
+        final double cpuLoad;
+        final double heapUsage;
+
+        ResourceUsage(long sampledAt, long freeFileHandles, int openConnections, double cpuLoad,
+                double heapUsage) {
+            this.sampledAt = sampledAt;
+            this.freeFileHandles = freeFileHandles;
+            this.openConnections = openConnections;
+            this.cpuLoad = cpuLoad;
+            this.heapUsage = heapUsage;
+        }
     }
 
     // The IP used for unknown members
     private static final String UNKNOWN_ORG_IP = "0.0.0.0";
 
+    // Incremented whenever the global configuration changes
+    private static final AtomicLong GLOBAL_CONF_VERSION = new AtomicLong();
+
+    static {
+        GlobalConf.addChangeListener(GLOBAL_CONF_VERSION::incrementAndGet);
+    }
+
     // Holds the configuration
     protected final AntiDosConfiguration configuration;
 
-    // IP to HostData mapping
-    protected Map<String, HostData> database = new HashMap<>();
+    // IP to HostData mapping, replaced when the known addresses change
+    protected volatile Map<String, HostData> database;
 
     // Buffer of partners with waiting connections
-    protected LinkedBlockingQueue<HostData> activePartners =
-            new LinkedBlockingQueue<>();
+    protected final BlockingQueue<HostData> activePartners = new LinkedTransferQueue<>();
+
+    // The global configuration version the database was last synchronized with
+    private volatile long syncedVersion = -1;
 
-    // Holds a cache of previously known member IPs.
-    // Used to determine if should sync the database when conf changed.
-    private Set<String> previousKnownOrganizations = new HashSet<>();
+    private final long sampleIntervalNanos;
+    private final AtomicBoolean sampling = new AtomicBoolean();
+    private volatile ResourceUsage resourceUsage;
+
+    private final long rateIntervalNanos;
+    private final long burstNanos;
+
+    // The partner being served and the number of connections it may still take in its turn,
+    // accessed only by the thread taking the connections
+    private HostData currentPartner;
+    private int currentCredits;
 
     AntiDosConnectionManager(AntiDosConfiguration configuration) {
         if (configuration == null) {
@@ -73,8 +151,17 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         }
 
         this.configuration = configuration;
-        this.previousKnownOrganizations.add(UNKNOWN_ORG_IP);
-        this.database.put(UNKNOWN_ORG_IP, new HostData());
+        this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getResourceSampleInterval());
+
+        int rate = configuration.getPartnerConnectionRate();
+
+        this.rateIntervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        this.burstNanos = rateIntervalNanos * Math.max(1, configuration.getPartnerConnectionBurst());
+
+        Map<String, HostData> initial = new HashMap<>();
+        initial.put(UNKNOWN_ORG_IP, new HostData(1));
+
+        this.database = initial;
     }
 
     void init() throws Exception {
@@ -87,7 +174,7 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
      * we have at least one free file handle.
      */
     boolean canAccept() {
-        long freeFileHandles = getFreeFileDescriptorCount();
+        long freeFileHandles = estimateFreeFileHandles(getResourceUsage());
         log.trace("canAccept({})", freeFileHandles);
         return freeFileHandles > 0;
     }
@@ -95,20 +182,33 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     /**
      * Adds the connection into the partner's connection queue.
      */
-    synchronized void accept(T connection) {
-        // We need to synchronize the database with the existing members.
-        syncDatabase();
+    void accept(T connection) {
+        if (syncedVersion != GLOBAL_CONF_VERSION.get()) {
+            // The global configuration has changed, the known addresses may have changed too.
+            syncDatabase();
+        }
 
         // Find the host data for the incoming connection and register
         // the new connection to this host data
-        HostData currentPartner = getHostData(connection.getHostAddress());
-        currentPartner.connections.addFirst(connection);
+        HostData partner = getHostData(connection.getHostAddress());
+
+        if (!partner.admit()) {
+            log.trace("Connection rate exceeded, closing connection {}", connection);
+
+            try {
+                closeConnection(connection);
+            } catch (IOException e) {
+                log.error("Error closing connection " + connection, e);
+            }
+
+            return;
+        }
+
+        partner.connections.add(connection);
 
         // If the host data is not for an active partner,
         // add it to the connection buffer as the newest partner.
-        if (!activePartners.contains(currentPartner)) {
-            activePartners.add(currentPartner);
-        }
+        schedule(partner);
     }
 
     /**
@@ -133,19 +233,26 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
      * If not, then the connection is closed thus freeing some resources.
      */
     protected T getNextConnection() throws InterruptedException {
-        // Take the oldest partner from the buffer (blocks until available).
-        HostData oldestPartner = activePartners.take();
+        if (currentPartner == null) {
+            // Take the oldest partner from the buffer (blocks until available).
+            currentPartner = activePartners.take();
+            currentCredits = currentPartner.weight;
+        }
+
+        HostData partner = currentPartner;
 
         // Take the oldest connection.
-        T sock = oldestPartner.connections.pollLast();
-        if (sock == null) {
-            return null;
+        T sock = partner.connections.poll();
+
+        if (sock == null || --currentCredits == 0 || partner.connections.isEmpty()) {
+            // The partner's turn is over, if there are more connections left
+            // for this partner, add the partner back to the buffer as the newest partner.
+            currentPartner = null;
+            reschedule(partner);
         }
 
-        // If there are more connections left for this partner, add the partner
-        // back to the buffer as the first partner.
-        if (!oldestPartner.connections.isEmpty()) {
-            activePartners.add(oldestPartner);
+        if (sock == null) {
+            return null;
         }
 
         // Processing a connection consumes file handles and other resources
@@ -167,6 +274,10 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         return SystemMetrics.getFreeFileDescriptorCount();
     }
 
+    protected int getOpenConnectionCount() {
+        return SystemMetrics.getNumConnections();
+    }
+
     protected double getCpuLoad() {
         try {
             return SystemMetrics.getStats().getSystemCpuLoad();
@@ -182,48 +293,114 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     }
 
     private HostData getHostData(String ip) {
-        return database.containsKey(ip)
-                ? database.get(ip) : database.get(UNKNOWN_ORG_IP);
+        Map<String, HostData> current = database;
+        HostData hostData = current.get(ip);
+
+        return hostData != null ? hostData : current.get(UNKNOWN_ORG_IP);
     }
 
-    private void syncDatabase() {
-        Set<String> knownAddresses = getAllAddresses();
+    private void schedule(HostData partner) {
+        if (partner.scheduled.compareAndSet(false, true)) {
+            activePartners.add(partner);
+        }
+    }
 
-        if (previousKnownOrganizations.equals(knownAddresses)) {
-            // Nothing has changed, do not sync.
+    private void reschedule(HostData partner) {
+        if (!partner.connections.isEmpty()) {
+            activePartners.add(partner);
             return;
         }
 
-        Map<String, HostData> newDatabase = new HashMap<>();
+        partner.scheduled.set(false);
+
+        // A connection may have been added after the queue was found empty
+        // but before the partner was marked unscheduled.
+        if (!partner.connections.isEmpty()) {
+            schedule(partner);
+        }
+    }
+
+    private synchronized void syncDatabase() {
+        long version = GLOBAL_CONF_VERSION.get();
+
+        if (version == syncedVersion) {
+            return;
+        }
+
+        Set<String> knownAddresses;
+        try {
+            knownAddresses = new HashSet<>(GlobalConf.getKnownAddresses());
+        } catch (Exception e) {
+            // In case the conf was invalid, we do not sync and try again
+            // with the next connection.
+            log.trace("Could not get known addresses", e);
+            return;
+        }
+
+        knownAddresses.add(UNKNOWN_ORG_IP);
+
+        Map<String, HostData> current = database;
+
+        if (!current.keySet().equals(knownAddresses)) {
+            Map<String, HostData> newDatabase = new HashMap<>();
 
-        // Retain existing members connections
-        database.keySet().stream()
-                .filter(knownAddresses::contains)
-                .forEach(existingAddress -> newDatabase.put(
-                        existingAddress, database.get(existingAddress)));
+            // Retain existing members connections, add new members
+            for (String address : knownAddresses) {
+                HostData existing = current.get(address);
 
-        // Add new members
-        knownAddresses.stream()
-                .filter(knownAddress -> !database.containsKey(knownAddress))
-                .forEach(knownAddress ->
-                        registerHostData(newDatabase, knownAddress));
+                newDatabase.put(address, existing != null ? existing : registerHostData(address));
+            }
+
+            database = newDatabase;
+        }
 
-        previousKnownOrganizations = knownAddresses;
-        database = newDatabase;
+        syncedVersion = version;
     }
 
-    private void registerHostData(
-            Map<String, HostData> newDatabase, String knownAddress) {
+    private HostData registerHostData(String knownAddress) {
         log.trace("Registering HostData for " + knownAddress);
-        newDatabase.put(knownAddress, new HostData());
+        return new HostData(configuration.getKnownPartnerWeight());
+    }
+
+    private ResourceUsage getResourceUsage() {
+        ResourceUsage usage = resourceUsage;
+        long now = System.nanoTime();
+
+        if (usage == null) {
+            usage = sampleResourceUsage(now);
+        } else if (now - usage.sampledAt >= sampleIntervalNanos && sampling.compareAndSet(false, true)) {
+            try {
+                usage = sampleResourceUsage(now);
+            } finally {
+                sampling.set(false);
+            }
+        }
+
+        return usage;
+    }
+
+    private ResourceUsage sampleResourceUsage(long now) {
+        ResourceUsage usage = new ResourceUsage(now, getFreeFileDescriptorCount(), getOpenConnectionCount(),
+                getCpuLoad(), getHeapUsage());
+
+        resourceUsage = usage;
+
+        return usage;
+    }
+
+    private long estimateFreeFileHandles(ResourceUsage usage) {
+        // Every connection opened (closed) since the sample uses (frees) a file handle
+        return usage.freeFileHandles - (getOpenConnectionCount() - usage.openConnections);
     }
 
     private boolean hasSufficientResources() {
-        long freeFileDescriptorCount = getFreeFileDescriptorCount();
+        ResourceUsage usage = getResourceUsage();
+
+        long freeFileDescriptorCount = estimateFreeFileHandles(usage);
         int minFreeFileHandles = configuration.getMinFreeFileHandles();
-        double cpuLoad = getCpuLoad();
+        double cpuLoad = usage.cpuLoad;
         double maxCpuLoad = configuration.getMaxCpuLoad();
-        double heapUsage = getHeapUsage();
+        double heapUsage = usage.heapUsage;
         double maxHeapUsage = configuration.getMaxHeapUsage();
 
         log.trace("Resource usage when considering connection:\n"
@@ -237,20 +414,4 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
                 && cpuLoad < maxCpuLoad
                 && heapUsage < maxHeapUsage;
     }
-
-    private static Set<String> getAllAddresses() {
-        Set<String> addresses = new HashSet<>();
-        try {
-            addresses.addAll(GlobalConf.getKnownAddresses());
-        } catch (Exception ignored) {
-            // In case the conf was invalid, we do not sync. We should not
-            // log this exception, since this method might be
-            // called very frequently.
-            ignored.getClass(); //dummy code
-        }
-
-        addresses.add(UNKNOWN_ORG_IP);
-        return addresses;
-    }
-
 }
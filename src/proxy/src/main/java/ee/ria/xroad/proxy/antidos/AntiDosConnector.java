@@ -69,7 +69,8 @@ public class AntiDosConnector extends ServerConnector {
             try {
                 super.closeConnection(sock);
             } finally {
-                onConnectionClosed();
+                // the connection was closed before it was processed, so it holds no permit
+                SystemMetrics.connectionClosed();
             }
         }
     };
@@ -81,6 +82,9 @@ public class AntiDosConnector extends ServerConnector {
      */
     public AntiDosConnector(Server server, int acceptorCount) {
         super(server, acceptorCount, -1);
+
+        // the kernel caps the backlog at somaxconn, a short one drops connection bursts before we see them
+        setAcceptQueueSize(configuration.getMaxParallelConnections());
     }
 
     /**
@@ -91,6 +95,8 @@ public class AntiDosConnector extends ServerConnector {
      */
     public AntiDosConnector(Server server, int acceptorCount, SslContextFactory sslContextFactory) {
         super(server, acceptorCount, -1, sslContextFactory);
+
+        setAcceptQueueSize(configuration.getMaxParallelConnections());
     }
 
     @Override
@@ -133,9 +139,9 @@ public class AntiDosConnector extends ServerConnector {
             public void accept(SelectableChannel channel) {
                 log.trace("Accepted connection: " + channel);
 
-                manager.accept(new SocketChannelWrapperImpl((SocketChannel) channel));
-
                 SystemMetrics.connectionAccepted();
+
+                manager.accept(new SocketChannelWrapperImpl((SocketChannel) channel));
             }
         };
     }
@@ -0,0 +1,174 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.identifier.ClientId;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.SSLSession;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
+
+/**
+ * Caches the successful verifications of service provider authentication certificates, keyed by the service
+ * provider and the SHA-256 fingerprints of the peer certificate chain. A verification is reused until the time
+ * until which the certificate chain was found valid, as long as the locally cached OCSP responses of the
+ * certificates are the ones that were verified. A verification is also stored in the TLS session, so that
+ * resumed sessions skip the lookup.
+ */
+@Slf4j
+final class AuthTrustCache {
+
+    /**
+     * Verifies the peer certificate chain.
+     */
+    @FunctionalInterface
+    interface Verifier {
+        VerifiedPeer verify() throws Exception;
+    }
+
+    /**
+     * Returns the hash of the currently cached OCSP responses of the certificates, or null if some are missing.
+     */
+    @FunctionalInterface
+    interface OcspHashProvider {
+        String getOcspHash(List<X509Certificate> certs) throws Exception;
+    }
+
+    /**
+     * A successful verification of the peer certificate chain.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class VerifiedPeer {
+        private final List<X509Certificate> certs;
+        private final String ocspHash;
+        private final Date validUntil;
+    }
+
+    private static final String SESSION_VERIFIED_PEER = AuthTrustCache.class.getName() + ".verifiedPeer:";
+
+    private final Cache<String, CachedPeer> verifiedPeers;
+    private final OcspHashProvider ocspHashProvider;
+    private final AtomicLong confVersion = new AtomicLong();
+
+    /**
+     * @param maximumSize maximum number of cached verifications, 0 disables the cache
+     * @param ocspHashProvider provides the hash of the locally cached OCSP responses of a certificate chain
+     */
+    AuthTrustCache(long maximumSize, OcspHashProvider ocspHashProvider) {
+        this.verifiedPeers = maximumSize > 0 ? CacheBuilder.newBuilder().maximumSize(maximumSize).build() : null;
+        this.ocspHashProvider = ocspHashProvider;
+    }
+
+    /**
+     * Invalidates all the verifications, including the ones stored in TLS sessions. Called when the global
+     * configuration changes, since the verification depends on the CA certificates and security server
+     * registrations it contains.
+     */
+    void invalidateAll() {
+        confVersion.incrementAndGet();
+
+        if (verifiedPeers != null) {
+            verifiedPeers.invalidateAll();
+        }
+    }
+
+    /**
+     * Reuses an earlier successful verification of the peer for the service provider if it is still valid,
+     * otherwise verifies the peer and caches the result.
+     * @param session the TLS session with the peer
+     * @param serviceProvider the service provider
+     * @param certs the peer certificate chain
+     * @param atDate the time of the verification
+     * @param verifier verifies the peer if no valid verification is cached
+     * @throws Exception if the verification fails
+     */
+    void verify(SSLSession session, ClientId serviceProvider, X509Certificate[] certs, Date atDate,
+            Verifier verifier) throws Exception {
+        if (verifiedPeers == null) {
+            verifier.verify();
+
+            return;
+        }
+
+        String sessionKey = SESSION_VERIFIED_PEER + serviceProvider;
+
+        Object sessionPeer = session.getValue(sessionKey);
+        if (sessionPeer instanceof CachedPeer && isValidAt((CachedPeer)sessionPeer, atDate)) {
+            log.trace("Reusing verification of TLS session for {}", serviceProvider);
+
+            return;
+        }
+
+        String cacheKey = getCacheKey(serviceProvider, certs);
+
+        CachedPeer peer = verifiedPeers.getIfPresent(cacheKey);
+        if (peer == null || !isValidAt(peer, atDate) || !Objects.equals(peer.verification.getOcspHash(),
+                ocspHashProvider.getOcspHash(peer.verification.getCerts()))) {
+            long version = confVersion.get();
+
+            peer = new CachedPeer(verifier.verify(), version);
+            verifiedPeers.put(cacheKey, peer);
+        } else {
+            log.trace("Reusing verification of peer certificate for {}", serviceProvider);
+        }
+
+        session.putValue(sessionKey, peer);
+    }
+
+    private boolean isValidAt(CachedPeer peer, Date atDate) {
+        return peer.confVersion == confVersion.get() && !atDate.after(peer.verification.getValidUntil());
+    }
+
+    private static String getCacheKey(ClientId serviceProvider, X509Certificate[] certs) throws Exception {
+        StringBuilder key = new StringBuilder(serviceProvider.toString());
+
+        for (X509Certificate cert : certs) {
+            key.append(':').append(hexDigest(SHA256_ID, cert.getEncoded()));
+        }
+
+        return key.toString();
+    }
+
+    @RequiredArgsConstructor
+    private static final class CachedPeer {
+        private final VerifiedPeer verification;
+        private final long confVersion;
+    }
+}
@@ -26,11 +26,14 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.cert.CertHelper;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.CertUtils;
+import ee.ria.xroad.proxy.clientproxy.AuthTrustCache.VerifiedPeer;
 import ee.ria.xroad.proxy.conf.KeyConf;
 
 import lombok.extern.slf4j.Slf4j;
@@ -45,12 +48,16 @@ import java.net.URI;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.util.CertHashBasedOcspResponderClient.getOcspResponsesFromServer;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.hexDigest;
 
 /**
  * This class is responsible for verifying the server proxy SSL certificate.
@@ -64,12 +71,24 @@ import static ee.ria.xroad.common.util.CertHashBasedOcspResponderClient.getOcspR
  * SSL handshake takes place. We can then retrieve the provider name from
  * the HttpContext (stored there previously by the MultipartSender) and
  * the peer certificates and do the validation of the certificate.
+ *
+ * Successful verifications are cached until the OCSP responses they were
+ * based on are no longer fresh or the global configuration changes, and
+ * are reused for new connections to the same peer and for resumed sessions.
  */
 @Slf4j
 public final class AuthTrustVerifier {
 
     public static final String ID_PROVIDERNAME = "request.providerName";
 
+    private static final AuthTrustCache VERIFIED_PEERS = new AuthTrustCache(
+            SystemProperties.getClientProxyAuthTrustCacheSize(),
+            certs -> getOcspHash(getCachedOcspResponses(certs)));
+
+    static {
+        GlobalConf.addChangeListener(VERIFIED_PEERS::invalidateAll);
+    }
+
     private AuthTrustVerifier() {
     }
 
@@ -90,13 +109,14 @@ public final class AuthTrustVerifier {
         }
 
         try {
-            verifyAuthCert(service.getClientId(), certs, selectedAddress);
+            VERIFIED_PEERS.verify(sslSession, service.getClientId(), certs, new Date(),
+                    () -> verifyAuthCert(service.getClientId(), certs, selectedAddress));
         } catch (Exception e) {
             throw translateException(e);
         }
     }
 
-    private static void verifyAuthCert(ClientId serviceProvider,
+    private static VerifiedPeer verifyAuthCert(ClientId serviceProvider,
             X509Certificate[] certs, URI address) throws Exception {
         CertChain chain;
         List<OCSPResp> ocspResponses;
@@ -113,7 +133,9 @@ public final class AuthTrustVerifier {
             throw e.withPrefix(X_SSL_AUTH_FAILED);
         }
 
-        CertHelper.verifyAuthCert(chain, ocspResponses, serviceProvider);
+        Date validUntil = CertHelper.verifyAuthCert(chain, ocspResponses, serviceProvider);
+
+        return new VerifiedPeer(chain.getAllCertsWithoutTrustedRoot(), getOcspHash(ocspResponses), validUntil);
     }
 
     /**
@@ -191,6 +213,49 @@ public final class AuthTrustVerifier {
         return receivedResponses;
     }
 
+    /**
+     * @return locally cached OCSP responses of the certificates or null if some of them are not available
+     */
+    private static List<OCSPResp> getCachedOcspResponses(List<X509Certificate> certs) throws Exception {
+        List<OCSPResp> responses = new ArrayList<>();
+
+        for (X509Certificate cert : certs) {
+            OCSPResp response;
+            try {
+                response = KeyConf.getOcspResponse(cert);
+            } catch (CodedException e) {
+                log.trace("Cached OCSP response could not be loaded", e);
+                return null;
+            }
+
+            if (response == null) {
+                return null;
+            }
+
+            responses.add(response);
+        }
+
+        return responses;
+    }
+
+    /**
+     * @return hash of the OCSP responses that does not depend on their order, or null if there are no responses
+     */
+    private static String getOcspHash(List<OCSPResp> responses) throws Exception {
+        if (responses == null) {
+            return null;
+        }
+
+        List<String> hashes = new ArrayList<>();
+        for (OCSPResp response : responses) {
+            hashes.add(hexDigest(SHA256_ID, response.getEncoded()));
+        }
+
+        Collections.sort(hashes);
+
+        return String.join(":", hashes);
+    }
+
     private static X509Certificate[] getPeerCertificates(SSLSession session) {
         if (session == null) {
             throw new CodedException(X_SSL_AUTH_FAILED, "No TLS session");
@@ -205,5 +270,4 @@ public final class AuthTrustVerifier {
                     "Service provider did not send correct authentication certificate");
         }
     }
-
 }
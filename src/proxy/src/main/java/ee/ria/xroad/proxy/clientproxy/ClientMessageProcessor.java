@@ -26,6 +26,7 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
@@ -55,7 +56,10 @@ import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.http.client.HttpClient;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.util.Arrays;
 import org.xml.sax.Attributes;
@@ -65,9 +69,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.io.SequenceInputStream;
 import java.io.Writer;
 import java.net.URI;
 import java.util.List;
@@ -93,6 +102,9 @@ import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_CONTENT_TYPE;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_SOAP_ACTION;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_REQUEST_ID;
+import static ee.ria.xroad.common.util.MimeUtils.getBoundary;
+import static ee.ria.xroad.common.util.MimeUtils.mpMixedContentType;
+import static ee.ria.xroad.common.util.MimeUtils.randomBoundary;
 import static ee.ria.xroad.common.util.TimeUtils.getEpochMillisecond;
 
 @Slf4j
@@ -119,6 +131,18 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
      */
     private final CountDownLatch httpSenderGate = new CountDownLatch(1);
 
+    /**
+     * If true, the request is streamed to the server proxy in the request thread. Otherwise the request is
+     * decoded in a separate SOAP handler thread and passed to the request thread through a pipe.
+     */
+    private final boolean streaming;
+
+    /** Holds the header of the incoming request, read ahead of the message in streaming mode. */
+    private SoapHeader requestHeader;
+
+    /** Holds the incoming request content, replayed from the beginning after reading the header. */
+    private InputStream requestContent;
+
     /** Holds the incoming request SOAP message. */
     private volatile String originalSoapAction;
     private volatile SoapMessageImpl requestSoap;
@@ -158,9 +182,13 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
             throws Exception {
         super(servletRequest, servletResponse, httpClient, clientCert, opMonitoringData);
-        this.reqIns = new PipedInputStream();
-        this.reqOuts = new PipedOutputStream(reqIns);
+        this.streaming = SystemProperties.isClientProxySoapStreamingEnabled();
         this.xRequestId = UUID.randomUUID().toString();
+
+        if (!streaming) {
+            this.reqIns = new PipedInputStream();
+            this.reqOuts = new PipedOutputStream(reqIns);
+        }
     }
 
     @Override
@@ -170,6 +198,45 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         opMonitoringData.setXRequestId(xRequestId);
         updateOpMonitoringClientSecurityServerAddress();
 
+        if (streaming) {
+            processStreaming();
+        } else {
+            processWithHandlerThread();
+        }
+    }
+
+    private void processStreaming() throws Exception {
+        log.trace("processStreaming()");
+
+        try {
+            // Read the header of the request SOAP message, the rest is streamed to server proxy later.
+            readRequestHeader();
+
+            // Check that incoming identifiers do not contain illegal characters
+            checkRequestIdentifiers();
+
+            // Verify that the client is registered.
+            ClientId client = requestHeader.getClient();
+            verifyClientStatus(client);
+
+            // Check client authentication mode.
+            verifyClientAuthentication(client);
+
+            processRequest();
+
+            if (response != null) {
+                sendResponse();
+            }
+        } finally {
+            if (response != null) {
+                response.consume();
+            }
+        }
+    }
+
+    private void processWithHandlerThread() throws Exception {
+        log.trace("processWithHandlerThread()");
+
         Future<?> soapHandler = SOAP_HANDLER_EXECUTOR.submit(this::handleSoap);
 
         try {
@@ -211,10 +278,38 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     }
 
     private void checkRequestIdentifiers() {
-        checkIdentifier(requestSoap.getClient());
-        checkIdentifier(requestSoap.getService());
-        checkIdentifier(requestSoap.getCentralService());
-        checkIdentifier(requestSoap.getSecurityServer());
+        SoapHeader header = requestSoap != null ? requestSoap.getHeader() : requestHeader;
+
+        checkIdentifier(header.getClient());
+        checkIdentifier(header.getService());
+        checkIdentifier(header.getCentralService());
+        checkIdentifier(header.getSecurityServer());
+    }
+
+    /**
+     * Reads the SOAP header from the beginning of the request. The bytes read are kept aside so that the whole
+     * request can be decoded from the start once the connection to the server proxy has been opened.
+     */
+    private void readRequestHeader() throws Exception {
+        log.trace("readRequestHeader()");
+
+        InputStream servletInput = servletRequest.getInputStream();
+        ByteArrayOutputStream readAhead = new ByteArrayOutputStream();
+
+        try {
+            originalSoapAction = validateSoapActionHeader(servletRequest.getHeader("SOAPAction"));
+
+            // the decoder callback is not used when only the header is read
+            SoapMessageDecoder headerDecoder = new SoapMessageDecoder(servletRequest.getContentType(),
+                    null, new RequestSoapParserImpl());
+            requestHeader = headerDecoder.parseHeader(
+                    new TeeInputStream(CloseShieldInputStream.wrap(servletInput), readAhead));
+        } catch (Exception ex) {
+            throw new ClientException(translateException(ex));
+        }
+
+        requestContent = new SequenceInputStream(new ByteArrayInputStream(readAhead.toByteArray()), servletInput);
+        requestServiceId = requestHeader.getService();
     }
 
     @Override
@@ -238,7 +333,10 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             sendRequest(httpSender);
 
             // Check for any errors from the handler thread once more.
-            waitForRequestSent();
+            if (!streaming) {
+                waitForRequestSent();
+            }
+
             checkError();
 
             parseResponse(httpSender);
@@ -253,7 +351,8 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         log.trace("sendRequest()");
 
         try {
-            URI[] addresses = prepareRequest(httpSender, requestServiceId, requestSoap.getSecurityServer());
+            SoapHeader header = requestSoap != null ? requestSoap.getHeader() : requestHeader;
+            URI[] addresses = prepareRequest(httpSender, requestServiceId, header.getSecurityServer());
             // Preserve the original SOAPAction header
             httpSender.addHeader(HEADER_ORIGINAL_SOAP_ACTION, originalSoapAction);
 
@@ -262,9 +361,19 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
             try {
                 opMonitoringData.setRequestOutTs(getEpochMillisecond());
-                httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+
+                if (streaming) {
+                    httpSender.doPost(getServiceAddress(addresses),
+                            new SoapRequestEntity(mpMixedContentType("xtop" + randomBoundary())));
+                } else {
+                    httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+                }
+
                 opMonitoringData.setResponseInTs(getEpochMillisecond());
             } catch (Exception e) {
+                // The request itself was faulty, server proxy is not to blame
+                checkError();
+
                 // Failed to connect to server proxy
                 MonitorAgent.serverProxyFailed(createRequestMessageInfo());
 
@@ -442,12 +551,14 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
     @Override
     public MessageInfo createRequestMessageInfo() {
-        if (requestSoap == null) {
+        SoapHeader header = requestSoap != null ? requestSoap.getHeader() : requestHeader;
+
+        if (header == null) {
             return null;
         }
 
-        return new MessageInfo(Origin.CLIENT_PROXY, requestSoap.getClient(), requestServiceId, requestSoap.getUserId(),
-                requestSoap.getQueryId());
+        return new MessageInfo(Origin.CLIENT_PROXY, header.getClient(), requestServiceId, header.getUserId(),
+                header.getQueryId());
     }
 
     public void handleSoap() {
@@ -456,7 +567,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
                     handler, new RequestSoapParserImpl());
             try {
                 originalSoapAction = validateSoapActionHeader(servletRequest.getHeader("SOAPAction"));
-                soapMessageDecoder.parse(servletRequest.getInputStream());
+                soapMessageDecoder.parse(requestContent != null ? requestContent : servletRequest.getInputStream());
             } catch (Exception ex) {
                 throw new ClientException(translateException(ex));
             }
@@ -469,6 +580,51 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     }
 
 
+    /**
+     * Entity that decodes the request SOAP message and encodes it for the server proxy while the request is being
+     * sent, so that the whole exchange happens in the request thread.
+     */
+    private class SoapRequestEntity extends AbstractHttpEntity {
+
+        SoapRequestEntity(String contentType) {
+            super();
+            setContentType(contentType);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws UnsupportedOperationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            request = new ProxyMessageEncoder(outstream, SoapUtils.getHashAlgoId(),
+                    getBoundary(contentType.getValue()));
+
+            handleSoap();
+
+            if (executionException != null) {
+                // Abort the request, the error is reported to the client instead of a server proxy response.
+                throw executionException;
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+    }
+
     private class SoapMessageHandler implements SoapMessageDecoder.Callback {
 
         @Override
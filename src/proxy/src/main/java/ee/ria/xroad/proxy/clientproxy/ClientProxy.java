@@ -32,6 +32,7 @@ import ee.ria.xroad.common.util.StartStop;
 import ee.ria.xroad.proxy.serverproxy.IdleConnectionMonitorThread;
 import ee.ria.xroad.proxy.util.SSLContextUtil;
 
+import com.codahale.metrics.jmx.JmxReporter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.config.RequestConfig;
@@ -98,6 +99,9 @@ public class ClientProxy implements StartStop {
     private CloseableHttpClient client;
     private IdleConnectionMonitorThread connectionMonitor;
 
+    private final JmxReporter serverConnectionReporter =
+            JmxReporter.forRegistry(TargetAddressSelector.getMetricRegistry()).inDomain("xroad.proxy").build();
+
     /**
      * Constructs and configures a new client proxy.
      * @throws Exception in case of any errors
@@ -296,6 +300,7 @@ public class ClientProxy implements StartStop {
         log.trace("start()");
 
         server.start();
+        serverConnectionReporter.start();
 
         if (connectionMonitor != null) {
             connectionMonitor.start();
@@ -321,6 +326,7 @@ public class ClientProxy implements StartStop {
 
         client.close();
         server.stop();
+        serverConnectionReporter.stop();
 
         HibernateUtil.closeSessionFactories();
     }
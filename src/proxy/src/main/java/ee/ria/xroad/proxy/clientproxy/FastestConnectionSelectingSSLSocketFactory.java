@@ -31,8 +31,6 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.HttpHost;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
@@ -40,6 +38,8 @@ import org.apache.http.protocol.HttpContext;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 
 import java.io.Closeable;
@@ -49,7 +49,6 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.URI;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_NETWORK_ERROR;
@@ -59,11 +58,16 @@ import static ee.ria.xroad.proxy.clientproxy.AuthTrustVerifier.verify;
  * This is a custom SSL socket factory that connects to the fastest target
  * address given a list of target addresses.
  *
- * The fastest target address is selected by initializing socket connection
- * to all provided addresses and choosing the first one to respond.
+ * The connect and TLS handshake latencies and the failures of every target
+ * address are tracked by {@link TargetAddressSelector}, and the address with
+ * the lowest latency is connected to directly. Only if none of the addresses
+ * has recent statistics, or the preferred address fails, the fastest address
+ * is selected by initializing socket connection to all provided addresses and
+ * choosing the first one to respond.
  *
- * If an SSL session already exists to one of the provided addresses, then
- * that address is selected immediately without previous selection algorithm.
+ * TLS sessions are cached, so that connections to an address that has
+ * recently been connected to can resume the earlier session instead of
+ * doing a full handshake.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -80,21 +84,21 @@ class FastestConnectionSelectingSSLSocketFactory
 
     public static final int MIN_TIMEOUT = 5000;
 
-    public static final int CACHE_MAXIMUM_SIZE = 10000;
-
     private final javax.net.ssl.SSLSocketFactory socketfactory;
 
-    private final Cache<CacheKey, URI> selectedHosts;
+    private final TargetAddressSelector addressSelector;
     private final boolean cachingEnabled;
 
     FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext) {
         super(sslContext, null, SystemProperties.getXroadTLSCipherSuites(), (HostnameVerifier)null);
         this.socketfactory = sslContext.getSocketFactory();
-        this.selectedHosts = CacheBuilder.newBuilder()
-                .expireAfterWrite(SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(), TimeUnit.SECONDS)
-                .maximumSize(CACHE_MAXIMUM_SIZE)
-                .build();
+        this.addressSelector = new TargetAddressSelector(
+                SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod());
         this.cachingEnabled = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
+
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        sessionContext.setSessionCacheSize(SystemProperties.getClientProxyTlsSessionCacheSize());
+        sessionContext.setSessionTimeout(SystemProperties.getClientProxyTlsSessionTimeout());
     }
 
     @Override
@@ -114,22 +118,20 @@ class FastestConnectionSelectingSSLSocketFactory
         final boolean useCache = cachingEnabled && (addressesFromContext.length > 1);
         final FastestSocketSelector selector = new FastestSocketSelector();
 
-        CacheKey cacheKey = null;
-        URI cachedURI = null;
+        URI preferredURI = null;
 
         if (log.isTraceEnabled()) {
             log.trace("addresses from context {} current thread id {}", addressesFromContext,
                     Thread.currentThread().getId());
         }
 
-        // If URI cache is enabled, check for a previously selected host, avoiding the selection process.
+        // If enabled, connect to the address with the best latency, avoiding the selection process.
         if (useCache) {
-            cacheKey = new CacheKey(addressesFromContext);
-            cachedURI = selectedHosts.getIfPresent(cacheKey);
+            preferredURI = addressSelector.select(addressesFromContext);
 
-            if (cachedURI != null) {
-                log.trace("Use cached URI {}", cachedURI);
-                selector.add(cachedURI);
+            if (preferredURI != null) {
+                log.trace("Use preferred URI {}", preferredURI);
+                selector.add(preferredURI);
             }
         }
 
@@ -138,24 +140,23 @@ class FastestConnectionSelectingSSLSocketFactory
         }
 
         Exception deferredException = null;
-        int connectTimeout = (cachedURI == null ? timeout : CACHED_TIMEOUT);
+        int connectTimeout = (preferredURI == null ? timeout : CACHED_TIMEOUT);
         while (!selector.isEmpty()) {
             SocketInfo selectedSocket = null;
             SSLSocket sslSocket = null;
             try {
                 // Select the fastest address if more than one address is provided.
                 // see also FastestSocketSelector
+                long connectStart = System.nanoTime();
                 selectedSocket = selector.select(connectTimeout);
-                sslSocket = wrapToSSLSocket(selectedSocket.getSocket(), connectTimeout);
+                addressSelector.connected(selectedSocket.getUri(), System.nanoTime() - connectStart);
+
+                sslSocket = wrapToSSLSocket(selectedSocket, connectTimeout);
                 prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
                 configureSocket(sslSocket);
                 log.trace("Connected to {}", selectedSocket.getUri());
                 updateOpMonitoringData(context, selectedSocket);
 
-                if (useCache && cachedURI == null) {
-                    log.trace("Store the fastest provider URI to cache {}", selectedSocket.getUri());
-                    selectedHosts.put(cacheKey, selectedSocket.getUri());
-                }
                 return sslSocket;
             } catch (IOException | RuntimeException e) {
                 deferredException = e;
@@ -163,14 +164,17 @@ class FastestConnectionSelectingSSLSocketFactory
                 if (selectedSocket != null) {
                     log.trace("Failed to connect to {}", selectedSocket.getUri(), e);
                     closeQuietly(selectedSocket.getSocket());
+                    addressSelector.failed(selectedSocket.getUri());
                 } else {
                     log.debug("Failed to connect", e);
                 }
-                if (cachedURI != null) {
-                    selectedHosts.asMap().remove(cacheKey, cachedURI);
+                if (preferredURI != null) {
+                    if (selectedSocket == null) {
+                        addressSelector.failed(preferredURI);
+                    }
                     selector.addAll(addressesFromContext);
-                    selector.remove(cachedURI);
-                    cachedURI = null;
+                    selector.remove(preferredURI);
+                    preferredURI = null;
                     connectTimeout = timeout;
                 } else {
                     if (selectedSocket == null) {
@@ -241,18 +245,33 @@ class FastestConnectionSelectingSSLSocketFactory
     private void prepareAndVerify(SSLSocket sslSocket, URI selectedAddress,
             HttpContext context) throws IOException {
         prepareSocket(sslSocket);
-        verify(context, sslSocket.getSession(), selectedAddress);
+
+        long handshakeStartMillis = System.currentTimeMillis();
+        long handshakeStart = System.nanoTime();
+        // getSession() starts the handshake, a failed handshake results in an invalid session rejected by verify()
+        SSLSession session = sslSocket.getSession();
+        long handshakeNanos = System.nanoTime() - handshakeStart;
+
+        verify(context, session, selectedAddress);
+
+        // a resumed session was created before this handshake started
+        boolean resumed = session.getCreationTime() < handshakeStartMillis;
+        log.trace("{} TLS session with {}", resumed ? "Resumed" : "Established", selectedAddress);
+
+        addressSelector.handshakeCompleted(selectedAddress, handshakeNanos, resumed);
     }
 
-    private SSLSocket wrapToSSLSocket(Socket socket, int connectTimeout) throws IOException {
+    private SSLSocket wrapToSSLSocket(SocketInfo selectedSocket, int connectTimeout) throws IOException {
+        Socket socket = selectedSocket.getSocket();
         if (socket instanceof SSLSocket) {
             return (SSLSocket)socket;
         }
         //XRDDEV-248: use connection timeout as read timeout during SSL handshake
         socket.setSoTimeout(connectTimeout);
         socket.setSoLinger(false, 0);
-        Socket sslSocket = socketfactory.createSocket(socket,
-                socket.getInetAddress().getHostName(), socket.getPort(), SystemProperties.isUseSslSocketAutoClose());
+        // TLS sessions are cached by the peer host and port, use the target address for a stable cache key
+        Socket sslSocket = socketfactory.createSocket(socket, selectedSocket.getUri().getHost(), socket.getPort(),
+                SystemProperties.isUseSslSocketAutoClose());
         if (sslSocket instanceof SSLSocket) {
             return (SSLSocket)sslSocket;
         }
@@ -278,32 +297,4 @@ class FastestConnectionSelectingSSLSocketFactory
         }
     }
 
-    static final class CacheKey {
-        private final URI[] addresses;
-        private final int hash;
-
-        CacheKey(URI[] addresses) {
-            // address lists are small, using an sorted arraylist as a key
-            // will have a lower overhead than using a hashset or treeset
-            final URI[] tmp = addresses.clone();
-            Arrays.sort(tmp);
-            this.addresses = tmp;
-            this.hash = Arrays.hashCode(this.addresses);
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof CacheKey)) return false;
-            final CacheKey key = (CacheKey)o;
-            if (hash != key.hash) return false;
-            return Arrays.equals(addresses, key.addresses);
-        }
-
-        @Override
-        public int hashCode() {
-            return hash;
-        }
-    }
-
 }
@@ -0,0 +1,285 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Selects the address to connect to among the addresses of a security server.
+ *
+ * Exponentially weighted moving averages of the connect and TLS handshake latencies and the number of consecutive
+ * failures are kept for every address, and the address with the lowest latency is preferred. Failed addresses are
+ * avoided for a period that doubles with every consecutive failure. A small share of the connections is made to
+ * some other address, so that the statistics of the other addresses stay up to date. If none of the addresses has
+ * recent statistics, no address is preferred and the caller should connect to all of them and keep the first one to
+ * respond.
+ *
+ * The number of full and resumed TLS handshakes and the connections, failures and latencies of every address are
+ * published in the {@link #getMetricRegistry() metric registry} under "ServerConnections".
+ */
+@Slf4j
+final class TargetAddressSelector {
+
+    private static final String METRICS_PREFIX = "ServerConnections";
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private static final long FAILURE_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_FAILURE_BACKOFF_SHIFT = 6;
+
+    private final long statisticsTtlNanos;
+    private final double probeRatio;
+    private final LongSupplier clock;
+    private final MetricRegistry registry;
+
+    private final Map<URI, AddressStatistics> statistics = new ConcurrentHashMap<>();
+
+    private final Counter handshakes;
+    private final Counter resumedHandshakes;
+
+    /**
+     * Creates a selector that publishes its metrics in the shared registry.
+     * @param statisticsTtlSeconds time in seconds the statistics of an address are considered recent
+     */
+    TargetAddressSelector(int statisticsTtlSeconds) {
+        this(TimeUnit.SECONDS.toNanos(statisticsTtlSeconds), SystemProperties.getClientProxyAddressProbeRatio(),
+                System::nanoTime, METRICS);
+    }
+
+    TargetAddressSelector(long statisticsTtlNanos, double probeRatio, LongSupplier clock, MetricRegistry registry) {
+        this.statisticsTtlNanos = statisticsTtlNanos;
+        this.probeRatio = probeRatio;
+        this.clock = clock;
+        this.registry = registry;
+
+        this.handshakes = registry.counter(MetricRegistry.name(METRICS_PREFIX, "handshakes"));
+        this.resumedHandshakes = registry.counter(MetricRegistry.name(METRICS_PREFIX, "resumedHandshakes"));
+
+        registry.gauge(MetricRegistry.name(METRICS_PREFIX, "resumptionRate"), () -> new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(resumedHandshakes.getCount(), handshakes.getCount());
+            }
+        });
+    }
+
+    /**
+     * @return the registry of the server connection metrics
+     */
+    static MetricRegistry getMetricRegistry() {
+        return METRICS;
+    }
+
+    /**
+     * Selects the preferred address.
+     * @param addresses the addresses of the security server
+     * @return the address to connect to or null if all the addresses should be tried at once
+     */
+    URI select(URI[] addresses) {
+        long now = clock.getAsLong();
+
+        URI best = null;
+        double bestLatency = Double.MAX_VALUE;
+
+        List<URI> others = new ArrayList<>();
+        List<URI> unknown = new ArrayList<>();
+
+        for (URI address : addresses) {
+            AddressStatistics stats = statistics.get(address);
+
+            if (stats != null && !stats.isAvailable(now)) {
+                continue;
+            }
+
+            if (stats == null || !stats.isRecent(now)) {
+                unknown.add(address);
+                continue;
+            }
+
+            double latency = stats.getWeightedLatency();
+
+            if (latency < bestLatency) {
+                if (best != null) {
+                    others.add(best);
+                }
+
+                best = address;
+                bestLatency = latency;
+            } else {
+                others.add(address);
+            }
+        }
+
+        if (best != null && probeRatio > 0 && ThreadLocalRandom.current().nextDouble() < probeRatio) {
+            List<URI> candidates = unknown.isEmpty() ? others : unknown;
+
+            if (!candidates.isEmpty()) {
+                URI probe = candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+
+                log.trace("Probing {} instead of {}", probe, best);
+
+                return probe;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Records a successful TCP connection to the address.
+     * @param address the address
+     * @param connectNanos time it took to connect, in nanoseconds
+     */
+    void connected(URI address, long connectNanos) {
+        getStatistics(address).connected(connectNanos, clock.getAsLong());
+    }
+
+    /**
+     * Records a successful TLS handshake with the address.
+     * @param address the address
+     * @param handshakeNanos time it took to complete the handshake, in nanoseconds
+     * @param resumed true if an earlier TLS session was resumed
+     */
+    void handshakeCompleted(URI address, long handshakeNanos, boolean resumed) {
+        handshakes.inc();
+
+        if (resumed) {
+            resumedHandshakes.inc();
+        }
+
+        getStatistics(address).handshakeCompleted(handshakeNanos, clock.getAsLong());
+    }
+
+    /**
+     * Records a failed connection attempt to the address.
+     * @param address the address
+     */
+    void failed(URI address) {
+        getStatistics(address).failed(clock.getAsLong());
+    }
+
+    private AddressStatistics getStatistics(URI address) {
+        return statistics.computeIfAbsent(address, AddressStatistics::new);
+    }
+
+    private static double average(double current, long sample) {
+        return Double.isNaN(current) ? sample : current + EWMA_WEIGHT * (sample - current);
+    }
+
+    private final class AddressStatistics {
+
+        private final Counter selected;
+        private final Counter failures;
+
+        private double connectLatency = Double.NaN;
+        private double handshakeLatency = Double.NaN;
+        private int consecutiveFailures;
+        private long lastFailure;
+        private long lastUpdate;
+
+        AddressStatistics(URI address) {
+            String prefix = MetricRegistry.name(METRICS_PREFIX, address.getHost() + ":" + address.getPort());
+
+            this.selected = registry.counter(MetricRegistry.name(prefix, "selected"));
+            this.failures = registry.counter(MetricRegistry.name(prefix, "failed"));
+
+            registry.gauge(MetricRegistry.name(prefix, "connectLatency"),
+                    () -> (Gauge<Double>) () -> toMillis(getConnectLatency()));
+            registry.gauge(MetricRegistry.name(prefix, "handshakeLatency"),
+                    () -> (Gauge<Double>) () -> toMillis(getHandshakeLatency()));
+        }
+
+        synchronized void connected(long connectNanos, long now) {
+            selected.inc();
+
+            connectLatency = average(connectLatency, connectNanos);
+            lastUpdate = now;
+        }
+
+        synchronized void handshakeCompleted(long handshakeNanos, long now) {
+            handshakeLatency = average(handshakeLatency, handshakeNanos);
+            consecutiveFailures = 0;
+            lastUpdate = now;
+        }
+
+        synchronized void failed(long now) {
+            failures.inc();
+
+            consecutiveFailures++;
+            lastFailure = now;
+            lastUpdate = now;
+        }
+
+        synchronized boolean isAvailable(long now) {
+            if (consecutiveFailures == 0) {
+                return true;
+            }
+
+            long backoff = FAILURE_BACKOFF_NANOS << Math.min(consecutiveFailures - 1, MAX_FAILURE_BACKOFF_SHIFT);
+
+            return now - lastFailure >= backoff;
+        }
+
+        synchronized boolean isRecent(long now) {
+            return !Double.isNaN(connectLatency) && now - lastUpdate <= statisticsTtlNanos;
+        }
+
+        synchronized double getWeightedLatency() {
+            double latency = connectLatency + (Double.isNaN(handshakeLatency) ? 0 : handshakeLatency);
+
+            return latency * (1 + consecutiveFailures);
+        }
+
+        synchronized double getConnectLatency() {
+            return connectLatency;
+        }
+
+        synchronized double getHandshakeLatency() {
+            return handshakeLatency;
+        }
+
+        private double toMillis(double nanos) {
+            return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
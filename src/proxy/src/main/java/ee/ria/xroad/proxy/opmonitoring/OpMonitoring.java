@@ -34,6 +34,8 @@ import akka.actor.ActorSystem;
 import akka.actor.Props;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.function.Consumer;
+
 /**
  * Contains method for storing operational monitoring data.
  */
@@ -47,6 +49,8 @@ public final class OpMonitoring {
 
     private static ActorRef opMonitoringBuffer;
 
+    private static volatile Consumer<OpMonitoringData> directStore;
+
     private OpMonitoring() {
     }
 
@@ -65,6 +69,16 @@ public final class OpMonitoring {
                 OP_MONITORING_BUFFER);
     }
 
+    /**
+     * Sets the function the operational monitoring data is handed to on the calling thread instead of sending it
+     * to the buffer actor. Buffer implementations that are safe to use from multiple threads can register it to
+     * bypass the actor mailbox.
+     * @param store the store function or null to send the data to the buffer actor
+     */
+    public static void setDirectStore(Consumer<OpMonitoringData> store) {
+        directStore = store;
+    }
+
     /**
      * Store the operational monitoring data.
      */
@@ -72,7 +86,13 @@ public final class OpMonitoring {
         log.trace("store()");
 
         try {
-            tell(data);
+            Consumer<OpMonitoringData> store = directStore;
+
+            if (store != null) {
+                store.accept(data);
+            } else {
+                tell(data);
+            }
         } catch (Throwable t) {
             log.error("Storing operational monitoring data failed", t);
         }
@@ -40,6 +40,7 @@ import ee.ria.xroad.common.util.MultipartEncoder;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import java.io.ByteArrayInputStream;
@@ -248,7 +249,8 @@ public class ProxyMessage implements ProxyMessageConsumer {
     }
 
     protected SoapMessageEncoder createEncoder() {
-        return new MultipartSoapMessageEncoder(attachmentCache, originalMimeBoundary);
+        // Closing the encoder finishes the message, the cache is released when the message is consumed.
+        return new MultipartSoapMessageEncoder(CloseShieldOutputStream.wrap(attachmentCache), originalMimeBoundary);
     }
 
     // Returns true, if this the original message was a MIME-encoded SOAP
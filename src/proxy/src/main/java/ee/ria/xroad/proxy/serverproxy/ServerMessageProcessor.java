@@ -74,9 +74,7 @@ import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 
 import static ee.ria.xroad.common.ErrorCodes.SERVER_SERVERPROXY_X;
@@ -109,11 +107,9 @@ import static ee.ria.xroad.common.util.TimeUtils.getEpochMillisecond;
 @Slf4j
 class ServerMessageProcessor extends MessageProcessorBase {
 
-    private static final String SERVERPROXY_SERVICE_HANDLERS = SystemProperties.PREFIX + "proxy.serverServiceHandlers";
-
     private final X509Certificate[] clientSslCerts;
 
-    private final List<ServiceHandler> handlers = new ArrayList<>();
+    private final ServiceHandlerRegistry serviceHandlers;
 
     private String originalSoapAction;
     private ProxyMessage requestMessage;
@@ -132,14 +128,13 @@ class ServerMessageProcessor extends MessageProcessorBase {
 
     ServerMessageProcessor(HttpServletRequest servletRequest, HttpServletResponse servletResponse,
             HttpClient httpClient, X509Certificate[] clientSslCerts, HttpClient opMonitorHttpClient,
-            OpMonitoringData opMonitoringData) {
+            OpMonitoringData opMonitoringData, ServiceHandlerRegistry serviceHandlers) {
         super(servletRequest, servletResponse, httpClient);
 
         this.clientSslCerts = clientSslCerts;
         this.opMonitorHttpClient = opMonitorHttpClient;
         this.opMonitoringData = opMonitoringData;
-
-        loadServiceHandlers();
+        this.serviceHandlers = serviceHandlers;
     }
 
     @Override
@@ -214,32 +209,8 @@ class ServerMessageProcessor extends MessageProcessorBase {
         opMonitoringData.setSucceeded(true);
     }
 
-    private void loadServiceHandlers() {
-        String serviceHandlerNames = System.getProperty(SERVERPROXY_SERVICE_HANDLERS);
-
-        if (!StringUtils.isBlank(serviceHandlerNames)) {
-            for (String serviceHandlerName : serviceHandlerNames.split(",")) {
-                handlers.add(ServiceHandlerLoader.load(serviceHandlerName));
-
-                log.debug("Loaded service handler: " + serviceHandlerName);
-            }
-        }
-
-        handlers.add(new DefaultServiceHandlerImpl()); // default handler
-    }
-
-    private ServiceHandler getServiceHandler(ProxyMessage request) {
-        for (ServiceHandler handler : handlers) {
-            if (handler.canHandle(requestServiceId, request)) {
-                return handler;
-            }
-        }
-
-        return null;
-    }
-
     private void handleRequest() throws Exception {
-        ServiceHandler handler = getServiceHandler(requestMessage);
+        ServiceHandler handler = serviceHandlers.getServiceHandler(requestServiceId, requestMessage);
 
         if (handler == null) {
             handler = new DefaultServiceHandlerImpl();
@@ -594,6 +565,7 @@ class ServerMessageProcessor extends MessageProcessorBase {
     private class DefaultServiceHandlerImpl implements ServiceHandler {
 
         private HttpSender sender;
+        private ServiceCallLimiter.Call serviceCall;
 
         @Override
         public boolean shouldVerifyAccess() {
@@ -637,13 +609,30 @@ class ServerMessageProcessor extends MessageProcessorBase {
 
             sender.addHeader("accept-encoding", "");
             sender.addHeader("SOAPAction", originalSoapAction);
-            sendRequest(address, sender);
+
+            serviceCall = ServiceCallLimiter.startCall(requestServiceId, address);
+
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                sendRequest(address, sender);
+                failed = false;
+            } finally {
+                serviceCall.completed(System.nanoTime() - start, failed);
+            }
         }
 
         @Override
         public void finishHandling() throws Exception {
-            sender.close();
-            sender = null;
+            try {
+                sender.close();
+                sender = null;
+            } finally {
+                if (serviceCall != null) {
+                    serviceCall.close();
+                    serviceCall = null;
+                }
+            }
         }
 
         @Override
@@ -36,6 +36,7 @@ import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.proxy.antidos.AntiDosConnector;
 import ee.ria.xroad.proxy.util.SSLContextUtil;
 
+import com.codahale.metrics.jmx.JmxReporter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.eclipse.jetty.server.CustomRequestLog;
@@ -80,6 +81,9 @@ public class ServerProxy implements StartStop {
 
     private CloseableHttpClient opMonitorClient;
 
+    private final JmxReporter serviceCallReporter = JmxReporter.forRegistry(ServiceCallLimiter.getMetricRegistry())
+            .inDomain("xroad.proxy").build();
+
     /**
      * Constructs and configures a new server proxy.
      *
@@ -169,7 +173,8 @@ public class ServerProxy implements StartStop {
         RequestLogHandler logHandler = new RequestLogHandler();
         logHandler.setRequestLog(reqLog);
 
-        ServerProxyHandler proxyHandler = new ServerProxyHandler(client, opMonitorClient);
+        ServerProxyHandler proxyHandler = new ServerProxyHandler(client, opMonitorClient,
+                ServiceHandlerRegistry.load());
 
         HandlerCollection handler = new HandlerCollection();
         handler.addHandler(logHandler);
@@ -184,6 +189,7 @@ public class ServerProxy implements StartStop {
 
         server.start();
         connMonitor.start();
+        serviceCallReporter.start();
     }
 
     @Override
@@ -199,6 +205,7 @@ public class ServerProxy implements StartStop {
     public void stop() throws Exception {
         log.trace("stop()");
 
+        serviceCallReporter.stop();
         connMonitor.shutdown();
         client.close();
         opMonitorClient.close();
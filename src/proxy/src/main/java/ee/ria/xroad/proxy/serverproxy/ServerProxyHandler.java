@@ -66,11 +66,13 @@ class ServerProxyHandler extends HandlerBase {
 
     private final HttpClient client;
     private final HttpClient opMonitorClient;
+    private final ServiceHandlerRegistry serviceHandlers;
     private final long idleTimeout = SystemProperties.getServerProxyConnectorMaxIdleTime();
 
-    ServerProxyHandler(HttpClient client, HttpClient opMonitorClient) {
+    ServerProxyHandler(HttpClient client, HttpClient opMonitorClient, ServiceHandlerRegistry serviceHandlers) {
         this.client = client;
         this.opMonitorClient = opMonitorClient;
+        this.serviceHandlers = serviceHandlers;
     }
 
     @Override
@@ -131,7 +133,7 @@ class ServerProxyHandler extends HandlerBase {
                     opMonitoringData);
         } else {
             return new ServerMessageProcessor(request, response, client, getClientSslCertChain(request),
-                    opMonitorClient, opMonitoringData);
+                    opMonitorClient, opMonitoringData, serviceHandlers);
         }
     }
 
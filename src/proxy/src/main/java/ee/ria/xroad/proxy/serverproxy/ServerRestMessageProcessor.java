@@ -61,6 +61,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
@@ -562,11 +563,32 @@ class ServerRestMessageProcessor extends MessageProcessorBase {
 
             final HttpContext ctx = new BasicHttpContext();
             ctx.setAttribute(ServiceId.class.getName(), requestProxyMessage.getRest().getServiceId());
-            monitoringData.setRequestOutTs(getEpochMillisecond());
-            final HttpResponse response = restClient.execute(req, ctx);
-            monitoringData.setResponseInTs(getEpochMillisecond());
-            final StatusLine statusLine = response.getStatusLine();
 
+            try (ServiceCallLimiter.Call serviceCall = ServiceCallLimiter.startCall(
+                    requestProxyMessage.getRest().getServiceId(), address)) {
+                monitoringData.setRequestOutTs(getEpochMillisecond());
+
+                long start = System.nanoTime();
+                HttpResponse response;
+                try {
+                    response = restClient.execute(req, ctx);
+                } catch (Exception e) {
+                    serviceCall.completed(System.nanoTime() - start, true);
+                    throw e;
+                }
+
+                monitoringData.setResponseInTs(getEpochMillisecond());
+                serviceCall.completed(System.nanoTime() - start,
+                        response.getStatusLine().getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR);
+
+                handleResponse(servletRequest, requestProxyMessage, messageDecoder, messageEncoder, monitoringData,
+                        response);
+            }
+        }
+
+        private void handleResponse(HttpServletRequest servletRequest, ProxyMessage requestProxyMessage,
+                                    ProxyMessageDecoder messageDecoder, ProxyMessageEncoder messageEncoder,
+                                    OpMonitoringData monitoringData, HttpResponse response) throws Exception {
             //calculate request hash
             byte[] requestDigest;
             if (messageDecoder.getRestBodyDigest() != null) {
@@ -580,6 +602,7 @@ class ServerRestMessageProcessor extends MessageProcessorBase {
                 requestDigest = requestProxyMessage.getRest().getHash();
             }
 
+            final StatusLine statusLine = response.getStatusLine();
             restResponse = new RestResponse(requestProxyMessage.getRest().getClientId(),
                     requestProxyMessage.getRest().getQueryId(),
                     requestDigest,
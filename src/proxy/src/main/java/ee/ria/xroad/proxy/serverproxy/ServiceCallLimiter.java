@@ -0,0 +1,198 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_UNAVAILABLE;
+
+/**
+ * Bulkhead and circuit breaker of the server proxy calls to a service, or to a service host when the calls are
+ * limited per host. A call is rejected immediately with a ServiceUnavailable fault if the maximum number of
+ * concurrent calls is reached or if the circuit breaker is open, so that a slow or failing service cannot tie up
+ * the connections and threads needed by other services. The number of calls in flight, the number of failed and
+ * rejected calls and the circuit breaker state are published in the {@link #getMetricRegistry() metric registry}
+ * under "ServiceCalls.&lt;service or host&gt;".
+ */
+@Slf4j
+final class ServiceCallLimiter {
+
+    private static final String SCOPE_HOST = "host";
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+
+    private static final Map<String, ServiceCallLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final Semaphore permits;
+    private final ServiceCircuitBreaker breaker;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejected;
+    private final Counter failed;
+
+    ServiceCallLimiter(String name, int maxConcurrentCalls, ServiceCircuitBreaker breaker, MetricRegistry registry) {
+        this.name = name;
+        this.permits = maxConcurrentCalls > 0 ? new Semaphore(maxConcurrentCalls) : null;
+        this.breaker = breaker;
+
+        String prefix = MetricRegistry.name("ServiceCalls", name);
+
+        this.rejected = registry.counter(MetricRegistry.name(prefix, "rejected"));
+        this.failed = registry.counter(MetricRegistry.name(prefix, "failed"));
+
+        registry.register(MetricRegistry.name(prefix, "inFlight"), (Gauge<Integer>) inFlight::get);
+
+        if (breaker != null) {
+            registry.register(MetricRegistry.name(prefix, "breakerState"),
+                    (Gauge<String>) () -> breaker.getState().name());
+        }
+    }
+
+    /**
+     * @return the registry of the service call metrics
+     */
+    static MetricRegistry getMetricRegistry() {
+        return METRICS;
+    }
+
+    /**
+     * Starts a call to a service. The returned call must be closed when the service response has been read.
+     * @param serviceId the called service
+     * @param address the service address
+     * @return the started call
+     * @throws CodedException if the call is rejected
+     */
+    static Call startCall(ServiceId serviceId, String address) {
+        String name = SCOPE_HOST.equals(SystemProperties.getServiceCallLimitScope())
+                ? getHost(address) : serviceId.toShortString();
+
+        return LIMITERS.computeIfAbsent(name, key -> new ServiceCallLimiter(key,
+                SystemProperties.getServiceMaxConcurrentRequests(),
+                SystemProperties.isServiceCircuitBreakerEnabled() ? ServiceCircuitBreaker.create(key) : null,
+                METRICS)).startCall();
+    }
+
+    Call startCall() {
+        if (permits != null && !permits.tryAcquire()) {
+            rejected.inc();
+
+            throw new CodedException(X_SERVICE_UNAVAILABLE,
+                    "Maximum number of concurrent requests to '%s' reached", name).withPrefix(X_SERVICE_FAILED_X);
+        }
+
+        if (breaker != null && !breaker.tryAcquirePermission()) {
+            release();
+            rejected.inc();
+
+            throw new CodedException(X_SERVICE_UNAVAILABLE,
+                    "Requests to '%s' are suspended after repeated failures", name).withPrefix(X_SERVICE_FAILED_X);
+        }
+
+        inFlight.incrementAndGet();
+
+        return new Call();
+    }
+
+    private void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    private static String getHost(String address) {
+        try {
+            URI uri = new URI(address);
+
+            if (uri.getHost() != null) {
+                return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+            }
+        } catch (Exception e) {
+            log.trace("Could not parse service address '{}'", address, e);
+        }
+
+        return address;
+    }
+
+    /**
+     * A call started with {@link ServiceCallLimiter#startCall(ServiceId, String)}.
+     */
+    final class Call implements AutoCloseable {
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private boolean completed;
+
+        private Call() {
+        }
+
+        /**
+         * Records the result of the call in the circuit breaker. Only the first result is recorded.
+         * @param durationNanos time from sending the request to receiving the response, in nanoseconds
+         * @param callFailed true if the call failed
+         */
+        void completed(long durationNanos, boolean callFailed) {
+            if (completed) {
+                return;
+            }
+
+            completed = true;
+
+            if (callFailed) {
+                failed.inc();
+            }
+
+            if (breaker != null) {
+                breaker.onResult(durationNanos, callFailed);
+            }
+        }
+
+        /**
+         * Ends the call, releasing its place among the concurrent calls.
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                release();
+            }
+        }
+    }
+}
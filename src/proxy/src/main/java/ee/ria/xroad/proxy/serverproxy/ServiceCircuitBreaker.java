@@ -0,0 +1,192 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker of the calls to a service (or service host). The breaker is closed while the share of failed
+ * and slow calls among the most recent calls stays below the threshold. When the threshold is reached, the breaker
+ * opens and rejects all calls for the open duration, after which it is half-open and lets a number of probe calls
+ * through. The breaker closes if all the probes succeed and opens again as soon as one of them fails.
+ */
+@Slf4j
+final class ServiceCircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int PERCENT = 100;
+
+    private final String name;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+
+    // outcomes of the most recent calls in a ring, true for a failed or slow call
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesLeft;
+    private int probesSucceeded;
+
+    ServiceCircuitBreaker(String name, int failureRateThreshold, long slowCallMillis, int windowSize, int minimumCalls,
+            long openMillis, int halfOpenCalls, LongSupplier nanoClock) {
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param name name of the service (or service host) used in the log
+     * @return a circuit breaker configured by the system properties
+     */
+    static ServiceCircuitBreaker create(String name) {
+        return new ServiceCircuitBreaker(name, SystemProperties.getServiceCircuitBreakerFailureRateThreshold(),
+                SystemProperties.getServiceCircuitBreakerSlowCallThreshold(),
+                SystemProperties.getServiceCircuitBreakerWindowSize(),
+                SystemProperties.getServiceCircuitBreakerMinimumCalls(),
+                TimeUnit.SECONDS.toMillis(SystemProperties.getServiceCircuitBreakerOpenDuration()),
+                SystemProperties.getServiceCircuitBreakerHalfOpenCalls(), System::nanoTime);
+    }
+
+    /**
+     * Asks for a permission to make a call. The result of a permitted call must be reported with
+     * {@link #onResult(long, boolean)}.
+     * @return true if the call may be made
+     */
+    synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < openNanos) {
+                return false;
+            }
+
+            transition(State.HALF_OPEN);
+            probesLeft = halfOpenCalls;
+            probesSucceeded = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (probesLeft == 0) {
+                return false;
+            }
+
+            probesLeft--;
+        }
+
+        return true;
+    }
+
+    /**
+     * Records the result of a permitted call.
+     * @param durationNanos duration of the call in nanoseconds
+     * @param failed true if the call failed
+     */
+    synchronized void onResult(long durationNanos, boolean failed) {
+        boolean bad = failed || (slowCallNanos > 0 && durationNanos > slowCallNanos);
+
+        switch (state) {
+            case CLOSED:
+                record(bad);
+
+                if (windowCount >= minimumCalls && windowFailures * PERCENT >= failureRateThreshold * windowCount) {
+                    open();
+                }
+                break;
+            case HALF_OPEN:
+                if (bad) {
+                    open();
+                } else if (++probesSucceeded >= halfOpenCalls) {
+                    close();
+                }
+                break;
+            default:
+                // a call started before the breaker opened, ignored
+                break;
+        }
+    }
+
+    synchronized State getState() {
+        if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+
+        return state;
+    }
+
+    private void record(boolean bad) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+
+        window[windowIndex] = bad;
+        windowIndex = (windowIndex + 1) % window.length;
+
+        if (bad) {
+            windowFailures++;
+        }
+    }
+
+    private void transition(State newState) {
+        log.warn("Circuit breaker of '{}' changed from {} to {}", name, state, newState);
+
+        state = newState;
+    }
+
+    private void open() {
+        transition(State.OPEN);
+        openedAt = nanoClock.getAsLong();
+    }
+
+    private void close() {
+        transition(State.CLOSED);
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+}
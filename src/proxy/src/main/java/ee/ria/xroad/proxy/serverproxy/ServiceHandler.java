@@ -34,6 +34,7 @@ import org.apache.http.client.HttpClient;
 import javax.servlet.http.HttpServletRequest;
 
 import java.io.InputStream;
+import java.util.Collection;
 
 interface ServiceHandler {
 
@@ -43,6 +44,14 @@ interface ServiceHandler {
 
     boolean canHandle(ServiceId requestServiceId, ProxyMessage requestMessage);
 
+    /**
+     * @return the service codes of the requests this handler can handle, or null if the handler must be asked
+     * about the requests of any service
+     */
+    default Collection<String> getServiceCodes() {
+        return null;
+    }
+
     void startHandling(HttpServletRequest servletRequest,
             ProxyMessage requestMessage, HttpClient opMonitorClient,
             OpMonitoringData opMonitoringData) throws Exception;
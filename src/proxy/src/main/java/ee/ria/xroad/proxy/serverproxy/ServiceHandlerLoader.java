@@ -25,19 +25,31 @@
  */
 package ee.ria.xroad.proxy.serverproxy;
 
+import java.lang.reflect.Constructor;
+import java.util.function.Supplier;
+
 final class ServiceHandlerLoader {
 
     private ServiceHandlerLoader() {
     }
 
-    static ServiceHandler load(String className) {
+    static Supplier<ServiceHandler> loadFactory(String className) {
+        Constructor<? extends ServiceHandler> constructor;
+
         try {
-            Class<?> clazz = Class.forName(className);
-            return (ServiceHandler) clazz.newInstance();
+            constructor = Class.forName(className).asSubclass(ServiceHandler.class).getDeclaredConstructor();
         } catch (Exception e) {
             throw new RuntimeException("Failed to load service handler: "
                     + className, e);
         }
-    }
 
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to create service handler: "
+                        + className, e);
+            }
+        };
+    }
 }
@@ -0,0 +1,127 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.proxy.protocol.ProxyMessage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The additional service handlers of the server proxy. The handler classes are loaded once, and the handlers that
+ * may handle a request are looked up by its service code using the {@link ServiceHandler#getServiceCodes() service
+ * codes} the handlers declare. Only these handlers are created and asked whether they can handle the request, in
+ * the order they are configured in.
+ */
+@Slf4j
+final class ServiceHandlerRegistry {
+
+    private static final String SERVERPROXY_SERVICE_HANDLERS = SystemProperties.PREFIX + "proxy.serverServiceHandlers";
+
+    private final Map<String, List<Supplier<ServiceHandler>>> handlersByServiceCode = new HashMap<>();
+    private final List<Supplier<ServiceHandler>> handlersForAnyServiceCode = new ArrayList<>();
+
+    /**
+     * Loads the service handlers listed in the given comma-separated class names.
+     * @param serviceHandlerNames the class names of the service handlers, may be blank
+     */
+    ServiceHandlerRegistry(String serviceHandlerNames) {
+        List<Supplier<ServiceHandler>> factories = new ArrayList<>();
+        List<Collection<String>> factoryServiceCodes = new ArrayList<>();
+        Set<String> serviceCodes = new HashSet<>();
+
+        if (!StringUtils.isBlank(serviceHandlerNames)) {
+            for (String serviceHandlerName : serviceHandlerNames.split(",")) {
+                Supplier<ServiceHandler> factory = ServiceHandlerLoader.loadFactory(serviceHandlerName);
+                Collection<String> codes = factory.get().getServiceCodes();
+
+                factories.add(factory);
+                factoryServiceCodes.add(codes);
+
+                if (codes != null) {
+                    serviceCodes.addAll(codes);
+                } else {
+                    handlersForAnyServiceCode.add(factory);
+                }
+
+                log.debug("Loaded service handler: {} (service codes: {})", serviceHandlerName,
+                        codes != null ? codes : "any");
+            }
+        }
+
+        for (String serviceCode : serviceCodes) {
+            List<Supplier<ServiceHandler>> handlers = new ArrayList<>();
+
+            for (int i = 0; i < factories.size(); i++) {
+                Collection<String> codes = factoryServiceCodes.get(i);
+
+                if (codes == null || codes.contains(serviceCode)) {
+                    handlers.add(factories.get(i));
+                }
+            }
+
+            handlersByServiceCode.put(serviceCode, Collections.unmodifiableList(handlers));
+        }
+    }
+
+    /**
+     * @return the registry of the service handlers configured with the system property
+     * xroad.proxy.serverServiceHandlers
+     */
+    static ServiceHandlerRegistry load() {
+        return new ServiceHandlerRegistry(System.getProperty(SERVERPROXY_SERVICE_HANDLERS));
+    }
+
+    /**
+     * @param requestServiceId the requested service
+     * @param requestMessage the request
+     * @return a new handler for the request, or null if none of the service handlers can handle it
+     */
+    ServiceHandler getServiceHandler(ServiceId requestServiceId, ProxyMessage requestMessage) {
+        for (Supplier<ServiceHandler> factory : handlersByServiceCode.getOrDefault(requestServiceId.getServiceCode(),
+                handlersForAnyServiceCode)) {
+            ServiceHandler handler = factory.get();
+
+            if (handler.canHandle(requestServiceId, requestMessage)) {
+                return handler;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import ee.ria.xroad.common.cert.CertChainVerifier;
+import ee.ria.xroad.common.db.DatabaseMetrics;
+import ee.ria.xroad.common.util.CachingStream;
+import ee.ria.xroad.common.util.StartStop;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
+
+/**
+ * Publishes the metrics of the components shared by the client and the server proxy over JMX, including the
+ * transaction and connection pool metrics of the server configuration and message log databases.
+ */
+public class ProxyMetrics implements StartStop {
+
+    private static final String CACHING_STREAM_PREFIX = "CachingStream";
+    private static final String CERT_CHAIN_PREFIX = "CertChainVerifier";
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+
+    static {
+        METRICS.register(MetricRegistry.name(CACHING_STREAM_PREFIX, "memoryUsage"),
+                (Gauge<Long>) CachingStream::getMemoryUsage);
+        METRICS.register(MetricRegistry.name(CACHING_STREAM_PREFIX, "spillCount"),
+                (Gauge<Long>) CachingStream::getSpillCount);
+        METRICS.register(MetricRegistry.name(CACHING_STREAM_PREFIX, "spilledBytes"),
+                (Gauge<Long>) CachingStream::getSpilledBytes);
+
+        METRICS.register(MetricRegistry.name(CERT_CHAIN_PREFIX, "cacheHits"),
+                (Gauge<Long>) CertChainVerifier::getCacheHitCount);
+        METRICS.register(MetricRegistry.name(CERT_CHAIN_PREFIX, "cacheMisses"),
+                (Gauge<Long>) CertChainVerifier::getCacheMissCount);
+    }
+
+    private final JmxReporter reporter = JmxReporter.forRegistry(METRICS).inDomain("xroad.proxy").build();
+    private final JmxReporter databaseReporter =
+            JmxReporter.forRegistry(DatabaseMetrics.getMetricRegistry()).inDomain("xroad.proxy").build();
+
+    /**
+     * @return the registry of the shared proxy metrics
+     */
+    public static MetricRegistry getMetricRegistry() {
+        return METRICS;
+    }
+
+    @Override
+    public void start() {
+        reporter.start();
+        databaseReporter.start();
+    }
+
+    @Override
+    public void stop() {
+        reporter.stop();
+        databaseReporter.stop();
+    }
+
+    @Override
+    public void join() {
+        // no internal threads
+    }
+}
@@ -28,18 +28,29 @@ package ee.ria.xroad.proxy.antidos;
 import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 
-import org.junit.BeforeClass;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
  * Test to verify correct Anti-Dos behavior.
  */
+@Slf4j
 public class AntiDosConnectionManagerTest {
 
     private static final Set<String> KNOWN_ADDRESSES = new HashSet<>();
@@ -52,12 +63,16 @@ public class AntiDosConnectionManagerTest {
     /**
      * Set up configuration.
      */
-    @BeforeClass
-    public static void reloadGlobalConf() {
+    @Before
+    public void reloadGlobalConf() {
+        reloadGlobalConf(KNOWN_ADDRESSES);
+    }
+
+    private static void reloadGlobalConf(Set<String> knownAddresses) {
         GlobalConf.reload(new EmptyGlobalConf() {
             @Override
             public Set<String> getKnownAddresses() {
-                return KNOWN_ADDRESSES;
+                return knownAddresses;
             }
         });
     }
@@ -157,6 +172,164 @@ public class AntiDosConnectionManagerTest {
         cm.assertEmpty();
     }
 
+    /**
+     * Test to ensure known members are served in turn with as many connections as their weight.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void weightedRoundRobin() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+        conf.setKnownPartnerWeight(2);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestSocketChannel member1 = createConnection("test1");
+        TestSocketChannel member2 = createConnection("test2");
+        TestSocketChannel attacker1 = createConnection("attacker1");
+        TestSocketChannel attacker2 = createConnection("attacker2");
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        cm.accept(attacker1, attacker2, attacker1, member1, member1, member1, member2, attacker2);
+
+        // unknown addresses get one connection per turn, members two
+        cm.assertConnections(
+                attacker1,
+                member1,
+                member1,
+                member2,
+                attacker2,
+                member1,
+                attacker1,
+                attacker2);
+
+        cm.assertEmpty();
+    }
+
+    /**
+     * Test to ensure connections exceeding the partner connection rate are closed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void connectionRateIsLimitedPerPartner() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+        conf.setPartnerConnectionRate(1);
+        conf.setPartnerConnectionBurst(2);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        List<TestSocketChannel> attackers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            attackers.add(createConnection("attacker" + i));
+        }
+
+        TestSocketChannel member1 = createConnection("test1");
+
+        attackers.forEach(cm::accept);
+        cm.accept(member1);
+
+        // all unknown addresses share the rate
+        cm.assertConnections(attackers.get(0), member1, attackers.get(1));
+        cm.assertEmpty();
+
+        assertFalse(member1.isClosed());
+        assertFalse(attackers.get(1).isClosed());
+        assertTrue(attackers.get(2).isClosed());
+        assertTrue(attackers.get(4).isClosed());
+    }
+
+    /**
+     * Test to ensure the known addresses are updated when the global configuration changes.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void knownAddressesFollowGlobalConf() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        TestSocketChannel member1 = createConnection("test1");
+        TestSocketChannel newMember1 = createConnection("test4");
+        TestSocketChannel newMember2 = createConnection("test4");
+
+        // test4 is not known yet, so its connections share the queue of the unknown addresses
+        cm.accept(newMember1, newMember2, member1);
+        cm.assertConnections(newMember1, member1, newMember2);
+
+        Set<String> addresses = new HashSet<>(KNOWN_ADDRESSES);
+        addresses.add("test4");
+        reloadGlobalConf(addresses);
+
+        TestSocketChannel attacker1 = createConnection("attacker1");
+
+        cm.accept(newMember1, newMember2, attacker1);
+        cm.assertConnections(newMember1, attacker1, newMember2);
+
+        cm.assertEmpty();
+    }
+
+    /**
+     * Test to ensure no connection is lost or duplicated when connections are accepted concurrently.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void concurrentAccept() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        int threads = 4;
+        int connectionsPerThread = 10_000;
+        String[] addresses = {"test1", "test2", "test3", "attacker1", "attacker2"};
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < connectionsPerThread; i++) {
+                        cm.accept(createConnection(addresses[(thread + i) % addresses.length]));
+                    }
+                }));
+            }
+
+            // the test connections of an address are equal, so count them by identity
+            Set<TestSocketChannel> taken = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            long start = System.nanoTime();
+
+            while (taken.size() < threads * connectionsPerThread) {
+                assertTrue(taken.add(cm.takeNextConnection()));
+            }
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            log.info("Accepted and scheduled {} connections in {} ms", taken.size(), elapsedMillis);
+
+            cm.assertEmpty();
+            assertEquals(threads * connectionsPerThread, taken.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     private static TestConnectionManager createConnectionManager(
@@ -27,10 +27,24 @@ package ee.ria.xroad.proxy.antidos;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 
 @RequiredArgsConstructor
 @Getter
 class TestConfiguration extends AntiDosConfiguration {
     private final int minFreeFileHandles;
     private final double maxCpuLoad;
+
+    @Setter
+    private int knownPartnerWeight = 1;
+    @Setter
+    private int partnerConnectionRate;
+    @Setter
+    private int partnerConnectionBurst;
+
+    @Override
+    int getResourceSampleInterval() {
+        // sample the test metrics for every connection
+        return 0;
+    }
 }
@@ -0,0 +1,224 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.proxy.clientproxy.AuthTrustCache.VerifiedPeer;
+
+import org.junit.Test;
+
+import javax.net.ssl.SSLSession;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the caching of service provider authentication certificate verifications.
+ */
+public class AuthTrustCacheTest {
+
+    private static final ClientId PROVIDER = ClientId.create("EE", "BUSINESS", "producer");
+
+    private static final Date VERIFIED_AT = new Date(1_000_000L);
+    private static final Date VALID_UNTIL = new Date(VERIFIED_AT.getTime() + 60_000L);
+
+    private final X509Certificate[] certs = {createCert(1), createCert(2)};
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    private String ocspHash = "hash1";
+
+    @Test
+    public void reusesVerificationOfSameChainAndOcspResponses() throws Exception {
+        AuthTrustCache cache = createCache(10);
+
+        authenticate(cache, createSession(), certs, VERIFIED_AT);
+        authenticate(cache, createSession(), certs, VERIFIED_AT);
+
+        assertEquals(1, verifications.get());
+    }
+
+    @Test
+    public void verifiesDifferentChain() throws Exception {
+        AuthTrustCache cache = createCache(10);
+
+        authenticate(cache, createSession(), certs, VERIFIED_AT);
+        authenticate(cache, createSession(), new X509Certificate[] {createCert(3), certs[1]}, VERIFIED_AT);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void reverifiesWhenCachedOcspResponsesChange() throws Exception {
+        AuthTrustCache cache = createCache(10);
+
+        authenticate(cache, createSession(), certs, VERIFIED_AT);
+
+        ocspHash = "hash2";
+        authenticate(cache, createSession(), certs, VERIFIED_AT);
+        authenticate(cache, createSession(), certs, VERIFIED_AT);
+
+        assertEquals(2, verifications.get());
+
+        // the cached OCSP responses are missing
+        ocspHash = null;
+        authenticate(cache, createSession(), certs, VERIFIED_AT);
+
+        assertEquals(3, verifications.get());
+    }
+
+    @Test
+    public void verificationExpiresAtValidUntil() throws Exception {
+        AuthTrustCache cache = createCache(10);
+        SSLSession session = createSession();
+
+        authenticate(cache, session, certs, VERIFIED_AT);
+        authenticate(cache, session, certs, VALID_UNTIL);
+        authenticate(cache, createSession(), certs, VALID_UNTIL);
+
+        assertEquals(1, verifications.get());
+
+        Date expired = new Date(VALID_UNTIL.getTime() + 1);
+        authenticate(cache, session, certs, expired);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void globalConfChangeInvalidatesVerifications() throws Exception {
+        AuthTrustCache cache = createCache(10);
+        SSLSession session = createSession();
+
+        authenticate(cache, session, certs, VERIFIED_AT);
+
+        cache.invalidateAll();
+
+        // neither the TLS session nor the cache may provide the verification anymore
+        authenticate(cache, session, certs, VERIFIED_AT);
+        authenticate(cache, createSession(), certs, VERIFIED_AT);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void reusesVerificationOfTlsSession() throws Exception {
+        AuthTrustCache cache = createCache(10);
+        SSLSession session = createSession();
+
+        authenticate(cache, session, certs, VERIFIED_AT);
+
+        // a resumed session is not checked against the cached OCSP responses
+        ocspHash = "hash2";
+        authenticate(cache, session, certs, VERIFIED_AT);
+
+        assertEquals(1, verifications.get());
+    }
+
+    @Test
+    public void failedVerificationIsNotCached() throws Exception {
+        AuthTrustCache cache = createCache(10);
+        SSLSession session = createSession();
+
+        try {
+            cache.verify(session, PROVIDER, certs, VERIFIED_AT, () -> {
+                throw new Exception("Verification failed");
+            });
+
+            fail("Expected the verification to fail");
+        } catch (Exception expected) {
+            // expected
+        }
+
+        authenticate(cache, session, certs, VERIFIED_AT);
+
+        assertEquals(1, verifications.get());
+    }
+
+    @Test
+    public void disabledCacheVerifiesEveryTime() throws Exception {
+        AuthTrustCache cache = createCache(0);
+        SSLSession session = createSession();
+
+        authenticate(cache, session, certs, VERIFIED_AT);
+        authenticate(cache, session, certs, VERIFIED_AT);
+
+        assertEquals(2, verifications.get());
+        verify(session, never()).putValue(anyString(), any());
+    }
+
+    private AuthTrustCache createCache(long maximumSize) {
+        return new AuthTrustCache(maximumSize, chain -> {
+            assertEquals(certs.length, chain.size());
+
+            return ocspHash;
+        });
+    }
+
+    private void authenticate(AuthTrustCache cache, SSLSession session, X509Certificate[] chain, Date atDate)
+            throws Exception {
+        cache.verify(session, PROVIDER, chain, atDate, () -> {
+            verifications.incrementAndGet();
+
+            return new VerifiedPeer(Arrays.asList(chain), ocspHash, VALID_UNTIL);
+        });
+    }
+
+    private static SSLSession createSession() {
+        Map<String, Object> values = new HashMap<>();
+        SSLSession session = mock(SSLSession.class);
+
+        doAnswer(invocation -> values.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(session).putValue(anyString(), any());
+        when(session.getValue(anyString())).thenAnswer(invocation -> values.get(invocation.getArgument(0)));
+
+        return session;
+    }
+
+    private static X509Certificate createCert(int id) {
+        X509Certificate cert = mock(X509Certificate.class);
+
+        try {
+            when(cert.getEncoded()).thenReturn(new byte[] {(byte) id});
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+
+        return cert;
+    }
+}
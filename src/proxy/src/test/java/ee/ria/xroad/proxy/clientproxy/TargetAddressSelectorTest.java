@@ -0,0 +1,156 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the latency based selection of target addresses.
+ */
+public class TargetAddressSelectorTest {
+
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final URI FAST = URI.create("https://10.0.0.1:5500");
+    private static final URI SLOW = URI.create("https://10.0.0.2:5500");
+    private static final URI OTHER = URI.create("https://10.0.0.3:5500");
+    private static final URI[] ADDRESSES = {FAST, SLOW};
+
+    private final AtomicLong clock = new AtomicLong();
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    public void noAddressIsPreferredWithoutStatistics() {
+        TargetAddressSelector selector = createSelector(0);
+
+        assertNull(selector.select(ADDRESSES));
+    }
+
+    @Test
+    public void prefersAddressWithLowestLatency() {
+        TargetAddressSelector selector = createSelector(0);
+
+        connect(selector, SLOW, 40, 80);
+        connect(selector, FAST, 10, 20);
+
+        assertEquals(FAST, selector.select(ADDRESSES));
+
+        // the averages follow the latest latencies
+        connect(selector, FAST, 100, 200);
+        connect(selector, FAST, 100, 200);
+
+        assertEquals(SLOW, selector.select(ADDRESSES));
+    }
+
+    @Test
+    public void failedAddressIsAvoidedForBackoffPeriod() {
+        TargetAddressSelector selector = createSelector(0);
+
+        connect(selector, SLOW, 40, 80);
+        connect(selector, FAST, 10, 20);
+
+        selector.failed(FAST);
+        assertEquals(SLOW, selector.select(ADDRESSES));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(FAST, selector.select(ADDRESSES));
+
+        // the backoff period doubles with consecutive failures
+        selector.failed(FAST);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(SLOW, selector.select(ADDRESSES));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        connect(selector, FAST, 10, 20);
+        assertEquals(FAST, selector.select(ADDRESSES));
+    }
+
+    @Test
+    public void oldStatisticsAreNotUsed() {
+        TargetAddressSelector selector = createSelector(0);
+
+        connect(selector, FAST, 10, 20);
+        clock.addAndGet(TTL_NANOS + 1);
+
+        assertNull(selector.select(ADDRESSES));
+    }
+
+    @Test
+    public void probesOtherAddresses() {
+        TargetAddressSelector selector = createSelector(1);
+
+        connect(selector, SLOW, 40, 80);
+        connect(selector, FAST, 10, 20);
+
+        assertEquals(SLOW, selector.select(ADDRESSES));
+
+        // addresses without statistics are probed first
+        assertEquals(OTHER, selector.select(new URI[] {FAST, SLOW, OTHER}));
+    }
+
+    @Test
+    public void publishesHandshakeMetrics() {
+        TargetAddressSelector selector = createSelector(0);
+
+        connect(selector, FAST, 10, 20);
+        selector.handshakeCompleted(FAST, TimeUnit.MILLISECONDS.toNanos(1), true);
+        selector.handshakeCompleted(FAST, TimeUnit.MILLISECONDS.toNanos(1), true);
+        connect(selector, SLOW, 10, 20);
+        selector.failed(SLOW);
+
+        assertEquals(4, registry.counter("ServerConnections.handshakes").getCount());
+        assertEquals(2, registry.counter("ServerConnections.resumedHandshakes").getCount());
+        assertEquals(0.5, (Double) gauge("ServerConnections.resumptionRate"), 0.001);
+        assertEquals(1, registry.counter("ServerConnections.10.0.0.1:5500.selected").getCount());
+        assertEquals(1, registry.counter("ServerConnections.10.0.0.2:5500.failed").getCount());
+        assertEquals(10.0, (Double) gauge("ServerConnections.10.0.0.1:5500.connectLatency"), 0.001);
+    }
+
+    private TargetAddressSelector createSelector(double probeRatio) {
+        return new TargetAddressSelector(TTL_NANOS, probeRatio, clock::get, registry);
+    }
+
+    private static void connect(TargetAddressSelector selector, URI address, long connectMillis,
+            long handshakeMillis) {
+        selector.connected(address, TimeUnit.MILLISECONDS.toNanos(connectMillis));
+        selector.handshakeCompleted(address, TimeUnit.MILLISECONDS.toNanos(handshakeMillis), false);
+    }
+
+    private Object gauge(String name) {
+        Gauge<?> gauge = registry.getGauges().get(name);
+
+        return gauge.getValue();
+    }
+}
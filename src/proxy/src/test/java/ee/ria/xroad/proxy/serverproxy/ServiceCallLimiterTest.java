@@ -0,0 +1,237 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.proxy.serverproxy.ServiceCircuitBreaker.State;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_UNAVAILABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the service call bulkheads and circuit breakers.
+ */
+public class ServiceCallLimiterTest {
+
+    private static final String NAME = "INSTANCE/GOV/1234/SUBSYSTEM/service";
+    private static final long OPEN_MILLIS = 1000;
+    private static final long SLOW_MILLIS = 500;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    public void rejectsCallsOverConcurrencyLimit() {
+        ServiceCallLimiter limiter = new ServiceCallLimiter(NAME, 2, null, registry);
+
+        ServiceCallLimiter.Call first = limiter.startCall();
+        ServiceCallLimiter.Call second = limiter.startCall();
+
+        assertEquals(2, gauge("inFlight"));
+        assertRejected(limiter);
+        assertEquals(1, counter("rejected").getCount());
+
+        first.completed(0, false);
+        first.close();
+        first.close();
+
+        limiter.startCall().close();
+        second.close();
+
+        assertEquals(0, gauge("inFlight"));
+        assertEquals(1, counter("rejected").getCount());
+    }
+
+    @Test
+    public void breakerOpensOnFailureRateAndClosesAfterSuccessfulProbes() {
+        ServiceCircuitBreaker breaker = createBreaker();
+        ServiceCallLimiter limiter = new ServiceCallLimiter(NAME, 0, breaker, registry);
+
+        for (int i = 0; i < 5; i++) {
+            call(limiter, 0, false);
+        }
+
+        // the failure rate is not evaluated before 10 calls
+        for (int i = 0; i < 4; i++) {
+            call(limiter, 0, true);
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+
+        call(limiter, 0, true);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals("OPEN", gauge("breakerState"));
+        assertEquals(5, counter("failed").getCount());
+
+        assertRejected(limiter);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        // two probes are let through at a time
+        ServiceCallLimiter.Call probe1 = limiter.startCall();
+        ServiceCallLimiter.Call probe2 = limiter.startCall();
+
+        assertRejected(limiter);
+
+        complete(probe1, false);
+        complete(probe2, false);
+
+        assertEquals(State.CLOSED, breaker.getState());
+
+        call(limiter, 0, false);
+    }
+
+    @Test
+    public void breakerReopensWhenProbeFails() {
+        ServiceCircuitBreaker breaker = createBreaker();
+        ServiceCallLimiter limiter = new ServiceCallLimiter(NAME, 0, breaker, registry);
+
+        for (int i = 0; i < 10; i++) {
+            call(limiter, 0, true);
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+
+        call(limiter, 0, true);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertRejected(limiter);
+    }
+
+    @Test
+    public void slowCallsCountAsFailures() {
+        ServiceCircuitBreaker breaker = createBreaker();
+        ServiceCallLimiter limiter = new ServiceCallLimiter(NAME, 0, breaker, registry);
+
+        long slow = TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS + 1);
+
+        for (int i = 0; i < 10; i++) {
+            call(limiter, slow, false);
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(0, counter("failed").getCount());
+    }
+
+    @Test
+    public void breakerEvaluatesOnlyRecentCalls() {
+        ServiceCircuitBreaker breaker = createBreaker();
+        ServiceCallLimiter limiter = new ServiceCallLimiter(NAME, 0, breaker, registry);
+
+        for (int i = 0; i < 4; i++) {
+            call(limiter, 0, true);
+        }
+
+        for (int i = 0; i < 16; i++) {
+            call(limiter, 0, false);
+        }
+
+        // the first failures drop out of the 20 call window: 9 failures out of 20 calls
+        for (int i = 0; i < 9; i++) {
+            call(limiter, 0, true);
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+
+        // 10 failures out of 20 calls
+        call(limiter, 0, true);
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void rejectedByBreakerReleasesConcurrencyPermit() {
+        ServiceCircuitBreaker breaker = createBreaker();
+        ServiceCallLimiter limiter = new ServiceCallLimiter(NAME, 1, breaker, registry);
+
+        for (int i = 0; i < 10; i++) {
+            call(limiter, 0, true);
+        }
+
+        assertRejected(limiter);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+
+        call(limiter, 0, false);
+
+        assertEquals(0, gauge("inFlight"));
+    }
+
+    private ServiceCircuitBreaker createBreaker() {
+        return new ServiceCircuitBreaker(NAME, 50, SLOW_MILLIS, 20, 10, OPEN_MILLIS, 2, clock::get);
+    }
+
+    private static void call(ServiceCallLimiter limiter, long durationNanos, boolean failed) {
+        complete(limiter.startCall(), durationNanos, failed);
+    }
+
+    private static void complete(ServiceCallLimiter.Call call, boolean failed) {
+        complete(call, 0, failed);
+    }
+
+    private static void complete(ServiceCallLimiter.Call call, long durationNanos, boolean failed) {
+        try (ServiceCallLimiter.Call c = call) {
+            c.completed(durationNanos, failed);
+        }
+    }
+
+    private static void assertRejected(ServiceCallLimiter limiter) {
+        try {
+            limiter.startCall();
+            fail("call should have been rejected");
+        } catch (CodedException expected) {
+            assertEquals(X_SERVICE_FAILED_X + "." + X_SERVICE_UNAVAILABLE, expected.getFaultCode());
+        }
+    }
+
+    private Object gauge(String metric) {
+        Gauge<?> gauge = registry.getGauges().get(MetricRegistry.name("ServiceCalls", NAME, metric));
+
+        assertNotNull(gauge);
+
+        return gauge.getValue();
+    }
+
+    private Counter counter(String metric) {
+        return registry.counter(MetricRegistry.name("ServiceCalls", NAME, metric));
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.proxy.protocol.ProxyMessage;
+
+import org.apache.http.client.HttpClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the lookup of the server proxy service handlers.
+ */
+public class ServiceHandlerRegistryTest {
+
+    private static final ClientId PROVIDER = ClientId.create("EE", "GOV", "1234", "SUBSYSTEM");
+    private static final String METADATA_SERVICE = "listMethods";
+
+    private static final AtomicInteger CREATED = new AtomicInteger();
+
+    @Before
+    public void init() {
+        CREATED.set(0);
+    }
+
+    @Test
+    public void createsOnlyHandlersOfRequestedServiceCode() {
+        ServiceHandlerRegistry registry = new ServiceHandlerRegistry(MetadataHandler.class.getName());
+        CREATED.set(0);
+
+        assertNull(registry.getServiceHandler(ServiceId.create(PROVIDER, "getRandom"), null));
+        assertEquals(0, CREATED.get());
+
+        ServiceHandler first = registry.getServiceHandler(ServiceId.create(PROVIDER, METADATA_SERVICE), null);
+        ServiceHandler second = registry.getServiceHandler(ServiceId.create(PROVIDER, METADATA_SERVICE), null);
+
+        assertTrue(first instanceof MetadataHandler);
+        assertNotSame(first, second);
+        assertEquals(2, CREATED.get());
+    }
+
+    @Test
+    public void asksHandlersInConfiguredOrder() {
+        ServiceHandlerRegistry registry = new ServiceHandlerRegistry(
+                AnyServiceHandler.class.getName() + "," + MetadataHandler.class.getName());
+
+        assertTrue(registry.getServiceHandler(ServiceId.create(PROVIDER, "getRandom"), null)
+                instanceof AnyServiceHandler);
+        assertTrue(registry.getServiceHandler(ServiceId.create(PROVIDER, METADATA_SERVICE), null)
+                instanceof AnyServiceHandler);
+
+        registry = new ServiceHandlerRegistry(
+                MetadataHandler.class.getName() + "," + AnyServiceHandler.class.getName());
+
+        assertTrue(registry.getServiceHandler(ServiceId.create(PROVIDER, METADATA_SERVICE), null)
+                instanceof MetadataHandler);
+    }
+
+    @Test
+    public void hasNoHandlersWhenNoneConfigured() {
+        assertNull(new ServiceHandlerRegistry(null).getServiceHandler(ServiceId.create(PROVIDER, METADATA_SERVICE),
+                null));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void failsOnUnknownHandlerClass() {
+        new ServiceHandlerRegistry("ee.ria.xroad.proxy.serverproxy.NoSuchServiceHandler");
+    }
+
+    /**
+     * Handles the listMethods requests.
+     */
+    public static class MetadataHandler extends TestServiceHandler {
+        @Override
+        public Collection<String> getServiceCodes() {
+            return Collections.singleton(METADATA_SERVICE);
+        }
+    }
+
+    /**
+     * Handles the requests of any service.
+     */
+    public static class AnyServiceHandler extends TestServiceHandler {
+    }
+
+    private abstract static class TestServiceHandler implements ServiceHandler {
+
+        TestServiceHandler() {
+            CREATED.incrementAndGet();
+        }
+
+        @Override
+        public boolean shouldVerifyAccess() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldVerifySignature() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldLogSignature() {
+            return false;
+        }
+
+        @Override
+        public boolean canHandle(ServiceId requestServiceId, ProxyMessage requestMessage) {
+            return true;
+        }
+
+        @Override
+        public void startHandling(HttpServletRequest servletRequest, ProxyMessage requestMessage,
+                HttpClient opMonitorClient, OpMonitoringData opMonitoringData) {
+        }
+
+        @Override
+        public void finishHandling() {
+        }
+
+        @Override
+        public String getResponseContentType() {
+            return null;
+        }
+
+        @Override
+        public InputStream getResponseContent() {
+            return null;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import ee.ria.xroad.common.message.SoapFault;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.message.SoapParserImpl;
 import ee.ria.xroad.common.message.SoapUtils;
+import ee.ria.xroad.common.util.CryptoUtils;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -42,6 +43,8 @@ import org.apache.james.mime4j.stream.MimeConfig;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -56,6 +59,8 @@ import static ee.ria.xroad.common.util.MimeUtils.contentTypeWithCharset;
 @Getter
 public class Message {
 
+    private static final int BUFFER_SIZE = 8192;
+
     private final List<Map<String, String>> multipartHeaders =
             new ArrayList<>();
 
@@ -66,6 +71,9 @@ public class Message {
 
     private int numAttachments = 0;
 
+    /** Hex encoded SHA-256 digests of the attachments, in the order of the parts. */
+    private final List<String> attachmentDigests = new ArrayList<>();
+
     private Soap soap;
 
     /**
@@ -148,6 +156,21 @@ public class Message {
                 && ((SoapMessageImpl) soap).isResponse();
     }
 
+    private static String digest(InputStream is) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            for (int count = is.read(buffer); count != -1; count = is.read(buffer)) {
+                digest.update(buffer, 0, count);
+            }
+
+            return CryptoUtils.encodeHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     protected class MessageContentHandler extends AbstractContentHandler {
         private Map<String, String> headers;
         private int nextPart = 0;
@@ -183,6 +206,7 @@ public class Message {
                     break;
                 default: // ATTACHMENT
                     numAttachments++;
+                    attachmentDigests.add(digest(is));
                     break;
             }
         }
@@ -0,0 +1,150 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.testsuite.testcases;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.SystemMetrics;
+import ee.ria.xroad.proxy.testsuite.Message;
+import ee.ria.xroad.proxy.testsuite.MessageTestCase;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An attacker floods the server proxy with connections that never complete their request.
+ * Result: the server proxy accepts the flood connections and the client still receives the response
+ * to a normal message.
+ */
+@Slf4j
+public class AntiDosConnectionFlood extends MessageTestCase {
+
+    private static final int FLOOD_CONNECTIONS = 1000;
+    private static final long ACCEPT_TIMEOUT_MILLIS = 10_000;
+    private static final int POLL_INTERVAL_MILLIS = 10;
+    private static final long SETTLE_TIMEOUT_MILLIS = 5_000;
+    private static final int SETTLE_POLLS = 20;
+
+    private static final byte[] PARTIAL_REQUEST = ("POST / HTTP/1.1\r\nHost: localhost\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final List<Socket> floodConnections = new ArrayList<>();
+
+    /**
+     * Constructs the test case.
+     */
+    public AntiDosConnectionFlood() {
+        requestFileName = "getstate.query";
+        responseFile = "getstate.answer";
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+        super.startUp();
+
+        int connectionsBefore = awaitSettledConnections();
+        InetSocketAddress serverProxy = new InetSocketAddress("127.0.0.1",
+                SystemProperties.getServerProxyListenPort());
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < FLOOD_CONNECTIONS; i++) {
+            Socket socket = new Socket();
+            floodConnections.add(socket);
+
+            socket.connect(serverProxy);
+
+            OutputStream out = socket.getOutputStream();
+            out.write(PARTIAL_REQUEST);
+            out.flush();
+        }
+
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(ACCEPT_TIMEOUT_MILLIS);
+        int accepted;
+
+        while ((accepted = SystemMetrics.getNumConnections() - connectionsBefore) < FLOOD_CONNECTIONS
+                && System.nanoTime() < deadline) {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        log.info("Server proxy accepted {} of {} flood connections in {} ms ({} connections/s)", accepted,
+                FLOOD_CONNECTIONS, elapsedMillis, accepted * TimeUnit.SECONDS.toMillis(1) / elapsedMillis);
+
+        if (accepted < FLOOD_CONNECTIONS) {
+            throw new Exception("Server proxy accepted only " + accepted + " of " + FLOOD_CONNECTIONS
+                    + " flood connections");
+        }
+    }
+
+    /**
+     * Waits until the connections left over from previous test cases have been closed, so that they do not
+     * count as accepted flood connections.
+     * @return number of open connections once it has not changed for {@link #SETTLE_POLLS} polls
+     */
+    private static int awaitSettledConnections() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_TIMEOUT_MILLIS);
+        int connections = SystemMetrics.getNumConnections();
+        int stablePolls = 0;
+
+        while (stablePolls < SETTLE_POLLS && System.nanoTime() < deadline) {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+
+            int current = SystemMetrics.getNumConnections();
+
+            stablePolls = current == connections ? stablePolls + 1 : 0;
+            connections = current;
+        }
+
+        return connections;
+    }
+
+    @Override
+    protected void closeDown() throws Exception {
+        for (Socket socket : floodConnections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Closing flood connection failed", e);
+            }
+        }
+
+        floodConnections.clear();
+    }
+
+    @Override
+    protected void validateNormalResponse(Message receivedResponse) throws Exception {
+        // Normal response, nothing more to check here.
+    }
+}
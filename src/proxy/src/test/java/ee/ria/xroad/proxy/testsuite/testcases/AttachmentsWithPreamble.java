@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.testsuite.testcases;
+
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.proxy.testsuite.Message;
+import ee.ria.xroad.proxy.testsuite.MessageTestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Client sends a multipart message with a preamble, part headers on the SOAP
+ * part, a text attachment and a binary attachment of several megabytes. The
+ * client proxy reads the SOAP header from the multipart message before it
+ * streams the whole message to the server proxy. Server responds with normal
+ * response.
+ * Result: All OK, the service receives the attachments unchanged.
+ */
+public class AttachmentsWithPreamble extends MessageTestCase {
+
+    private static final String BOUNDARY = "preamble7d1f0a3c";
+
+    private static final byte[] TEXT_ATTACHMENT = "Attachment text äõ\r\nsecond line".getBytes(UTF_8);
+    private static final byte[] BINARY_ATTACHMENT = new byte[3 * 1024 * 1024];
+
+    static {
+        new Random(1).nextBytes(BINARY_ATTACHMENT);
+    }
+
+    /**
+     * Constructs the test case.
+     */
+    public AttachmentsWithPreamble() {
+        requestFileName = "getstate.query";
+        requestContentType = "multipart/related; charset=UTF-8; boundary=" + BOUNDARY;
+        responseFile = "getstate.answer";
+    }
+
+    @Override
+    protected Pair<String, InputStream> getRequestInput(boolean addUtf8Bom) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        write(out, "This is the preamble of a multipart message.\r\n");
+        write(out, "--" + BOUNDARY + "\r\n"
+                + "Content-Type: text/xml; charset=UTF-8\r\n"
+                + "Content-ID: <soap-part>\r\n\r\n");
+        out.write(IOUtils.toByteArray(getQueryInputStream(QUERIES_DIR + "/" + requestFileName, addUtf8Bom)));
+        write(out, "\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n"
+                + "Content-ID: <text-part>\r\n\r\n");
+        out.write(TEXT_ATTACHMENT);
+        write(out, "\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + "Content-Transfer-Encoding: binary\r\n\r\n");
+        out.write(BINARY_ATTACHMENT);
+        write(out, "\r\n--" + BOUNDARY + "--\r\n");
+
+        return Pair.of(requestContentType, new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Override
+    protected void onServiceReceivedRequest(Message receivedRequest) throws Exception {
+        super.onServiceReceivedRequest(receivedRequest);
+
+        List<String> expected = Arrays.asList(digest(TEXT_ATTACHMENT), digest(BINARY_ATTACHMENT));
+
+        if (!expected.equals(receivedRequest.getAttachmentDigests())) {
+            throw new RuntimeException("Service did not receive the attachments unchanged");
+        }
+    }
+
+    @Override
+    protected void validateNormalResponse(Message receivedResponse) {
+        // Normal response, nothing more to check here.
+    }
+
+    private static void write(ByteArrayOutputStream out, String data) throws Exception {
+        out.write(data.getBytes(UTF_8));
+    }
+
+    private static String digest(byte[] data) throws Exception {
+        return CryptoUtils.encodeHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.testsuite.testcases;
+
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.proxy.testsuite.Message;
+import ee.ria.xroad.proxy.testsuite.MessageTestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Client sends message with a SOAP body of several megabytes, which the
+ * client proxy streams to the server proxy while reading it. Server responds
+ * with normal response.
+ * Result: All OK, the service receives the whole body.
+ */
+public class BigSoapBody extends MessageTestCase {
+
+    private static final int BODY_SIZE = 8 * 1024 * 1024;
+
+    private static final String BODY_DATA = RandomStringUtils.randomAlphanumeric(BODY_SIZE);
+
+    /**
+     * Constructs the test case.
+     */
+    public BigSoapBody() {
+        requestFileName = "getstate.query";
+        responseFile = "getstate.answer";
+    }
+
+    @Override
+    protected Pair<String, InputStream> getRequestInput(boolean addUtf8Bom) throws Exception {
+        String query = IOUtils.toString(getQueryInputStream(QUERIES_DIR + "/" + requestFileName, addUtf8Bom), UTF_8)
+                .replace("<xroad:getState>aäõ</xroad:getState>",
+                        "<xroad:getState><xroad:data>" + BODY_DATA + "</xroad:data></xroad:getState>");
+
+        return Pair.of(requestContentType, new ByteArrayInputStream(query.getBytes(UTF_8)));
+    }
+
+    @Override
+    protected void onServiceReceivedRequest(Message receivedRequest) throws Exception {
+        super.onServiceReceivedRequest(receivedRequest);
+
+        if (!((SoapMessageImpl) receivedRequest.getSoap()).getXml().contains(BODY_DATA)) {
+            throw new RuntimeException("Service did not receive the whole SOAP body");
+        }
+    }
+
+    @Override
+    protected void validateNormalResponse(Message receivedResponse) {
+        // Normal response, nothing more to check here.
+    }
+}
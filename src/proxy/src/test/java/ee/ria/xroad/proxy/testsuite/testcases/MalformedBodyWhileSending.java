@@ -0,0 +1,85 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.testsuite.testcases;
+
+import ee.ria.xroad.proxy.testsuite.Message;
+import ee.ria.xroad.proxy.testsuite.MessageTestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static ee.ria.xroad.common.ErrorCodes.CLIENT_X;
+import static ee.ria.xroad.common.ErrorCodes.X_INVALID_SOAP;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Client sends message with a valid SOAP header, but the body becomes
+ * malformed XML only after a megabyte of data. The client proxy detects the
+ * error while it is already sending the request to the server proxy.
+ * Result: CP responds with Client.*, the service does not receive the request.
+ */
+public class MalformedBodyWhileSending extends MessageTestCase {
+
+    private static final int VALID_BODY_SIZE = 1024 * 1024;
+
+    private volatile boolean serviceReceivedRequest;
+
+    /**
+     * Constructs the test case.
+     */
+    public MalformedBodyWhileSending() {
+        requestFileName = "getstate.query";
+        responseFile = "getstate.answer";
+    }
+
+    @Override
+    protected Pair<String, InputStream> getRequestInput(boolean addUtf8Bom) throws Exception {
+        String query = IOUtils.toString(getQueryInputStream(QUERIES_DIR + "/" + requestFileName, addUtf8Bom), UTF_8)
+                .replace("<xroad:getState>aäõ</xroad:getState>",
+                        "<xroad:getState><xroad:data>" + StringUtils.repeat('x', VALID_BODY_SIZE)
+                                + "</xroad:data><xroad:unclosed></xroad:getState>");
+
+        return Pair.of(requestContentType, new ByteArrayInputStream(query.getBytes(UTF_8)));
+    }
+
+    @Override
+    protected void onServiceReceivedRequest(Message receivedRequest) throws Exception {
+        serviceReceivedRequest = true;
+    }
+
+    @Override
+    protected void validateFaultResponse(Message receivedResponse) {
+        assertErrorCode(CLIENT_X, X_INVALID_SOAP);
+
+        if (serviceReceivedRequest) {
+            throw new RuntimeException("Service received the malformed request");
+        }
+    }
+}
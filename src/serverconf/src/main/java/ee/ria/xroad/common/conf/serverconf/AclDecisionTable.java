@@ -0,0 +1,178 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static ee.ria.xroad.common.conf.serverconf.model.EndpointType.ANY_METHOD;
+import static ee.ria.xroad.common.conf.serverconf.model.EndpointType.ANY_PATH;
+
+/**
+ * Access rights of one client to one service, compiled for fast access checks. Endpoints with a literal
+ * path are kept in an exact-match map; endpoints with a path glob are kept in a trie by the literal path
+ * segments preceding the first wildcard, so that only the globs sharing a prefix with the requested path
+ * are matched against it.
+ */
+public final class AclDecisionTable {
+
+    private static final char SEPARATOR = '/';
+
+    private final List<EndpointType> endpoints;
+
+    // methods (upper case, or '*') allowed for any path
+    private final Set<String> anyPathMethods = new HashSet<>();
+
+    // literal path -> methods (upper case, or '*') allowed for the path
+    private final Map<String, Set<String>> exactPaths = new HashMap<>();
+
+    private final Node globs = new Node();
+
+    private AclDecisionTable(List<EndpointType> endpoints) {
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+
+        for (EndpointType endpoint : endpoints) {
+            String method = normalizeMethod(endpoint.getMethod());
+
+            if (ANY_PATH.equals(endpoint.getPath())) {
+                anyPathMethods.add(method);
+            } else if (isLiteral(endpoint.getPath())) {
+                exactPaths.computeIfAbsent(endpoint.getPath(), p -> new HashSet<>()).add(method);
+            } else {
+                addGlob(endpoint);
+            }
+        }
+    }
+
+    /**
+     * Compiles the given endpoints.
+     * @param endpoints the endpoints the client has access to
+     * @return the compiled decision table
+     */
+    public static AclDecisionTable compile(List<EndpointType> endpoints) {
+        return new AclDecisionTable(endpoints);
+    }
+
+    /**
+     * @return the endpoints this table was compiled from
+     */
+    public List<EndpointType> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Returns true if any of the endpoints matches the given method and (normalized) path. Equivalent to
+     * checking {@link EndpointType#matches(String, String)} for each of the endpoints.
+     * @param method the request method, or null
+     * @param path the normalized request path, or null
+     * @return true if access is allowed
+     */
+    public boolean allows(String method, String path) {
+        if (isAllowed(anyPathMethods, method)) {
+            return true;
+        }
+
+        if (path == null) {
+            return false;
+        }
+
+        if (isAllowed(exactPaths.get(path), method)) {
+            return true;
+        }
+
+        Node node = globs;
+        int start = 0;
+
+        while (node != null) {
+            if (node.matches(method, path)) {
+                return true;
+            }
+
+            int end = path.indexOf(SEPARATOR, start);
+
+            if (end < 0) {
+                return false;
+            }
+
+            node = node.children.get(path.substring(start, end));
+            start = end + 1;
+        }
+
+        return false;
+    }
+
+    private void addGlob(EndpointType endpoint) {
+        String path = endpoint.getPath();
+        Node node = globs;
+        int start = 0;
+        int end;
+
+        // descend by the literal segments that are followed by a separator
+        while ((end = path.indexOf(SEPARATOR, start)) >= 0 && isLiteral(path.substring(start, end))) {
+            node = node.children.computeIfAbsent(path.substring(start, end), s -> new Node());
+            start = end + 1;
+        }
+
+        node.endpoints.add(endpoint);
+    }
+
+    private static boolean isAllowed(Set<String> methods, String method) {
+        return methods != null && (methods.contains(ANY_METHOD)
+                || method != null && methods.contains(normalizeMethod(method)));
+    }
+
+    private static String normalizeMethod(String method) {
+        return method.toUpperCase(Locale.ROOT);
+    }
+
+    private static boolean isLiteral(String glob) {
+        // '?' is not escaped by PathGlob, so it is not a literal either
+        return glob.indexOf('*') < 0 && glob.indexOf('\\') < 0 && glob.indexOf('?') < 0;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<EndpointType> endpoints = new ArrayList<>();
+
+        boolean matches(String method, String path) {
+            for (EndpointType endpoint : endpoints) {
+                if (endpoint.matches(method, path)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
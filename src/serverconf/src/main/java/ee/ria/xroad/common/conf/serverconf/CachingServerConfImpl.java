@@ -38,8 +38,10 @@ import ee.ria.xroad.common.identifier.SecurityCategoryId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 
-import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
@@ -49,71 +51,99 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
+import static ee.ria.xroad.common.ErrorCodes.translateException;
 
 /**
  * Caching implementation for ServerConf
  * The long lasting and frequently used operations are cached
+ *
+ * Cached values are refreshed in the background after the cache period, while the old value is still
+ * served; a value not used for two cache periods is dropped. Access rights are cached as compiled
+ * {@link AclDecisionTable}s, so that access checks do not need the database once the table is loaded.
  */
 @Slf4j
 public class CachingServerConfImpl extends ServerConfImpl {
 
     public static final String TSP_URL = "tsp_url";
 
+    // shared by all instances, since a new instance is created on every reload
+    private static final ExecutorService REFRESH_EXECUTOR = createRefreshExecutor();
+
     private final int expireSeconds;
     private volatile SecurityServerId serverId;
-    private final Cache<Object, List<String>> tspCache;
-    private final Cache<ServiceId, Optional<ServiceType>> serviceCache;
-    private final Cache<AclCacheKey, List<EndpointType>> aclCache;
-    private final Cache<ClientId, Optional<ClientType>> clientCache;
-    private final Cache<String, InternalSSLKey> internalKeyCache;
+    private final LoadingCache<String, List<String>> tspCache;
+    private final LoadingCache<ServiceId, Optional<ServiceType>> serviceCache;
+    private final LoadingCache<AclCacheKey, AclDecisionTable> aclCache;
+    private final LoadingCache<ClientId, Optional<ClientType>> clientCache;
+    private final LoadingCache<String, InternalSSLKey> internalKeyCache;
 
     /**
-     * Constructor, creates time based object cache with expireSeconds (or internalKeyExpireSeconds
-     * with internal key cache)
+     * Constructor, creates time based object caches refreshed after expireSeconds
      */
-    @SuppressWarnings("checkstyle:MagicNumber")
     public CachingServerConfImpl() {
         super();
         expireSeconds = SystemProperties.getServerConfCachePeriod();
 
-        internalKeyCache = CacheBuilder.newBuilder()
-                .maximumSize(1)
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .build();
+        internalKeyCache = refreshing(CacheBuilder.newBuilder()
+                .maximumSize(1))
+                .build(refreshingLoader(alias -> super.getSSLKey()));
 
-        tspCache = CacheBuilder.newBuilder()
-                .maximumSize(1)
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .build();
+        tspCache = refreshing(CacheBuilder.newBuilder()
+                .maximumSize(1))
+                .build(refreshingLoader(key -> super.getTspUrl()));
 
-        clientCache = CacheBuilder.newBuilder()
+        clientCache = refreshing(CacheBuilder.newBuilder()
                 .maximumSize(SystemProperties.getServerConfClientCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .recordStats()
-                .build();
+                .recordStats())
+                .build(refreshingLoader(
+                        clientId -> tx(session -> Optional.ofNullable(super.getClient(session, clientId)))));
 
-        serviceCache = CacheBuilder.newBuilder()
+        serviceCache = refreshing(CacheBuilder.newBuilder()
                 .maximumSize(SystemProperties.getServerConfServiceCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .recordStats()
-                .build();
+                .recordStats())
+                .build(refreshingLoader(
+                        serviceId -> tx(session -> Optional.ofNullable(super.getService(session, serviceId)))));
 
-        aclCache = CacheBuilder.newBuilder()
-                .weigher((AclCacheKey k, List<EndpointType> v) -> v.size() + 1)
+        aclCache = refreshing(CacheBuilder.newBuilder()
+                .weigher((AclCacheKey k, AclDecisionTable v) -> v.getEndpoints().size() + 1)
                 .maximumWeight(SystemProperties.getServerConfAclCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .recordStats()
-                .build();
+                .recordStats())
+                .build(refreshingLoader(key -> AclDecisionTable.compile(
+                        tx(session -> super.getAclEndpoints(session, key.client, key.serviceId)))));
+    }
 
+    private <K, V> CacheBuilder<K, V> refreshing(CacheBuilder<K, V> builder) {
+        return builder
+                .refreshAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .expireAfterWrite(2L * expireSeconds, TimeUnit.SECONDS);
+    }
+
+    private static <K, V> CacheLoader<K, V> refreshingLoader(Loader<K, V> loader) {
+        return CacheLoader.asyncReloading(new CacheLoader<K, V>() {
+            @Override
+            public V load(K key) throws Exception {
+                return loader.load(key);
+            }
+        }, REFRESH_EXECUTOR);
+    }
+
+    private static ExecutorService createRefreshExecutor() {
+        return Executors.newFixedThreadPool(SystemProperties.getServerConfCacheRefreshThreads(), r -> {
+            Thread thread = new Thread(r, "serverconf-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
     public InternalSSLKey getSSLKey() {
         try {
-            return internalKeyCache.get(InternalSSLKey.KEY_ALIAS, super::getSSLKey);
+            return internalKeyCache.get(InternalSSLKey.KEY_ALIAS);
         } catch (ExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
@@ -150,7 +180,7 @@ public class CachingServerConfImpl extends ServerConfImpl {
     @Override
     public List<String> getTspUrl() {
         try {
-            return tspCache.get(TSP_URL, super::getTspUrl);
+            return tspCache.get(TSP_URL);
         } catch (ExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
@@ -218,29 +248,42 @@ public class CachingServerConfImpl extends ServerConfImpl {
         return getService(service).map(ServiceType::getRequiredSecurityCategory).orElse(Collections.emptyList());
     }
 
+    @Override
+    public boolean isQueryAllowed(ClientId client, ServiceId service, String method, String path) {
+        if (client == null) {
+            return false;
+        }
+
+        return getAcl(client, service).allows(method, normalizePath(path));
+    }
+
     @Override
     protected List<EndpointType> getAclEndpoints(Session session, ClientId client, ServiceId service) {
+        return getAcl(client, service).getEndpoints();
+    }
+
+    private AclDecisionTable getAcl(ClientId client, ServiceId service) {
         final AclCacheKey key = new AclCacheKey(client, service);
         try {
             /*
-             * Implementation note. It seems that the loader function is executed in the same thread, in which case the
-             * transaction simply joins the current one. However, this is not explicitly promised by the API,
-             * so we start a transaction if necessary.
+             * Implementation note. When loaded in the calling thread, the transaction joins the current one
+             * if there is one; refreshes run in the background in their own transactions.
              */
-            return aclCache.get(key, () -> tx(s -> super.getAclEndpoints(s, client, service)));
+            return aclCache.get(key);
         } catch (ExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
             }
             log.debug("Failed get list of endpoints", e);
-            return Collections.emptyList();
+            return AclDecisionTable.compile(Collections.emptyList());
+        } catch (UncheckedExecutionException e) {
+            throw translateException(e.getCause());
         }
     }
 
     private Optional<ServiceType> getService(ServiceId serviceId) {
         try {
-            return serviceCache
-                    .get(serviceId, () -> tx(session -> Optional.ofNullable(super.getService(session, serviceId))));
+            return serviceCache.get(serviceId);
         } catch (ExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
@@ -252,8 +295,7 @@ public class CachingServerConfImpl extends ServerConfImpl {
 
     private Optional<ClientType> getClient(ClientId clientId) {
         try {
-            return clientCache.get(clientId,
-                    () -> tx(session -> Optional.ofNullable(super.getClient(session, clientId))));
+            return clientCache.get(clientId);
         } catch (ExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
@@ -286,4 +328,9 @@ public class CachingServerConfImpl extends ServerConfImpl {
         final ClientId client;
         final ServiceId serviceId;
     }
+
+    @FunctionalInterface
+    private interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
 }
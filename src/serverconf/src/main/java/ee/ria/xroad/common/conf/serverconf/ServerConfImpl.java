@@ -419,16 +419,24 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @SuppressWarnings("squid:S3776")
     private boolean checkAccessRights(Session session, ClientId client, ServiceId service, String method, String path) {
-        final String normalizedPath;
-        if (path == null) {
-            normalizedPath = null;
-        } else {
-            normalizedPath = UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
-        }
+        final String normalizedPath = normalizePath(path);
         return getAclEndpoints(session, client, service).stream()
                 .anyMatch(ep -> ep.matches(method, normalizedPath));
     }
 
+    /**
+     * Normalizes a request path for matching against the access rights.
+     * @param path the request path, or null
+     * @return the normalized and percent-decoded path, or null
+     */
+    protected static String normalizePath(String path) {
+        if (path == null) {
+            return null;
+        }
+
+        return UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
+    }
+
     /**
      * Returns the endpoints the client has access to.
      *
@@ -0,0 +1,107 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.conf.serverconf.AclDecisionTable;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AclDecisionTable Unit Tests
+ */
+public class AclDecisionTableTest {
+
+    private static final List<EndpointType> ENDPOINTS = Arrays.asList(
+            endpoint("GET", "/api/foo"),
+            endpoint("post", "/api/test/*"),
+            endpoint("*", "/api/items/*/details"),
+            endpoint("PUT", "/api/files/**"),
+            endpoint("DELETE", "/api/*/x/**"),
+            endpoint("GET", "**/status"),
+            endpoint("PATCH", "/api/q?"),
+            endpoint("HEAD", "/api/\\*"));
+
+    private static final String[] METHODS = {"GET", "get", "POST", "PUT", "DELETE", "PATCH", "HEAD", null};
+
+    private static final String[] PATHS = {
+        "/api/foo", "/api/foo/", "/api/fo", "/api/test/bar", "/api/test/bar/baz", "/api/test/",
+        "/api/items/1/details", "/api/items/1/2/details", "/api/items//details", "/api/files", "/api/files/",
+        "/api/files/a/b", "/api/a/x/b", "/api/a/b/x/c", "/status", "/a/b/status", "/api/q", "/api/qq",
+        "/api/*", "/api/x", "", "/"
+    };
+
+    /**
+     * Tests that the table gives the same decisions as matching each endpoint.
+     */
+    @Test
+    public void decisionsMatchEndpoints() {
+        AclDecisionTable table = AclDecisionTable.compile(ENDPOINTS);
+
+        for (String method : METHODS) {
+            for (String path : PATHS) {
+                boolean expected = ENDPOINTS.stream().anyMatch(ep -> ep.matches(method, path));
+
+                assertEquals(method + " " + path, expected, table.allows(method, path));
+            }
+        }
+    }
+
+    /**
+     * Tests the service level endpoint.
+     */
+    @Test
+    public void baseEndpointAllowsAll() {
+        AclDecisionTable table = AclDecisionTable.compile(
+                Collections.singletonList(endpoint(EndpointType.ANY_METHOD, EndpointType.ANY_PATH)));
+
+        assertTrue(table.allows("GET", "/any/path"));
+        assertTrue(table.allows(null, null));
+    }
+
+    /**
+     * Tests that nothing is allowed without endpoints.
+     */
+    @Test
+    public void emptyTableAllowsNothing() {
+        AclDecisionTable table = AclDecisionTable.compile(Collections.emptyList());
+
+        assertFalse(table.allows("GET", "/"));
+        assertFalse(table.allows(null, null));
+    }
+
+    private static EndpointType endpoint(String method, String path) {
+        return new EndpointType("service", method, path, false);
+    }
+}
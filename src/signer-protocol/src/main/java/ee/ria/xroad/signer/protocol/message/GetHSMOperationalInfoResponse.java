@@ -25,15 +25,27 @@
  */
 package ee.ria.xroad.signer.protocol.message;
 
+import ee.ria.xroad.signer.protocol.dto.TokenSessionInfo;
+
+import lombok.AllArgsConstructor;
 import lombok.Value;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Signer API message.
  */
 @Value
+@AllArgsConstructor
 public class GetHSMOperationalInfoResponse implements Serializable {
 
     boolean operational;
+
+    List<TokenSessionInfo> signSessions;
+
+    public GetHSMOperationalInfoResponse(boolean operational) {
+        this(operational, Collections.emptyList());
+    }
 }
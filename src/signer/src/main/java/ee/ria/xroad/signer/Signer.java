@@ -40,6 +40,7 @@ import ee.ria.xroad.signer.util.Update;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import com.codahale.metrics.jmx.JmxReporter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import scala.concurrent.duration.Duration;
@@ -73,6 +74,9 @@ public class Signer implements StartStop {
 
     private final ActorSystem actorSystem;
 
+    private final JmxReporter ocspClientReporter =
+            JmxReporter.forRegistry(OcspClientWorker.getMetricRegistry()).inDomain("xroad.signer").build();
+
     private FileWatcherRunner keyConfFileWatcherRunner;
 
     @Override
@@ -101,6 +105,8 @@ public class Signer implements StartStop {
         createComponent(ModuleManagerJob.class);
 
         createComponent(REQUEST_PROCESSOR, SignerRequestProcessor.class);
+
+        ocspClientReporter.start();
     }
 
     /**
@@ -123,6 +129,8 @@ public class Signer implements StartStop {
             this.keyConfFileWatcherRunner.stop();
         }
 
+        ocspClientReporter.stop();
+
     }
 
     @Override
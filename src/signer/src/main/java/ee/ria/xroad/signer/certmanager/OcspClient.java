@@ -25,6 +25,7 @@
  */
 package ee.ria.xroad.signer.certmanager;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.MimeTypes;
@@ -59,10 +60,6 @@ import java.util.List;
 @Slf4j
 final class OcspClient {
 
-    // TODO make it configurable
-    private static final int CONNECT_TIMEOUT_MS = 20000;
-    private static final int READ_TIMEOUT_MS = 60000;
-
     // TODO make it configurable
     private static final String DIGEST_ALGORITHM_ID = CryptoUtils.SHA512_ID;
     private static final String SIGN_MECHANISM_NAME = CryptoUtils.CKM_RSA_PKCS_NAME;
@@ -190,8 +187,8 @@ final class OcspClient {
         connection.setRequestProperty(MimeUtils.HEADER_CONTENT_TYPE, MimeTypes.OCSP_REQUEST);
         connection.setRequestProperty("Accept", MimeTypes.OCSP_RESPONSE);
         connection.setDoOutput(true);
-        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setConnectTimeout(SystemProperties.getOcspClientConnectTimeout());
+        connection.setReadTimeout(SystemProperties.getOcspClientReadTimeout());
         connection.connect();
 
         return connection;
@@ -30,6 +30,7 @@ import ee.ria.xroad.common.CertificationServiceStatus;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.DiagnosticsErrorCodes;
 import ee.ria.xroad.common.OcspResponderStatus;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
@@ -46,6 +47,8 @@ import ee.ria.xroad.signer.util.AbstractSignerActor;
 import ee.ria.xroad.signer.util.SignerUtil;
 
 import akka.actor.ActorRef;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.cert.ocsp.OCSPException;
@@ -53,6 +56,8 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import java.io.IOException;
 import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
 import java.security.Principal;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
@@ -60,13 +65,21 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
@@ -80,7 +93,9 @@ import static java.util.Collections.emptyList;
  * This class is responsible for retrieving the OCSP responses from the OCSP
  * server and providing the responses to the message signer.
  *
- * The certificate status is queried from the server at a fixed interval.
+ * The certificate status is queried from the server at a fixed interval. The statuses of different
+ * certificates are queried in parallel, and a responder that cannot be reached is not retried for the
+ * remaining certificates of the same refresh cycle.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -99,15 +114,36 @@ public class OcspClientWorker extends AbstractSignerActor {
 
     private static final String OCSP_CLIENT_JOB_PATH = "/user/" + OCSP_CLIENT_JOB;
 
+    private static final String METRICS_PREFIX = "OcspClient";
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+
+    private static final Map<String, Long> RESPONDER_LATENCIES = new ConcurrentHashMap<>();
+    private static volatile long lastCycleDurationMillis;
+
+    static {
+        METRICS.register(MetricRegistry.name(METRICS_PREFIX, "lastCycleDuration"),
+                (Gauge<Long>) OcspClientWorker::getLastCycleDurationMillis);
+    }
+
     private GlobalConfChangeChecker changeChecker;
 
     private CertificationServiceDiagnostics certServDiagnostics;
 
+    private ExecutorService fetchExecutor;
+
     @Override
     public void preStart() throws Exception {
         super.preStart();
         changeChecker = new GlobalConfChangeChecker();
         certServDiagnostics = new CertificationServiceDiagnostics();
+        fetchExecutor = Executors.newFixedThreadPool(SystemProperties.getOcspFetchConcurrency());
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        fetchExecutor.shutdownNow();
+        super.postStop();
     }
 
     @Override
@@ -214,19 +250,41 @@ public class OcspClientWorker extends AbstractSignerActor {
 
         log.info("Fetching OCSP responses for {} certificates", certs.size());
 
-        Boolean failed = false;
-        Map<String, OCSPResp> statuses = new HashMap<>();
+        long cycleStart = System.nanoTime();
+        OcspVerifierOptions verifierOptions = new OcspVerifierOptions(
+                GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate());
+        Set<String> unreachableResponders = ConcurrentHashMap.newKeySet();
+
+        Map<X509Certificate, Future<OCSPResp>> results = new LinkedHashMap<>();
 
         for (X509Certificate subject : certs) {
+            results.put(subject, fetchExecutor.submit(
+                    () -> queryCertStatus(subject, verifierOptions, unreachableResponders)));
+        }
+
+        boolean failed = false;
+        Map<String, OCSPResp> statuses = new HashMap<>();
+
+        for (Entry<X509Certificate, Future<OCSPResp>> result : results.entrySet()) {
+            X509Certificate subject = result.getKey();
+
             try {
-                OCSPResp status = queryCertStatus(subject, new OcspVerifierOptions(
-                        GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
+                OCSPResp status = result.getValue().get();
                 if (status != null) {
                     String subjectHash = calculateCertHexHash(subject);
                     statuses.put(subjectHash, status);
                 } else {
                     failed = true;
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+
+                log.error("Interrupted when querying certificate '{}'", subject.getSerialNumber());
+            } catch (ExecutionException e) {
+                failed = true;
+
+                log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e.getCause());
             } catch (Exception e) {
                 failed = true;
 
@@ -234,6 +292,11 @@ public class OcspClientWorker extends AbstractSignerActor {
             }
         }
 
+        lastCycleDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cycleStart);
+
+        log.info("Fetched OCSP responses for {} of {} certificates in {} ms", statuses.size(), certs.size(),
+                lastCycleDurationMillis);
+
         if (failed) {
             getSender().tell(FAILED, getSelf());
         } else {
@@ -289,6 +352,15 @@ public class OcspClientWorker extends AbstractSignerActor {
     }
 
     OCSPResp queryCertStatus(X509Certificate subject, OcspVerifierOptions verifierOptions) throws Exception {
+        return queryCertStatus(subject, verifierOptions, new HashSet<>());
+    }
+
+    /**
+     * Queries the certificate status from the responders in turn, skipping the responders listed as unreachable.
+     * Responders that cannot be connected to are added to the list.
+     */
+    OCSPResp queryCertStatus(X509Certificate subject, OcspVerifierOptions verifierOptions,
+            Set<String> unreachableResponders) throws Exception {
         X509Certificate issuer = GlobalConf.getCaCert(GlobalConf.getInstanceIdentifier(), subject);
 
         PrivateKey signerKey = OcspClient.getOcspRequestKey(subject);
@@ -306,6 +378,12 @@ public class OcspClientWorker extends AbstractSignerActor {
         final OcspVerifier verifier = new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(true), verifierOptions);
 
         for (String responderURI : responderURIs) {
+            if (unreachableResponders.contains(responderURI)) {
+                log.debug("Skipping unreachable responder {}", responderURI);
+
+                continue;
+            }
+
             final OffsetDateTime prevUpdate = OffsetDateTime.now();
             final OffsetDateTime nextUpdate = prevUpdate
                     .plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval());
@@ -313,8 +391,18 @@ public class OcspClientWorker extends AbstractSignerActor {
 
             try {
                 log.debug("Fetching response from: {}", responderURI);
-                final OCSPResp response = OcspClient
-                        .fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
+                final long fetchStart = System.nanoTime();
+                final OCSPResp response;
+
+                try {
+                    response = OcspClient.fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
+                } finally {
+                    if (RESPONDER_LATENCIES.put(responderURI,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fetchStart)) == null) {
+                        METRICS.gauge(MetricRegistry.name(METRICS_PREFIX, responderURI, "latency"),
+                                () -> () -> RESPONDER_LATENCIES.get(responderURI));
+                    }
+                }
 
                 if (response != null) {
                     log.debug("Verifying response: {}", response);
@@ -332,6 +420,10 @@ public class OcspClientWorker extends AbstractSignerActor {
             } catch (IOException e) {
                 log.error("Unable to connect to responder at {}", responderURI, e);
                 errorCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_CONNECTION_ERROR;
+
+                if (isUnreachable(e)) {
+                    unreachableResponders.add(responderURI);
+                }
             } catch (CodedException e) {
                 log.warn("Received OCSP response that failed verification", e);
                 errorCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_UNVERIFIED;
@@ -346,6 +438,11 @@ public class OcspClientWorker extends AbstractSignerActor {
         return null;
     }
 
+    private static boolean isUnreachable(IOException e) {
+        return e instanceof ConnectException || e instanceof SocketTimeoutException
+                || e instanceof UnknownHostException;
+    }
+
     private void reportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
             OffsetDateTime prevUpdate, OffsetDateTime nextUpdate) {
 
@@ -355,17 +452,20 @@ public class OcspClientWorker extends AbstractSignerActor {
 
         CertificationServiceStatus serviceStatus;
 
-        Map<String, CertificationServiceStatus> serviceStatusMap =
-                certServDiagnostics.getCertificationServiceStatusMap();
+        // responses are fetched in parallel
+        synchronized (certServDiagnostics) {
+            Map<String, CertificationServiceStatus> serviceStatusMap =
+                    certServDiagnostics.getCertificationServiceStatusMap();
 
-        if (!serviceStatusMap.containsKey(subjectName)) {
-            serviceStatus = new CertificationServiceStatus(subjectName);
-            serviceStatusMap.put(subjectName, serviceStatus);
-        } else {
-            serviceStatus = serviceStatusMap.get(subjectName);
-        }
+            if (!serviceStatusMap.containsKey(subjectName)) {
+                serviceStatus = new CertificationServiceStatus(subjectName);
+                serviceStatusMap.put(subjectName, serviceStatus);
+            } else {
+                serviceStatus = serviceStatusMap.get(subjectName);
+            }
 
-        serviceStatus.getOcspResponderStatusMap().put(responderURI, responderStatus);
+            serviceStatus.getOcspResponderStatusMap().put(responderURI, responderStatus);
+        }
     }
 
     void updateCertStatuses(Map<String, OCSPResp> statuses) throws Exception {
@@ -488,6 +588,27 @@ public class OcspClientWorker extends AbstractSignerActor {
         }
     }
 
+    /**
+     * @return the registry of the OCSP client metrics
+     */
+    public static MetricRegistry getMetricRegistry() {
+        return METRICS;
+    }
+
+    /**
+     * @return duration of the last OCSP-response refresh cycle in milliseconds
+     */
+    public static long getLastCycleDurationMillis() {
+        return lastCycleDurationMillis;
+    }
+
+    /**
+     * @return latency of the last request to each OCSP responder in milliseconds
+     */
+    public static Map<String, Long> getResponderLatencies() {
+        return Collections.unmodifiableMap(new HashMap<>(RESPONDER_LATENCIES));
+    }
+
     /**
      * @return the next ocsp freshness time in seconds
      */
@@ -42,7 +42,10 @@ import ee.ria.xroad.signer.tokenmanager.merge.MergeOntoFileTokensStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeAddedCertificatesListener;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy.MergeResult;
-import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+import ee.ria.xroad.signer.tokenmanager.TokenSnapshot.CertEntry;
+import ee.ria.xroad.signer.tokenmanager.TokenSnapshot.CertRequestEntry;
+import ee.ria.xroad.signer.tokenmanager.TokenSnapshot.KeyEntry;
+import ee.ria.xroad.signer.tokenmanager.TokenSnapshot.TokenEntry;
 import ee.ria.xroad.signer.tokenmanager.token.TokenType;
 import ee.ria.xroad.signer.util.SignerUtil;
 import ee.ria.xroad.signer.util.TokenAndKey;
@@ -57,7 +60,6 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_WRONG_CERT_USAGE;
 import static ee.ria.xroad.signer.util.ExceptionHelper.certWithHashNotFound;
@@ -65,15 +67,18 @@ import static ee.ria.xroad.signer.util.ExceptionHelper.certWithIdNotFound;
 import static ee.ria.xroad.signer.util.ExceptionHelper.csrWithIdNotFound;
 import static ee.ria.xroad.signer.util.ExceptionHelper.keyNotFound;
 import static ee.ria.xroad.signer.util.ExceptionHelper.tokenNotFound;
-import static java.util.Collections.unmodifiableList;
 
 /**
  * Manages the current state of tokens, their keys and certificates.
+ *
+ * Changes are made to the token model while holding the class lock, after which an immutable
+ * {@link TokenSnapshot} of the model is published. Queries are answered from the latest snapshot
+ * and never wait for the lock.
  */
 @Slf4j
 public final class TokenManager {
 
-    private static volatile List<Token> currentTokens = new ArrayList<>();
+    private static volatile TokenSnapshot snapshot = new TokenSnapshot(new ArrayList<>());
 
     private static boolean initialized;
 
@@ -95,7 +100,9 @@ public final class TokenManager {
             log.error("Failed to load token conf", e);
         }
 
-        currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+        synchronized (TokenManager.class) {
+            publish(new ArrayList<>(TokenConf.getInstance().getTokens()));
+        }
 
         initialized = true;
     }
@@ -109,7 +116,7 @@ public final class TokenManager {
         log.trace("persist()");
 
         if (initialized) {
-            TokenConf.getInstance().save(currentTokens);
+            TokenConf.getInstance().save(snapshot.getTokens());
         }
     }
 
@@ -134,8 +141,8 @@ public final class TokenManager {
 
             MergeResult result;
             synchronized (TokenManager.class) {
-                result = mergeStrategy.merge(fileTokens, currentTokens);
-                currentTokens = result.getResultTokens();
+                result = mergeStrategy.merge(fileTokens, snapshot.getTokens());
+                publish(result.getResultTokens());
             }
             if (listener != null) {
                 listener.mergeDone(result.getAddedCertificates());
@@ -154,11 +161,8 @@ public final class TokenManager {
     /**
      * @return list of tokens
      */
-    public static synchronized List<TokenInfo> listTokens() {
-        return unmodifiableList(
-                currentTokens.stream()
-                        .map(t -> t.toDTO())
-                        .collect(Collectors.toList()));
+    public static List<TokenInfo> listTokens() {
+        return snapshot.getTokenInfos();
     }
 
     /**
@@ -166,7 +170,7 @@ public final class TokenManager {
      * @return list of keys for a token
      */
     public static List<KeyInfo> listKeys(String tokenId) {
-        return unmodifiableList(findTokenInfo(tokenId).getKeyInfo());
+        return findTokenInfo(tokenId).getKeyInfo();
     }
 
     /**
@@ -186,7 +190,8 @@ public final class TokenManager {
         token.setBatchSigningEnabled(tokenType.isBatchSigningEnabled());
         token.setAvailable(true);
 
-        currentTokens.add(token);
+        snapshot.getTokens().add(token);
+        publish();
 
         return token.toDTO();
     }
@@ -209,13 +214,12 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return the token info DTO for the token id or null of not found
      */
-    public static synchronized TokenInfo getTokenInfo(String tokenId) {
+    public static TokenInfo getTokenInfo(String tokenId) {
         log.trace("getTokenInfo({})", tokenId);
 
-        return currentTokens.stream()
-                .filter(t -> t.getId().equals(tokenId))
-                .map(t -> t.toDTO())
-                .findFirst().orElse(null);
+        TokenEntry token = snapshot.getTokensById().get(tokenId);
+
+        return token != null ? token.getInfo() : null;
     }
 
     /**
@@ -223,82 +227,83 @@ public final class TokenManager {
      * @return the token info DTO for the token
      * @throws Exception if key was not found
      */
-    public static synchronized TokenInfo findTokenInfoForKeyId(String keyId) {
+    public static TokenInfo findTokenInfoForKeyId(String keyId) {
         log.trace("getTokenInfoForKeyId({})", keyId);
-        String tokenId = findTokenIdForKeyId(keyId);
-        return getTokenInfo(tokenId);
+
+        return findKeyEntry(snapshot, keyId).getToken().getInfo();
     }
 
     /**
      * @param keyId the key id
      * @return the token and key or throws exception if not found
      */
-    public static synchronized TokenAndKey findTokenAndKey(String keyId) {
+    public static TokenAndKey findTokenAndKey(String keyId) {
         log.trace("findTokenAndKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenAndKey(t.getId(), k.toDTO()))
-                .orElseThrow(() -> keyNotFound(keyId));
+        KeyEntry key = findKeyEntry(snapshot, keyId);
+
+        return new TokenAndKey(key.getToken().getInfo().getId(), key.getInfo());
     }
 
     /**
      * @param certHash the certificate hash
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
         log.trace("findTokenAndKeyIdForCertHash({})", certHash);
 
-        String keyId = forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> certWithHashNotFound(certHash));
+        TokenSnapshot current = snapshot;
+        CertEntry cert = current.getCertsByHash().get(certHash);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        if (cert == null) {
+            throw certWithHashNotFound(certHash);
+        }
+
+        return tokenAndKeyId(current, cert.getKey().getInfo().getId());
     }
 
     /**
      * @param certRequestId the certificate request id
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
         log.trace("findTokenAndKeyIdForCertRequestId({})", certRequestId);
 
-        String keyId = forCertRequest((k, c) -> certRequestId.equals(c.getId()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> csrWithIdNotFound(certRequestId));
+        TokenSnapshot current = snapshot;
+        CertRequestEntry certRequest = current.getCertRequestsById().get(certRequestId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        if (certRequest == null) {
+            throw csrWithIdNotFound(certRequestId);
+        }
+
+        return tokenAndKeyId(current, certRequest.getKey().getInfo().getId());
     }
 
     /**
      * @param keyId the key id
      * @return the token id for the key id or throws exception if not found
      */
-    public static synchronized String findTokenIdForKeyId(String keyId) {
+    public static String findTokenIdForKeyId(String keyId) {
         log.trace("findTokenIdForKeyId({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getId()).orElseThrow(() -> keyNotFound(keyId));
+        return findKeyEntry(snapshot, keyId).getToken().getInfo().getId();
     }
 
     /**
      * @return the software token id
      */
-    public static synchronized String getSoftwareTokenId() {
-        return forToken(t -> t.getType().equals(SoftwareModuleType.TYPE),
-                t -> t.getId()).orElse(null);
+    public static String getSoftwareTokenId() {
+        return snapshot.getSoftwareTokenId();
     }
 
     /**
      * @param tokenId the token id
      * @return the module id for the token id or null if not found
      */
-    public static synchronized String getModuleId(String tokenId) {
-        return forToken(t -> t.getId().equals(tokenId),
-                t -> t.getModuleId()).orElse(null);
+    public static String getModuleId(String tokenId) {
+        TokenEntry token = snapshot.getTokensById().get(tokenId);
+
+        return token != null ? token.getModuleId() : null;
     }
 
     /**
@@ -318,46 +323,29 @@ public final class TokenManager {
      * @param keyId the key id
      * @return the key info for the key id or null if not found
      */
-    public static synchronized KeyInfo getKeyInfo(String keyId) {
+    public static KeyInfo getKeyInfo(String keyId) {
         log.trace("getKeyInfo({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> k.toDTO()).orElse(null);
+        KeyEntry key = snapshot.getKeysById().get(keyId);
+
+        return key != null ? key.getInfo() : null;
     }
 
     /**
      * @param clientId the client id
      * @return the list of keys for the given client id
      */
-    public static synchronized List<KeyInfo> getKeyInfo(ClientId clientId) {
+    public static List<KeyInfo> getKeyInfo(ClientId clientId) {
         log.trace("getKeyInfo({})", clientId);
 
         List<KeyInfo> keyInfo = new ArrayList<>();
 
-        for (Token token : currentTokens) {
-            if (token.isInActive()) {
-                // Ignore inactive (not usable) tokens
-                continue;
-            }
-
-            for (Key key : token.getKeys()) {
-                if (!key.isValidForSigning()) {
-                    // Ignore authentication keys
-                    continue;
-                }
-
-                for (Cert cert : key.getCerts()) {
-                    if (cert.isInvalid()) {
-                        // Ignore inactive and invalid certificates
-                        continue;
-                    }
-
-                    if (certBelongsToMember(cert.toDTO(), clientId)) {
-                        log.debug("Found key '{}' for client '{}'",
-                                key.getId(), cert.getMemberId());
-                        keyInfo.add(key.toDTO());
-                    }
-                }
+        // Only valid certificates of signing keys on usable tokens are considered
+        for (CertEntry cert : snapshot.getSigningCerts()) {
+            if (certBelongsToMember(cert.getInfo(), clientId)) {
+                log.debug("Found key '{}' for client '{}'",
+                        cert.getKey().getInfo().getId(), cert.getInfo().getMemberId());
+                keyInfo.add(cert.getKey().getInfo());
             }
         }
 
@@ -382,49 +370,45 @@ public final class TokenManager {
      * @param certId the certificate id
      * @return the certificate info for the certificate id or null if not found
      */
-    public static synchronized CertificateInfo getCertificateInfo(
-            String certId) {
+    public static CertificateInfo getCertificateInfo(String certId) {
         log.trace("getCertificateInfo({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId), (k, c) -> c.toDTO())
-                .orElse(null);
+        CertEntry cert = snapshot.getCertsById().get(certId);
+
+        return cert != null ? cert.getInfo() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate info for the certificate hash or null
      */
-    public static synchronized CertificateInfo getCertificateInfoForCertHash(
-            String certHash) {
+    public static CertificateInfo getCertificateInfoForCertHash(String certHash) {
         log.trace("getCertificateInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.toDTO()).orElse(null);
+        CertEntry cert = snapshot.getCertsByHash().get(certHash);
+
+        return cert != null ? cert.getInfo() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate for the certificate hash or null
      */
-    public static synchronized X509Certificate getCertificateForCertHash(
-            String certHash) {
+    public static X509Certificate getCertificateForCertHash(String certHash) {
         log.trace("getCertificateForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.getCertificate()).orElse(null);
+        CertEntry cert = snapshot.getCertsByHash().get(certHash);
+
+        return cert != null ? cert.getCertificate() : null;
     }
 
     /**
      * @return all certificates
      */
-    public static synchronized List<CertificateInfo> getAllCerts() {
+    public static List<CertificateInfo> getAllCerts() {
         log.trace("getAllCerts()");
 
-        return currentTokens.stream()
-                .flatMap(t -> t.getKeys().stream())
-                .flatMap(k -> k.getCerts().stream())
-                .map(c -> c.toDTO())
-                .collect(Collectors.toList());
+        return new ArrayList<>(snapshot.getCertInfos());
     }
 
     /**
@@ -442,6 +426,8 @@ public final class TokenManager {
                     c.setOcspResponse(response);
                     return null;
                 });
+
+        publish();
     }
 
     /**
@@ -449,49 +435,50 @@ public final class TokenManager {
      * @param memberId the member id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String keyId,
-                                                                  ClientId memberId) {
+    public static CertRequestInfo getCertRequestInfo(String keyId, ClientId memberId) {
         log.trace("getCertRequestInfo({}, {})", keyId, memberId);
 
-        Key key = findKey(keyId);
+        KeyInfo key = findKeyEntry(snapshot, keyId).getInfo();
         return key.getCertRequests().stream()
                 .filter(c -> key.getUsage() == KeyUsageInfo.AUTHENTICATION
                         || memberId.equals(c.getMemberId()))
-                .map(c -> c.toDTO()).findFirst().orElse(null);
+                .findFirst().orElse(null);
     }
 
     /**
      * @param certReqId cert request id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String certReqId) {
+    public static CertRequestInfo getCertRequestInfo(String certReqId) {
         log.trace("getCertRequestInfo({})", certReqId);
 
-        return forCertRequest((k, c) -> certReqId.equals(c.getId()),
-                (k, c) -> c.toDTO())
-                .orElse(null);
+        CertRequestEntry certRequest = snapshot.getCertRequestsById().get(certReqId);
+
+        return certRequest != null ? certRequest.getInfo() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return key info for the certificate hash
      */
-    public static synchronized KeyInfo getKeyInfoForCertHash(String certHash) {
+    public static KeyInfo getKeyInfoForCertHash(String certHash) {
         log.trace("getKeyInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.toDTO()).orElse(null);
+        CertEntry cert = snapshot.getCertsByHash().get(certHash);
+
+        return cert != null ? cert.getKey().getInfo() : null;
     }
 
     /**
      * @param certId the certificate id
      * @return key info for certificate id
      */
-    public static synchronized KeyInfo getKeyInfoForCertId(String certId) {
+    public static KeyInfo getKeyInfoForCertId(String certId) {
         log.trace("getKeyInfoForCertId({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.toDTO()).orElse(null);
+        CertEntry cert = snapshot.getCertsById().get(certId);
+
+        return cert != null ? cert.getKey().getInfo() : null;
     }
 
     /**
@@ -509,20 +496,20 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if token is available
      */
-    public static synchronized boolean isTokenAvailable(String tokenId) {
+    public static boolean isTokenAvailable(String tokenId) {
         log.trace("isTokenAvailable({})", tokenId);
 
-        return findToken(tokenId).isAvailable();
+        return findTokenInfo(tokenId).isAvailable();
     }
 
     /**
      * @param tokenId the token id
      * @return true if token is active (logged in)
      */
-    public static synchronized boolean isTokenActive(String tokenId) {
+    public static boolean isTokenActive(String tokenId) {
         log.trace("isTokenActive({})", tokenId);
 
-        return findToken(tokenId).isActive();
+        return findTokenInfo(tokenId).isActive();
     }
 
     /**
@@ -540,6 +527,8 @@ public final class TokenManager {
         Token token = findToken(tokenId);
         token.setAvailable(available);
         token.setModuleId(tokenType.getModuleType());
+
+        publish();
     }
 
     /**
@@ -552,6 +541,8 @@ public final class TokenManager {
         log.trace("setTokenAvailable({}, {})", tokenId, available);
 
         findToken(tokenId).setAvailable(available);
+
+        publish();
     }
 
     /**
@@ -565,6 +556,8 @@ public final class TokenManager {
         log.trace("setTokenActive({}, {})", tokenId, active);
 
         findToken(tokenId).setActive(active);
+
+        publish();
     }
 
     /**
@@ -578,16 +571,18 @@ public final class TokenManager {
         log.trace("setTokenFriendlyName({}, {})", tokenId, friendlyName);
 
         findToken(tokenId).setFriendlyName(friendlyName);
+
+        publish();
     }
 
     /**
      * @param tokenId the token if
      * @return the token status info
      */
-    public static synchronized TokenStatusInfo getTokenStatus(String tokenId) {
+    public static TokenStatusInfo getTokenStatus(String tokenId) {
         log.trace("getTokenStatus({})", tokenId);
 
-        return findToken(tokenId).getStatus();
+        return findTokenInfo(tokenId).getStatus();
     }
 
     /**
@@ -601,6 +596,8 @@ public final class TokenManager {
         log.trace("setTokenStatus({}, {})", tokenId, status);
 
         findToken(tokenId).setStatus(status);
+
+        publish();
     }
 
     /**
@@ -614,16 +611,18 @@ public final class TokenManager {
         log.trace("setKeyAvailable({}, {})", keyId, available);
 
         findKey(keyId).setAvailable(available);
+
+        publish();
     }
 
     /**
      * @param keyId the key id
      * @return true if key is available
      */
-    public static synchronized boolean isKeyAvailable(String keyId) {
+    public static boolean isKeyAvailable(String keyId) {
         log.trace("isKeyAvailable()");
 
-        return findKey(keyId).isAvailable();
+        return findKeyEntry(snapshot, keyId).getInfo().isAvailable();
     }
 
     /**
@@ -637,6 +636,8 @@ public final class TokenManager {
         log.trace("setKeyFriendlyName({}, {})", keyId, friendlyName);
 
         findKey(keyId).setFriendlyName(friendlyName);
+
+        publish();
     }
 
     /**
@@ -649,6 +650,8 @@ public final class TokenManager {
         log.trace("setKeyLabel({}, {})", keyId, label);
 
         findKey(keyId).setLabel(label);
+
+        publish();
     }
 
     /**
@@ -662,6 +665,8 @@ public final class TokenManager {
         log.trace("setKeyUsage({}, {})", keyId, keyUsage);
 
         findKey(keyId).setUsage(keyUsage);
+
+        publish();
     }
 
     /**
@@ -681,6 +686,7 @@ public final class TokenManager {
         key.setPublicKey(publicKeyBase64);
 
         token.addKey(key);
+        publish();
 
         return key.toDTO();
     }
@@ -694,8 +700,11 @@ public final class TokenManager {
     public static synchronized boolean removeKey(String keyId) {
         log.trace("removeKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
+        boolean removed = forKey((t, k) -> k.getId().equals(keyId),
                 (t, k) -> t.getKeys().remove(k)).orElse(false);
+        publish();
+
+        return removed;
     }
 
     /**
@@ -709,6 +718,8 @@ public final class TokenManager {
         log.trace("setPublicKey({}, {})", keyId, publicKeyBase64);
 
         findKey(keyId).setPublicKey(publicKeyBase64);
+
+        publish();
     }
 
     /**
@@ -726,6 +737,7 @@ public final class TokenManager {
         cert.setCertificate(certBytes);
 
         key.addCert(cert);
+        publish();
     }
 
     /**
@@ -749,6 +761,7 @@ public final class TokenManager {
         cert.setStatus(certInfo.getStatus());
 
         key.addCert(cert);
+        publish();
     }
 
     /**
@@ -762,6 +775,8 @@ public final class TokenManager {
         log.trace("setCertActive({}, {})", certId, active);
 
         findCert(certId).setActive(active);
+
+        publish();
     }
 
     /**
@@ -775,6 +790,8 @@ public final class TokenManager {
         log.trace("setCertStatus({}, {})", certId, status);
 
         findCert(certId).setStatus(status);
+
+        publish();
     }
 
     /**
@@ -786,8 +803,11 @@ public final class TokenManager {
     public static synchronized boolean removeCert(String certId) {
         log.trace("removeCert({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
+        boolean removed = forCert((k, c) -> c.getId().equals(certId),
                 (k, c) -> k.getCerts().remove(c)).orElse(false);
+        publish();
+
+        return removed;
     }
 
     /**
@@ -824,12 +844,15 @@ public final class TokenManager {
                 log.warn("Certificate request (memberId: {}, "
                                 + "subjectName: {}) already exists", memberId,
                         subjectName);
+                publish();
+
                 return certRequest.getId();
             }
         }
 
         String certId = SignerUtil.randomId();
         key.addCertRequest(new CertRequest(certId, memberId, subjectName));
+        publish();
 
         log.info("Added new certificate request (memberId: {}, "
                         + "subjectId: {}) under key {}",
@@ -847,7 +870,7 @@ public final class TokenManager {
     public static synchronized String removeCertRequest(String certReqId) {
         log.trace("removeCertRequest({})", certReqId);
 
-        return forCertRequest((k, c) -> c.getId().equals(certReqId),
+        String keyId = forCertRequest((k, c) -> c.getId().equals(certReqId),
                 (k, c) -> {
                     if (!k.getCertRequests().remove(c)) {
                         return null;
@@ -855,6 +878,9 @@ public final class TokenManager {
 
                     return k.getId();
                 }).orElse(null);
+        publish();
+
+        return keyId;
     }
 
     /**
@@ -865,22 +891,58 @@ public final class TokenManager {
      */
     public static synchronized void setTokenInfo(String tokenId, Map<String, String> info) {
         findToken(tokenId).setInfo(info);
+
+        publish();
     }
 
     /**
      * @param tokenId the token id
      * @return true if batch signing is enabled for a token
      */
-    public static synchronized boolean isBatchSigningEnabled(String tokenId) {
+    public static boolean isBatchSigningEnabled(String tokenId) {
         log.trace("isBatchSigningEnabled({})", tokenId);
 
-        return findToken(tokenId).isBatchSigningEnabled();
+        TokenEntry token = snapshot.getTokensById().get(tokenId);
+
+        if (token == null) {
+            throw tokenNotFound(tokenId);
+        }
+
+        return token.isBatchSigningEnabled();
     }
 
     // ------------------------------------------------------------------------
 
+    /**
+     * Publishes a new snapshot of the current token model. Must be called while holding the class lock
+     * after every change to the model.
+     */
+    private static void publish() {
+        publish(snapshot.getTokens());
+    }
+
+    private static void publish(List<Token> tokens) {
+        snapshot = new TokenSnapshot(tokens);
+    }
+
+    private static KeyEntry findKeyEntry(TokenSnapshot current, String keyId) {
+        KeyEntry key = current.getKeysById().get(keyId);
+
+        if (key == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return key;
+    }
+
+    private static TokenInfoAndKeyId tokenAndKeyId(TokenSnapshot current, String keyId) {
+        return new TokenInfoAndKeyId(findKeyEntry(current, keyId).getToken().getInfo(), keyId);
+    }
+
+    // The following are used by the writers for finding the model objects to change
+
     private static <T> Optional<T> forToken(Function<Token, Boolean> tester, Function<Token, T> mapper) {
-        for (Token token : currentTokens) {
+        for (Token token : snapshot.getTokens()) {
             if (tester.apply(token)) {
                 return Optional.ofNullable(mapper.apply(token));
             }
@@ -892,7 +954,7 @@ public final class TokenManager {
     private static <T> Optional<T> forKey(
             BiFunction<Token, Key, Boolean> tester,
             BiFunction<Token, Key, T> mapper) {
-        for (Token token : currentTokens) {
+        for (Token token : snapshot.getTokens()) {
             for (Key key : token.getKeys()) {
                 if (tester.apply(token, key)) {
                     return Optional.ofNullable(mapper.apply(token, key));
@@ -906,7 +968,7 @@ public final class TokenManager {
     private static <T> Optional<T> forCert(
             BiFunction<Key, Cert, Boolean> tester,
             BiFunction<Key, Cert, T> mapper) {
-        for (Token token : currentTokens) {
+        for (Token token : snapshot.getTokens()) {
             for (Key key : token.getKeys()) {
                 for (Cert cert : key.getCerts()) {
                     if (tester.apply(key, cert)) {
@@ -922,7 +984,7 @@ public final class TokenManager {
     private static <T> Optional<T> forCertRequest(
             BiFunction<Key, CertRequest, Boolean> tester,
             BiFunction<Key, CertRequest, T> mapper) {
-        for (Token token : currentTokens) {
+        for (Token token : snapshot.getTokens()) {
             for (Key key : token.getKeys()) {
                 for (CertRequest certReq : key.getCertRequests()) {
                     if (tester.apply(key, certReq)) {
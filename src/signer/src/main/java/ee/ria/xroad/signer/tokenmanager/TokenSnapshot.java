@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.CertRequest;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.CertRequestInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import lombok.Getter;
+import lombok.Value;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Immutable view of the tokens, built from the token model after every change. Holds the DTOs of the
+ * tokens, keys, certificates and certificate requests together with indexes for looking them up, so that
+ * readers need neither a lock nor a scan over the tokens.
+ */
+@Getter
+final class TokenSnapshot {
+
+    /** The token model this snapshot was built from; may only be used while holding the writer lock. */
+    private final List<Token> tokens;
+
+    private final List<TokenInfo> tokenInfos;
+
+    private final List<CertificateInfo> certInfos;
+
+    private final String softwareTokenId;
+
+    private final Map<String, TokenEntry> tokensById = new HashMap<>();
+
+    private final Map<String, KeyEntry> keysById = new HashMap<>();
+
+    private final Map<String, CertEntry> certsById = new HashMap<>();
+
+    private final Map<String, CertEntry> certsByHash = new HashMap<>();
+
+    private final Map<String, CertRequestEntry> certRequestsById = new HashMap<>();
+
+    // active certificates with a member, of available signing keys on active tokens, in token order
+    private final List<CertEntry> signingCerts = new ArrayList<>();
+
+    TokenSnapshot(List<Token> tokens) {
+        this.tokens = tokens;
+
+        List<TokenInfo> tokenList = new ArrayList<>(tokens.size());
+        List<CertificateInfo> certList = new ArrayList<>();
+        String softwareId = null;
+
+        for (Token token : tokens) {
+            TokenEntry tokenEntry = new TokenEntry(token.toDTO(), token.getModuleId(),
+                    token.isBatchSigningEnabled());
+
+            tokenList.add(tokenEntry.getInfo());
+            tokensById.putIfAbsent(token.getId(), tokenEntry);
+
+            if (softwareId == null && SoftwareModuleType.TYPE.equals(token.getType())) {
+                softwareId = token.getId();
+            }
+
+            // the DTOs are built in the same order as the model lists
+            for (int i = 0; i < token.getKeys().size(); i++) {
+                Key key = token.getKeys().get(i);
+                KeyEntry keyEntry = new KeyEntry(tokenEntry, tokenEntry.getInfo().getKeyInfo().get(i));
+
+                keysById.putIfAbsent(key.getId(), keyEntry);
+
+                boolean signingKey = !token.isInActive() && key.isValidForSigning();
+
+                for (int j = 0; j < key.getCerts().size(); j++) {
+                    Cert cert = key.getCerts().get(j);
+                    CertEntry certEntry = new CertEntry(keyEntry, keyEntry.getInfo().getCerts().get(j),
+                            cert.getCertificate());
+
+                    certList.add(certEntry.getInfo());
+                    certsById.putIfAbsent(cert.getId(), certEntry);
+
+                    if (cert.getHash() != null) {
+                        certsByHash.putIfAbsent(cert.getHash(), certEntry);
+                    }
+
+                    if (signingKey && !cert.isInvalid()) {
+                        signingCerts.add(certEntry);
+                    }
+                }
+
+                for (int j = 0; j < key.getCertRequests().size(); j++) {
+                    CertRequest certRequest = key.getCertRequests().get(j);
+
+                    certRequestsById.putIfAbsent(certRequest.getId(),
+                            new CertRequestEntry(keyEntry, keyEntry.getInfo().getCertRequests().get(j)));
+                }
+            }
+        }
+
+        this.tokenInfos = unmodifiableList(tokenList);
+        this.certInfos = unmodifiableList(certList);
+        this.softwareTokenId = softwareId;
+    }
+
+    @Value
+    static class TokenEntry {
+        TokenInfo info;
+        String moduleId;
+        boolean batchSigningEnabled;
+    }
+
+    @Value
+    static class KeyEntry {
+        TokenEntry token;
+        KeyInfo info;
+    }
+
+    @Value
+    static class CertEntry {
+        KeyEntry key;
+        CertificateInfo info;
+        X509Certificate certificate;
+    }
+
+    @Value
+    static class CertRequestEntry {
+        KeyEntry key;
+        CertRequestInfo info;
+    }
+}
@@ -58,4 +58,7 @@ public class HardwareModuleType implements ModuleType {
     private final PubKeyAttributes pubKeyAttributes;
 
     private final Set<Long> slotIds;
+
+    // Number of sessions used for signing in parallel.
+    private final int signSessionPoolSize;
 }
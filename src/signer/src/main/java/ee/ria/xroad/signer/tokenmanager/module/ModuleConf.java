@@ -102,6 +102,7 @@ public final class ModuleConf {
     private static final String PRIV_KEY_ATTRIBUTE_WRAP_WITH_TRUSTED_PARAM = "priv_key_attribute_wrap_with_trusted";
     private static final String PRIV_KEY_ATTRIBUTE_ALLOWED_MECHANISMS_PARAM = "priv_key_attribute_allowed_mechanisms";
     private static final String SLOT_IDS_PARAM = "slot_ids";
+    private static final String SIGN_SESSION_POOL_SIZE_PARAM = "sign_session_pool_size";
 
     private static FileContentChangeChecker changeChecker = null;
 
@@ -230,6 +231,7 @@ public final class ModuleConf {
         boolean verifyPin = getBoolean(section, SIGN_VERIFY_PIN_PARAM, false);
         boolean batchSigning = getBoolean(section, BATCH_SIGNING_ENABLED_PARAM, true);
         boolean readOnly = getBoolean(section, READ_ONLY_PARAM, false);
+        int signSessionPoolSize = Math.max(1, section.getInt(SIGN_SESSION_POOL_SIZE_PARAM, 1));
         String tokenIdFormat = section.getString(TOKEN_ID_FORMAT_PARAM);
 
         if (StringUtils.isBlank(tokenIdFormat)) {
@@ -256,9 +258,10 @@ public final class ModuleConf {
 
         log.debug("Read module configuration (UID = {}, library = {}, library_cant_create_os_threads = {}"
                 + ", os_locking_ok = {}, token_id_format = {}, pin_verification_per_signing = {}, batch_signing = {}"
-                + ", sign_mechanism = {}, pub_key_attributes = {}, priv_key_attributes = {})",
+                + ", sign_mechanism = {}, sign_session_pool_size = {}, pub_key_attributes = {}"
+                + ", priv_key_attributes = {})",
                 uid, library, libraryCantCreateOsThreads, osLockingOk, tokenIdFormat, verifyPin, batchSigning,
-                signMechanismName, pubKeyAttributes, privKeyAttributes);
+                signMechanismName, signSessionPoolSize, pubKeyAttributes, privKeyAttributes);
 
         if (MODULES.containsKey(uid)) {
             log.warn("Module information already defined for {}, skipping...", uid);
@@ -270,7 +273,8 @@ public final class ModuleConf {
         Set<Long> slotIds = slotIdStrings.stream().map(String::trim).map(Long::parseLong).collect(Collectors.toSet());
 
         MODULES.put(uid, new HardwareModuleType(uid, library, libraryCantCreateOsThreads, osLockingOk, tokenIdFormat,
-                verifyPin, batchSigning, readOnly, signMechanismName, privKeyAttributes, pubKeyAttributes, slotIds));
+                verifyPin, batchSigning, readOnly, signMechanismName, privKeyAttributes, pubKeyAttributes, slotIds,
+                signSessionPoolSize));
     }
 
     private static PubKeyAttributes loadPubKeyAttributes(SubnodeConfiguration section) {
@@ -25,16 +25,22 @@
  */
 package ee.ria.xroad.signer.tokenmanager.token;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.signer.protocol.dto.TokenInfo;
 import ee.ria.xroad.signer.tokenmanager.TokenManager;
 
+import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.routing.RoundRobinPool;
 
 import java.util.HashMap;
 import java.util.Map;
 
+import static ee.ria.xroad.signer.protocol.ComponentNames.TOKEN_SIGN_WORKERS;
+
 /**
- * Software token implementation.
+ * Software token implementation. If more than one signing worker is configured, signatures are calculated
+ * by a pool of workers sharing the unlocked keys, while key management stays with the token worker.
  */
 public class SoftwareToken extends AbstractToken {
 
@@ -42,6 +48,12 @@ public class SoftwareToken extends AbstractToken {
 
     private final SoftwareTokenType tokenType;
 
+    private final SoftwareTokenKeys keys;
+
+    private final int signingWorkers = SystemProperties.getSoftwareTokenSigningWorkers();
+
+    private ActorRef signWorkers;
+
     /**
      * Constructs new software token.
      * @param tokenInfo the token info
@@ -51,23 +63,43 @@ public class SoftwareToken extends AbstractToken {
         super(tokenInfo);
 
         this.tokenType = tokenType;
+        this.keys = new SoftwareTokenKeys(tokenInfo.getId());
     }
 
     @Override
     public void preStart() throws Exception {
         super.preStart();
 
+        if (signingWorkers > 1) {
+            signWorkers = getContext().actorOf(new RoundRobinPool(signingWorkers).props(
+                    Props.create(SoftwareTokenSignWorker.class, keys).withDispatcher(DISPATCHER)),
+                    TOKEN_SIGN_WORKERS);
+        }
+
         initTokenInfo(tokenInfo);
     }
 
+    @Override
+    public void postStop() throws Exception {
+        if (signWorkers != null) {
+            getContext().stop(signWorkers);
+        }
+
+        super.postStop();
+    }
+
     @Override
     protected Props createWorker() {
         return Props.create(SoftwareTokenWorker.class,
-                tokenInfo, tokenType).withDispatcher(DISPATCHER);
+                tokenInfo, tokenType, keys).withDispatcher(DISPATCHER);
     }
 
     @Override
     protected Props createSigner() {
+        if (signingWorkers > 1) {
+            return Props.create(TokenSigner.class, TOKEN_SIGN_WORKERS);
+        }
+
         return Props.create(TokenSigner.class);
     }
 
@@ -0,0 +1,222 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.PasswordStore;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+import static ee.ria.xroad.common.ErrorCodes.X_UNSUPPORTED_SIGN_ALGORITHM;
+import static ee.ria.xroad.signer.tokenmanager.TokenManager.isKeyAvailable;
+import static ee.ria.xroad.signer.tokenmanager.TokenManager.isTokenActive;
+import static ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenUtil.getKeyStoreFileName;
+import static ee.ria.xroad.signer.util.ExceptionHelper.keyNotAvailable;
+import static ee.ria.xroad.signer.util.ExceptionHelper.keyNotFound;
+import static ee.ria.xroad.signer.util.ExceptionHelper.tokenNotActive;
+
+/**
+ * Unlocked private keys of a software token. Shared by the token worker, which manages the keys, and the
+ * signing workers, which only sign with them. Clearing the keys starts a new generation, and a key loaded
+ * during an earlier generation is discarded, so that a signing worker cannot put back a key of a token that
+ * has been deactivated in the meantime.
+ */
+@Slf4j
+class SoftwareTokenKeys {
+
+    // Use no digesting algorithm, since the input data is already a digest
+    private static final String SIGNATURE_ALGORITHM = "NONEwithRSA";
+
+    /**
+     * Loads the private key of a software token key.
+     */
+    @FunctionalInterface
+    interface KeyLoader {
+        PrivateKey load(String keyId) throws Exception;
+    }
+
+    private final String tokenId;
+    private final KeyLoader keyLoader;
+
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    // guarded by privateKeys
+    private long generation;
+
+    SoftwareTokenKeys(String tokenId) {
+        this.tokenId = tokenId;
+        this.keyLoader = this::loadFromKeyStore;
+    }
+
+    SoftwareTokenKeys(String tokenId, KeyLoader keyLoader) {
+        this.tokenId = tokenId;
+        this.keyLoader = keyLoader;
+    }
+
+    boolean isLoaded(String keyId) {
+        return privateKeys.containsKey(keyId);
+    }
+
+    /**
+     * Removes the loaded keys. The token must be marked inactive before the keys are cleared, so that a key
+     * loaded concurrently by a signing worker is either removed here or discarded by the worker.
+     */
+    void clear() {
+        synchronized (privateKeys) {
+            generation++;
+            privateKeys.clear();
+        }
+    }
+
+    /**
+     * Loads the private key from its key store using the stored token PIN.
+     * @param keyId the key id
+     * @throws Exception if the key cannot be loaded
+     */
+    void load(String keyId) throws Exception {
+        load(keyId, false);
+    }
+
+    private PrivateKey load(String keyId, boolean activeOnly) throws Exception {
+        long loadGeneration;
+
+        synchronized (privateKeys) {
+            loadGeneration = generation;
+        }
+
+        PrivateKey pkey = keyLoader.load(keyId);
+
+        if (pkey == null) {
+            return null;
+        }
+
+        synchronized (privateKeys) {
+            if (loadGeneration != generation || (activeOnly && !isTokenActive(tokenId))) {
+                log.debug("Token '{}' was deactivated while loading key '{}', discarding the key", tokenId, keyId);
+
+                return null;
+            }
+
+            log.debug("Found usable key '{}'", keyId);
+
+            privateKeys.put(keyId, pkey);
+        }
+
+        return pkey;
+    }
+
+    private PrivateKey loadFromKeyStore(String keyId) throws Exception {
+        String keyStoreFile = getKeyStoreFileName(keyId);
+
+        log.trace("Loading pkcs#12 private key '{}' from file '{}'", keyId, keyStoreFile);
+
+        return SoftwareTokenUtil.loadPrivateKey(keyStoreFile, keyId, getPin());
+    }
+
+    /**
+     * @return a new signature instance for {@link #sign(Signature, String, String, byte[])}
+     * @throws Exception if the signature algorithm is not available
+     */
+    static Signature createSignature() throws Exception {
+        return Signature.getInstance(SIGNATURE_ALGORITHM);
+    }
+
+    /**
+     * Signs the data with the given key.
+     * @param signature signature instance owned by the calling worker
+     * @param keyId the key id
+     * @param signatureAlgorithmId the signature algorithm id
+     * @param data data to be signed (digest with algorithm identifier)
+     * @return the signature
+     * @throws Exception if signing fails
+     */
+    byte[] sign(Signature signature, String keyId, String signatureAlgorithmId, byte[] data) throws Exception {
+        log.trace("sign({}, {})", keyId, signatureAlgorithmId);
+
+        checkSignatureAlgorithm(signatureAlgorithmId);
+
+        if (!isTokenActive(tokenId)) {
+            throw tokenNotActive(tokenId);
+        }
+
+        if (!isKeyAvailable(keyId)) {
+            throw keyNotAvailable(keyId);
+        }
+
+        PrivateKey key = getPrivateKey(keyId);
+
+        if (key == null) {
+            if (!isTokenActive(tokenId)) {
+                throw tokenNotActive(tokenId);
+            }
+
+            throw keyNotFound(keyId);
+        }
+
+        log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
+
+        signature.initSign(key);
+        signature.update(data);
+
+        return signature.sign();
+    }
+
+    private PrivateKey getPrivateKey(String keyId) throws Exception {
+        PrivateKey pkey = privateKeys.get(keyId);
+
+        return pkey != null ? pkey : load(keyId, true);
+    }
+
+    private char[] getPin() throws Exception {
+        final char[] pin = PasswordStore.getPassword(tokenId);
+
+        if (pin == null || pin.length == 0) {
+            throw new CodedException(X_INTERNAL_ERROR, "PIN not provided");
+        }
+
+        return pin;
+    }
+
+    private static void checkSignatureAlgorithm(String signatureAlgorithmId) throws CodedException {
+        switch (signatureAlgorithmId) {
+            case CryptoUtils.SHA1WITHRSA_ID:
+            case CryptoUtils.SHA256WITHRSA_ID:
+            case CryptoUtils.SHA384WITHRSA_ID:
+            case CryptoUtils.SHA512WITHRSA_ID:
+                break;
+            default:
+                throw CodedException.tr(X_UNSUPPORTED_SIGN_ALGORITHM, "unsupported_sign_algorithm",
+                        "Unsupported signature algorithm '%s'", signatureAlgorithmId);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.signer.util.AbstractSignerActor;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
+import ee.ria.xroad.signer.util.SignerUtil;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.Signature;
+
+import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_SIGN;
+
+/**
+ * Calculates signatures with the keys of a software token. Several of these workers can serve one token,
+ * each with its own signature instance; key management stays with {@link SoftwareTokenWorker}.
+ */
+@Slf4j
+public class SoftwareTokenSignWorker extends AbstractSignerActor {
+
+    private final SoftwareTokenKeys keys;
+
+    private Signature signature;
+
+    SoftwareTokenSignWorker(SoftwareTokenKeys keys) {
+        this.keys = keys;
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        if (message instanceof CalculateSignature) {
+            handleCalculateSignature((CalculateSignature) message);
+        } else {
+            unhandled(message);
+        }
+    }
+
+    private void handleCalculateSignature(CalculateSignature signRequest) {
+        try {
+            byte[] data = SignerUtil.createDataToSign(signRequest.getDigest(), signRequest.getSignatureAlgorithmId());
+
+            if (signature == null) {
+                signature = SoftwareTokenKeys.createSignature();
+            }
+
+            byte[] result = keys.sign(signature, signRequest.getKeyId(), signRequest.getSignatureAlgorithmId(), data);
+            sendResponse(new CalculatedSignature(signRequest, result, null));
+        } catch (Exception e) { // catch-log-rethrow
+            log.error("Error while signing with key '{}'", signRequest.getKeyId(), e);
+
+            CodedException tr = translateError(e).withPrefix(X_CANNOT_SIGN);
+            sendResponse(new CalculatedSignature(signRequest, null, tr));
+        }
+    }
+}
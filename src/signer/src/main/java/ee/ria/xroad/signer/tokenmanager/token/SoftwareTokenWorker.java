@@ -27,7 +27,6 @@ package ee.ria.xroad.signer.tokenmanager.token;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
-import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.PasswordStore;
 import ee.ria.xroad.common.util.TokenPinPolicy;
 import ee.ria.xroad.signer.protocol.dto.KeyInfo;
@@ -58,16 +57,12 @@ import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.cert.Certificate;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_TOKEN_PIN_POLICY_FAILURE;
-import static ee.ria.xroad.common.ErrorCodes.X_UNSUPPORTED_SIGN_ALGORITHM;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.loadPkcs12KeyStore;
 import static ee.ria.xroad.signer.tokenmanager.TokenManager.addKey;
-import static ee.ria.xroad.signer.tokenmanager.TokenManager.isKeyAvailable;
 import static ee.ria.xroad.signer.tokenmanager.TokenManager.isTokenActive;
 import static ee.ria.xroad.signer.tokenmanager.TokenManager.listKeys;
 import static ee.ria.xroad.signer.tokenmanager.TokenManager.setKeyAvailable;
@@ -87,8 +82,6 @@ import static ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenUtil.getKeySto
 import static ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenUtil.isTokenInitialized;
 import static ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenUtil.listKeysOnDisk;
 import static ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenUtil.loadCertificate;
-import static ee.ria.xroad.signer.util.ExceptionHelper.keyNotAvailable;
-import static ee.ria.xroad.signer.util.ExceptionHelper.keyNotFound;
 import static ee.ria.xroad.signer.util.ExceptionHelper.loginFailed;
 import static ee.ria.xroad.signer.util.ExceptionHelper.pinIncorrect;
 import static ee.ria.xroad.signer.util.ExceptionHelper.tokenNotActive;
@@ -102,10 +95,9 @@ import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 @Slf4j
 public class SoftwareTokenWorker extends AbstractTokenWorker {
 
-    // Use no digesting algorithm, since the input data is already a digest
-    private static final String SIGNATURE_ALGORITHM = "NONEwithRSA";
+    private final SoftwareTokenKeys keys;
 
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    private Signature signature;
 
     private boolean isTokenLoginAllowed = true;
 
@@ -116,7 +108,20 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
      * @param ignored token type (not used)
      */
     public SoftwareTokenWorker(TokenInfo tokenInfo, SoftwareTokenType ignored) {
+        this(tokenInfo, ignored, new SoftwareTokenKeys(tokenInfo.getId()));
+    }
+
+    /**
+     * Creates new worker that shares its unlocked keys with signing workers.
+     *
+     * @param tokenInfo the token info
+     * @param ignored token type (not used)
+     * @param keys the unlocked keys of the token
+     */
+    SoftwareTokenWorker(TokenInfo tokenInfo, SoftwareTokenType ignored, SoftwareTokenKeys keys) {
         super(tokenInfo);
+
+        this.keys = keys;
     }
 
     @Override
@@ -205,44 +210,11 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
     @Override
     protected byte[] sign(String keyId, String signatureAlgorithmId, byte[] data) throws Exception {
-        log.trace("sign({}, {})", keyId, signatureAlgorithmId);
-
-        checkSignatureAlgorithm(signatureAlgorithmId);
-
-        if (!isTokenActive(tokenId)) {
-            throw tokenNotActive(tokenId);
+        if (signature == null) {
+            signature = SoftwareTokenKeys.createSignature();
         }
 
-        if (!isKeyAvailable(keyId)) {
-            throw keyNotAvailable(keyId);
-        }
-
-        PrivateKey key = getPrivateKey(keyId);
-
-        if (key == null) {
-            throw keyNotFound(keyId);
-        }
-
-        log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
-
-        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
-        signature.initSign(key);
-        signature.update(data);
-
-        return signature.sign();
-    }
-
-    private static void checkSignatureAlgorithm(String signatureAlgorithmId) throws CodedException {
-        switch (signatureAlgorithmId) {
-            case CryptoUtils.SHA1WITHRSA_ID:
-            case CryptoUtils.SHA256WITHRSA_ID:
-            case CryptoUtils.SHA384WITHRSA_ID:
-            case CryptoUtils.SHA512WITHRSA_ID:
-                break;
-            default:
-                throw CodedException.tr(X_UNSUPPORTED_SIGN_ALGORITHM, "unsupported_sign_algorithm",
-                        "Unsupported signature algorithm '%s'", signatureAlgorithmId);
-        }
+        return keys.sign(signature, keyId, signatureAlgorithmId, data);
     }
 
     // ------------------------------------------------------------------------
@@ -274,12 +246,12 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
             setKeyAvailable(keyId, true);
 
-            if (privateKeys.containsKey(keyId)) {
+            if (keys.isLoaded(keyId)) {
                 continue;
             }
 
             try {
-                initializePrivateKey(keyId);
+                keys.load(keyId);
             } catch (Exception e) {
                 setKeyAvailable(keyId, false);
 
@@ -306,26 +278,6 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
-    private PrivateKey getPrivateKey(String keyId) throws Exception {
-        PrivateKey pkey = privateKeys.get(keyId);
-
-        if (pkey == null) {
-            initializePrivateKey(keyId);
-        }
-
-        return privateKeys.get(keyId);
-    }
-
-    private void initializePrivateKey(String keyId) throws Exception {
-        PrivateKey pkey = loadPrivateKey(keyId);
-
-        if (pkey != null) {
-            log.debug("Found usable key '{}'", keyId);
-
-            privateKeys.put(keyId, pkey);
-        }
-    }
-
     private void initializeToken(char[] pin) throws Exception {
         verifyPinProvided(pin);
 
@@ -459,17 +411,9 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
     }
 
     private void deactivateToken() {
-        privateKeys.clear();
-
         setTokenActive(tokenId, false);
-    }
-
-    private PrivateKey loadPrivateKey(String keyId) throws Exception {
-        String keyStoreFile = getKeyStoreFileName(keyId);
-
-        log.trace("Loading pkcs#12 private key '{}' from file '{}'", keyId, keyStoreFile);
 
-        return SoftwareTokenUtil.loadPrivateKey(keyStoreFile, keyId, getPin());
+        keys.clear();
     }
 
     private String loadPublicKeyBase64(String keyId) throws Exception {
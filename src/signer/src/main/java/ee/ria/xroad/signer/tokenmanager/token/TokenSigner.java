@@ -46,7 +46,22 @@ import static ee.ria.xroad.common.ErrorCodes.translateException;
 @Slf4j
 public class TokenSigner extends UntypedAbstractActor {
 
-    private final ActorSelection tokenWorker = getContext().actorSelection("../" + ComponentNames.TOKEN_WORKER);
+    private final ActorSelection tokenWorker;
+
+    /**
+     * Creates a signer that has the signatures calculated by the token worker.
+     */
+    public TokenSigner() {
+        this(ComponentNames.TOKEN_WORKER);
+    }
+
+    /**
+     * Creates a signer that has the signatures calculated by the given sibling actor.
+     * @param workerName name of the actor calculating the signatures
+     */
+    public TokenSigner(String workerName) {
+        tokenWorker = getContext().actorSelection("../" + workerName);
+    }
 
     @Override
     public void onReceive(Object message) throws Exception {
@@ -67,10 +67,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -152,6 +156,34 @@ public class OcspClientTest {
         verifier.verifyValidityAndStatus(ocsp, subject, GlobalConf.getCaCert("EE", subject));
     }
 
+    /**
+     * Test that a responder that cannot be connected to is remembered and skipped afterwards.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void unreachableResponderIsSkipped() throws Exception {
+        X509Certificate subject = getDefaultClientCert();
+
+        GlobalConfProvider conf = getTestGlobalConf();
+        when(conf.getOcspResponderAddresses(Mockito.any(X509Certificate.class))).thenReturn(
+                Arrays.asList("http://127.0.0.1:1234", RESPONDER_URI));
+        GlobalConf.reload(conf);
+
+        Date thisUpdate = Date.from(Instant.now().plus(1, ChronoUnit.DAYS));
+
+        responseData = OcspTestUtils.createOCSPResponse(subject, GlobalConf.getCaCert("EE", subject), ocspResponderCert,
+                getOcspSignerKey(), CertificateStatus.GOOD, thisUpdate, null).getEncoded();
+
+        Set<String> unreachable = new HashSet<>();
+
+        assertNotNull(ocspClient.queryCertStatus(subject, new OcspVerifierOptions(true), unreachable));
+        assertTrue(unreachable.contains("http://127.0.0.1:1234"));
+
+        unreachable.add(RESPONDER_URI);
+
+        assertNull(ocspClient.queryCertStatus(subject, new OcspVerifierOptions(true), unreachable));
+    }
+
     /**
      * Test.
      * @throws Exception if an error occurs
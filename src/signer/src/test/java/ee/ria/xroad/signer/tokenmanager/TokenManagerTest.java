@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfoAndKeyId;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.RestoreSystemProperties;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the lookups of {@link TokenManager}.
+ */
+public class TokenManagerTest {
+
+    private static final String KEY_CONF = "./build/resources/test/mergetesting/keyconf_base_no_duplicate_keyIds.xml";
+    private static final String KEY_ID = "70726f6475636572";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties();
+
+    /**
+     * Loads the test key configuration.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        File keyConf = temporaryFolder.newFile("keyconf-testing.xml");
+        System.setProperty(SystemProperties.KEY_CONFIGURATION_FILE, keyConf.getPath());
+
+        Files.copy(Paths.get(KEY_CONF), keyConf.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        TokenManager.init();
+    }
+
+    @Test
+    public void findsKeyAndTokenByCertificate() throws Exception {
+        KeyInfo key = TokenManager.getKeyInfo(KEY_ID);
+        assertNotNull("test setup failure", key);
+        assertFalse("test setup failure", key.getCerts().isEmpty());
+
+        CertificateInfo cert = key.getCerts().get(0);
+        String certHash = calculateCertHexHash(cert.getCertificateBytes());
+
+        TokenInfoAndKeyId tokenAndKey = TokenManager.findTokenAndKeyIdForCertHash(certHash);
+        assertEquals(KEY_ID, tokenAndKey.getKeyId());
+        assertEquals(TokenManager.findTokenIdForKeyId(KEY_ID), tokenAndKey.getTokenInfo().getId());
+
+        assertSame(key, TokenManager.getKeyInfoForCertHash(certHash));
+        assertSame(key, TokenManager.getKeyInfoForCertId(cert.getId()));
+        assertSame(cert, TokenManager.getCertificateInfo(cert.getId()));
+        assertNotNull(TokenManager.getCertificateForCertHash(certHash));
+    }
+
+    @Test
+    public void publishesChanges() {
+        KeyInfo before = TokenManager.findKeyInfo(KEY_ID);
+
+        TokenManager.setKeyFriendlyName(KEY_ID, "changed");
+
+        assertEquals("changed", TokenManager.findKeyInfo(KEY_ID).getFriendlyName());
+        assertNotEquals("previously returned DTO must not change", "changed", before.getFriendlyName());
+
+        assertTrue(TokenManager.removeKey(KEY_ID));
+        assertNull(TokenManager.getKeyInfo(KEY_ID));
+    }
+
+    @Test(expected = CodedException.class)
+    public void throwsIfKeyNotFound() {
+        TokenManager.findTokenAndKey("does-not-exist");
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.module;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.RestoreSystemProperties;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests reading the hardware modules from the device configuration.
+ */
+public class ModuleConfTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties();
+
+    /**
+     * The signing session pool size is read from the module section, defaults to a single session and is never
+     * less than one.
+     */
+    @Test
+    public void readsSignSessionPoolSize() throws Exception {
+        loadDevices("[pooled]\n"
+                + "library = /usr/lib/pooled-pkcs11.so\n"
+                + "sign_session_pool_size = 4\n"
+                + "\n"
+                + "[default]\n"
+                + "library = /usr/lib/default-pkcs11.so\n"
+                + "\n"
+                + "[invalid]\n"
+                + "library = /usr/lib/invalid-pkcs11.so\n"
+                + "sign_session_pool_size = 0\n");
+
+        assertEquals(4, getModule("pooled").getSignSessionPoolSize());
+        assertEquals(1, getModule("default").getSignSessionPoolSize());
+        assertEquals(1, getModule("invalid").getSignSessionPoolSize());
+    }
+
+    private void loadDevices(String devices) throws Exception {
+        File devicesIni = temporaryFolder.newFile("devices.ini");
+        Files.write(devicesIni.toPath(), devices.getBytes(UTF_8));
+
+        System.setProperty(SystemProperties.DEVICE_CONFIGURATION_FILE, devicesIni.getPath());
+
+        ModuleConf.reload();
+    }
+
+    private static HardwareModuleType getModule(String type) {
+        ModuleType module = ModuleConf.getModules().stream()
+                .filter(m -> type.equals(m.getType()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Module '" + type + "' not found"));
+
+        assertTrue(module instanceof HardwareModuleType);
+
+        return (HardwareModuleType) module;
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.signer.tokenmanager.TokenManager;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
+import ee.ria.xroad.signer.util.SignerUtil;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.routing.RoundRobinPool;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.RestoreSystemProperties;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the software token signing workers.
+ */
+public class SoftwareTokenSignWorkerTest {
+
+    private static final String KEY_CONF = "./build/resources/test/mergetesting/keyconf_base_no_duplicate_keyIds.xml";
+    private static final String KEY_ID = "70726f6475636572";
+    private static final int SIGN_REQUESTS = 40;
+
+    private static ActorSystem system;
+    private static KeyPair keyPair;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties();
+
+    private String tokenId;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        system = ActorSystem.create();
+        keyPair = SoftwareTokenUtil.generateKeyPair(2048);
+    }
+
+    /**
+     * Loads the test key configuration and activates the token of the test key.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void activateToken() throws Exception {
+        File keyConf = temporaryFolder.newFile("keyconf-testing.xml");
+        System.setProperty(SystemProperties.KEY_CONFIGURATION_FILE, keyConf.getPath());
+
+        Files.copy(Paths.get(KEY_CONF), keyConf.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        TokenManager.init();
+
+        tokenId = TokenManager.findTokenIdForKeyId(KEY_ID);
+        TokenManager.setTokenActive(tokenId, true);
+        TokenManager.setKeyAvailable(KEY_ID, true);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    /**
+     * Every worker of the pool answers with a calculated signature carrying the error of the request.
+     */
+    @Test
+    public void unsupportedAlgorithmIsReportedByEveryWorker() {
+        new TestKit(system) {
+            {
+                ActorRef workers = system.actorOf(new RoundRobinPool(2).props(
+                        Props.create(SoftwareTokenSignWorker.class, new SoftwareTokenKeys("0"))));
+
+                for (int i = 0; i < 2; i++) {
+                    CalculateSignature request = new CalculateSignature(getRef(), "key",
+                            CryptoUtils.SHA256WITHRSAANDMGF1_ID, new byte[32]);
+
+                    workers.tell(request, getRef());
+
+                    CalculatedSignature response = expectMsgClass(CalculatedSignature.class);
+
+                    assertSame(request, response.getRequest());
+                    assertNull(response.getSignature());
+                    assertNotNull(response.getException());
+                    assertEquals(ErrorCodes.X_CANNOT_SIGN + "." + ErrorCodes.X_UNSUPPORTED_SIGN_ALGORITHM,
+                            ((CodedException) response.getException()).getFaultCode());
+                }
+            }
+        };
+    }
+
+    /**
+     * Workers of the pool sign concurrently with the key they share, and every signature is valid.
+     */
+    @Test
+    public void workersSignConcurrently() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        SoftwareTokenKeys keys = new SoftwareTokenKeys(tokenId, keyId -> {
+            loads.incrementAndGet();
+
+            return keyPair.getPrivate();
+        });
+
+        new TestKit(system) {
+            {
+                ActorRef workers = system.actorOf(new RoundRobinPool(4).props(
+                        Props.create(SoftwareTokenSignWorker.class, keys)));
+
+                for (int i = 0; i < SIGN_REQUESTS; i++) {
+                    workers.tell(new CalculateSignature(getRef(), KEY_ID, CryptoUtils.SHA256WITHRSA_ID,
+                            CryptoUtils.calculateDigest(CryptoUtils.SHA256_ID, message(i))), getRef());
+                }
+
+                for (int i = 0; i < SIGN_REQUESTS; i++) {
+                    CalculatedSignature response = expectMsgClass(CalculatedSignature.class);
+
+                    assertNull(response.getException());
+                    assertTrue(verify(response));
+                }
+
+                assertTrue(keys.isLoaded(KEY_ID));
+                assertTrue(loads.get() >= 1);
+            }
+        };
+    }
+
+    /**
+     * A key whose loading was started before the token was deactivated is discarded, and the signing fails
+     * because the token is not active.
+     */
+    @Test
+    public void deactivationDuringSigningDiscardsLoadedKey() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+
+        SoftwareTokenKeys keys = new SoftwareTokenKeys(tokenId, keyId -> {
+            loadStarted.countDown();
+            releaseLoad.await();
+
+            return keyPair.getPrivate();
+        });
+
+        CompletableFuture<byte[]> signing = signAsync(keys);
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+        // the token worker marks the token inactive before it clears the keys
+        TokenManager.setTokenActive(tokenId, false);
+        keys.clear();
+        releaseLoad.countDown();
+
+        assertSignFailedWith(ErrorCodes.X_TOKEN_NOT_ACTIVE, signing);
+        assertFalse(keys.isLoaded(KEY_ID));
+    }
+
+    /**
+     * A key loaded before the keys were cleared is discarded even if the token has been activated again.
+     */
+    @Test
+    public void keyLoadedBeforeClearIsDiscarded() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+
+        SoftwareTokenKeys keys = new SoftwareTokenKeys(tokenId, keyId -> {
+            loadStarted.countDown();
+            releaseLoad.await();
+
+            return keyPair.getPrivate();
+        });
+
+        CompletableFuture<byte[]> signing = signAsync(keys);
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+        TokenManager.setTokenActive(tokenId, false);
+        keys.clear();
+        TokenManager.setTokenActive(tokenId, true);
+        releaseLoad.countDown();
+
+        assertSignFailedWith(ErrorCodes.X_KEY_NOT_FOUND, signing);
+        assertFalse(keys.isLoaded(KEY_ID));
+    }
+
+    private static CompletableFuture<byte[]> signAsync(SoftwareTokenKeys keys) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return keys.sign(SoftwareTokenKeys.createSignature(), KEY_ID, CryptoUtils.SHA256WITHRSA_ID,
+                        new byte[32]);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static void assertSignFailedWith(String faultCode, CompletableFuture<byte[]> signing)
+            throws Exception {
+        try {
+            signing.get(5, TimeUnit.SECONDS);
+            fail("Expected the signing to fail");
+        } catch (ExecutionException e) {
+            assertEquals(faultCode, ((CodedException) e.getCause().getCause()).getFaultCode());
+        }
+    }
+
+    private static boolean verify(CalculatedSignature response) throws Exception {
+        CalculateSignature request = response.getRequest();
+
+        Signature signature = Signature.getInstance("NONEwithRSA");
+        signature.initVerify(keyPair.getPublic());
+        signature.update(SignerUtil.createDataToSign(request.getDigest(), request.getSignatureAlgorithmId()));
+
+        return signature.verify(response.getSignature());
+    }
+
+    private static byte[] message(int i) {
+        return ("message " + i).getBytes(UTF_8);
+    }
+}